@@ -19,6 +19,7 @@ import org.springframework.web.servlet.HandlerMapping;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletionStage;
 
 /**
  * @author tisaac
@@ -106,19 +107,28 @@ public class MetricsAspect {
     @Around("@annotation(s3Obs)")
     public Object s3Around(ProceedingJoinPoint pjp, S3Observed s3Obs) throws Throwable {
         long start = System.nanoTime();
-        boolean success = true;
+        Object result;
         try {
-            return pjp.proceed();
+            result = pjp.proceed();
         } catch (Throwable t) {
-            success = false;
+            recordS3(s3Obs, start, false);
             throw t;
-        } finally {
-            double ms = (System.nanoTime() - start) / 1_000_000.0;
-            DistributionSummary.builder(s3Obs.name() + ".time.ms")
-                    .baseUnit("milliseconds")
-                    .tag("success", String.valueOf(success))
-                    .register(registry)
-                    .record(ms);
         }
+        if (result instanceof CompletionStage<?> stage) {
+            // async handlers: time the upload itself, not just handing back the future
+            stage.whenComplete((v, e) -> recordS3(s3Obs, start, e == null));
+        } else {
+            recordS3(s3Obs, start, true);
+        }
+        return result;
+    }
+
+    private void recordS3(S3Observed s3Obs, long start, boolean success) {
+        double ms = (System.nanoTime() - start) / 1_000_000.0;
+        DistributionSummary.builder(s3Obs.name() + ".time.ms")
+                .baseUnit("milliseconds")
+                .tag("success", String.valueOf(success))
+                .register(registry)
+                .record(ms);
     }
 }
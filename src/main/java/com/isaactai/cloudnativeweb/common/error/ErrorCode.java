@@ -11,6 +11,8 @@ public enum ErrorCode {
     FORBIDDEN,
     VALIDATION_FAILED,
     BAD_REQUEST,
+    OFFSET_MISMATCH,
     INTERNAL_ERROR,
     BAD_GATEWAY,
+    SERVICE_UNAVAILABLE,
 }
@@ -8,8 +8,10 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.web.bind.MethodArgumentNotValidException;
+import org.springframework.web.bind.MissingServletRequestParameterException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.method.annotation.MethodArgumentTypeMismatchException;
 
 /**
  * Global exception handler for REST APIs.
@@ -68,6 +70,18 @@ public class ApiExceptionHandler {
         );
     }
 
+    // Missing or unparsable request parameters (?owner=abc, /v1/product/abc ...)
+    @ExceptionHandler({MissingServletRequestParameterException.class, MethodArgumentTypeMismatchException.class})
+    public ResponseEntity<ApiErrorResponse> handleBadParam(Exception ex, HttpServletRequest req) {
+        String msg = ex instanceof MissingServletRequestParameterException missing
+                ? "Missing parameter " + missing.getParameterName()
+                : "Invalid value for parameter " + ((MethodArgumentTypeMismatchException) ex).getName();
+
+        return ResponseEntity.badRequest().body(
+                ApiErrorResponse.of(400, "BAD_REQUEST", msg, req.getRequestURI())
+        );
+    }
+
     // Invalid or malformed JSON structure
     @ExceptionHandler(HttpMessageNotReadableException.class)
     public ResponseEntity<ApiErrorResponse> handleBadJson(
@@ -0,0 +1,17 @@
+package com.isaactai.cloudnativeweb.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * @author tisaac
+ */
+@ConfigurationProperties(prefix = "app.auth")
+public record AuthProps(CredentialCacheProps credentialCache, TokenProps token) {
+    public record CredentialCacheProps(long maxSize, Duration ttl) {}
+
+    // secret: shared HMAC key (>= 32 bytes); leave blank to generate one per process
+    // versionTtl: how long a node trusts a cached token version, so how late it sees another node's revoke
+    public record TokenProps(String secret, Duration ttl, long versionCacheSize, Duration versionTtl) {}
+}
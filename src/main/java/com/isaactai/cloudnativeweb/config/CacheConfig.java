@@ -0,0 +1,12 @@
+package com.isaactai.cloudnativeweb.config;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @author tisaac
+ */
+@Configuration
+@EnableConfigurationProperties(CacheProps.class)
+public class CacheConfig {
+}
@@ -0,0 +1,26 @@
+package com.isaactai.cloudnativeweb.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * @author tisaac
+ */
+@ConfigurationProperties(prefix = "app.cache")
+public record CacheProps(ProductResponseProps productResponse, PresignedUrlProps presignedUrl,
+                         ImageBytesProps imageBytes) {
+    // both limits apply: whichever is hit first starts evicting; invalidation is node-local, so
+    // expire-after-write bounds how long another node serves a product after it changed
+    public record ProductResponseProps(long maxEntries, DataSize maxBytes, Duration expireAfterWrite) {}
+
+    // urls are signed for ttl and handed out until less than minRemaining is left, but cached at most
+    // maxAge: deletes only invalidate this node, so maxAge bounds how long others hand out a deleted image
+    public record PresignedUrlProps(long maxEntries, Duration ttl, Duration minRemaining, Duration maxAge) {}
+
+    // enabled: image content is proxied through this disk cache instead of redirected to S3;
+    // the files go in an image-bytes subdirectory of dir
+    public record ImageBytesProps(boolean enabled, Path dir, DataSize maxSize, Duration evictionGrace) {}
+}
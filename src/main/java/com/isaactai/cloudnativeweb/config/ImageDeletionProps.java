@@ -0,0 +1,14 @@
+package com.isaactai.cloudnativeweb.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Background deletion of unreferenced objects. {@code batchSize} keys go into one
+ * DeleteObjects call, at most 1000.
+ * @author tisaac
+ */
+@ConfigurationProperties(prefix = "app.image.deletions")
+public record ImageDeletionProps(Duration pollInterval, int batchSize, Duration lease, Duration retryBackoff) {
+}
@@ -0,0 +1,16 @@
+package com.isaactai.cloudnativeweb.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Reconciliation of the bucket against the database. A pass runs in slices of at most
+ * {@code slice}; {@code keysPerSecond} counts keys from both sides.
+ * @author tisaac
+ */
+@ConfigurationProperties(prefix = "app.image.reconcile")
+public record ImageReconcileProps(boolean enabled, Duration pollInterval, Duration passInterval, Duration slice,
+                                  Duration lease, int pageSize, int keysPerSecond, Duration grace,
+                                  boolean repair) {
+}
@@ -0,0 +1,17 @@
+package com.isaactai.cloudnativeweb.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Thumbnail generation. {@code sizes} are bounding boxes (longer edge, px); sources already
+ * within a box get no rendition for it.
+ * @author tisaac
+ */
+@ConfigurationProperties(prefix = "app.image.variants")
+public record ImageVariantProps(boolean enabled, List<Integer> sizes, int threads, int queueCapacity,
+                                Duration pollInterval, Duration lease, int maxAttempts, Duration retryBackoff,
+                                float jpegQuality, long maxSourcePixels) {
+}
@@ -1,25 +1,75 @@
 package com.isaactai.cloudnativeweb.config;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
+import software.amazon.awssdk.core.client.config.SdkAdvancedAsyncClientOption;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+
+import java.net.URI;
 
 /**
  * @author tisaac
  */
 @Configuration
-@Profile("!ci")
+@Profile("!ci & !local-store")
 @EnableConfigurationProperties(AwsProps.class)
 public class S3Config {
-
+    @Value("${aws.s3.endpoint:}")
+    private String endpoint;
 
     @Bean
     public S3Client s3Client(AwsProps props) {
-        return S3Client.builder()
+        var builder = S3Client.builder()
+                .region(Region.of(props.region()));
+        if (!endpoint.isBlank()) {
+            builder.endpointOverride(URI.create(endpoint)).forcePathStyle(true);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Netty-based client for {@code app.upload.async}. One connection per in-flight upload at
+     * most; large bodies are split into parts by the SDK with the same sizes as the blocking path.
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "app.upload.async", name = "enabled", havingValue = "true")
+    public S3AsyncClient s3AsyncClient(AwsProps props, UploadProps upload) {
+        UploadProps.AsyncProps async = upload.async();
+        var builder = S3AsyncClient.builder()
                 .region(Region.of(props.region()))
-                .build();
+                .httpClientBuilder(NettyNioAsyncHttpClient.builder()
+                        .maxConcurrency(async.maxInFlight()))
+                .overrideConfiguration(o -> o.apiCallTimeout(async.timeout()))
+                // S3ObjectStore.putAsync hands off to the upload completion executor itself, so
+                // the SDK's own futures can complete right on the event loop
+                .asyncConfiguration(c -> c.advancedOption(SdkAdvancedAsyncClientOption.FUTURE_COMPLETION_EXECUTOR, Runnable::run))
+                .multipartEnabled(true)
+                .multipartConfiguration(m -> m
+                        .thresholdInBytes(upload.multipartThreshold().toBytes())
+                        .minimumPartSizeInBytes(upload.partSize().toBytes()));
+        if (!endpoint.isBlank()) {
+            builder.endpointOverride(URI.create(endpoint)).forcePathStyle(true);
+        }
+        return builder.build();
+    }
+
+    @Bean
+    public S3Presigner s3Presigner(AwsProps props) {
+        var builder = S3Presigner.builder()
+                .region(Region.of(props.region()));
+        if (!endpoint.isBlank()) {
+            builder.endpointOverride(URI.create(endpoint))
+                    .serviceConfiguration(S3Configuration.builder().pathStyleAccessEnabled(true).build());
+        }
+        return builder.build();
     }
 }
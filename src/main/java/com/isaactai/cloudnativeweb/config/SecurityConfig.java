@@ -1,16 +1,26 @@
 package com.isaactai.cloudnativeweb.config;
 
+import com.isaactai.cloudnativeweb.user.auth.AuthTokenService;
+import com.isaactai.cloudnativeweb.user.auth.BearerTokenAuthenticationFilter;
+import com.isaactai.cloudnativeweb.user.auth.CachingAuthenticationProvider;
+import com.isaactai.cloudnativeweb.user.auth.VerifiedCredentialCache;
+import jakarta.servlet.DispatcherType;
 import lombok.RequiredArgsConstructor;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.security.authentication.ProviderManager;
 import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.web.AuthenticationEntryPoint;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.authentication.www.BasicAuthenticationFilter;
 
 /**
  * @author tisaac
@@ -18,24 +28,47 @@ import org.springframework.security.web.SecurityFilterChain;
 @Configuration
 @EnableWebSecurity
 @RequiredArgsConstructor
+@EnableConfigurationProperties(AuthProps.class)
 public class SecurityConfig {
 
     private final UserDetailsService userDetailsService;
+    private final PasswordEncoder passwordEncoder;
+    private final VerifiedCredentialCache credentialCache;
+    private final AuthTokenService tokenService;
 
     @Bean
     public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
+        AuthenticationEntryPoint entryPoint = (req, res, ex) -> {
+            req.setAttribute("access.label", "Security");
+            req.setAttribute("error.expected", true);
+            req.setAttribute("error.code", "UNAUTHORIZED");
+            req.setAttribute("error.message", "Missing or invalid credentials");
+            res.sendError(HttpStatus.UNAUTHORIZED.value());
+        };
+
         http
                 .csrf(csrf -> csrf.disable())
                 .authorizeHttpRequests(auth -> auth
+                        // the original REQUEST dispatch was already authorized (streamed responses)
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                         .requestMatchers("/healthz", "/api/health").anonymous()
                         .requestMatchers(HttpMethod.POST, "/v1/user").anonymous()
                         .requestMatchers(HttpMethod.GET, "/v1/user/validateEmail").anonymous()
+                        .requestMatchers(HttpMethod.GET, "/v1/product/export").authenticated()
+                        .requestMatchers(HttpMethod.GET, "/v1/product").anonymous()
                         .requestMatchers(HttpMethod.GET, "/v1/product/*").anonymous()
                         .requestMatchers(HttpMethod.GET, "/v1/product/*/image/*").anonymous()
+                        .requestMatchers(HttpMethod.GET, "/v1/product/*/image/*/content").anonymous()
                         .requestMatchers(HttpMethod.GET, "/v1/product/*/image").anonymous()
                         .anyRequest().authenticated()
                 )
+                // Basic credentials go through the verified-credential cache before DB + BCrypt
+                .authenticationManager(new ProviderManager(
+                        new CachingAuthenticationProvider(userDetailsService, passwordEncoder, credentialCache)))
                 .httpBasic(Customizer.withDefaults())
+                // Bearer tokens from POST /v1/user/token: HMAC plus a cached token version, no BCrypt
+                .addFilterBefore(new BearerTokenAuthenticationFilter(tokenService, entryPoint),
+                        BasicAuthenticationFilter.class)
                 .formLogin(form -> form.disable())
                 .sessionManagement(sm -> sm.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
                 .headers(h -> h
@@ -43,13 +76,7 @@ public class SecurityConfig {
                                 .xssProtection(x -> x.disable())
                 )
                 .exceptionHandling(e -> e
-                        .authenticationEntryPoint((req, res, ex) -> {
-                            req.setAttribute("access.label", "Security");
-                            req.setAttribute("error.expected", true);
-                            req.setAttribute("error.code", "UNAUTHORIZED");
-                            req.setAttribute("error.message", "Missing or invalid credentials");
-                            res.sendError(HttpStatus.UNAUTHORIZED.value());
-                        })
+                        .authenticationEntryPoint(entryPoint)
                         .accessDeniedHandler((req, res, ex) -> {
                             req.setAttribute("access.label", "Security");
                             req.setAttribute("error.expected", true);
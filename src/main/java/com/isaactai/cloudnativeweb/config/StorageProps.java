@@ -0,0 +1,14 @@
+package com.isaactai.cloudnativeweb.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.nio.file.Path;
+
+/**
+ * @author tisaac
+ */
+@ConfigurationProperties(prefix = "app.storage")
+public record StorageProps(LocalProps local) {
+    // root of the local-store profile's object tree
+    public record LocalProps(Path root) {}
+}
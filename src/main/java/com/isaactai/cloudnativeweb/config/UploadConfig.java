@@ -0,0 +1,56 @@
+package com.isaactai.cloudnativeweb.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.embedded.tomcat.TomcatConnectorCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author tisaac
+ */
+@Configuration
+@EnableConfigurationProperties({UploadProps.class, StorageProps.class, ImageVariantProps.class,
+        ImageDeletionProps.class, ImageReconcileProps.class})
+public class UploadConfig {
+    public static final String COMPLETION_EXECUTOR = "uploadCompletionExecutor";
+    private static final int COMPLETION_THREADS = 16;
+
+    // answer "Expect: 100-continue" only once the body is read, so a chunk refused up front
+    // (wrong offset, not the owner) costs the client a round trip instead of the whole chunk
+    @Bean
+    TomcatConnectorCustomizer continueOnRead() {
+        return connector -> connector.setProperty("continueResponseTiming", "onRead");
+    }
+
+    /**
+     * Runs what follows an async upload (the image row insert), never on the S3 client's event
+     * loop. The limiter keeps at most {@code max-in-flight} uploads waiting for it, so a full
+     * queue means the database has fallen behind: the upload is then refused with 503 rather
+     * than finished on the event loop.
+     *
+     * <p>Not a default candidate, so it doesn't stand in for Spring's own task executor (which
+     * streams the CSV export); it is injected by name.
+     */
+    @Bean(name = COMPLETION_EXECUTOR, destroyMethod = "shutdown", defaultCandidate = false)
+    @ConditionalOnProperty(prefix = "app.upload.async", name = "enabled", havingValue = "true")
+    public ThreadPoolExecutor uploadCompletionExecutor(UploadProps upload) {
+        AtomicInteger n = new AtomicInteger();
+        ThreadPoolExecutor completion = new ThreadPoolExecutor(
+                COMPLETION_THREADS, COMPLETION_THREADS, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(upload.async().maxInFlight(), 1)),
+                r -> {
+                    Thread t = new Thread(r, "upload-completion-" + n.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        completion.allowCoreThreadTimeOut(true);
+        return completion;
+    }
+}
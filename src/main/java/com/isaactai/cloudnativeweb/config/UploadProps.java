@@ -0,0 +1,32 @@
+package com.isaactai.cloudnativeweb.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * @author tisaac
+ */
+@ConfigurationProperties(prefix = "app.upload")
+public record UploadProps(DataSize multipartThreshold, DataSize partSize, int partBuffers, Duration bufferWait,
+                          PresignProps presign, AsyncProps async, BatchProps batch,
+                          ResumableProps resumable, SpoolProps spool) {
+    // direct-to-S3 uploads: the signed PUT only accepts the declared type and size
+    public record PresignProps(DataSize maxSize, Duration ttl) {}
+
+    // non-blocking uploads: request threads are released while S3 works; beyond max-in-flight we answer 503
+    public record AsyncProps(boolean enabled, int maxInFlight, Duration timeout) {}
+
+    // multi-file uploads: files per request, and S3 PUTs in flight across all of them
+    public record BatchProps(int maxFiles, int concurrency) {}
+
+    // resumable uploads: one chunk is one multipart part; sessions idle past ttl are aborted by the reaper
+    public record ResumableProps(DataSize chunkSize, DataSize maxSize, Duration ttl, Duration reapInterval) {}
+
+    // degraded mode: a PUT slower than slow-put, or a failed one, sends uploads to the local spool for cooldown;
+    // host names this instance in the blob rows (blank: the machine's host name)
+    public record SpoolProps(boolean enabled, Path dir, Duration slowPut, Duration cooldown, Duration pollInterval,
+                             int batchSize, Duration lease, Duration retryBackoff, Duration maxBackoff, String host) {}
+}
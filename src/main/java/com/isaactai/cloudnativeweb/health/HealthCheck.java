@@ -12,7 +12,8 @@ import java.time.Instant;
 @Table(name = "health_checks")
 public class HealthCheck {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "health_checks_check_id_seq")
+    @SequenceGenerator(name = "health_checks_check_id_seq", sequenceName = "health_checks_check_id_seq", allocationSize = 50)
     @Column(name = "check_id")
     private Long checkId;
 
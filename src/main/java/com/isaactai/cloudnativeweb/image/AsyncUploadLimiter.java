@@ -0,0 +1,47 @@
+package com.isaactai.cloudnativeweb.image;
+
+import com.isaactai.cloudnativeweb.config.UploadProps;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Caps non-blocking uploads in flight at {@code app.upload.async.max-in-flight}.
+ *
+ * <p>With no request thread held per upload, Tomcat's thread pool no longer bounds how many
+ * spooled files and S3 connections pile up; this does. Callers over the cap are turned away
+ * immediately rather than queued.
+ * @author tisaac
+ */
+@Component
+public class AsyncUploadLimiter {
+    private final int max;
+    private final Semaphore permits;
+    private final Counter rejected;
+
+    public AsyncUploadLimiter(UploadProps props, MeterRegistry registry) {
+        this.max = props.async().maxInFlight();
+        this.permits = new Semaphore(max);
+        this.rejected = Counter.builder("upload.async.rejected").register(registry);
+        Gauge.builder("upload.async.in_flight", this, AsyncUploadLimiter::inFlight).register(registry);
+    }
+
+    public boolean tryAcquire() {
+        if (permits.tryAcquire()) {
+            return true;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    public int inFlight() {
+        return max - permits.availablePermits();
+    }
+}
@@ -18,7 +18,8 @@ import java.time.Instant;
 @Builder
 public class Image {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "images_image_id_seq")
+    @SequenceGenerator(name = "images_image_id_seq", sequenceName = "images_image_id_seq", allocationSize = 50)
     @Column(name = "image_id")
     private Long imageId;
 
@@ -0,0 +1,216 @@
+package com.isaactai.cloudnativeweb.image;
+
+import com.isaactai.cloudnativeweb.common.exception.BadRequestException;
+import com.isaactai.cloudnativeweb.common.exception.NotFoundException;
+import com.isaactai.cloudnativeweb.config.UploadProps;
+import com.isaactai.cloudnativeweb.image.dto.BulkImageItemResult;
+import com.isaactai.cloudnativeweb.image.dto.BulkImageItemResult.Status;
+import com.isaactai.cloudnativeweb.image.dto.BulkImageResponse;
+import com.isaactai.cloudnativeweb.image.exception.S3UploadException;
+import com.isaactai.cloudnativeweb.product.Product;
+import com.isaactai.cloudnativeweb.product.ProductService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Multi-file uploads for listing tools: one ownership check, the S3 PUTs in parallel, one
+ * INSERT for all image rows.
+ *
+ * <p>Files are hashed and PUT on a pool of {@code app.upload.batch.concurrency} threads shared
+ * by all batch requests, so a listing's photos take about one S3 round trip instead of one per
+ * photo, and bursts of batches can't open more S3 connections than that. Content addressing
+ * works as for single uploads (see {@link ImageService}): bytes that are already stored, or
+ * repeated within the batch, are PUT at most once. A file that can't be stored fails on its
+ * own; the others are still recorded.
+ * @author tisaac
+ */
+@Service
+public class ImageBatchService {
+    private final ImageService images;
+    private final ImageBlobRepository blobRepo;
+    private final ProductService prodService;
+    private final int maxFiles;
+    private final ThreadPoolExecutor pool;
+
+    public ImageBatchService(ImageService images, ImageBlobRepository blobRepo, ProductService prodService,
+                             UploadProps props, MeterRegistry registry) {
+        this.images = images;
+        this.blobRepo = blobRepo;
+        this.prodService = prodService;
+        this.maxFiles = props.batch().maxFiles();
+
+        int threads = props.batch().concurrency();
+        AtomicInteger n = new AtomicInteger();
+        // the queue holds at most max-files tasks per waiting request thread
+        this.pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "image-batch-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        pool.allowCoreThreadTimeOut(true);
+
+        Gauge.builder("upload.batch.queue.depth", pool, p -> p.getQueue().size()).register(registry);
+        Gauge.builder("upload.batch.active", pool, ThreadPoolExecutor::getActiveCount).register(registry);
+    }
+
+    public BulkImageResponse upload(Long userId, Long productId, List<MultipartFile> files) {
+        if (files == null || files.isEmpty()) {
+            throw new BadRequestException("No files");
+        }
+        if (files.size() > maxFiles) {
+            throw new BadRequestException("At most " + maxFiles + " files per request");
+        }
+        Product product = prodService.locateOwnedProduct(
+                productId, userId, "You can't upload image for the product");
+
+        BulkImageItemResult[] results = new BulkImageItemResult[files.size()];
+        List<Pending> pending = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            MultipartFile file = files.get(i);
+            String safeName = ImageService.sanitizeFileName(file.getOriginalFilename());
+            try {
+                pending.add(new Pending(i, file, safeName, ImageService.validateImageFile(file)));
+            } catch (BadRequestException e) {
+                results[i] = new BulkImageItemResult(i, Status.INVALID, safeName, null, e.getMessage());
+            }
+        }
+
+        // hashing reads every byte, so it is spread over the pool as well
+        String[] keys = new String[files.size()];
+        for (Pending p : runAll(pending, p -> keys[p.index()] =
+                ImageService.blobKey(userId, ImageService.sha256(p.file()::getInputStream)))) {
+            results[p.index()] = failed(p, "Could not read the file");
+        }
+        pending.removeIf(p -> results[p.index()] != null);
+
+        // one PUT per distinct object that isn't stored yet, pinned first; a blob that is being
+        // deleted can't be pinned and its files get keys of their own in record()
+        Map<String, Pending> toPut = new LinkedHashMap<>();
+        for (Pending p : pending) {
+            toPut.putIfAbsent(keys[p.index()], p);
+        }
+        if (!toPut.isEmpty()) {
+            toPut.keySet().retainAll(blobRepo.liveOrPin(toPut.entrySet().stream()
+                    .map(e -> new ImageBlobRepository.NewFile(e.getValue().safeName(), e.getKey(),
+                            e.getValue().contentType(), e.getValue().file().getSize()))
+                    .toList()).pinned());
+        }
+        Set<String> putFailed = new HashSet<>();
+        for (Pending p : runAll(toPut.values(), p -> images.put(keys[p.index()], p.contentType(),
+                p.file()::getInputStream, p.file().getSize()))) {
+            putFailed.add(keys[p.index()]);
+        }
+        if (!putFailed.isEmpty()) {
+            blobRepo.unpin(putFailed);
+        }
+        toPut.keySet().removeAll(putFailed);
+        for (Pending p : pending) {
+            if (putFailed.contains(keys[p.index()])) {
+                results[p.index()] = failed(p, "Upload to storage failed");
+            }
+        }
+        pending.removeIf(p -> results[p.index()] != null);
+
+        if (!pending.isEmpty()) {
+            record(userId, product, pending, keys, toPut.keySet(), results);
+        }
+
+        List<BulkImageItemResult> items = Arrays.asList(results);
+        int created = (int) items.stream().filter(r -> !r.failed()).count();
+        return new BulkImageResponse(created, items.size() - created, items);
+    }
+
+    private void record(Long userId, Product product, List<Pending> pending, String[] keys, Set<String> pinned,
+                        BulkImageItemResult[] results) {
+        List<ImageBlobRepository.InsertedFile> rows;
+        try {
+            rows = blobRepo.insertImages(product.getId(), pending.stream()
+                    .map(p -> new ImageBlobRepository.NewFile(p.safeName(), keys[p.index()], p.contentType(),
+                            p.file().getSize()))
+                    .toList(), pinned);
+        } catch (RuntimeException e) {
+            // the pins go, and what we PUT with them unless a concurrent upload references it
+            if (!pinned.isEmpty()) {
+                blobRepo.unpin(pinned);
+            }
+            if (e instanceof DataIntegrityViolationException) {
+                throw new NotFoundException("Product not found"); // deleted while we were uploading
+            }
+            throw e;
+        }
+
+        // rows come back unordered; files with the same name and bytes are interchangeable
+        Map<FileRef, Deque<Pending>> byRef = new HashMap<>();
+        for (Pending p : pending) {
+            byRef.computeIfAbsent(new FileRef(keys[p.index()], p.safeName()), k -> new ArrayDeque<>()).add(p);
+        }
+        for (ImageBlobRepository.InsertedFile row : rows) {
+            Pending p = byRef.get(new FileRef(row.key(), row.fileName())).poll();
+            Image img = Image.builder()
+                    .imageId(row.imageId())
+                    .product(product)
+                    .fileName(row.fileName())
+                    .s3BucketPath(row.key())
+                    .dateCreated(row.dateCreated())
+                    .build();
+            results[p.index()] = created(p, img);
+        }
+
+        // no row: the blob was being deleted, so these get a key of their own, one at a time
+        for (Deque<Pending> left : byRef.values()) {
+            for (Pending p : left) {
+                String key = keys[p.index()];
+                try {
+                    results[p.index()] = created(p, images.recordUpload(userId, product, p.safeName(), key,
+                            p.contentType(), p.file().getSize(), false, p.file()::getInputStream));
+                } catch (S3UploadException e) {
+                    results[p.index()] = failed(p, "Upload to storage failed");
+                }
+            }
+        }
+    }
+
+    // runs the task for every item on the pool and waits for all of them; returns the items that failed
+    private <T> Set<T> runAll(Collection<T> items, Consumer<T> task) {
+        Set<T> failed = ConcurrentHashMap.newKeySet();
+        CompletableFuture.allOf(items.stream()
+                        .map(item -> CompletableFuture.runAsync(() -> task.accept(item), pool)
+                                .exceptionally(e -> {
+                                    failed.add(item);
+                                    return null;
+                                }))
+                        .toArray(CompletableFuture[]::new))
+                .join();
+        return failed;
+    }
+
+    private static BulkImageItemResult created(Pending p, Image img) {
+        return new BulkImageItemResult(p.index(), Status.CREATED, p.safeName(), ImageService.toResponse(img), null);
+    }
+
+    private static BulkImageItemResult failed(Pending p, String error) {
+        return new BulkImageItemResult(p.index(), Status.FAILED, p.safeName(), null, error);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        pool.shutdown();
+    }
+
+    private record Pending(int index, MultipartFile file, String safeName, String contentType) {}
+
+    private record FileRef(String key, String fileName) {}
+}
@@ -0,0 +1,308 @@
+package com.isaactai.cloudnativeweb.image;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Reference counts for content-addressed image objects.
+ *
+ * <p>A blob row exists while images point at its object. The image row and its reference
+ * are always written and removed by one statement, so the count can't drift from the images
+ * table. When the last reference goes the row stays at {@code ref_count = 0} until the object
+ * has been deleted (see {@link ImageDeletionQueue}); uploads never revive such a row (see
+ * {@link #insertImage}), because the object may be gone any moment.
+ *
+ * <p>An upload that has to PUT the object pins the blob first (see {@link #claim}): it takes its
+ * reference before the PUT, so the count can't drop to 0 and the object be deleted under it,
+ * and the image row later takes over that reference instead of adding one.
+ * @author tisaac
+ */
+@Repository
+@RequiredArgsConstructor
+public class ImageBlobRepository {
+    // A key that is stored and referenced comes back with true, its upload can skip the PUT; a
+    // spooled blob is not in the store yet (see UploadSpool), nor is one with a PUT still running.
+    // All other keys are pinned and come back with false, except those being deleted.
+    private static final String LIVE_OR_PIN = """
+            with files as (
+                select * from unnest(?::varchar[], ?::varchar[], ?::bigint[]) as t(s3_bucket_path, content_type, size_bytes)
+            ), live as (
+                select s3_bucket_path from image_blobs
+                 where s3_bucket_path in (select s3_bucket_path from files)
+                   and ref_count > 0 and spool_host is null and pending_puts = 0
+            ), pinned as (
+                insert into image_blobs (s3_bucket_path, content_type, size_bytes, ref_count, pending_puts)
+                select s3_bucket_path, content_type, size_bytes, 1, 1
+                  from files where s3_bucket_path not in (select s3_bucket_path from live)
+                on conflict (s3_bucket_path) do update
+                   set ref_count = image_blobs.ref_count + 1, pending_puts = image_blobs.pending_puts + 1
+                 where image_blobs.ref_count > 0
+                returning s3_bucket_path
+            )
+            select s3_bucket_path, true from live
+            union all
+            select s3_bucket_path, false from pinned
+            """;
+
+    // the upload failed: its reference goes, and if it was the last one the object is queued like on RELEASE
+    private static final String UNPIN = """
+            with blob as (
+                update image_blobs set ref_count = ref_count - 1, pending_puts = pending_puts - 1
+                 where s3_bucket_path = any(?::varchar[])
+                returning s3_bucket_path, ref_count
+            )
+            insert into object_deletions (s3_bucket_path)
+            select s3_bucket_path from blob where ref_count = 0
+            on conflict do nothing
+            """;
+
+    // The image row comes back only if the reference was taken. The blob row is either live or
+    // pinned by this upload, whose pin becomes the image's reference; a row that is gone was
+    // deleted with its object and is not recreated.
+    private static final String INSERT_IMAGE = """
+            with blob as (
+                update image_blobs set ref_count = ref_count + 1 - ?, pending_puts = pending_puts - ?
+                 where s3_bucket_path = ? and ref_count > 0
+                returning s3_bucket_path
+            )
+            insert into images (product_id, file_name, s3_bucket_path)
+            select ?, ?, blob.s3_bucket_path from blob
+            returning image_id, date_created
+            """;
+
+    // INSERT_IMAGE for a pinned blob whose bytes went to this instance's spool because S3 refused
+    // them. A row that holds nothing but this pin was never stored: it is spooled here now. Any
+    // other keeps its state, already stored, spooled elsewhere or another upload's PUT running.
+    // Thumbnails wait until the object is stored.
+    private static final String INSERT_SPOOLED = """
+            with blob as (
+                update image_blobs
+                   set pending_puts = pending_puts - 1,
+                       spool_host = case when ref_count = 1 and pending_puts = 1 then ? else spool_host end,
+                       spool_due_at = case when ref_count = 1 and pending_puts = 1 then now() else spool_due_at end
+                 where s3_bucket_path = ?
+                returning s3_bucket_path, spool_host
+            ), img as (
+                insert into images (product_id, file_name, s3_bucket_path, variants_due_at)
+                select ?, ?, blob.s3_bucket_path,
+                       case when blob.spool_host is null then now() else 'infinity' end
+                  from blob
+                returning image_id, date_created
+            )
+            select img.image_id, img.date_created, blob.spool_host from img, blob
+            """;
+
+    // a direct upload's key is its own: the first completion takes the only reference, a repeated
+    // or concurrent one finds the blob row and inserts nothing
+    private static final String INSERT_COMPLETED = """
+            with blob as (
+                insert into image_blobs (s3_bucket_path, content_type, size_bytes, ref_count)
+                values (?, ?, ?, 1)
+                on conflict (s3_bucket_path) do nothing
+                returning s3_bucket_path
+            )
+            insert into images (product_id, file_name, s3_bucket_path)
+            select ?, ?, blob.s3_bucket_path from blob
+            returning image_id, date_created
+            """;
+
+    // several files of one batch may carry the same bytes: one reference each, of which a pin is one.
+    // The rows share one nextval per 50 (changeset 009) rather than each taking the column default.
+    private static final String INSERT_IMAGES = """
+            with files as (
+                select * from unnest(?::varchar[], ?::varchar[]) as t(file_name, s3_bucket_path)
+            ), refs as (
+                select s3_bucket_path, count(*) as n, (s3_bucket_path = any(?::varchar[]))::int as pinned
+                  from files group by s3_bucket_path
+            ), blob as (
+                update image_blobs b set ref_count = b.ref_count + refs.n - refs.pinned,
+                                         pending_puts = b.pending_puts - refs.pinned
+                  from refs
+                 where b.s3_bucket_path = refs.s3_bucket_path and b.ref_count > 0
+                returning b.s3_bucket_path
+            ), kept as (
+                select files.file_name, files.s3_bucket_path, row_number() over () - 1 as n
+                  from files join blob using (s3_bucket_path)
+            ), blocks as (
+                select array_agg(nextval('images_image_id_seq')) as lo
+                  from generate_series(1, ((select count(*) from kept) + 49) / 50)
+            )
+            insert into images (image_id, product_id, file_name, s3_bucket_path)
+            select blocks.lo[n / 50 + 1] + n % 50, ?, kept.file_name, kept.s3_bucket_path from kept, blocks
+            returning image_id, date_created, file_name, s3_bucket_path
+            """;
+
+    // ref_count is null for images stored before content addressing (or uploaded directly).
+    // With the last reference the object and its thumbnails are queued for deletion; the
+    // variant rows are read before the cascade removes them, all statements share one snapshot.
+    private static final String RELEASE = """
+            with img as (
+                delete from images where image_id = ? returning s3_bucket_path
+            ), blob as (
+                update image_blobs b set ref_count = b.ref_count - 1
+                  from img where b.s3_bucket_path = img.s3_bucket_path
+                returning b.ref_count
+            ), gone as (
+                select img.s3_bucket_path from img left join blob on true where coalesce(blob.ref_count, 0) = 0
+            ), queued as (
+                insert into object_deletions (s3_bucket_path)
+                select s3_bucket_path from gone
+                union
+                select v.s3_bucket_path from image_variants v, gone where v.image_id = ?
+                on conflict do nothing
+            )
+            select img.s3_bucket_path, blob.ref_count from img left join blob on true
+            """;
+
+    private static final String FIND_SPOOLED = """
+            select b.s3_bucket_path, b.content_type, b.spool_host
+              from images i join image_blobs b on b.s3_bucket_path = i.s3_bucket_path
+             where i.image_id = ? and i.product_id = ? and b.spool_host is not null
+            """;
+
+    private final JdbcTemplate jdbc;
+
+    /**
+     * Finds out whether an upload of these bytes has to PUT them, and if so takes its
+     * reference first, creating the blob row if there is none. A pin must end in
+     * {@link #insertImage} or {@link #insertSpooled} with {@code pinned}, or in {@link #unpin}.
+     */
+    public Claim claim(String key, String contentType, long size) {
+        Claimed claimed = liveOrPin(List.of(new NewFile(null, key, contentType, size)));
+        return claimed.live().contains(key) ? Claim.LIVE
+                : claimed.pinned().contains(key) ? Claim.PINNED : Claim.DELETING;
+    }
+
+    /**
+     * {@link #claim} for many distinct keys in one statement. Keys in neither set are being
+     * deleted.
+     */
+    public Claimed liveOrPin(Collection<NewFile> files) {
+        Claimed claimed = new Claimed(new HashSet<>(), new HashSet<>());
+        jdbc.query(con -> {
+            PreparedStatement ps = con.prepareStatement(LIVE_OR_PIN);
+            ps.setArray(1, con.createArrayOf("varchar", files.stream().map(NewFile::key).toArray()));
+            ps.setArray(2, con.createArrayOf("varchar", files.stream().map(NewFile::contentType).toArray()));
+            ps.setArray(3, con.createArrayOf("int8", files.stream().map(NewFile::size).toArray()));
+            return ps;
+        }, rs -> {
+            (rs.getBoolean(2) ? claimed.live() : claimed.pinned()).add(rs.getString(1));
+        });
+        return claimed;
+    }
+
+    // drops the pins of uploads that failed; an object nothing else references is queued for deletion
+    public void unpin(Collection<String> keys) {
+        jdbc.update(con -> {
+            PreparedStatement ps = con.prepareStatement(UNPIN);
+            ps.setArray(1, con.createArrayOf("varchar", keys.toArray()));
+            return ps;
+        });
+    }
+
+    /**
+     * Inserts the image and takes a reference on its blob in one statement. Empty when the
+     * blob is being deleted, which can't happen to a pinned one.
+     * @param pinned the blob was pinned for this upload; the pin becomes the image's reference
+     * @throws org.springframework.dao.DataIntegrityViolationException the product is gone
+     */
+    public Optional<Inserted> insertImage(Long productId, String fileName, String key, boolean pinned) {
+        int pin = pinned ? 1 : 0;
+        List<Inserted> rows = jdbc.query(INSERT_IMAGE,
+                (rs, i) -> new Inserted(rs.getLong(1), rs.getTimestamp(2).toInstant()),
+                pin, pin, key, productId, fileName);
+        return rows.stream().findFirst();
+    }
+
+    /**
+     * Records a completed direct upload, blob row and image in one statement. Empty when the
+     * key already has a blob row, i.e. the upload was completed before.
+     * @throws org.springframework.dao.DataIntegrityViolationException the product is gone
+     */
+    public Optional<Inserted> insertCompleted(Long productId, String fileName, String key, String contentType,
+                                              long size) {
+        List<Inserted> rows = jdbc.query(INSERT_COMPLETED,
+                (rs, i) -> new Inserted(rs.getLong(1), rs.getTimestamp(2).toInstant()),
+                key, contentType, size, productId, fileName);
+        return rows.stream().findFirst();
+    }
+
+    /**
+     * {@link #insertImage} for a pinned blob whose bytes were written to the spool of
+     * {@code host}; the pin becomes the image's reference.
+     * @throws org.springframework.dao.DataIntegrityViolationException the product is gone
+     */
+    public InsertedSpooled insertSpooled(Long productId, String fileName, String key, String host) {
+        return jdbc.queryForObject(INSERT_SPOOLED,
+                (rs, i) -> new InsertedSpooled(rs.getLong(1), rs.getTimestamp(2).toInstant(), rs.getString(3)),
+                host, key, productId, fileName);
+    }
+
+    /**
+     * {@link #insertImage} for many files in one statement. Files whose blob is being deleted
+     * get no row, so fewer rows may come back than files went in.
+     * @param pinned the keys pinned for this batch
+     * @throws org.springframework.dao.DataIntegrityViolationException the product is gone
+     */
+    public List<InsertedFile> insertImages(Long productId, List<NewFile> files, Collection<String> pinned) {
+        return jdbc.query(con -> {
+            PreparedStatement ps = con.prepareStatement(INSERT_IMAGES);
+            ps.setArray(1, con.createArrayOf("varchar", files.stream().map(NewFile::fileName).toArray()));
+            ps.setArray(2, con.createArrayOf("varchar", files.stream().map(NewFile::key).toArray()));
+            ps.setArray(3, con.createArrayOf("varchar", pinned.toArray()));
+            ps.setLong(4, productId);
+            return ps;
+        }, (rs, i) -> new InsertedFile(rs.getLong(1), rs.getTimestamp(2).toInstant(), rs.getString(3), rs.getString(4)));
+    }
+
+    /**
+     * Deletes the image row and drops its reference, queueing the objects for
+     * {@link ImageDeletionWorker} if it was the last one. Empty when the row was already gone.
+     */
+    public Optional<Released> release(Long imageId) {
+        List<Released> rows = jdbc.query(RELEASE,
+                (rs, i) -> new Released(rs.getString(1), (Integer) rs.getObject(2)), imageId, imageId);
+        return rows.stream().findFirst();
+    }
+
+    // the image's original, if its bytes are still in some instance's spool
+    public Optional<Spooled> findSpooled(Long imageId, Long productId) {
+        return jdbc.query(FIND_SPOOLED, (rs, i) -> new Spooled(rs.getString(1), rs.getString(2), rs.getString(3)),
+                imageId, productId).stream().findFirst();
+    }
+
+    public record Inserted(Long imageId, Instant dateCreated) {}
+
+    /**
+     * @param spoolHost where the bytes are, null if the blob is already stored
+     */
+    public record InsertedSpooled(Long imageId, Instant dateCreated, String spoolHost) {}
+
+    public record Spooled(String key, String contentType, String spoolHost) {}
+
+    public record NewFile(String fileName, String key, String contentType, long size) {}
+
+    /**
+     * LIVE: stored and referenced, no PUT needed. PINNED: this upload holds a reference and
+     * PUTs. DELETING: the key can't be written until the object is gone.
+     */
+    public enum Claim { LIVE, PINNED, DELETING }
+
+    public record Claimed(Set<String> live, Set<String> pinned) {}
+
+    public record InsertedFile(Long imageId, Instant dateCreated, String fileName, String key) {}
+
+    /**
+     * @param refCount references left, null if the image had no blob
+     */
+    public record Released(String key, Integer refCount) {}
+}
@@ -0,0 +1,150 @@
+package com.isaactai.cloudnativeweb.image;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import com.isaactai.cloudnativeweb.common.exception.NotFoundException;
+import com.isaactai.cloudnativeweb.storage.ObjectInfo;
+import com.isaactai.cloudnativeweb.storage.ObjectStore;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+
+/**
+ * Writes image bytes from {@link ImageDiskCache}, or straight from the store's own files when
+ * it keeps them on local disk, honoring single {@code Range} requests.
+ *
+ * <p>Files go out through Tomcat's sendfile (the connector hands the file to
+ * {@code FileChannel.transferTo} on the socket), so the bytes never enter the heap. Where the
+ * connector can't do that (e.g. TLS terminated in Tomcat), they are still copied with
+ * {@code transferTo}, into the servlet stream. A plain miss is streamed to the client while it
+ * is written to the cache.
+ * @author tisaac
+ */
+@Component
+public class ImageBytesResponder {
+    // Tomcat's sendfile request attributes, as used by its DefaultServlet
+    static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final ImageDiskCache cache;
+    private final ObjectStore store;
+
+    public ImageBytesResponder(ObjectProvider<ImageDiskCache> cache, ObjectStore store) {
+        this.cache = cache.getIfAvailable();
+        this.store = store;
+    }
+
+    // proxy when the cache is on, or when the store can't hand out URLs of its own
+    public boolean enabled() {
+        return cache != null || !store.presigns();
+    }
+
+    public void respond(String key, String etag, String cacheControl,
+                        HttpServletRequest req, HttpServletResponse res) throws IOException {
+        String rangeHeader = startResponse(etag, cacheControl, req, res);
+
+        boolean[] streamed = {false};
+        ImageDiskCache.CachedObject o = cache == null ? storeFile(key)
+                : cache.get(key, rangeHeader != null ? null : (size, contentType) -> {
+                    res.setStatus(HttpServletResponse.SC_OK);
+                    res.setContentType(contentType);
+                    res.setContentLengthLong(size);
+                    streamed[0] = true;
+                    return res.getOutputStream();
+                });
+        if (!streamed[0]) {
+            send(o, rangeHeader, req, res);
+        }
+    }
+
+    // bytes that are already in a local file, e.g. an upload still in the spool
+    public void respond(ImageDiskCache.CachedObject o, String etag, String cacheControl,
+                        HttpServletRequest req, HttpServletResponse res) throws IOException {
+        send(o, startResponse(etag, cacheControl, req, res), req, res);
+    }
+
+    // the Range header to honor, if any
+    private static String startResponse(String etag, String cacheControl,
+                                        HttpServletRequest req, HttpServletResponse res) {
+        res.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        res.setHeader(HttpHeaders.ETAG, etag);
+        res.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+
+        String rangeHeader = req.getHeader(HttpHeaders.RANGE);
+        String ifRange = req.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange != null && !ifRange.equals(etag)) {
+            rangeHeader = null; // representation changed (or a date validator we don't issue): send it all
+        }
+        return rangeHeader;
+    }
+
+    private static void send(ImageDiskCache.CachedObject o, String rangeHeader,
+                             HttpServletRequest req, HttpServletResponse res) throws IOException {
+        res.setContentType(o.contentType());
+        long start = 0;
+        long end = o.size() - 1;
+        if (rangeHeader != null) {
+            List<HttpRange> ranges;
+            try {
+                ranges = HttpRange.parseRanges(rangeHeader);
+            } catch (IllegalArgumentException e) {
+                ranges = List.of(); // malformed: ignore the header
+            }
+            if (ranges.size() == 1) {
+                HttpRange r = ranges.get(0);
+                try {
+                    start = r.getRangeStart(o.size());
+                    end = r.getRangeEnd(o.size());
+                } catch (IllegalArgumentException e) {
+                    res.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                    res.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + o.size());
+                    return;
+                }
+                if (start > end) {
+                    res.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                    res.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + o.size());
+                    return;
+                }
+                res.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                res.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + o.size());
+            }
+            // several ranges would need multipart/byteranges; a full 200 is allowed instead
+        }
+
+        long length = end - start + 1;
+        res.setContentLengthLong(length);
+        if (length == 0) {
+            return;
+        }
+        if (Boolean.TRUE.equals(req.getAttribute(SENDFILE_SUPPORTED))) {
+            req.setAttribute(SENDFILE_FILENAME, o.file().toAbsolutePath().toString());
+            req.setAttribute(SENDFILE_START, start);
+            req.setAttribute(SENDFILE_END, end + 1);
+            return;
+        }
+        try (FileChannel in = FileChannel.open(o.file())) {
+            WritableByteChannel out = Channels.newChannel(res.getOutputStream());
+            long pos = start;
+            while (pos <= end) {
+                pos += in.transferTo(pos, end + 1 - pos, out);
+            }
+        }
+    }
+
+    // a filesystem store's objects are already files; serve them in place
+    private ImageDiskCache.CachedObject storeFile(String key) {
+        Path file = store.localFile(key).orElseThrow(() -> new NotFoundException("Image not found"));
+        ObjectInfo info = store.head(key).orElseThrow(() -> new NotFoundException("Image not found"));
+        return new ImageDiskCache.CachedObject(file, info.size(), info.contentType());
+    }
+}
@@ -1,17 +1,36 @@
 package com.isaactai.cloudnativeweb.image;
 
+import com.isaactai.cloudnativeweb.config.UploadProps;
 import com.isaactai.cloudnativeweb.metrics.ApiResourceTag;
+import com.isaactai.cloudnativeweb.image.dto.BulkImageResponse;
+import com.isaactai.cloudnativeweb.image.dto.CompleteUploadRequest;
 import com.isaactai.cloudnativeweb.image.dto.ImageResponse;
+import com.isaactai.cloudnativeweb.image.dto.PresignUploadRequest;
+import com.isaactai.cloudnativeweb.image.dto.PresignUploadResponse;
 import com.isaactai.cloudnativeweb.logging.AccessNote;
 import com.isaactai.cloudnativeweb.metrics.S3Observed;
+import com.isaactai.cloudnativeweb.user.auth.AuthUser;
+import jakarta.validation.Valid;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
-import org.springframework.security.core.Authentication;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * @author tisaac
@@ -22,9 +41,13 @@ import java.util.List;
 @ApiResourceTag(resource = "Image")
 public class ImageController {
     private final ImageService service;
+    private final ImageBatchService batchService;
+    private final ImageBytesResponder bytesResponder;
+    private final UploadProps uploadProps;
 
+    // with app.upload.async.enabled the request thread is released while the object is uploaded;
+    // 202 when S3 is degraded and the bytes were spooled (app.upload.spool.enabled), stored later
     @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
-    @ResponseStatus(HttpStatus.CREATED)
     @AccessNote(
             label = "Image",
             success = "Image uploaded successfully",
@@ -32,12 +55,70 @@ public class ImageController {
             serverError = "Unexpected error occurred during image upload"
     )
     @S3Observed
-    public ImageResponse uploadImage(
+    public CompletableFuture<ResponseEntity<ImageResponse>> uploadImage(
             @PathVariable("product_id") Long productId,
             @RequestParam("file") MultipartFile file,
-            Authentication auth
+            @AuthenticationPrincipal AuthUser me
+    ) {
+        if (uploadProps.async().enabled()) {
+            return service.uploadProdImgAsync(me.getId(), productId, file)
+                    .thenApply(img -> ResponseEntity.status(HttpStatus.CREATED).body(img));
+        }
+        ImageService.Uploaded up = service.uploadProdImg(me.getId(), productId, file);
+        return CompletableFuture.completedFuture(
+                ResponseEntity.status(up.pending() ? HttpStatus.ACCEPTED : HttpStatus.CREATED).body(up.image()));
+    }
+
+    // many files in one request, PUT in parallel; per-file outcomes are in the response, so this is 200 even if some fail
+    @PostMapping(path = "/batch", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @ResponseStatus(HttpStatus.OK)
+    @AccessNote(
+            label = "Image",
+            success = "Image batch upload processed",
+            clientWarn = "Image batch upload failed",
+            serverError = "Unexpected error occurred during image batch upload"
+    )
+    @S3Observed
+    public BulkImageResponse uploadImages(
+            @PathVariable("product_id") Long productId,
+            @RequestParam("files") List<MultipartFile> files,
+            @AuthenticationPrincipal AuthUser me
+    ) {
+        return batchService.upload(me.getId(), productId, files);
+    }
+
+    // direct-to-S3 upload: the client PUTs the bytes to the returned URL, then calls /complete
+    @PostMapping(path = "/presign", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @AccessNote(
+            label = "Image",
+            success = "Image upload URL issued",
+            clientWarn = "Image upload URL request failed",
+            serverError = "Unexpected error occurred while presigning image upload"
+    )
+    @S3Observed
+    public PresignUploadResponse presignUpload(
+            @PathVariable("product_id") Long productId,
+            @Valid @RequestBody PresignUploadRequest req,
+            @AuthenticationPrincipal AuthUser me
+    ) {
+        return service.presignUpload(me.getId(), productId, req);
+    }
+
+    @PostMapping(path = "/complete", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseStatus(HttpStatus.CREATED)
+    @AccessNote(
+            label = "Image",
+            success = "Image upload completed",
+            clientWarn = "Image upload completion failed",
+            serverError = "Unexpected error occurred during image upload completion"
+    )
+    @S3Observed
+    public ImageResponse completeUpload(
+            @PathVariable("product_id") Long productId,
+            @Valid @RequestBody CompleteUploadRequest req,
+            @AuthenticationPrincipal AuthUser me
     ) {
-        return service.uploadProdImg(auth.getName(), productId, file);
+        return service.completeUpload(me.getId(), productId, req);
     }
 
     @DeleteMapping("/{image_id}")
@@ -52,13 +133,13 @@ public class ImageController {
     public void deleteImage(
             @PathVariable("product_id") Long productId,
             @PathVariable("image_id") Long imageId,
-            Authentication auth
+            @AuthenticationPrincipal AuthUser me
     ) {
-        service.deleteForUser(auth.getName(), productId, imageId);
+        service.deleteForUser(me.getId(), productId, imageId);
     }
 
+    // GETs return ResponseEntity without @ResponseStatus, which would overwrite a 304
     @GetMapping
-    @ResponseStatus(HttpStatus.OK)
     @AccessNote(
             label = "Image",
             success = "Images listed successfully",
@@ -66,14 +147,72 @@ public class ImageController {
             serverError = "Unexpected error occurred during image listing"
     )
     @S3Observed
-    public List<ImageResponse> listImages(
-            @PathVariable("product_id") Long productId
+    public ResponseEntity<List<ImageResponse>> listImages(
+            @PathVariable("product_id") Long productId,
+            WebRequest request
     ) {
-        return service.listImages(productId);
+        if (request.checkNotModified(service.listImagesETag(productId))) {
+            return null;
+        }
+        List<ImageResponse> images = service.listImages(productId);
+        return ResponseEntity.ok()
+                .eTag(service.listImagesETag(productId, images))
+                .body(images);
+    }
+
+    /**
+     * 302 to a presigned S3 URL. The redirect may be cached only as long as the URL behind it
+     * is guaranteed to work, so shared caches and browsers absorb repeat hits.
+     *
+     * <p>With {@code app.cache.image-bytes.enabled}, or a store that can't presign (the
+     * {@code local-store} profile), the bytes are proxied instead from local disk (Range supported).
+     * {@code max_edge} selects a thumbnail instead of the original (see the image's {@code variants}).
+     * An original still in this instance's upload spool is served from there; one in another
+     * instance's spool is not in S3 yet, and its redirect is sent {@code no-store}.
+     */
+    @GetMapping("/{image_id}/content")
+    @AccessNote(
+            label = "Image",
+            success = "Image content redirected",
+            clientWarn = "Image content lookup failed",
+            serverError = "Unexpected error occurred during image content lookup"
+    )
+    @S3Observed
+    public ResponseEntity<Void> getImageContent(
+            @PathVariable("product_id") Long productId,
+            @PathVariable("image_id") Long imageId,
+            @RequestParam(name = "max_edge", required = false) Integer maxEdge,
+            HttpServletRequest req,
+            HttpServletResponse res
+    ) throws IOException {
+        Optional<ImageDiskCache.CachedObject> spooled =
+                maxEdge == null ? service.spooledContent(productId, imageId) : Optional.empty();
+        if (spooled.isPresent()) {
+            String etag = ImageService.imageETag(imageId, maxEdge);
+            if (!new ServletWebRequest(req, res).checkNotModified(etag)) {
+                bytesResponder.respond(spooled.get(), etag, ImageService.OBJECT_CACHE_CONTROL, req, res);
+            }
+            return null;
+        }
+        if (bytesResponder.enabled()) {
+            String etag = ImageService.imageETag(imageId, maxEdge);
+            String key = service.objectKey(productId, imageId, maxEdge);
+            if (!new ServletWebRequest(req, res).checkNotModified(etag)) {
+                bytesResponder.respond(key, etag, ImageService.OBJECT_CACHE_CONTROL, req, res);
+            }
+            return null;
+        }
+
+        PresignedUrlCache.Entry url = service.contentUrl(productId, imageId, maxEdge);
+        long maxAge = Math.max(0, Duration.between(Instant.now(), url.usableUntil()).toSeconds());
+        return ResponseEntity.status(HttpStatus.FOUND)
+                .location(URI.create(url.url()))
+                .cacheControl(url.pending() ? CacheControl.noStore()
+                        : CacheControl.maxAge(Duration.ofSeconds(maxAge)).cachePublic())
+                .build();
     }
 
     @GetMapping("/{image_id}")
-    @ResponseStatus(HttpStatus.OK)
     @AccessNote(
             label = "Image",
             success = "Image retrieved successfully",
@@ -81,10 +220,18 @@ public class ImageController {
             serverError = "Unexpected error occurred during image retrieval"
     )
     @S3Observed
-    public ImageResponse getImage(
+    public ResponseEntity<ImageResponse> getImage(
             @PathVariable("product_id") Long productId,
-            @PathVariable("image_id") Long imageId
+            @PathVariable("image_id") Long imageId,
+            WebRequest request
     ) {
-        return service.getImageDetails(productId, imageId);
+        String etag = service.imageETag(productId, imageId);
+        if (etag != null && request.checkNotModified(etag)) {
+            return null;
+        }
+        ImageResponse image = service.getImageDetails(productId, imageId);
+        return ResponseEntity.ok()
+                .eTag(ImageService.imageDetailsETag(image.imageId(), image.variants().size()))
+                .body(image);
     }
 }
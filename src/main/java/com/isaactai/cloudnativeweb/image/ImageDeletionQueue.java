@@ -0,0 +1,109 @@
+package com.isaactai.cloudnativeweb.image;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Durable queue of objects to delete ({@code object_deletions}), drained by
+ * {@link ImageDeletionWorker}.
+ *
+ * <p>Requests only insert keys, in the same statement that drops the last reference to them
+ * (see {@link ImageBlobRepository#release} and the product delete), so a delete costs one DB
+ * write and a crash can't lose an object. Claiming works like {@link ImageVariantQueue}: a
+ * lease on {@code due_at}, {@code SKIP LOCKED} between instances.
+ * @author tisaac
+ */
+@Repository
+@RequiredArgsConstructor
+public class ImageDeletionQueue {
+    private static final String CLAIM = """
+            update object_deletions d
+               set attempts = d.attempts + 1,
+                   due_at = now() + make_interval(secs => ?)
+             where d.s3_bucket_path in (select s3_bucket_path from object_deletions
+                                         where due_at <= now()
+                                         order by due_at
+                                         limit ?
+                                         for update skip locked)
+            returning d.s3_bucket_path
+            """;
+
+    // A blob row at ref_count 0 keeps new uploads of the same bytes off its key until the
+    // object is gone. It may only be forgotten once neither the object nor any of its
+    // thumbnails (<key>~...) is still queued, or a thumbnail rendered for a new upload of the
+    // same bytes could be deleted by a late retry.
+    private static final String COMPLETE = """
+            with done as (
+                delete from object_deletions where s3_bucket_path = any(?::varchar[])
+                returning s3_bucket_path
+            ), blobs as (
+                select distinct split_part(s3_bucket_path, '~', 1) as s3_bucket_path from done
+            )
+            delete from image_blobs b using blobs
+             where b.s3_bucket_path = blobs.s3_bucket_path and b.ref_count = 0
+               and not exists (select 1 from object_deletions q
+                                where (q.s3_bucket_path = b.s3_bucket_path or q.s3_bucket_path like b.s3_bucket_path || '~%')
+                                  and q.s3_bucket_path <> all(?::varchar[]))
+            """;
+
+    // attempts was counted by the claim
+    private static final String RETRY = """
+            update object_deletions
+               set due_at = now() + make_interval(secs => least(? * power(2, least(attempts - 1, 16)), ?))
+             where s3_bucket_path = any(?::varchar[])
+            """;
+
+    private static final String ENQUEUE = """
+            insert into object_deletions (s3_bucket_path)
+            select unnest(?::varchar[])
+            on conflict do nothing
+            """;
+
+    private static final String BACKLOG = "select count(*) from object_deletions";
+
+    private final JdbcTemplate jdbc;
+
+    public List<String> claim(int limit, Duration lease) {
+        return jdbc.query(CLAIM, (rs, i) -> rs.getString(1), lease.toMillis() / 1000.0, limit);
+    }
+
+    // the objects are gone: drop them from the queue and forget blobs nothing is left of
+    public void complete(Collection<String> keys) {
+        jdbc.update(con -> {
+            PreparedStatement ps = con.prepareStatement(COMPLETE);
+            ps.setArray(1, con.createArrayOf("varchar", keys.toArray()));
+            ps.setArray(2, con.createArrayOf("varchar", keys.toArray()));
+            return ps;
+        });
+    }
+
+    public void retry(Collection<String> keys, Duration backoff, Duration maxBackoff) {
+        jdbc.update(con -> {
+            PreparedStatement ps = con.prepareStatement(RETRY);
+            ps.setDouble(1, backoff.toMillis() / 1000.0);
+            ps.setDouble(2, maxBackoff.toMillis() / 1000.0);
+            ps.setArray(3, con.createArrayOf("varchar", keys.toArray()));
+            return ps;
+        });
+    }
+
+    // for objects that were never referenced (failed uploads); a key already queued stays as it is
+    public void enqueue(Collection<String> keys) {
+        jdbc.update(con -> {
+            PreparedStatement ps = con.prepareStatement(ENQUEUE);
+            ps.setArray(1, con.createArrayOf("varchar", keys.toArray()));
+            return ps;
+        });
+    }
+
+    public long backlog() {
+        Long n = jdbc.queryForObject(BACKLOG, Long.class);
+        return n == null ? 0 : n;
+    }
+}
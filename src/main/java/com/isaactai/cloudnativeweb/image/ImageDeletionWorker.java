@@ -0,0 +1,95 @@
+package com.isaactai.cloudnativeweb.image;
+
+import com.isaactai.cloudnativeweb.config.ImageDeletionProps;
+import com.isaactai.cloudnativeweb.storage.ObjectStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drains {@link ImageDeletionQueue}: claims up to {@code batch-size} keys and removes them with
+ * one multi-object delete, repeating while full batches come back.
+ *
+ * <p>Keys the store reports as failed are retried with a doubling backoff, without limit: an
+ * object left behind costs money for as long as it exists. Deleting a missing key succeeds, so
+ * a batch that is run twice (an expired lease) does no harm.
+ * @author tisaac
+ */
+@Slf4j
+@Component
+public class ImageDeletionWorker {
+    private static final Duration MAX_BACKOFF = Duration.ofHours(1);
+    private static final int MAX_BATCH = 1000;
+
+    private final ImageDeletionQueue queue;
+    private final ObjectStore store;
+    private final ImageDeletionProps props;
+    private final int batchSize;
+    private final AtomicLong backlog = new AtomicLong();
+    private final Counter deleted;
+    private final Counter failed;
+    private final Timer batchTimer;
+
+    public ImageDeletionWorker(ImageDeletionQueue queue, ObjectStore store, ImageDeletionProps props,
+                               MeterRegistry registry) {
+        this.queue = queue;
+        this.store = store;
+        this.props = props;
+        this.batchSize = Math.min(props.batchSize(), MAX_BATCH);
+
+        // keys waiting in the database, refreshed after every drain
+        Gauge.builder("image.deletions.backlog", backlog, AtomicLong::get).register(registry);
+        this.deleted = Counter.builder("image.deletions").tag("outcome", "deleted").register(registry);
+        this.failed = Counter.builder("image.deletions").tag("outcome", "failed").register(registry);
+        // one multi-object delete
+        this.batchTimer = Timer.builder("image.deletions.batch").register(registry);
+    }
+
+    @Scheduled(fixedDelayString = "${app.image.deletions.poll-interval}")
+    public void drain() {
+        try {
+            List<String> keys;
+            do {
+                keys = queue.claim(batchSize, props.lease());
+                if (!keys.isEmpty()) {
+                    delete(keys);
+                }
+            } while (keys.size() == batchSize);
+            backlog.set(queue.backlog());
+        } catch (RuntimeException e) {
+            log.warn("Object deletion drain failed: {}", e.getMessage());
+        }
+    }
+
+    private void delete(List<String> keys) {
+        List<String> failedList;
+        try {
+            failedList = batchTimer.recordCallable(() -> store.deleteAll(keys));
+        } catch (Exception e) {
+            log.warn("Object delete of {} keys failed: {}", keys.size(), e.getMessage());
+            failedList = keys;
+        }
+        Set<String> failedKeys = new HashSet<>(failedList);
+
+        if (failedKeys.size() < keys.size()) {
+            List<String> done = keys.stream().filter(k -> !failedKeys.contains(k)).toList();
+            queue.complete(done);
+            deleted.increment(done.size());
+        }
+        if (!failedKeys.isEmpty()) {
+            log.warn("Delete of {} of {} objects failed, retried later", failedKeys.size(), keys.size());
+            queue.retry(failedKeys, props.retryBackoff(), MAX_BACKOFF);
+            failed.increment(failedKeys.size());
+        }
+    }
+}
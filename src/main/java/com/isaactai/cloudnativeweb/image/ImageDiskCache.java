@@ -0,0 +1,284 @@
+package com.isaactai.cloudnativeweb.image;
+
+import com.isaactai.cloudnativeweb.common.exception.NotFoundException;
+import com.isaactai.cloudnativeweb.config.CacheProps;
+import com.isaactai.cloudnativeweb.storage.ObjectContent;
+import com.isaactai.cloudnativeweb.storage.ObjectStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Size-bounded on-disk cache of store objects, for deployments that proxy image bytes.
+ *
+ * <p>The index is a plain access-ordered LRU bounded by total file size. Caffeine's
+ * frequency-based admission would turn down a brand-new image when the cache is full, after
+ * it had already been downloaded and written. Evicted files are unlinked only after
+ * {@code eviction-grace}, because a sendfile response may still be reading them.
+ * Concurrent misses for one key share a single GET: the first caller fetches (and may
+ * stream the bytes to its own client while they are written to disk), the rest wait for the
+ * file. Nothing survives a restart: the cache keeps its files in a subdirectory of its own
+ * under {@code dir} and clears them on startup, touching nothing but files it names itself.
+ * @author tisaac
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "app.cache.image-bytes", name = "enabled", havingValue = "true")
+public class ImageDiskCache {
+    static final String NAME = "image.bytes";
+    static final String SUBDIR = "image-bytes";
+    private static final int COPY_BUFFER = 64 * 1024;
+    private static final String TMP_PREFIX = ".tmp-";
+    // what fetch names files: a UUID, while being written with TMP_PREFIX in front
+    private static final Pattern OWN_FILE = Pattern.compile(
+            "^(\\.tmp-)?[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}$");
+
+    private final ObjectStore store;
+    private final Path dir;
+    private final Duration evictionGrace;
+    private final long maxBytes;
+    // access order: iteration starts at the least recently used entry; guarded by itself
+    private final LinkedHashMap<String, CachedObject> index = new LinkedHashMap<>(256, 0.75f, true);
+    private long cachedBytes;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+    private final ConcurrentHashMap<String, CompletableFuture<CachedObject>> inflight = new ConcurrentHashMap<>();
+    private final Queue<Evicted> evicted = new ConcurrentLinkedQueue<>();
+
+    public ImageDiskCache(ObjectStore store, CacheProps props, MeterRegistry registry) throws IOException {
+        CacheProps.ImageBytesProps cfg = props.imageBytes();
+        this.store = store;
+        this.dir = cfg.dir().resolve(SUBDIR);
+        this.evictionGrace = cfg.evictionGrace();
+        this.maxBytes = cfg.maxSize().toBytes();
+        clearDirectory();
+
+        // same meter names as the Caffeine-backed caches
+        this.hits = Counter.builder("cache.gets").tags("cache", NAME, "result", "hit").register(registry);
+        this.misses = Counter.builder("cache.gets").tags("cache", NAME, "result", "miss").register(registry);
+        this.evictions = Counter.builder("cache.evictions").tag("cache", NAME).register(registry);
+        Gauge.builder("cache.size", this, c -> c.entries()).tag("cache", NAME).register(registry);
+        Gauge.builder("cache.weighted.size", this, ImageDiskCache::cachedBytes)
+                .tag("cache", NAME)
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    /**
+     * Receives the object while a miss is being fetched; only the caller doing the fetch gets it.
+     */
+    @FunctionalInterface
+    public interface MissSink {
+        // null to just fill the cache; a failing stream is dropped and the fill carries on
+        OutputStream open(long size, String contentType) throws IOException;
+    }
+
+    /**
+     * The cached file for {@code key}, fetching it from the object store on a miss.
+     * @param sink gets the bytes as they arrive if this call ends up doing the fetch, may be null
+     */
+    public CachedObject get(String key, MissSink sink) throws IOException {
+        CachedObject hit = lookup(key);
+        if (hit != null) {
+            hits.increment();
+            return hit;
+        }
+        misses.increment();
+
+        CompletableFuture<CachedObject> mine = new CompletableFuture<>();
+        CompletableFuture<CachedObject> leader = inflight.putIfAbsent(key, mine);
+        if (leader != null) {
+            return await(leader);
+        }
+        try {
+            CachedObject o = lookup(key); // filled while we were getting here
+            if (o == null) {
+                o = fetch(key, sink);
+                insert(key, o);
+            }
+            mine.complete(o);
+            return o;
+        } catch (Throwable e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inflight.remove(key, mine);
+        }
+    }
+
+    public long cachedBytes() {
+        synchronized (index) {
+            return cachedBytes;
+        }
+    }
+
+    public int entries() {
+        synchronized (index) {
+            return index.size();
+        }
+    }
+
+    private CachedObject lookup(String key) {
+        synchronized (index) {
+            return index.get(key); // moves it to the most recently used end
+        }
+    }
+
+    // evicts least recently used entries until the new one fits; an object larger than the cache is kept alone
+    private void insert(String key, CachedObject o) {
+        synchronized (index) {
+            CachedObject replaced = index.put(key, o);
+            if (replaced != null) {
+                retire(replaced);
+            }
+            cachedBytes += o.size();
+            Iterator<Map.Entry<String, CachedObject>> lru = index.entrySet().iterator();
+            while (cachedBytes > maxBytes && lru.hasNext()) {
+                Map.Entry<String, CachedObject> e = lru.next();
+                if (e.getKey().equals(key)) {
+                    continue;
+                }
+                lru.remove();
+                retire(e.getValue());
+                evictions.increment();
+            }
+        }
+    }
+
+    private void retire(CachedObject o) {
+        cachedBytes -= o.size();
+        evicted.add(new Evicted(o.file(), System.nanoTime()));
+    }
+
+    // unlink files evicted more than eviction-grace ago
+    @Scheduled(fixedDelay = 10_000)
+    public void deleteEvictedFiles() {
+        long cutoff = System.nanoTime() - evictionGrace.toNanos();
+        Evicted e;
+        while ((e = evicted.peek()) != null && e.at() - cutoff <= 0) {
+            evicted.poll();
+            try {
+                Files.deleteIfExists(e.file());
+            } catch (IOException ex) {
+                log.warn("Could not delete evicted cache file {}: {}", e.file(), ex.getMessage());
+            }
+        }
+    }
+
+    private CachedObject fetch(String key, MissSink sink) throws IOException {
+        Path tmp = dir.resolve(TMP_PREFIX + UUID.randomUUID());
+        try (ObjectContent in = store.get(key, null).orElseThrow(() -> new NotFoundException("Image not found"));
+             FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            long size = in.length();
+            String contentType = in.info().contentType();
+            OutputStream client = sink == null ? null : sink.open(size, contentType);
+
+            long written = copy(in.stream(), out, client);
+            if (written != size) {
+                throw new IOException("Short read from store for " + key + ": " + written + " of " + size);
+            }
+
+            // a fresh name per fill, so an evicted file still being served is never overwritten
+            Path file = dir.resolve(UUID.randomUUID().toString());
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+            return new CachedObject(file, size, contentType);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static long copy(InputStream in, FileChannel out, OutputStream client) throws IOException {
+        byte[] buf = new byte[COPY_BUFFER];
+        long total = 0;
+        int n;
+        while ((n = in.read(buf)) > 0) {
+            ByteBuffer bb = ByteBuffer.wrap(buf, 0, n);
+            while (bb.hasRemaining()) {
+                out.write(bb);
+            }
+            if (client != null) {
+                try {
+                    client.write(buf, 0, n);
+                } catch (IOException e) {
+                    client = null; // client went away; finish the fill anyway for the next one
+                }
+            }
+            total += n;
+        }
+        out.force(false);
+        if (client != null) {
+            try {
+                client.flush();
+            } catch (IOException ignored) {
+                // same as above
+            }
+        }
+        return total;
+    }
+
+    private static CachedObject await(CompletableFuture<CachedObject> leader) throws IOException {
+        try {
+            return leader.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for image fetch", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    // a previous run's files; anything else someone put there is left alone
+    private void clearDirectory() throws IOException {
+        Files.createDirectories(dir);
+        try (Stream<Path> files = Files.list(dir)) {
+            files.filter(f -> Files.isRegularFile(f, LinkOption.NOFOLLOW_LINKS))
+                    .filter(f -> OWN_FILE.matcher(f.getFileName().toString()).matches())
+                    .forEach(f -> {
+                        try {
+                            Files.deleteIfExists(f);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+        }
+    }
+
+    public record CachedObject(Path file, long size, String contentType) {}
+
+    private record Evicted(Path file, long at) {}
+}
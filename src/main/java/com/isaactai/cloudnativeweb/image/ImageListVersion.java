@@ -0,0 +1,10 @@
+package com.isaactai.cloudnativeweb.image;
+
+/**
+ * Validator for a product's image list. Image rows are insert/delete only and ids only
+ * grow, so (count, max id) changes on every add or delete; the variant count changes when
+ * thumbnails are recorded.
+ * @author tisaac
+ */
+public record ImageListVersion(long count, Long maxImageId, long variantCount) {
+}
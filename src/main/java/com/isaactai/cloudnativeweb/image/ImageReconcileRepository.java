@@ -0,0 +1,135 @@
+package com.isaactai.cloudnativeweb.image;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The database side of {@link ImageReconciler}: its checkpoint and the keys rows point at.
+ *
+ * <p>Keys are compared and sorted with {@code COLLATE "C"}, byte order like S3's listing, and
+ * read through the matching expression indexes a page at a time, so a scan never holds more
+ * than one page whatever the tables hold.
+ * @author tisaac
+ */
+@Repository
+@RequiredArgsConstructor
+public class ImageReconcileRepository {
+    private static final String NAME = "images";
+
+    // one instance runs a slice at a time; due_at is its lease until the slice ends
+    private static final String CLAIM = """
+            update reconcile_checkpoints
+               set due_at = now() + make_interval(secs => ?),
+                   pass_started_at = coalesce(pass_started_at, now())
+             where name = ? and due_at <= now()
+            returning after_key, pass_started_at
+            """;
+
+    private static final String SAVE = """
+            update reconcile_checkpoints
+               set after_key = ?, due_at = now() + make_interval(secs => ?)
+             where name = ?
+            """;
+
+    private static final String RELEASE = "update reconcile_checkpoints set after_key = ?, due_at = now() where name = ?";
+
+    private static final String FINISH = """
+            update reconcile_checkpoints
+               set after_key = null, pass_started_at = null, last_pass_finished_at = now(),
+                   due_at = now() + make_interval(secs => ?)
+             where name = ?
+            """;
+
+    // Images sharing a blob repeat its key; deletions have no age since their objects are meant to go.
+    private static final String KNOWN = """
+            select k, created from (
+                (select s3_bucket_path collate "C" as k, date_created as created from images
+                  where s3_bucket_path collate "C" > ? and s3_bucket_path collate "C" < ?
+                  order by 1 limit ?)
+                union all
+                (select s3_bucket_path collate "C", date_created from image_variants
+                  where s3_bucket_path collate "C" > ? and s3_bucket_path collate "C" < ?
+                  order by 1 limit ?)
+                union all
+                (select s3_bucket_path collate "C", null::timestamptz from object_deletions
+                  where s3_bucket_path collate "C" > ? and s3_bucket_path collate "C" < ?
+                  order by 1 limit ?)
+            ) known
+            order by k
+            limit ?
+            """;
+
+    // checked again at insert time: an upload may have claimed the key since the page was read
+    private static final String QUEUE_ORPHANS = """
+            insert into object_deletions (s3_bucket_path)
+            select k from unnest(?::varchar[]) k
+             where not exists (select 1 from images i where i.s3_bucket_path = k)
+               and not exists (select 1 from image_variants v where v.s3_bucket_path collate "C" = k)
+               and not exists (select 1 from image_blobs b where b.s3_bucket_path = k)
+            on conflict do nothing
+            """;
+
+    private final JdbcTemplate jdbc;
+
+    // empty while another instance holds the checkpoint or the next pass isn't due
+    public Optional<Checkpoint> claim(Duration lease) {
+        return jdbc.query(CLAIM, (rs, i) -> new Checkpoint(rs.getString(1), rs.getTimestamp(2).toInstant()),
+                lease.toMillis() / 1000.0, NAME).stream().findFirst();
+    }
+
+    // everything up to afterKey is compared; also extends the lease
+    public void save(String afterKey, Duration lease) {
+        jdbc.update(SAVE, afterKey, lease.toMillis() / 1000.0, NAME);
+    }
+
+    // the slice is over but the pass is not: the next poll, on any instance, goes on from afterKey
+    public void release(String afterKey) {
+        jdbc.update(RELEASE, afterKey, NAME);
+    }
+
+    public void finish(Duration passInterval) {
+        jdbc.update(FINISH, passInterval.toMillis() / 1000.0, NAME);
+    }
+
+    /**
+     * Up to {@code limit} keys rows point at, after {@code afterKey} and before {@code endKey},
+     * in byte order. A key used by several rows comes back once per row.
+     */
+    public List<Known> knownKeys(String afterKey, String endKey, int limit) {
+        return jdbc.query(KNOWN, (rs, i) -> {
+                    Timestamp created = rs.getTimestamp(2);
+                    return new Known(rs.getString(1), created == null ? null : created.toInstant());
+                },
+                afterKey, endKey, limit, afterKey, endKey, limit, afterKey, endKey, limit, limit);
+    }
+
+    /**
+     * @return how many of {@code keys} were queued; keys a row uses by now are left alone
+     */
+    public int queueOrphans(Collection<String> keys) {
+        return jdbc.update(con -> {
+            PreparedStatement ps = con.prepareStatement(QUEUE_ORPHANS);
+            ps.setArray(1, con.createArrayOf("varchar", keys.toArray()));
+            return ps;
+        });
+    }
+
+    /**
+     * @param afterKey null at the start of a pass
+     */
+    public record Checkpoint(String afterKey, Instant passStartedAt) {}
+
+    /**
+     * @param created null for keys that are queued for deletion
+     */
+    public record Known(String key, Instant created) {}
+}
@@ -0,0 +1,236 @@
+package com.isaactai.cloudnativeweb.image;
+
+import com.isaactai.cloudnativeweb.config.ImageReconcileProps;
+import com.isaactai.cloudnativeweb.storage.ObjectInfo;
+import com.isaactai.cloudnativeweb.storage.ObjectStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Finds where the bucket and the database disagree: objects under {@code users/} no row points
+ * at (an upload that failed after its PUT, a delete from before the deletion queue) and rows
+ * whose object is missing.
+ *
+ * <p>Both sides are read in key order, one ListObjectsV2 page and one keyset page at a time,
+ * and merged, so memory stays the same whatever the bucket holds. A pass runs in slices of
+ * {@code slice} on a thread of its own, throttled to {@code keys-per-second}, so its pauses
+ * never hold up the other jobs on Spring's single scheduler thread; the position is
+ * saved after every page, so a restart or another instance goes on from there. Orphaned
+ * objects older than {@code grace} are queued for {@link ImageDeletionWorker}. Rows without
+ * an object are only counted and logged: whether to drop them is a decision for a person.
+ * @author tisaac
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "app.image.reconcile", name = "enabled", havingValue = "true")
+public class ImageReconciler {
+    static final String PREFIX = "users/";
+    // the first string after every key that starts with PREFIX
+    private static final String PREFIX_END = "users0";
+
+    private final ImageReconcileRepository repo;
+    private final ObjectStore store;
+    private final ImageReconcileProps props;
+    private final Counter objectKeys;
+    private final Counter rowKeys;
+    private final Counter orphansQueued;
+    private final Counter orphansReported;
+    private final Counter missing;
+    private final Timer pageTimer;
+    private final Timer passTimer;
+    // one slice at a time; a poll while one runs is skipped
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new SynchronousQueue<>(), r -> {
+        Thread t = new Thread(r, "image-reconcile");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public ImageReconciler(ImageReconcileRepository repo, ObjectStore store, ImageReconcileProps props,
+                           MeterRegistry registry) {
+        this.repo = repo;
+        this.store = store;
+        this.props = props;
+
+        // keys compared per side; their rate is the scan's throughput
+        this.objectKeys = Counter.builder("image.reconcile.keys").tag("side", "store").register(registry);
+        this.rowKeys = Counter.builder("image.reconcile.keys").tag("side", "database").register(registry);
+        this.orphansQueued = Counter.builder("image.reconcile.orphans").tag("outcome", "queued").register(registry);
+        this.orphansReported = Counter.builder("image.reconcile.orphans").tag("outcome", "reported").register(registry);
+        this.missing = Counter.builder("image.reconcile.missing").register(registry);
+        // one page of both sides, without the throttle's pause
+        this.pageTimer = Timer.builder("image.reconcile.page").register(registry);
+        this.passTimer = Timer.builder("image.reconcile.pass").register(registry);
+    }
+
+    @Scheduled(fixedDelayString = "${app.image.reconcile.poll-interval}")
+    public void poll() {
+        try {
+            executor.execute(this::run);
+        } catch (RejectedExecutionException e) {
+            // the running slice goes on, or we are shutting down
+        }
+    }
+
+    // one slice, if one is due; on the calling thread
+    public void run() {
+        try {
+            repo.claim(props.lease()).ifPresent(this::slice);
+        } catch (RuntimeException e) {
+            // the lease runs out and the pass goes on from the last saved position
+            log.warn("Reconciliation failed: {}", e.getMessage());
+        }
+    }
+
+    private void slice(ImageReconcileRepository.Checkpoint checkpoint) {
+        long deadline = System.nanoTime() + props.slice().toNanos();
+        Instant cutoff = Instant.now().minus(props.grace());
+        String start = checkpoint.afterKey() == null ? PREFIX : checkpoint.afterKey();
+        int pageSize = props.pageSize();
+        Cursor<ObjectInfo> objects = new Cursor<>(
+                after -> store.list(PREFIX, after, pageSize).objects(), ObjectInfo::key, start, pageSize);
+        Cursor<ImageReconcileRepository.Known> rows = new Cursor<>(
+                after -> repo.knownKeys(after, PREFIX_END, pageSize), ImageReconcileRepository.Known::key,
+                start, pageSize);
+
+        List<String> orphans = new ArrayList<>();
+        String position = start;
+        int steps = 0;
+        long pageStart = System.nanoTime();
+        while (true) {
+            ObjectInfo o = objects.peek();
+            ImageReconcileRepository.Known k = rows.peek();
+            if (o == null && k == null) {
+                handleOrphans(orphans);
+                repo.finish(props.passInterval());
+                passTimer.record(Duration.between(checkpoint.passStartedAt(), Instant.now()));
+                log.info("Reconciliation pass finished");
+                return;
+            }
+
+            // keys are ASCII (newObjectKey, blobKey), where String order is S3's byte order
+            int cmp = o == null ? 1 : k == null ? -1 : o.key().compareTo(k.key());
+            if (cmp <= 0) {
+                position = o.key();
+                if (cmp < 0 && o.lastModified() != null && o.lastModified().isBefore(cutoff)) {
+                    orphans.add(o.key());
+                }
+                objects.advance();
+                objectKeys.increment();
+            }
+            if (cmp >= 0) {
+                position = k.key();
+                if (cmp > 0 && k.created() != null && k.created().isBefore(cutoff)) {
+                    missing.increment();
+                    log.warn("Object {} is missing but rows point at it", k.key());
+                }
+                while (k != null && k.key().equals(position)) {
+                    rows.advance();
+                    rowKeys.increment();
+                    k = rows.peek();
+                }
+            }
+
+            if (++steps == pageSize) {
+                handleOrphans(orphans);
+                repo.save(position, props.lease());
+                pageTimer.record(System.nanoTime() - pageStart, TimeUnit.NANOSECONDS);
+                if (!throttle(pageStart, steps) || System.nanoTime() > deadline) {
+                    repo.release(position);
+                    return;
+                }
+                steps = 0;
+                pageStart = System.nanoTime();
+            }
+        }
+    }
+
+    private void handleOrphans(List<String> orphans) {
+        if (orphans.isEmpty()) {
+            return;
+        }
+        if (props.repair()) {
+            int queued = repo.queueOrphans(orphans);
+            orphansQueued.increment(queued);
+            log.info("Queued {} orphaned objects for deletion", queued);
+        } else {
+            orphansReported.increment(orphans.size());
+            log.warn("Orphaned objects, no row points at them: {}", orphans);
+        }
+        orphans.clear();
+    }
+
+    // false when interrupted (shutdown)
+    private boolean throttle(long pageStart, int keys) {
+        long minNanos = keys * 1_000_000_000L / props.keysPerSecond();
+        long pause = minNanos - (System.nanoTime() - pageStart);
+        if (pause <= 0) {
+            return true;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(pause);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    // the sleeping slice wakes up, saves its position and lets the lease go
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        executor.shutdownNow();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    // one side of the merge: fetches the next page once the current one is used up
+    private static final class Cursor<T> {
+        private final Function<String, List<T>> fetch;
+        private final Function<T, String> key;
+        private final int pageSize;
+        private String after;
+        private List<T> page = List.of();
+        private int next;
+        private boolean last;
+
+        Cursor(Function<String, List<T>> fetch, Function<T, String> key, String after, int pageSize) {
+            this.fetch = fetch;
+            this.key = key;
+            this.after = after;
+            this.pageSize = pageSize;
+        }
+
+        // null once the side is exhausted
+        T peek() {
+            if (next == page.size() && !last) {
+                page = fetch.apply(after);
+                next = 0;
+                last = page.size() < pageSize;
+                if (!page.isEmpty()) {
+                    after = key.apply(page.get(page.size() - 1));
+                }
+            }
+            return next < page.size() ? page.get(next) : null;
+        }
+
+        void advance() {
+            next++;
+        }
+    }
+}
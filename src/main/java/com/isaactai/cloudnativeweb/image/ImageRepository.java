@@ -1,6 +1,8 @@
 package com.isaactai.cloudnativeweb.image;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.List;
 import java.util.Optional;
@@ -10,4 +12,28 @@ import java.util.Optional;
  */
 public interface ImageRepository extends JpaRepository<Image, Long> {
     List<Image> findByProduct_IdOrderByDateCreatedDesc(Long productId);
+
+    boolean existsByS3BucketPath(String s3BucketPath);
+
+    @Query("select i.s3BucketPath from Image i where i.imageId = :imageId and i.product.id = :productId")
+    Optional<String> findS3BucketPath(@Param("imageId") Long imageId, @Param("productId") Long productId);
+
+    // empty when the product itself does not exist
+    @Query("""
+            select new com.isaactai.cloudnativeweb.image.ImageListVersion(count(i.imageId), max(i.imageId),
+                   (select count(v.id) from ImageVariant v join Image vi on vi.imageId = v.imageId
+                     where vi.product.id = p.id))
+              from Product p left join Image i on i.product.id = p.id
+             where p.id = :productId
+             group by p.id
+            """)
+    Optional<ImageListVersion> findListVersion(@Param("productId") Long productId);
+
+    // empty when there is no such image under the product
+    @Query("""
+            select count(v.id) from Image i left join ImageVariant v on v.imageId = i.imageId
+             where i.imageId = :imageId and i.product.id = :productId
+             group by i.imageId
+            """)
+    Optional<Long> countVariants(@Param("imageId") Long imageId, @Param("productId") Long productId);
 }
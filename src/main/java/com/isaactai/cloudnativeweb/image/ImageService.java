@@ -2,48 +2,360 @@ package com.isaactai.cloudnativeweb.image;
 
 import com.isaactai.cloudnativeweb.common.exception.BadRequestException;
 import com.isaactai.cloudnativeweb.common.exception.NotFoundException;
+import com.isaactai.cloudnativeweb.config.UploadConfig;
+import com.isaactai.cloudnativeweb.config.UploadProps;
+import com.isaactai.cloudnativeweb.image.dto.CompleteUploadRequest;
 import com.isaactai.cloudnativeweb.image.dto.ImageResponse;
+import com.isaactai.cloudnativeweb.image.dto.ImageVariantResponse;
+import com.isaactai.cloudnativeweb.image.dto.PresignUploadRequest;
+import com.isaactai.cloudnativeweb.image.dto.PresignUploadResponse;
 import com.isaactai.cloudnativeweb.image.exception.S3UploadException;
+import com.isaactai.cloudnativeweb.image.exception.UploadBusyException;
 import com.isaactai.cloudnativeweb.product.Product;
 import com.isaactai.cloudnativeweb.product.ProductService;
-import com.isaactai.cloudnativeweb.user.User;
-import com.isaactai.cloudnativeweb.user.UserService;
+import com.isaactai.cloudnativeweb.storage.ObjectInfo;
+import com.isaactai.cloudnativeweb.storage.ObjectStore;
+import com.isaactai.cloudnativeweb.storage.PresignedUrl;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
-import software.amazon.awssdk.core.sync.RequestBody;
-import software.amazon.awssdk.services.s3.S3Client;
-import software.amazon.awssdk.services.s3.model.*;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Instant;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 /**
+ * Upload and delete are deliberately not {@code @Transactional}: S3 calls can take seconds,
+ * and a surrounding transaction would pin a pooled connection for all of it. Each DB step is
+ * a repository call in its own short transaction, ordered so a failure in between leaves at
+ * worst an orphaned S3 object, never a row pointing at a missing one. Deletes don't call S3
+ * at all: the statement that removes the row queues its objects for {@link ImageDeletionWorker}.
+ *
+ * <p>Uploaded bytes are stored content-addressed per seller, {@code users/{id}/blobs/{sha256}}:
+ * the same photo on many products is one object, PUT once and reference counted through
+ * {@link ImageBlobRepository}. Scoping by seller keeps one tenant from probing another's
+ * uploads, and the hash right after the user prefix spreads keys evenly for S3 partitioning.
  * @author tisaac
  */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class ImageService {
+    static final String OBJECT_CACHE_CONTROL = "public, max-age=31536000, immutable";
+    private static final int HASH_BUFFER = 64 * 1024;
+
+    // what newObjectKey puts after the prefix: <uuid>-<sanitized name>
+    private static final Pattern GENERATED_NAME =
+            Pattern.compile("^[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}-(?<name>[a-z0-9._-]{1,100})$");
+
     private final ImageRepository repo;
-    private final UserService userService;
+    private final ImageBlobRepository blobRepo;
+    private final ImageVariantRepository variantRepo;
     private final ProductService prodService;
-    private final S3Client s3;
+    private final ObjectStore store;
+    private final UploadProps uploadProps;
+    private final PresignedUrlCache urlCache;
+    private final AsyncUploadLimiter uploadLimiter;
+    private final ImageDeletionQueue deletionQueue;
+    private final ObjectProvider<UploadSpool> uploadSpool;
+    @Qualifier(UploadConfig.COMPLETION_EXECUTOR)
+    private final ObjectProvider<Executor> uploadCompletion;
 
-    @Value("${aws.s3.bucket}") // read bucket name from .env
-    private String bucketName;
+    /**
+     * Stores the file and records the image. With {@code app.upload.spool.enabled}, while S3 is
+     * degraded (see {@link UploadSpool}) the bytes go to the local spool instead, and the image
+     * comes back {@link Uploaded#pending()} until {@link UploadSpoolPusher} has stored it.
+     */
+    public Uploaded uploadProdImg(Long userId, Long productId, MultipartFile file) {
+        Product product = prodService.locateOwnedProduct(
+                productId, userId, "You can't upload image for the product");
+        String contentType = validateImageFile(file);
 
-    @Transactional
-    public ImageResponse uploadProdImg(String name, Long productId, MultipartFile file) {
-        User user = userService.getByUsername(name);
+        String originalName = file.getOriginalFilename();
+        String safeName = sanitizeFileName(originalName);
+
+        // the servlet container already spooled the part to disk; hash and stream it from there
+        String key = blobKey(userId, sha256(file::getInputStream));
+        ImageBlobRepository.Claim claim = blobRepo.claim(key, contentType, file.getSize());
+        if (claim == ImageBlobRepository.Claim.LIVE) {
+            return new Uploaded(toResponse(recordUpload(userId, product, safeName, key, contentType, file.getSize(),
+                    false, file::getInputStream)), false);
+        }
+        if (claim == ImageBlobRepository.Claim.DELETING) {
+            return new Uploaded(toResponse(uploadUnderOwnKey(userId, product, safeName, contentType, file.getSize(),
+                    file::getInputStream)), false);
+        }
+        UploadSpool spool = uploadSpool.getIfAvailable();
+        if (spool != null && spool.degraded()) {
+            return spoolUpload(spool, product, safeName, key, file);
+        }
+
+        boolean refused = false;
+        try {
+            if (spool == null) {
+                put(key, contentType, file::getInputStream, file.getSize());
+            } else {
+                refused = !timedPut(spool, key, contentType, file);
+            }
+        } catch (RuntimeException e) {
+            unpinQuietly(key);
+            throw e;
+        }
+        if (refused) {
+            // the pin carries over to the spooled image
+            return spoolUpload(spool, product, safeName, key, file);
+        }
+        return new Uploaded(toResponse(recordUpload(userId, product, safeName, key, contentType, file.getSize(),
+                true, file::getInputStream)), false);
+    }
+
+    // false when S3 refused: the caller spools instead
+    private boolean timedPut(UploadSpool spool, String key, String contentType, MultipartFile file) {
+        long start = System.nanoTime();
+        try {
+            put(key, contentType, file::getInputStream, file.getSize());
+        } catch (S3UploadException e) {
+            spool.recordPut(System.nanoTime() - start, false);
+            return false;
+        }
+        spool.recordPut(System.nanoTime() - start, true);
+        return true;
+    }
+
+    // the blob is pinned, and the pin carries over to the spooled image
+    private Uploaded spoolUpload(UploadSpool spool, Product product, String safeName, String key,
+                                 MultipartFile file) {
+        ImageBlobRepository.InsertedSpooled inserted;
+        try {
+            spool.write(key, file::getInputStream);
+            // a file no row ends up needing is swept by the pusher
+            inserted = blobRepo.insertSpooled(product.getId(), safeName, key, spool.host());
+        } catch (IOException e) {
+            log.error("Could not spool upload {}: {}", key, e.getMessage());
+            unpinQuietly(key);
+            throw new S3UploadException();
+        } catch (RuntimeException e) {
+            unpinQuietly(key);
+            if (e instanceof DataIntegrityViolationException) {
+                throw new NotFoundException("Product not found"); // deleted while we were uploading
+            }
+            throw e;
+        }
+        Image img = Image.builder()
+                .imageId(inserted.imageId())
+                .product(product)
+                .fileName(safeName)
+                .s3BucketPath(key)
+                .dateCreated(inserted.dateCreated())
+                .build();
+        return new Uploaded(toResponse(img), inserted.spoolHost() != null);
+    }
+
+    /**
+     * @param pending the bytes are in an instance's spool, not in S3 yet
+     */
+    public record Uploaded(ImageResponse image, boolean pending) {}
+
+    /**
+     * {@link #uploadProdImg} without holding the request thread during the S3 transfer.
+     *
+     * <p>Checks run here, on the request thread. The container's temp file is then moved to a
+     * file we own (a rename, not a copy), hashed, and uploaded by the store unless the blob is
+     * already there; the row is inserted once the upload completes. When there is nothing to PUT
+     * under the blob's key the insert goes to the upload completion executor all the same, and
+     * bytes whose blob is being deleted are uploaded with {@code putAsync} under a key of their
+     * own. Over {@code max-in-flight}, or with the completion executor full, the request is
+     * refused with 503.
+     *
+     * <p>A failed upload cleans up on the common pool: when the completion executor refused,
+     * the failure arrives on the thread that finished the PUT, which may be the SDK's event loop.
+     */
+    public CompletableFuture<ImageResponse> uploadProdImgAsync(Long userId, Long productId, MultipartFile file) {
         Product product = prodService.locateOwnedProduct(
-                productId, user.getUsername(), "You can't upload image for the product");
+                productId, userId, "You can't upload image for the product");
+        String contentType = validateImageFile(file);
+
+        String safeName = sanitizeFileName(file.getOriginalFilename());
+        long size = file.getSize();
+
+        if (!uploadLimiter.tryAcquire()) {
+            throw new UploadBusyException();
+        }
+        Path spool = null;
+        try {
+            spool = Files.createTempFile("image-upload-", ".part");
+            file.transferTo(spool.toFile());
+        } catch (IOException | RuntimeException e) {
+            uploadLimiter.release();
+            deleteSpoolQuietly(spool);
+            throw new S3UploadException();
+        }
+
+        Path owned = spool;
+        CompletableFuture<Image> recorded;
+        try {
+            String key = blobKey(userId, sha256(() -> Files.newInputStream(owned)));
+            // the spool outlives the insert: a blob lost to a concurrent delete is re-uploaded from it
+            recorded = switch (blobRepo.claim(key, contentType, size)) {
+                case PINNED -> store.putAsync(key, contentType, owned, size)
+                        .whenComplete((v, e) -> {
+                            if (e != null) {
+                                CompletableFuture.runAsync(() -> unpinQuietly(key));
+                            }
+                        })
+                        .thenCompose(v -> recordUploadAsync(userId, product, safeName, key, contentType, size,
+                                true, owned));
+                case LIVE -> CompletableFuture
+                        .supplyAsync(() -> recordUploadAsync(userId, product, safeName, key, contentType, size,
+                                false, owned), uploadCompletion.getObject())
+                        .thenCompose(r -> r);
+                // a blob that is being deleted can't be pinned: the bytes get a key of their own
+                case DELETING -> uploadUnderOwnKeyAsync(userId, product, safeName, contentType, size, owned);
+            };
+        } catch (RejectedExecutionException e) {
+            uploadLimiter.release();
+            deleteSpoolQuietly(owned);
+            log.warn("Upload completion executor is full, refusing upload for product {}", productId);
+            throw new UploadBusyException();
+        } catch (RuntimeException e) {
+            uploadLimiter.release();
+            deleteSpoolQuietly(owned);
+            throw e;
+        }
+        return recorded
+                .thenApply(ImageService::toResponse)
+                .whenComplete((r, e) -> {
+                    uploadLimiter.release();
+                    deleteSpoolQuietly(owned);
+                });
+    }
+
+    @FunctionalInterface
+    interface Source {
+        InputStream open() throws IOException;
+    }
+
+    static String sha256(Source source) {
+        try (InputStream in = source.open()) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buf = new byte[HASH_BUFFER];
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                digest.update(buf, 0, n);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (IOException e) {
+            throw new S3UploadException();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    void put(String key, String contentType, Source source, long size) {
+        try (InputStream in = source.open()) {
+            store.put(key, contentType, in, size);
+        } catch (IOException e) {
+            throw new S3UploadException();
+        }
+    }
+
+    /**
+     * Inserts the image row together with its blob reference.
+     *
+     * <p>If the blob's last reference went away meanwhile, its object is being deleted and
+     * must not be reused: this upload then gets a key of its own, outside content addressing.
+     * A pinned blob can't lose its last reference, see {@link ImageBlobRepository#claim}.
+     * @param pinned whether this request pinned the blob and PUT it
+     */
+    Image recordUpload(Long userId, Product product, String safeName, String key, String contentType,
+                       long size, boolean pinned, Source source) {
+        return insertUpload(product, safeName, key, pinned)
+                .orElseGet(() -> uploadUnderOwnKey(userId, product, safeName, contentType, size, source));
+    }
+
+    // recordUpload without blocking on the PUT under a key of its own
+    private CompletableFuture<Image> recordUploadAsync(Long userId, Product product, String safeName, String key,
+                                                       String contentType, long size, boolean pinned, Path file) {
+        return insertUpload(product, safeName, key, pinned)
+                .map(CompletableFuture::completedFuture)
+                .orElseGet(() -> uploadUnderOwnKeyAsync(userId, product, safeName, contentType, size, file));
+    }
+
+    // empty if the blob is being deleted
+    private Optional<Image> insertUpload(Product product, String safeName, String key, boolean pinned) {
+        Optional<ImageBlobRepository.Inserted> inserted;
+        try {
+            inserted = blobRepo.insertImage(product.getId(), safeName, key, pinned);
+        } catch (RuntimeException e) {
+            // the pin goes, and the object with it unless a concurrent upload references it
+            if (pinned) {
+                unpinQuietly(key);
+            }
+            if (e instanceof DataIntegrityViolationException) {
+                throw new NotFoundException("Product not found"); // deleted while we were uploading
+            }
+            throw e;
+        }
+        return inserted.map(i -> Image.builder()
+                .imageId(i.imageId())
+                .product(product)
+                .fileName(safeName)
+                .s3BucketPath(key)
+                .dateCreated(i.dateCreated())
+                .build());
+    }
+
+    // for bytes whose blob is being deleted: a PUT to its key could land before the delete does
+    private Image uploadUnderOwnKey(Long userId, Product product, String safeName, String contentType, long size,
+                                    Source source) {
+        String ownKey = newObjectKey(userId, product.getId(), safeName);
+        put(ownKey, contentType, source, size);
+        return saveOrDiscardObject(product, safeName, ownKey);
+    }
+
+    private CompletableFuture<Image> uploadUnderOwnKeyAsync(Long userId, Product product, String safeName,
+                                                            String contentType, long size, Path file) {
+        String ownKey = newObjectKey(userId, product.getId(), safeName);
+        return store.putAsync(ownKey, contentType, file, size)
+                .whenComplete((v, e) -> {
+                    if (e != null) {
+                        // a PUT that timed out or was refused after the fact may have landed anyway
+                        CompletableFuture.runAsync(() -> deleteObjectQuietly(ownKey));
+                    }
+                })
+                .thenApply(v -> saveOrDiscardObject(product, safeName, ownKey));
+    }
+
+    // if this fails too the blob keeps a reference nothing holds, and its object stays
+    private void unpinQuietly(String key) {
+        try {
+            blobRepo.unpin(List.of(key));
+        } catch (RuntimeException e) {
+            log.warn("Could not drop the pin on {}, object is orphaned: {}", key, e.getMessage());
+        }
+    }
 
+    static String validateImageFile(MultipartFile file) {
         if (file.isEmpty()) {
             throw new BadRequestException("File is empty");
         }
@@ -52,25 +364,91 @@ public class ImageService {
         if (contentType == null || !contentType.startsWith("image/")) {
             throw new BadRequestException("Invalid file type, must be an image");
         }
+        return contentType;
+    }
 
-        String originalName = file.getOriginalFilename();
-        String safeName = sanitizeFileName(originalName);
-        String key = String.format("users/%d/products/%d/%s-%s",
-                user.getId(), productId, UUID.randomUUID(), safeName);
-
+    private static void deleteSpoolQuietly(Path spool) {
+        if (spool == null) {
+            return;
+        }
         try {
-            s3.putObject(
-                    PutObjectRequest.builder()
-                            .bucket(bucketName)
-                            .key(key)
-                            .contentType(contentType)
-                            .build(),
-                    RequestBody.fromBytes(file.getBytes())
-            );
+            Files.deleteIfExists(spool);
         } catch (IOException e) {
-            throw new S3UploadException();
+            log.warn("Could not delete upload spool file {}: {}", spool, e.getMessage());
+        }
+    }
+
+    /**
+     * First half of a direct upload: a PUT URL the client sends the bytes to itself.
+     *
+     * <p>The key is chosen here under the caller's {@code users/{id}/products/{id}/} prefix, and
+     * Content-Type and Content-Length are part of the signature, so S3 rejects any other key,
+     * type or size.
+     */
+    public PresignUploadResponse presignUpload(Long userId, Long productId, PresignUploadRequest req) {
+        prodService.locateOwnedProduct(productId, userId, "You can't upload image for the product");
+
+        long maxSize = uploadProps.presign().maxSize().toBytes();
+        if (req.contentLength() > maxSize) {
+            throw new BadRequestException("File is too large, max " + maxSize + " bytes");
+        }
+
+        String key = newObjectKey(userId, productId, sanitizeFileName(req.fileName()));
+        PresignedUrl presigned = store.presignPut(key, req.contentType(), req.contentLength(),
+                        uploadProps.presign().ttl())
+                .orElseThrow(() -> new BadRequestException("Direct upload is not supported by this storage backend"));
+        return new PresignUploadResponse(presigned.url(), "PUT", presigned.headers(), key, presigned.expiresAt());
+    }
+
+    /**
+     * Second half of a direct upload: HEAD the object the client says it wrote and record it.
+     * Objects that are not images or exceed the size limit are deleted instead.
+     */
+    public ImageResponse completeUpload(Long userId, Long productId, CompleteUploadRequest req) {
+        Product product = prodService.locateOwnedProduct(
+                productId, userId, "You can't upload image for the product");
+
+        String key = req.s3BucketPath();
+        String prefix = keyPrefix(userId, productId);
+        Matcher generated = GENERATED_NAME.matcher(key.startsWith(prefix) ? key.substring(prefix.length()) : "");
+        if (!generated.matches()) {
+            throw new BadRequestException("s3_bucket_path was not issued for this product");
         }
+        // saves the HEAD for a repeat; also catches rows completed before they had a blob row
+        if (repo.existsByS3BucketPath(key)) {
+            throw new BadRequestException("Upload already completed");
+        }
+
+        ObjectInfo head = store.head(key)
+                .orElseThrow(() -> new BadRequestException("Object has not been uploaded"));
+
+        String contentType = head.contentType();
+        if (contentType == null || !contentType.startsWith("image/")
+                || head.size() > uploadProps.presign().maxSize().toBytes()) {
+            deleteObjectQuietly(key);
+            throw new BadRequestException("Uploaded object must be an image within the size limit");
+        }
+
+        String safeName = generated.group("name");
+        Optional<ImageBlobRepository.Inserted> inserted;
+        try {
+            inserted = blobRepo.insertCompleted(product.getId(), safeName, key, contentType, head.size());
+        } catch (DataIntegrityViolationException e) {
+            deleteObjectQuietly(key);
+            throw new NotFoundException("Product not found"); // deleted while the client was uploading
+        }
+        // a concurrent completion of the same key took it first
+        ImageBlobRepository.Inserted img = inserted.orElseThrow(() -> new BadRequestException("Upload already completed"));
+        return toResponse(Image.builder()
+                .imageId(img.imageId())
+                .product(product)
+                .fileName(safeName)
+                .s3BucketPath(key)
+                .dateCreated(img.dateCreated())
+                .build());
+    }
 
+    private Image saveOrDiscardObject(Product product, String safeName, String key) {
         Image img = Image.builder()
                 .product(product)
                 .fileName(safeName)
@@ -78,22 +456,44 @@ public class ImageService {
                 .dateCreated(Instant.now())
                 .build();
 
-        Image saved = repo.save(img);
+        try {
+            return repo.save(img);
+        } catch (RuntimeException e) {
+            // the row never made it, so nothing references the object we just wrote
+            deleteObjectQuietly(key);
+            if (e instanceof DataIntegrityViolationException) {
+                throw new NotFoundException("Product not found"); // deleted while we were uploading
+            }
+            throw e;
+        }
+    }
+
+    private static String keyPrefix(Long userId, Long productId) {
+        return String.format("users/%d/products/%d/", userId, productId);
+    }
+
+    static String blobKey(Long userId, String sha256) {
+        return String.format("users/%d/blobs/%s", userId, sha256);
+    }
 
+    static String newObjectKey(Long userId, Long productId, String safeName) {
+        return keyPrefix(userId, productId) + UUID.randomUUID() + "-" + safeName;
+    }
+
+    static ImageResponse toResponse(Image saved) {
         return new ImageResponse(
                 saved.getImageId(),
                 saved.getProduct().getId(),
                 saved.getFileName(),
                 saved.getDateCreated(),
-                saved.getS3BucketPath()
+                saved.getS3BucketPath(),
+                List.of() // thumbnails are generated later, by ImageVariantWorker
         );
     }
 
-    @Transactional
-    public void deleteForUser(String username, Long productId, Long imageId) {
-        User user = userService.getByUsername(username);
+    public void deleteForUser(Long userId, Long productId, Long imageId) {
         Product product = prodService.locateOwnedProduct(
-                productId, user.getUsername(), "You cannot delete another user's image");
+                productId, userId, "You cannot delete another user's image");
 
         Image img = repo.findById(imageId)
                 .orElseThrow(() -> new NotFoundException("Image not found"));
@@ -102,34 +502,155 @@ public class ImageService {
             throw new BadRequestException("Image does not belong to this product");
         }
 
-        try {
-            s3.deleteObject(DeleteObjectRequest.builder()
-                    .bucket(bucketName)
-                    .key(img.getS3BucketPath())
-                    .build());
-        } catch (S3Exception e) {
-            log.warn("S3 delete failed for key {}: {}", img.getS3BucketPath(), e.awsErrorDetails().errorMessage());
+        // read before the FK cascade removes the variant rows with the image
+        List<ImageVariant> variants = variantRepo.findByImageIdOrderByMaxEdgeAsc(imageId);
+        // the objects, unless other images still use them, go to the deletion queue in the same statement
+        blobRepo.release(imageId)
+                .orElseThrow(() -> new NotFoundException("Image not found")); // lost a race with another delete
+        urlCache.invalidate(imageId, variants.stream().map(ImageVariant::getMaxEdge).toList());
+    }
+
+    /**
+     * Short-lived GET URL for the image bytes; the application never touches the object itself.
+     * Signed at most once per image and rendition per {@code usableUntil} window. Null when the
+     * store cannot presign, in which case the bytes have to be proxied. An original still in an
+     * upload spool comes back {@code pending} and is signed again on every request until pushed.
+     * @param maxEdge a thumbnail size, or null for the original
+     */
+    public PresignedUrlCache.Entry contentUrl(Long productId, Long imageId, Integer maxEdge) {
+        if (!store.presigns()) {
+            return null;
+        }
+        PresignedUrlCache.Key cacheKey = new PresignedUrlCache.Key(imageId,
+                maxEdge == null ? PresignedUrlCache.Key.ORIGINAL : maxEdge);
+        PresignedUrlCache.Entry e = urlCache.get(cacheKey,
+                k -> presignGet(productId, objectKey(productId, imageId, maxEdge),
+                        maxEdge == null && uploadSpool.getIfAvailable() != null
+                                && blobRepo.findSpooled(imageId, productId).isPresent()));
+        if (!e.productId().equals(productId)) {
+            throw new NotFoundException("Image not found"); // cached under another product
+        }
+        return e;
+    }
+
+    /**
+     * The original's bytes while they are still in this instance's spool. Nothing is queried
+     * unless this instance has spooled files.
+     */
+    public Optional<ImageDiskCache.CachedObject> spooledContent(Long productId, Long imageId) {
+        UploadSpool spool = uploadSpool.getIfAvailable();
+        if (spool == null || spool.isEmpty()) {
+            return Optional.empty();
         }
+        return blobRepo.findSpooled(imageId, productId)
+                .filter(b -> b.spoolHost().equals(spool.host()))
+                .flatMap(b -> spool.find(b.key()).map(f -> {
+                    try {
+                        return new ImageDiskCache.CachedObject(f, Files.size(f), b.contentType());
+                    } catch (IOException e) {
+                        return null; // pushed and deleted just now: S3 has it
+                    }
+                }));
+    }
+
+    public String objectKey(Long productId, Long imageId, Integer maxEdge) {
+        if (maxEdge == null) {
+            return repo.findS3BucketPath(imageId, productId)
+                    .orElseThrow(() -> new NotFoundException("Image not found"));
+        }
+        return variantRepo.findS3BucketPath(imageId, productId, maxEdge)
+                .orElseThrow(() -> new NotFoundException("Image variant not found"));
+    }
 
-        repo.delete(img);
+    private PresignedUrlCache.Entry presignGet(Long productId, String key, boolean pending) {
+        // keys embed a UUID and objects are never overwritten
+        PresignedUrl presigned = store.presignGet(key, urlCache.ttl(), OBJECT_CACHE_CONTROL).orElseThrow();
+        return new PresignedUrlCache.Entry(productId, presigned.url(),
+                presigned.expiresAt().minus(urlCache.minRemaining()), pending);
+    }
+
+    // for objects no row ever referenced; if S3 refuses now, the deletion queue retries it
+    void deleteObjectQuietly(String key) {
+        try {
+            store.delete(key);
+        } catch (RuntimeException e) {
+            log.warn("Object delete failed for key {}, queued for retry: {}", key, e.getMessage());
+            try {
+                deletionQueue.enqueue(List.of(key));
+            } catch (RuntimeException qe) {
+                log.warn("Could not queue key {}, object is orphaned: {}", key, qe.getMessage());
+            }
+        }
     }
 
     @Transactional
     public List<ImageResponse> listImages(Long productId) {
         prodService.getProduct(productId); // try to find the product first
 
-        return repo.findByProduct_IdOrderByDateCreatedDesc(productId)
+        List<Image> images = repo.findByProduct_IdOrderByDateCreatedDesc(productId);
+        if (images.isEmpty()) {
+            return List.of();
+        }
+        // one query for all variants of the page, not one per image
+        Map<Long, List<ImageVariant>> variants = variantRepo
+                .findByImageIdInOrderByMaxEdgeAsc(images.stream().map(Image::getImageId).toList())
                 .stream()
+                .collect(Collectors.groupingBy(ImageVariant::getImageId));
+
+        return images.stream()
                 .map(img -> new ImageResponse(
                         img.getImageId(),
                         img.getProduct().getId(),
                         img.getFileName(),
                         img.getDateCreated(),
-                        img.getS3BucketPath()
+                        img.getS3BucketPath(),
+                        toVariantResponses(productId, img.getImageId(),
+                                variants.getOrDefault(img.getImageId(), List.of()))
                 ))
                 .toList();
     }
 
+    private static List<ImageVariantResponse> toVariantResponses(Long productId, Long imageId,
+                                                                 List<ImageVariant> variants) {
+        return variants.stream()
+                .map(v -> new ImageVariantResponse(v.getMaxEdge(), v.getWidth(), v.getHeight(),
+                        v.getContentType(),
+                        "/v1/product/" + productId + "/image/" + imageId + "/content?max_edge=" + v.getMaxEdge()))
+                .toList();
+    }
+
+    public String listImagesETag(Long productId) {
+        ImageListVersion v = repo.findListVersion(productId)
+                .orElseThrow(() -> new NotFoundException("Product not found"));
+        return listETag(productId, v.count(), v.maxImageId(), v.variantCount());
+    }
+
+    // same validator, derived from a list that was already loaded
+    public String listImagesETag(Long productId, List<ImageResponse> images) {
+        Long maxId = images.stream().map(ImageResponse::imageId).max(Long::compare).orElse(null);
+        long variants = images.stream().mapToLong(i -> i.variants().size()).sum();
+        return listETag(productId, images.size(), maxId, variants);
+    }
+
+    // Image rows are never updated and variants are only ever added, so (id, variant count) is a strong validator
+    public String imageETag(Long productId, Long imageId) {
+        return repo.countVariants(imageId, productId).map(n -> imageDetailsETag(imageId, n)).orElse(null);
+    }
+
+    public static String imageDetailsETag(Long imageId, long variantCount) {
+        return "\"img-" + imageId + "-v" + variantCount + "\"";
+    }
+
+    // validator for the bytes of the original (maxEdge null) or one rendition
+    public static String imageETag(Long imageId, Integer maxEdge) {
+        return "\"img-" + imageId + (maxEdge == null ? "" : "-w" + maxEdge) + "\"";
+    }
+
+    private static String listETag(Long productId, long count, Long maxImageId, long variantCount) {
+        return "\"" + productId + "-" + count + "-" + (maxImageId == null ? 0 : maxImageId)
+                + "-" + variantCount + "\"";
+    }
+
     @Transactional
     public ImageResponse getImageDetails(Long productId, Long imageId) {
         prodService.getProduct(productId);
@@ -142,11 +663,12 @@ public class ImageService {
                 img.getProduct().getId(),
                 img.getFileName(),
                 img.getDateCreated(),
-                img.getS3BucketPath()
+                img.getS3BucketPath(),
+                toVariantResponses(productId, img.getImageId(), variantRepo.findByImageIdOrderByMaxEdgeAsc(imageId))
         );
     }
 
-    private String sanitizeFileName(String name) {
+    static String sanitizeFileName(String name) {
         if (name == null || name.isBlank()) {
             return "unnamed";
         }
@@ -0,0 +1,48 @@
+package com.isaactai.cloudnativeweb.image;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+
+/**
+ * A resized rendition of an {@link Image}, written by {@link ImageVariantWorker}.
+ * @author tisaac
+ */
+@Entity
+@Table(name = "image_variants")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ImageVariant {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "image_variants_id_seq")
+    @SequenceGenerator(name = "image_variants_id_seq", sequenceName = "image_variants_id_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(name = "image_id", nullable = false)
+    private Long imageId;
+
+    @Column(name = "max_edge", nullable = false)
+    private int maxEdge;
+
+    @Column(nullable = false)
+    private int width;
+
+    @Column(nullable = false)
+    private int height;
+
+    @Column(name = "content_type", nullable = false, length = 64)
+    private String contentType;
+
+    @Column(name = "size_bytes", nullable = false)
+    private long sizeBytes;
+
+    @Column(name = "s3_bucket_path", nullable = false, length = 1024)
+    private String s3BucketPath;
+
+    @Column(name = "date_created", nullable = false, insertable = false, updatable = false)
+    private Instant dateCreated;
+}
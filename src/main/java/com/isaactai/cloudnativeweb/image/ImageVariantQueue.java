@@ -0,0 +1,134 @@
+package com.isaactai.cloudnativeweb.image;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Thumbnail work queue over the {@code variants_*} columns of {@code images}.
+ *
+ * <p>Claiming pushes {@code variants_due_at} out by the lease and counts the attempt, so a row
+ * held by a worker that died is picked up again once the lease runs out, by any instance.
+ * {@code SKIP LOCKED} keeps concurrent pollers off each other's rows. Every write is
+ * idempotent (fixed keys, upserted variants), so running a job twice is harmless.
+ * @author tisaac
+ */
+@Repository
+@RequiredArgsConstructor
+public class ImageVariantQueue {
+    private static final String CLAIM = """
+            update images i
+               set variants_attempts = i.variants_attempts + 1,
+                   variants_due_at = now() + make_interval(secs => ?)
+             where i.image_id in (select image_id from images
+                                   where variants_state = 'PENDING' and variants_due_at <= now()
+                                   order by variants_due_at
+                                   limit ?
+                                   for update skip locked)
+            returning i.image_id, i.s3_bucket_path, i.variants_attempts, i.date_created
+            """;
+
+    // a data-modifying CTE runs even though nothing reads from it; the FK fails if the image is gone
+    private static final String COMPLETE = """
+            with written as (
+                insert into image_variants (image_id, max_edge, width, height, content_type, size_bytes, s3_bucket_path)
+                select ?, t.max_edge, t.width, t.height, t.content_type, t.size_bytes, t.s3_bucket_path
+                  from unnest(?::int[], ?::int[], ?::int[], ?::varchar[], ?::bigint[], ?::varchar[])
+                       as t(max_edge, width, height, content_type, size_bytes, s3_bucket_path)
+                on conflict (image_id, max_edge) do update
+                   set width = excluded.width, height = excluded.height, content_type = excluded.content_type,
+                       size_bytes = excluded.size_bytes, s3_bucket_path = excluded.s3_bucket_path
+            )
+            update images set variants_state = 'DONE' where image_id = ?
+            """;
+
+    // images sharing a blob share its thumbnails: take the rows of one that is already done
+    private static final String COPY_FROM_SIBLING = """
+            with src as (
+                select image_id from images
+                 where s3_bucket_path = ? and image_id <> ? and variants_state = 'DONE'
+                 limit 1
+            ), copied as (
+                insert into image_variants (image_id, max_edge, width, height, content_type, size_bytes, s3_bucket_path)
+                select ?, v.max_edge, v.width, v.height, v.content_type, v.size_bytes, v.s3_bucket_path
+                  from image_variants v join src on v.image_id = src.image_id
+                on conflict (image_id, max_edge) do nothing
+            )
+            update images set variants_state = 'DONE'
+             where image_id = ? and exists (select 1 from src)
+            """;
+
+    private static final String RETRY = """
+            update images
+               set variants_state = case when variants_attempts >= ? then 'FAILED' else 'PENDING' end,
+                   variants_due_at = now() + make_interval(secs => ?)
+             where image_id = ?
+            """;
+
+    private static final String FAIL = "update images set variants_state = 'FAILED' where image_id = ?";
+
+    // served by the partial index on variants_due_at
+    private static final String PENDING_COUNT = "select count(*) from images where variants_state = 'PENDING'";
+
+    private final JdbcTemplate jdbc;
+
+    public List<Job> claim(int limit, Duration lease) {
+        return jdbc.query(CLAIM, (rs, i) -> new Job(rs.getLong(1), rs.getString(2), rs.getInt(3),
+                        rs.getTimestamp(4).toInstant()),
+                lease.toMillis() / 1000.0, limit);
+    }
+
+    /**
+     * Records the variants and marks the image done in one statement.
+     * @throws org.springframework.dao.DataIntegrityViolationException the image was deleted meanwhile
+     */
+    public void complete(long imageId, List<Written> variants) {
+        jdbc.update(con -> prepareComplete(con, imageId, variants));
+    }
+
+    // true when another image with the same object already had thumbnails, which are now this one's too
+    public boolean copyFromSibling(long imageId, String key) {
+        return jdbc.update(COPY_FROM_SIBLING, key, imageId, imageId, imageId) > 0;
+    }
+
+    // gives up once maxAttempts claims have failed; otherwise due again after the backoff
+    public void retry(long imageId, int maxAttempts, Duration backoff) {
+        jdbc.update(RETRY, maxAttempts, backoff.toMillis() / 1000.0, imageId);
+    }
+
+    // the object can never be rendered (not an image, unsupported format, gone)
+    public void fail(long imageId) {
+        jdbc.update(FAIL, imageId);
+    }
+
+    public long pendingCount() {
+        Long n = jdbc.queryForObject(PENDING_COUNT, Long.class);
+        return n == null ? 0 : n;
+    }
+
+    private static PreparedStatement prepareComplete(Connection con, long imageId, List<Written> variants)
+            throws SQLException {
+        PreparedStatement ps = con.prepareStatement(COMPLETE);
+        ps.setLong(1, imageId);
+        ps.setArray(2, con.createArrayOf("int4", variants.stream().map(Written::maxEdge).toArray()));
+        ps.setArray(3, con.createArrayOf("int4", variants.stream().map(Written::width).toArray()));
+        ps.setArray(4, con.createArrayOf("int4", variants.stream().map(Written::height).toArray()));
+        ps.setArray(5, con.createArrayOf("varchar", variants.stream().map(Written::contentType).toArray()));
+        ps.setArray(6, con.createArrayOf("int8", variants.stream().map(Written::sizeBytes).toArray()));
+        ps.setArray(7, con.createArrayOf("varchar", variants.stream().map(Written::key).toArray()));
+        ps.setLong(8, imageId);
+        return ps;
+    }
+
+    // attempts includes the current one
+    public record Job(long imageId, String key, int attempts, Instant imageCreated) {}
+
+    public record Written(int maxEdge, int width, int height, String contentType, long sizeBytes, String key) {}
+}
@@ -0,0 +1,28 @@
+package com.isaactai.cloudnativeweb.image;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * @author tisaac
+ */
+public interface ImageVariantRepository extends JpaRepository<ImageVariant, Long> {
+    List<ImageVariant> findByImageIdInOrderByMaxEdgeAsc(Collection<Long> imageIds);
+
+    List<ImageVariant> findByImageIdOrderByMaxEdgeAsc(Long imageId);
+
+    @Query("select v.s3BucketPath from ImageVariant v where v.imageId = :imageId")
+    List<String> findS3BucketPaths(@Param("imageId") Long imageId);
+
+    @Query("""
+            select v.s3BucketPath from ImageVariant v join Image i on i.imageId = v.imageId
+             where v.imageId = :imageId and i.product.id = :productId and v.maxEdge = :maxEdge
+            """)
+    Optional<String> findS3BucketPath(@Param("imageId") Long imageId, @Param("productId") Long productId,
+                                      @Param("maxEdge") int maxEdge);
+}
@@ -0,0 +1,212 @@
+package com.isaactai.cloudnativeweb.image;
+
+import com.isaactai.cloudnativeweb.config.ImageVariantProps;
+import com.isaactai.cloudnativeweb.storage.ObjectContent;
+import com.isaactai.cloudnativeweb.storage.ObjectStore;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates thumbnails for new images in the background.
+ *
+ * <p>The database is the queue (see {@link ImageVariantQueue}); this pool only ever claims as
+ * many images as it has free threads plus queue slots, so a burst of uploads waits as PENDING
+ * rows rather than as heap, and the executor never rejects. Renditions go next to the original
+ * under {@code <key>~<max edge>.<ext>}; a failed job is retried with a doubling backoff, and a
+ * source that can't be decoded is marked FAILED straight away. Images that share an object
+ * (content-addressed uploads) share its thumbnails, which are rendered only once.
+ * @author tisaac
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "app.image.variants", name = "enabled", havingValue = "true")
+public class ImageVariantWorker {
+    private static final Duration MAX_BACKOFF = Duration.ofHours(1);
+    private static final long BACKLOG_REFRESH_MS = 10_000;
+
+    private final ImageVariantQueue queue;
+    private final ObjectStore store;
+    private final ImageVariantProps props;
+    private final ThumbnailRenderer renderer;
+    private final ThreadPoolExecutor executor;
+    private final int capacity;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong backlog = new AtomicLong();
+    private volatile long backlogCheckedAt;
+    private final MeterRegistry registry;
+    private final Timer lag;
+
+    public ImageVariantWorker(ImageVariantQueue queue, ObjectStore store, ImageVariantProps props,
+                              MeterRegistry registry) {
+        this.queue = queue;
+        this.store = store;
+        this.props = props;
+        this.registry = registry;
+        this.renderer = new ThumbnailRenderer(props.sizes(), props.jpegQuality(), props.maxSourcePixels());
+        this.capacity = props.threads() + props.queueCapacity();
+
+        // inFlight is what bounds the work; the queue is sized to the whole capacity because a
+        // thread that has just finished a task may not have taken the next one yet
+        AtomicInteger n = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(props.threads(), props.threads(), 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(capacity), r -> {
+            Thread t = new Thread(r, "image-variants-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        Gauge.builder("image.variants.queue.depth", executor, e -> e.getQueue().size()).register(registry);
+        Gauge.builder("image.variants.in_flight", inFlight, AtomicInteger::get).register(registry);
+        // images waiting in the database, refreshed by the poller
+        Gauge.builder("image.variants.backlog", backlog, AtomicLong::get).register(registry);
+        // upload to thumbnails available, including time spent waiting as PENDING
+        this.lag = Timer.builder("image.variants.lag").register(registry);
+    }
+
+    @Scheduled(fixedDelayString = "${app.image.variants.poll-interval}")
+    public void poll() {
+        try {
+            refreshBacklog();
+            int free = capacity - inFlight.get();
+            if (free <= 0) {
+                return; // saturated: the rest stays PENDING in the database
+            }
+            for (ImageVariantQueue.Job job : queue.claim(free, props.lease())) {
+                inFlight.incrementAndGet();
+                try {
+                    executor.execute(() -> process(job));
+                } catch (RejectedExecutionException e) {
+                    inFlight.decrementAndGet(); // shutting down; the lease brings the job back
+                }
+            }
+        } catch (RuntimeException e) {
+            log.warn("Thumbnail poll failed: {}", e.getMessage());
+        }
+    }
+
+    private void refreshBacklog() {
+        long now = System.currentTimeMillis();
+        if (now - backlogCheckedAt >= BACKLOG_REFRESH_MS) {
+            backlogCheckedAt = now;
+            backlog.set(queue.pendingCount());
+        }
+    }
+
+    void process(ImageVariantQueue.Job job) {
+        long start = System.nanoTime();
+        String outcome = "failed";
+        try {
+            outcome = render(job);
+        } catch (ThumbnailRenderer.UnrenderableImageException e) {
+            log.info("Image {} can't be thumbnailed: {}", job.imageId(), e.getMessage());
+            failQuietly(job);
+        } catch (Exception e) {
+            outcome = job.attempts() >= props.maxAttempts() ? "failed" : "retry";
+            log.warn("Thumbnails for image {} failed (attempt {}): {}", job.imageId(), job.attempts(), e.getMessage());
+            retryQuietly(job);
+        } finally {
+            inFlight.decrementAndGet();
+            Timer.builder("image.variants.processing").tag("outcome", outcome).register(registry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private String render(ImageVariantQueue.Job job) throws Exception {
+        if (queue.copyFromSibling(job.imageId(), job.key())) {
+            return "copied"; // same bytes already rendered for another image
+        }
+        Optional<ObjectContent> source = store.get(job.key(), null);
+        if (source.isEmpty()) {
+            log.info("Image {} has no object at {}, no thumbnails", job.imageId(), job.key());
+            queue.fail(job.imageId());
+            return "failed";
+        }
+        List<ThumbnailRenderer.Rendition> renditions;
+        try (ObjectContent c = source.get()) {
+            renditions = renderer.render(c.stream());
+        }
+
+        List<ImageVariantQueue.Written> written = new ArrayList<>(renditions.size());
+        for (ThumbnailRenderer.Rendition r : renditions) {
+            String key = variantKey(job.key(), r.maxEdge(), r.extension());
+            store.put(key, r.contentType(), new ByteArrayInputStream(r.bytes()), r.bytes().length);
+            written.add(new ImageVariantQueue.Written(r.maxEdge(), r.width(), r.height(), r.contentType(),
+                    r.bytes().length, key));
+        }
+
+        try {
+            queue.complete(job.imageId(), written);
+        } catch (DataIntegrityViolationException e) {
+            // the image was deleted while we worked; nothing will ever reference these
+            deleteQuietly(written.stream().map(ImageVariantQueue.Written::key).toList());
+            return "discarded";
+        }
+        lag.record(Duration.between(job.imageCreated(), Instant.now()));
+        return "done";
+    }
+
+    static String variantKey(String key, int maxEdge, String extension) {
+        // '~' never appears in generated keys, so a variant can't collide with an original
+        return key + "~" + maxEdge + "." + extension;
+    }
+
+    private Duration backoff(int attempts) {
+        Duration d = props.retryBackoff().multipliedBy(1L << Math.min(attempts - 1, 16));
+        return d.compareTo(MAX_BACKOFF) > 0 ? MAX_BACKOFF : d;
+    }
+
+    // a failed bookkeeping write leaves the lease in place, so the job comes back after it
+    private void retryQuietly(ImageVariantQueue.Job job) {
+        try {
+            queue.retry(job.imageId(), props.maxAttempts(), backoff(job.attempts()));
+        } catch (RuntimeException e) {
+            log.warn("Could not reschedule thumbnails for image {}: {}", job.imageId(), e.getMessage());
+        }
+    }
+
+    private void failQuietly(ImageVariantQueue.Job job) {
+        try {
+            queue.fail(job.imageId());
+        } catch (RuntimeException e) {
+            log.warn("Could not mark thumbnails failed for image {}: {}", job.imageId(), e.getMessage());
+        }
+    }
+
+    private void deleteQuietly(List<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        try {
+            store.deleteAll(keys);
+        } catch (RuntimeException e) {
+            log.warn("Thumbnail delete failed, {} objects orphaned: {}", keys.size(), e.getMessage());
+        }
+    }
+
+    // claimed jobs keep their lease and are picked up again after a restart
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        executor.shutdownNow();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+}
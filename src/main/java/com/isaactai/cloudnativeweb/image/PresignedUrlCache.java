@@ -0,0 +1,102 @@
+package com.isaactai.cloudnativeweb.image;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.isaactai.cloudnativeweb.config.CacheProps;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.function.Function;
+
+/**
+ * Presigned GET URLs keyed by image id and rendition, so repeat downloads do no signing and
+ * no DB work.
+ *
+ * <p>Each entry lives until only {@code min-remaining} of its signature is left, so every URL
+ * handed out stays usable for at least that long. Image objects are immutable; the only
+ * invalidation needed is on delete, and that only reaches this node's cache. Other instances
+ * keep handing out URLs for a deleted image until their entry expires, so entries are also
+ * capped at {@code max-age}, well under the signature's lifetime: that is how long a deleted
+ * image can still be redirected to elsewhere. A URL to an original still in an upload spool
+ * is not kept: the next request after the push caches as usual.
+ * @author tisaac
+ */
+@Component
+public class PresignedUrlCache {
+    static final String NAME = "image.presigned_url";
+
+    private final Cache<Key, Entry> cache;
+    private final Duration ttl;
+    private final Duration minRemaining;
+    private final long maxAgeNanos;
+
+    public PresignedUrlCache(CacheProps props, MeterRegistry registry) {
+        CacheProps.PresignedUrlProps cfg = props.presignedUrl();
+        if (cfg.maxAge().compareTo(cfg.ttl().minus(cfg.minRemaining())) > 0) {
+            throw new IllegalArgumentException("app.cache.presigned-url.max-age must not exceed ttl - min-remaining");
+        }
+        this.ttl = cfg.ttl();
+        this.minRemaining = cfg.minRemaining();
+        this.maxAgeNanos = cfg.maxAge().toNanos();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(cfg.maxEntries())
+                .expireAfter(new Expiry<Key, Entry>() {
+                    @Override
+                    public long expireAfterCreate(Key key, Entry e, long currentTime) {
+                        if (e.pending()) {
+                            return 0;
+                        }
+                        long usable = Math.max(0, Duration.between(Instant.now(), e.usableUntil()).toNanos());
+                        return Math.min(usable, maxAgeNanos);
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(Key key, Entry e, long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, e, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(Key key, Entry e, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(registry, cache, NAME);
+    }
+
+    public Duration ttl() {
+        return ttl;
+    }
+
+    public Duration minRemaining() {
+        return minRemaining;
+    }
+
+    // Exceptions from the loader (e.g. NotFoundException) propagate and nothing is cached
+    public Entry get(Key key, Function<Key, Entry> loader) {
+        return cache.get(key, loader);
+    }
+
+    // the original and the given renditions
+    public void invalidate(Long imageId, Collection<Integer> maxEdges) {
+        cache.invalidate(new Key(imageId, Key.ORIGINAL));
+        maxEdges.forEach(edge -> cache.invalidate(new Key(imageId, edge)));
+    }
+
+    public record Key(Long imageId, int maxEdge) {
+        public static final int ORIGINAL = 0;
+    }
+
+    /**
+     * @param usableUntil signature expiry minus {@code min-remaining}; the entry is dropped then
+     * @param pending the object is still in an upload spool, not in S3 yet
+     */
+    public record Entry(Long productId, String url, Instant usableUntil, boolean pending) {}
+}
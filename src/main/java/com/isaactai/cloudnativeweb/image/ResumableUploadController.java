@@ -0,0 +1,118 @@
+package com.isaactai.cloudnativeweb.image;
+
+import com.isaactai.cloudnativeweb.image.dto.CreateUploadSessionRequest;
+import com.isaactai.cloudnativeweb.image.dto.ImageResponse;
+import com.isaactai.cloudnativeweb.image.dto.UploadSessionResponse;
+import com.isaactai.cloudnativeweb.logging.AccessNote;
+import com.isaactai.cloudnativeweb.metrics.ApiResourceTag;
+import com.isaactai.cloudnativeweb.metrics.S3Observed;
+import com.isaactai.cloudnativeweb.user.auth.AuthUser;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * Resumable uploads: create a session, PUT the file in chunks at increasing offsets, then
+ * complete. After a dropped connection, GET the session for the offset to resume from.
+ * @author tisaac
+ */
+@RestController
+@RequestMapping("/v1/product/{product_id}/image/uploads")
+@RequiredArgsConstructor
+@ApiResourceTag(resource = "Image")
+public class ResumableUploadController {
+    private final ResumableUploadService service;
+
+    @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseStatus(HttpStatus.CREATED)
+    @AccessNote(
+            label = "Image",
+            success = "Image upload session created",
+            clientWarn = "Image upload session creation failed",
+            serverError = "Unexpected error occurred while creating image upload session"
+    )
+    @S3Observed
+    public UploadSessionResponse createSession(
+            @PathVariable("product_id") Long productId,
+            @Valid @RequestBody CreateUploadSessionRequest req,
+            @AuthenticationPrincipal AuthUser me
+    ) {
+        return service.create(me.getId(), productId, req);
+    }
+
+    @GetMapping("/{upload_id}")
+    @AccessNote(
+            label = "Image",
+            success = "Image upload session retrieved",
+            clientWarn = "Image upload session lookup failed",
+            serverError = "Unexpected error occurred during image upload session lookup"
+    )
+    public UploadSessionResponse getSession(
+            @PathVariable("product_id") Long productId,
+            @PathVariable("upload_id") UUID uploadId,
+            @AuthenticationPrincipal AuthUser me
+    ) {
+        return service.status(me.getId(), productId, uploadId);
+    }
+
+    // the raw bytes of one chunk; 409 with the current offset if it doesn't start there
+    @PutMapping(path = "/{upload_id}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    @AccessNote(
+            label = "Image",
+            success = "Image chunk uploaded",
+            clientWarn = "Image chunk upload failed",
+            serverError = "Unexpected error occurred during image chunk upload"
+    )
+    @S3Observed
+    public UploadSessionResponse putChunk(
+            @PathVariable("product_id") Long productId,
+            @PathVariable("upload_id") UUID uploadId,
+            @RequestParam("offset") long offset,
+            HttpServletRequest req,
+            @AuthenticationPrincipal AuthUser me
+    ) throws IOException {
+        return service.putChunk(me.getId(), productId, uploadId, offset, req.getContentLengthLong(),
+                req.getInputStream());
+    }
+
+    @PostMapping("/{upload_id}/complete")
+    @ResponseStatus(HttpStatus.CREATED)
+    @AccessNote(
+            label = "Image",
+            success = "Image upload completed",
+            clientWarn = "Image upload completion failed",
+            serverError = "Unexpected error occurred during image upload completion"
+    )
+    @S3Observed
+    public ImageResponse complete(
+            @PathVariable("product_id") Long productId,
+            @PathVariable("upload_id") UUID uploadId,
+            @AuthenticationPrincipal AuthUser me
+    ) {
+        return service.complete(me.getId(), productId, uploadId);
+    }
+
+    @DeleteMapping("/{upload_id}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    @AccessNote(
+            label = "Image",
+            success = "Image upload cancelled",
+            clientWarn = "Image upload cancellation failed",
+            serverError = "Unexpected error occurred during image upload cancellation"
+    )
+    @S3Observed
+    public void cancel(
+            @PathVariable("product_id") Long productId,
+            @PathVariable("upload_id") UUID uploadId,
+            @AuthenticationPrincipal AuthUser me
+    ) {
+        service.cancel(me.getId(), productId, uploadId);
+    }
+}
@@ -0,0 +1,242 @@
+package com.isaactai.cloudnativeweb.image;
+
+import com.isaactai.cloudnativeweb.common.exception.BadRequestException;
+import com.isaactai.cloudnativeweb.common.exception.ForbiddenException;
+import com.isaactai.cloudnativeweb.common.exception.NotFoundException;
+import com.isaactai.cloudnativeweb.config.UploadProps;
+import com.isaactai.cloudnativeweb.image.dto.CreateUploadSessionRequest;
+import com.isaactai.cloudnativeweb.image.dto.ImageResponse;
+import com.isaactai.cloudnativeweb.image.dto.UploadSessionResponse;
+import com.isaactai.cloudnativeweb.image.exception.S3UploadException;
+import com.isaactai.cloudnativeweb.image.exception.UploadOffsetMismatchException;
+import com.isaactai.cloudnativeweb.product.Product;
+import com.isaactai.cloudnativeweb.product.ProductService;
+import com.isaactai.cloudnativeweb.storage.ObjectStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Resumable uploads for large photos over flaky connections: the client sends the file in
+ * fixed-size chunks and, after a dropped connection, asks for the offset and carries on from
+ * there instead of starting over.
+ *
+ * <p>Each chunk is one part of an S3 multipart upload, so nothing is assembled here and a
+ * finished upload is one CompleteMultipartUpload away from being an object. Session state lives
+ * in {@code image_uploads} (see {@link UploadSessionRepository}), not on the instance. A chunk is
+ * spooled to a temp file before it is sent, which bounds heap use and lets the SDK replay it on
+ * a retry. As with {@link ImageService}, no DB connection is held while S3 works.
+ *
+ * <p>The hash is only known once the last chunk is in, so these uploads get a key of their own
+ * under the product prefix rather than a content-addressed one.
+ * @author tisaac
+ */
+@Slf4j
+@Service
+public class ResumableUploadService {
+    // S3 numbers parts 1..10000
+    private static final int MAX_PARTS = 10_000;
+    private static final int COPY_BUFFER = 64 * 1024;
+
+    private final UploadSessionRepository sessions;
+    private final ProductService prodService;
+    private final ImageService images;
+    private final ObjectStore store;
+    private final int chunkSize;
+    private final long maxSize;
+    private final Duration ttl;
+
+    public ResumableUploadService(UploadSessionRepository sessions, ProductService prodService, ImageService images,
+                                  ObjectStore store, UploadProps props) {
+        // every chunk but the last is a multipart part, and S3 refuses parts under 5MB only at complete time
+        long chunk = props.resumable().chunkSize().toBytes();
+        if (chunk < ObjectStore.MIN_PART_SIZE || chunk > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("app.upload.resumable.chunk-size must be between 5MB and 2GB");
+        }
+        this.sessions = sessions;
+        this.prodService = prodService;
+        this.images = images;
+        this.store = store;
+        this.chunkSize = (int) chunk;
+        this.maxSize = props.resumable().maxSize().toBytes();
+        this.ttl = props.resumable().ttl();
+    }
+
+    public UploadSessionResponse create(Long userId, Long productId, CreateUploadSessionRequest req) {
+        prodService.locateOwnedProduct(productId, userId, "You can't upload image for the product");
+
+        long length = req.contentLength();
+        if (length > maxSize) {
+            throw new BadRequestException("File is too large, max " + maxSize + " bytes");
+        }
+        if ((length + chunkSize - 1) / chunkSize > MAX_PARTS) {
+            throw new BadRequestException("File is too large for the chunk size");
+        }
+
+        String safeName = ImageService.sanitizeFileName(req.fileName());
+        String key = ImageService.newObjectKey(userId, productId, safeName);
+        String s3UploadId = store.createMultipart(key, req.contentType());
+
+        UploadSessionRepository.Session session = new UploadSessionRepository.Session(UUID.randomUUID(), userId,
+                productId, safeName, req.contentType(), length, chunkSize, key, s3UploadId, 0, List.of(),
+                null);
+        try {
+            return toResponse(session, 0, sessions.insert(session, ttl));
+        } catch (RuntimeException e) {
+            abortQuietly(key, s3UploadId);
+            throw e;
+        }
+    }
+
+    public UploadSessionResponse status(Long userId, Long productId, UUID uploadId) {
+        UploadSessionRepository.Session s = locateOwnedSession(userId, productId, uploadId);
+        return toResponse(s, s.received(), s.expiresAt());
+    }
+
+    /**
+     * Stores the chunk that starts at {@code offset}. It must start where the session is and be
+     * exactly {@code chunk_size} long, or whatever is left for the last one.
+     * @param length the request's Content-Length, -1 if it didn't send one
+     */
+    public UploadSessionResponse putChunk(Long userId, Long productId, UUID uploadId, long offset, long length,
+                                          InputStream body) {
+        UploadSessionRepository.Session s = locateOwnedSession(userId, productId, uploadId);
+        if (offset != s.received()) {
+            throw new UploadOffsetMismatchException(s.received());
+        }
+        if (s.fullyReceived()) {
+            throw new BadRequestException("All bytes have been received, complete the upload");
+        }
+        long expected = s.nextChunkLength();
+        if (length != expected) {
+            throw new BadRequestException("Chunk at offset " + offset + " must be " + expected + " bytes");
+        }
+
+        int partNumber = (int) (offset / s.chunkSize()) + 1;
+        Path spool = spool(body, length);
+        String eTag;
+        try {
+            eTag = store.uploadPart(s.key(), s.s3UploadId(), partNumber, spool, length);
+        } finally {
+            deleteSpoolQuietly(spool);
+        }
+
+        UploadSessionRepository.Progress p = sessions.recordPart(uploadId, offset, length, eTag, ttl)
+                .orElseThrow(() -> conflict(userId, productId, uploadId));
+        return toResponse(s, p.received(), p.expiresAt());
+    }
+
+    /**
+     * Assembles the parts into the object and turns the session into an image, which then gets
+     * thumbnails like any other upload.
+     */
+    public ImageResponse complete(Long userId, Long productId, UUID uploadId) {
+        Product product = prodService.locateOwnedProduct(
+                productId, userId, "You can't upload image for the product");
+        UploadSessionRepository.Session s = locateOwnedSession(userId, productId, uploadId);
+        if (!s.fullyReceived()) {
+            throw new BadRequestException("Upload is incomplete, " + s.received() + " of "
+                    + s.contentLength() + " bytes received");
+        }
+
+        store.completeMultipart(s.key(), s.s3UploadId(), s.partETags());
+
+        ImageBlobRepository.Inserted inserted;
+        try {
+            inserted = sessions.complete(uploadId)
+                    .orElseThrow(() -> new NotFoundException("Upload not found")); // a concurrent complete won
+        } catch (DataIntegrityViolationException e) {
+            // deleted while we were assembling; the session goes too, nothing will reference the object
+            images.deleteObjectQuietly(s.key());
+            sessions.delete(uploadId);
+            throw new NotFoundException("Product not found");
+        }
+        return ImageService.toResponse(Image.builder()
+                .imageId(inserted.imageId())
+                .product(product)
+                .fileName(s.fileName())
+                .s3BucketPath(s.key())
+                .dateCreated(inserted.dateCreated())
+                .build());
+    }
+
+    public void cancel(Long userId, Long productId, UUID uploadId) {
+        UploadSessionRepository.Session s = locateOwnedSession(userId, productId, uploadId);
+        if (sessions.delete(uploadId)) {
+            abortQuietly(s.key(), s.s3UploadId());
+        }
+    }
+
+    private UploadSessionRepository.Session locateOwnedSession(Long userId, Long productId, UUID uploadId) {
+        UploadSessionRepository.Session s = sessions.find(uploadId, productId)
+                .orElseThrow(() -> new NotFoundException("Upload not found"));
+        if (!s.userId().equals(userId)) {
+            throw new ForbiddenException("You can't upload image for the product");
+        }
+        return s;
+    }
+
+    // lost the race for this offset; the part we stored is overwritten when the client resends from the new one
+    private RuntimeException conflict(Long userId, Long productId, UUID uploadId) {
+        return new UploadOffsetMismatchException(locateOwnedSession(userId, productId, uploadId).received());
+    }
+
+    private static Path spool(InputStream body, long length) {
+        Path spool = null;
+        long copied = 0;
+        try {
+            spool = Files.createTempFile("image-chunk-", ".part");
+            try (OutputStream out = Files.newOutputStream(spool)) {
+                byte[] buf = new byte[COPY_BUFFER];
+                int n;
+                while (copied < length && (n = body.read(buf, 0, (int) Math.min(buf.length, length - copied))) != -1) {
+                    out.write(buf, 0, n);
+                    copied += n;
+                }
+            }
+        } catch (IOException e) {
+            copied = -1;
+        }
+        if (copied != length) {
+            // the client went away mid-chunk; it resumes from the unchanged offset
+            deleteSpoolQuietly(spool);
+            throw new BadRequestException("Chunk could not be read in full");
+        }
+        return spool;
+    }
+
+    private static void deleteSpoolQuietly(Path spool) {
+        if (spool == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(spool);
+        } catch (IOException e) {
+            log.warn("Could not delete chunk spool file {}: {}", spool, e.getMessage());
+        }
+    }
+
+    private void abortQuietly(String key, String s3UploadId) {
+        try {
+            store.abortMultipart(key, s3UploadId);
+        } catch (S3UploadException e) {
+            log.warn("Abort of multipart upload {} for key {} failed, left to the bucket lifecycle rule",
+                    s3UploadId, key);
+        }
+    }
+
+    private static UploadSessionResponse toResponse(UploadSessionRepository.Session s, long offset,
+                                                    Instant expiresAt) {
+        return new UploadSessionResponse(s.uploadId(), offset, s.contentLength(), s.chunkSize(), expiresAt);
+    }
+}
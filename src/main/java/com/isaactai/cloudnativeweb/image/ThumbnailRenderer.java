@@ -0,0 +1,149 @@
+package com.isaactai.cloudnativeweb.image;
+
+import javax.imageio.IIOException;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Decodes an image once and renders it into each configured bounding box, largest first, each
+ * rendition scaled down from the previous one.
+ *
+ * <p>Large sources are decoded with source subsampling, to no less than twice the largest box,
+ * so heap per job stays small whatever the upload size; the rest of the reduction is done by
+ * repeated halving with bilinear filtering, which avoids the aliasing of a single big step.
+ * Opaque images become JPEG, images with alpha PNG.
+ * @author tisaac
+ */
+final class ThumbnailRenderer {
+    private final List<Integer> sizes;
+    private final float jpegQuality;
+    private final long maxSourcePixels;
+
+    ThumbnailRenderer(List<Integer> sizes, float jpegQuality, long maxSourcePixels) {
+        this.sizes = sizes.stream().distinct().sorted(Comparator.reverseOrder()).toList();
+        this.jpegQuality = jpegQuality;
+        this.maxSourcePixels = maxSourcePixels;
+    }
+
+    /**
+     * @throws UnrenderableImageException the bytes will never render; retrying is pointless
+     * @throws IOException reading the stream failed
+     */
+    List<Rendition> render(InputStream in) throws IOException {
+        try (ImageInputStream iis = new MemoryCacheImageInputStream(in)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+            if (!readers.hasNext()) {
+                throw new UnrenderableImageException("No decoder for this format");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(iis, true, true);
+                return render(reader);
+            } catch (IIOException e) {
+                throw new UnrenderableImageException(e.getMessage());
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private List<Rendition> render(ImageReader reader) throws IOException {
+        int width = reader.getWidth(0);
+        int height = reader.getHeight(0);
+        if ((long) width * height > maxSourcePixels) {
+            throw new UnrenderableImageException("Source has " + (long) width * height + " pixels");
+        }
+        int longEdge = Math.max(width, height);
+        List<Integer> boxes = sizes.stream().filter(s -> s < longEdge).toList();
+        if (boxes.isEmpty()) {
+            return List.of();
+        }
+
+        ImageReadParam param = reader.getDefaultReadParam();
+        int step = Math.max(1, longEdge / (boxes.get(0) * 2));
+        param.setSourceSubsampling(step, step, 0, 0);
+        BufferedImage current = reader.read(0, param);
+        boolean alpha = current.getColorModel().hasAlpha();
+
+        List<Rendition> out = new ArrayList<>(boxes.size());
+        for (int box : boxes) {
+            // dimensions from the original, so subsampling rounding does not skew the aspect ratio
+            int w = Math.max(1, (int) Math.round((double) width * box / longEdge));
+            int h = Math.max(1, (int) Math.round((double) height * box / longEdge));
+            current = scale(current, w, h, alpha);
+            out.add(alpha ? png(box, current) : jpeg(box, current));
+        }
+        return out;
+    }
+
+    private static BufferedImage scale(BufferedImage src, int targetW, int targetH, boolean alpha) {
+        BufferedImage current = src;
+        int w = src.getWidth();
+        int h = src.getHeight();
+        // always at least one pass, which also normalizes the pixel layout for the encoders
+        do {
+            w = w / 2 >= targetW ? w / 2 : targetW;
+            h = h / 2 >= targetH ? h / 2 : targetH;
+            BufferedImage next = new BufferedImage(w, h, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = next.createGraphics();
+            try {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                g.drawImage(current, 0, 0, w, h, null);
+            } finally {
+                g.dispose();
+            }
+            current = next;
+        } while (w != targetW || h != targetH);
+        return current;
+    }
+
+    private Rendition jpeg(int box, BufferedImage img) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(img.getWidth() * img.getHeight() / 4);
+        try (ImageOutputStream out = new MemoryCacheImageOutputStream(bytes)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(img, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return new Rendition(box, img.getWidth(), img.getHeight(), "image/jpeg", "jpg", bytes.toByteArray());
+    }
+
+    private static Rendition png(int box, BufferedImage img) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(img.getWidth() * img.getHeight());
+        try (ImageOutputStream out = new MemoryCacheImageOutputStream(bytes)) {
+            ImageIO.write(img, "png", out);
+        }
+        return new Rendition(box, img.getWidth(), img.getHeight(), "image/png", "png", bytes.toByteArray());
+    }
+
+    record Rendition(int maxEdge, int width, int height, String contentType, String extension, byte[] bytes) {}
+
+    static class UnrenderableImageException extends IOException {
+        UnrenderableImageException(String message) {
+            super(message);
+        }
+    }
+}
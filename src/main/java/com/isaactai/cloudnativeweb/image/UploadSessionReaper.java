@@ -0,0 +1,73 @@
+package com.isaactai.cloudnativeweb.image;
+
+import com.isaactai.cloudnativeweb.storage.ObjectStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Aborts the S3 multipart uploads of resumable sessions nobody finished, so their parts stop
+ * being billed, then drops the sessions.
+ *
+ * <p>A session is deleted only once its abort went through, so a failed abort is retried on
+ * the next run. Aborting is idempotent, which lets every instance run this without
+ * coordination. The bucket's AbortIncompleteMultipartUpload lifecycle rule remains the backstop
+ * for uploads whose row is lost.
+ * @author tisaac
+ */
+@Slf4j
+@Component
+public class UploadSessionReaper {
+    private static final int BATCH = 100;
+
+    private final UploadSessionRepository sessions;
+    private final ObjectStore store;
+    private final Counter aborted;
+    private final Counter failed;
+
+    public UploadSessionReaper(UploadSessionRepository sessions, ObjectStore store, MeterRegistry registry) {
+        this.sessions = sessions;
+        this.store = store;
+        this.aborted = Counter.builder("upload.resumable.reaped").tag("outcome", "aborted").register(registry);
+        this.failed = Counter.builder("upload.resumable.reaped").tag("outcome", "failed").register(registry);
+    }
+
+    @Scheduled(fixedDelayString = "${app.upload.resumable.reap-interval}")
+    public void reap() {
+        try {
+            List<UploadSessionRepository.Expired> batch;
+            int deleted;
+            do {
+                batch = sessions.findExpired(BATCH);
+                List<UUID> done = new ArrayList<>(batch.size());
+                for (UploadSessionRepository.Expired e : batch) {
+                    if (abort(e)) {
+                        done.add(e.uploadId());
+                    }
+                }
+                deleted = done.isEmpty() ? 0 : sessions.deleteExpired(done);
+                // stop on a batch that only failed, it would come back unchanged
+            } while (batch.size() == BATCH && deleted > 0);
+        } catch (RuntimeException e) {
+            log.warn("Upload session reaping failed: {}", e.getMessage());
+        }
+    }
+
+    private boolean abort(UploadSessionRepository.Expired e) {
+        try {
+            store.abortMultipart(e.key(), e.s3UploadId());
+            aborted.increment();
+            return true;
+        } catch (RuntimeException ex) {
+            failed.increment();
+            log.warn("Abort of expired upload {} failed, retried next run: {}", e.uploadId(), ex.getMessage());
+            return false;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.isaactai.cloudnativeweb.image;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Resumable upload sessions ({@code image_uploads}), one per S3 multipart upload.
+ *
+ * <p>The row is the only state: any instance can take the next chunk. A chunk is recorded by a
+ * conditional update on {@code received}, so of two requests racing for the same offset only
+ * one advances the session and the other learns the new offset. Sessions past
+ * {@code expires_at} are invisible here and are aborted by {@link UploadSessionReaper}.
+ * @author tisaac
+ */
+@Repository
+@RequiredArgsConstructor
+public class UploadSessionRepository {
+    private static final String INSERT = """
+            insert into image_uploads (upload_id, user_id, product_id, file_name, content_type, content_length,
+                                       chunk_size, s3_bucket_path, s3_upload_id, expires_at)
+            values (?, ?, ?, ?, ?, ?, ?, ?, ?, now() + make_interval(secs => ?))
+            returning expires_at
+            """;
+
+    private static final String FIND = """
+            select upload_id, user_id, product_id, file_name, content_type, content_length, chunk_size,
+                   s3_bucket_path, s3_upload_id, received, part_etags, expires_at
+              from image_uploads
+             where upload_id = ? and product_id = ? and expires_at > now()
+            """;
+
+    // every chunk also renews the session, so only idle ones expire
+    private static final String RECORD_PART = """
+            update image_uploads
+               set received = received + ?,
+                   part_etags = array_append(part_etags, ?::text),
+                   expires_at = now() + make_interval(secs => ?)
+             where upload_id = ? and received = ? and expires_at > now()
+            returning received, expires_at
+            """;
+
+    // the session becomes the image in one statement; the FK fails if the product is gone
+    private static final String COMPLETE = """
+            with s as (
+                delete from image_uploads
+                 where upload_id = ? and received = content_length and expires_at > now()
+                returning product_id, file_name, s3_bucket_path
+            )
+            insert into images (product_id, file_name, s3_bucket_path)
+            select product_id, file_name, s3_bucket_path from s
+            returning image_id, date_created
+            """;
+
+    private static final String DELETE = "delete from image_uploads where upload_id = ?";
+
+    private static final String EXPIRED = """
+            select upload_id, s3_bucket_path, s3_upload_id from image_uploads
+             where expires_at <= now()
+             order by expires_at
+             limit ?
+            """;
+
+    // still expired: a session can't come back to life, this only guards against a changed ttl
+    private static final String DELETE_EXPIRED =
+            "delete from image_uploads where upload_id = any(?::uuid[]) and expires_at <= now()";
+
+    private static final RowMapper<Session> SESSION = (rs, i) -> new Session(
+            rs.getObject(1, UUID.class), rs.getLong(2), rs.getLong(3), rs.getString(4), rs.getString(5),
+            rs.getLong(6), rs.getInt(7), rs.getString(8), rs.getString(9), rs.getLong(10),
+            List.of((String[]) rs.getArray(11).getArray()), rs.getTimestamp(12).toInstant());
+
+    private final JdbcTemplate jdbc;
+
+    // returns the expiry the database assigned
+    public Instant insert(Session s, Duration ttl) {
+        return jdbc.queryForObject(INSERT, (rs, i) -> rs.getTimestamp(1).toInstant(),
+                s.uploadId(), s.userId(), s.productId(), s.fileName(), s.contentType(), s.contentLength(),
+                s.chunkSize(), s.key(), s.s3UploadId(), ttl.toMillis() / 1000.0);
+    }
+
+    public Optional<Session> find(UUID uploadId, Long productId) {
+        return jdbc.query(FIND, SESSION, uploadId, productId).stream().findFirst();
+    }
+
+    /**
+     * Advances the session by one chunk that starts at {@code offset}. Empty when it is no
+     * longer at that offset (another request got there first) or has expired.
+     */
+    public Optional<Progress> recordPart(UUID uploadId, long offset, long length, String eTag, Duration ttl) {
+        return jdbc.query(RECORD_PART, (rs, i) -> new Progress(rs.getLong(1), rs.getTimestamp(2).toInstant()),
+                length, eTag, ttl.toMillis() / 1000.0, uploadId, offset).stream().findFirst();
+    }
+
+    /**
+     * Replaces a fully received session by its image row. Empty when the session is gone.
+     * @throws org.springframework.dao.DataIntegrityViolationException the product is gone
+     */
+    public Optional<ImageBlobRepository.Inserted> complete(UUID uploadId) {
+        return jdbc.query(COMPLETE,
+                (rs, i) -> new ImageBlobRepository.Inserted(rs.getLong(1), rs.getTimestamp(2).toInstant()),
+                uploadId).stream().findFirst();
+    }
+
+    public boolean delete(UUID uploadId) {
+        return jdbc.update(DELETE, uploadId) > 0;
+    }
+
+    public List<Expired> findExpired(int limit) {
+        return jdbc.query(EXPIRED,
+                (rs, i) -> new Expired(rs.getObject(1, UUID.class), rs.getString(2), rs.getString(3)), limit);
+    }
+
+    public int deleteExpired(Collection<UUID> uploadIds) {
+        return jdbc.update(con -> {
+            PreparedStatement ps = con.prepareStatement(DELETE_EXPIRED);
+            ps.setArray(1, con.createArrayOf("uuid", uploadIds.toArray()));
+            return ps;
+        });
+    }
+
+    /**
+     * @param received bytes stored so far, always a whole number of chunks until the last one
+     * @param partETags ETag of part n at index n - 1
+     */
+    public record Session(UUID uploadId, Long userId, Long productId, String fileName, String contentType,
+                          long contentLength, int chunkSize, String key, String s3UploadId, long received,
+                          List<String> partETags, Instant expiresAt) {
+        public boolean fullyReceived() {
+            return received == contentLength;
+        }
+
+        // what the chunk at the current offset must carry: a whole chunk, or what is left
+        public long nextChunkLength() {
+            return Math.min(chunkSize, contentLength - received);
+        }
+    }
+
+    public record Progress(long received, Instant expiresAt) {}
+
+    public record Expired(UUID uploadId, String key, String s3UploadId) {}
+}
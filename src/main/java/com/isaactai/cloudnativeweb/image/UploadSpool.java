@@ -0,0 +1,149 @@
+package com.isaactai.cloudnativeweb.image;
+
+import com.isaactai.cloudnativeweb.config.UploadProps;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Local, durable home for uploads taken while S3 is degraded; {@link UploadSpoolPusher} moves
+ * them to the store later.
+ *
+ * <p>A file is written under a temp name, forced to disk, renamed into place and the directory
+ * forced too, all before the row pointing at it is inserted: an upload answered with 202
+ * survives a crash of the process or the machine. The spool belongs to this instance, the
+ * blob row names it ({@code spool_host}), and only this instance pushes or serves the bytes.
+ *
+ * <p>The mode switch lives here as well: a PUT slower than {@code slow-put}, or a failed one,
+ * sends uploads to the spool for the next {@code cooldown}, so requests stop waiting on S3.
+ * @author tisaac
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "app.upload.spool", name = "enabled", havingValue = "true")
+public class UploadSpool {
+    private static final String TEMP_PREFIX = ".spool-";
+
+    private final Path dir;
+    private final String host;
+    private final long slowPutNanos;
+    private final long cooldownNanos;
+    // files in the spool and when they were written
+    private final Map<String, Instant> files = new ConcurrentHashMap<>();
+    private volatile long degradedUntil = System.nanoTime();
+
+    public UploadSpool(UploadProps props, MeterRegistry registry) throws IOException {
+        UploadProps.SpoolProps p = props.spool();
+        this.dir = Files.createDirectories(p.dir());
+        this.host = p.host() == null || p.host().isBlank() ? InetAddress.getLocalHost().getHostName() : p.host();
+        this.slowPutNanos = p.slowPut().toNanos();
+        this.cooldownNanos = p.cooldown().toNanos();
+
+        // what a previous run left: finished files wait for their push, half-written ones were never acknowledged
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+            for (Path f : ds) {
+                String name = f.getFileName().toString();
+                if (name.startsWith(TEMP_PREFIX)) {
+                    Files.deleteIfExists(f);
+                } else {
+                    files.put(URLDecoder.decode(name, StandardCharsets.UTF_8),
+                            Files.getLastModifiedTime(f).toInstant());
+                }
+            }
+        }
+
+        // uploads on this instance's disk that are not in S3 yet
+        Gauge.builder("upload.spool.depth", files, Map::size).register(registry);
+        Gauge.builder("upload.spool.degraded", this, s -> s.degraded() ? 1 : 0).register(registry);
+    }
+
+    public String host() {
+        return host;
+    }
+
+    // true while uploads should skip S3 and go to the spool
+    public boolean degraded() {
+        return degradedUntil - System.nanoTime() > 0;
+    }
+
+    // the outcome of a PUT on the request path
+    public void recordPut(long nanos, boolean ok) {
+        if (!ok || nanos > slowPutNanos) {
+            if (!degraded()) {
+                log.warn("S3 PUT {} after {} ms, spooling uploads for {} ms", ok ? "slow" : "failed",
+                        nanos / 1_000_000, cooldownNanos / 1_000_000);
+            }
+            degradedUntil = System.nanoTime() + cooldownNanos;
+        }
+    }
+
+    /**
+     * Durably stores the bytes for {@code key}; on return they are on disk. Writing a key that
+     * is already spooled replaces the file with the same bytes.
+     */
+    public void write(String key, ImageService.Source source) throws IOException {
+        Path tmp = Files.createTempFile(dir, TEMP_PREFIX, ".part");
+        try {
+            try (InputStream in = source.open();
+                 FileChannel out = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                in.transferTo(Channels.newOutputStream(out));
+                out.force(true);
+            }
+            Files.move(tmp, file(key), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            // the rename is only durable once the directory entry is
+            try (FileChannel d = FileChannel.open(dir, StandardOpenOption.READ)) {
+                d.force(true);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        files.put(key, Instant.now());
+    }
+
+    public Optional<Path> find(String key) {
+        return files.containsKey(key) ? Optional.of(file(key)) : Optional.empty();
+    }
+
+    public boolean isEmpty() {
+        return files.isEmpty();
+    }
+
+    // a snapshot: key to when its file was written
+    public Map<String, Instant> files() {
+        return Map.copyOf(files);
+    }
+
+    public void delete(String key) {
+        files.remove(key);
+        try {
+            Files.deleteIfExists(file(key));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Path file(String key) {
+        return dir.resolve(URLEncoder.encode(key, StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,167 @@
+package com.isaactai.cloudnativeweb.image;
+
+import com.isaactai.cloudnativeweb.config.UploadProps;
+import com.isaactai.cloudnativeweb.storage.ObjectStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves spooled uploads ({@link UploadSpool}) to the store: claims this instance's due blobs
+ * from {@link UploadSpoolQueue}, PUTs each file and marks the blob stored, which also releases
+ * its images to {@link ImageVariantWorker}.
+ *
+ * <p>A failed PUT is retried with a doubling backoff, without limit: the spool holds the only
+ * copy of an acknowledged upload. A PUT is idempotent (the key is the content hash), so an
+ * expired lease that runs it twice does no harm. Files no spooled blob needs any more (pushed
+ * by another upload of the same bytes, deleted before the push) are swept once they are older
+ * than {@link #SWEEP_AGE}, which keeps them safe between write and insert.
+ *
+ * <p>PUTs block for as long as S3 is slow, so a drain runs on a thread of its own rather than on
+ * the shared scheduler thread.
+ * @author tisaac
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "app.upload.spool", name = "enabled", havingValue = "true")
+public class UploadSpoolPusher {
+    static final Duration SWEEP_AGE = Duration.ofMinutes(1);
+
+    private final UploadSpool spool;
+    private final UploadSpoolQueue queue;
+    private final ImageDeletionQueue deletionQueue;
+    private final ObjectStore store;
+    private final UploadProps.SpoolProps props;
+    private final Counter pushed;
+    private final Counter failed;
+    private final Counter swept;
+    private final Timer putTimer;
+    // one drain at a time; a poll while one runs is skipped
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new SynchronousQueue<>(), r -> {
+        Thread t = new Thread(r, "upload-spool-push");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public UploadSpoolPusher(UploadSpool spool, UploadSpoolQueue queue, ImageDeletionQueue deletionQueue,
+                             ObjectStore store, UploadProps props, MeterRegistry registry) {
+        this.spool = spool;
+        this.queue = queue;
+        this.deletionQueue = deletionQueue;
+        this.store = store;
+        this.props = props.spool();
+
+        this.pushed = Counter.builder("upload.spool.push").tag("outcome", "pushed").register(registry);
+        this.failed = Counter.builder("upload.spool.push").tag("outcome", "failed").register(registry);
+        this.swept = Counter.builder("upload.spool.push").tag("outcome", "swept").register(registry);
+        this.putTimer = Timer.builder("upload.spool.put").register(registry);
+    }
+
+    @Scheduled(fixedDelayString = "${app.upload.spool.poll-interval}")
+    public void poll() {
+        try {
+            executor.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            // the running drain goes on, or we are shutting down
+        }
+    }
+
+    // on the calling thread
+    public void drain() {
+        if (spool.isEmpty()) {
+            return; // the common case: no query at all
+        }
+        try {
+            List<UploadSpoolQueue.Spooled> batch;
+            do {
+                batch = queue.claim(spool.host(), props.batchSize(), props.lease());
+                for (UploadSpoolQueue.Spooled s : batch) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        return; // shutting down: the rest are pushed once their lease runs out
+                    }
+                    push(s);
+                }
+            } while (batch.size() == props.batchSize());
+            sweep();
+        } catch (RuntimeException e) {
+            log.warn("Upload spool drain failed: {}", e.getMessage());
+        }
+    }
+
+    private void push(UploadSpoolQueue.Spooled s) {
+        Optional<Path> file = spool.find(s.key());
+        if (file.isEmpty()) {
+            // the row says this instance has the bytes but the disk doesn't: nothing left to push from
+            log.error("Spool file for {} is missing, the upload is lost", s.key());
+            queue.retry(s.key(), spool.host(), props.maxBackoff(), props.maxBackoff());
+            failed.increment();
+            return;
+        }
+        long start = System.nanoTime();
+        try (InputStream in = Files.newInputStream(file.get())) {
+            store.put(s.key(), s.contentType(), in, s.size());
+        } catch (IOException | RuntimeException e) {
+            log.warn("Push of spooled {} failed, retried later: {}", s.key(), e.getMessage());
+            queue.retry(s.key(), spool.host(), props.retryBackoff(), props.maxBackoff());
+            failed.increment();
+            return;
+        }
+        long nanos = System.nanoTime() - start;
+        putTimer.record(Duration.ofNanos(nanos));
+        spool.recordPut(nanos, true); // still slow: keep new uploads off S3 a while longer
+
+        Optional<Integer> refs = queue.pushed(s.key(), spool.host());
+        if (refs.isEmpty() || refs.get() == 0) {
+            // the images went while we were pushing; the object may already have been "deleted"
+            deletionQueue.enqueue(List.of(s.key()));
+        }
+        spool.delete(s.key());
+        pushed.increment();
+    }
+
+    // interrupts a PUT in progress; its blob is retried like any failed push
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        executor.shutdownNow();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    private void sweep() {
+        Instant cutoff = Instant.now().minus(SWEEP_AGE);
+        List<String> old = spool.files().entrySet().stream()
+                .filter(e -> e.getValue().isBefore(cutoff))
+                .map(Map.Entry::getKey)
+                .toList();
+        if (old.isEmpty()) {
+            return;
+        }
+        Set<String> wanted = queue.wanted(old, spool.host());
+        for (String key : old) {
+            if (!wanted.contains(key)) {
+                spool.delete(key);
+                swept.increment();
+            }
+        }
+    }
+}
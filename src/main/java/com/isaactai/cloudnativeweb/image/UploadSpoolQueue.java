@@ -0,0 +1,95 @@
+package com.isaactai.cloudnativeweb.image;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Push queue over the {@code spool_*} columns of {@code image_blobs}: the blobs whose bytes are
+ * only in one instance's {@link UploadSpool}.
+ *
+ * <p>Claiming works like {@link ImageVariantQueue}, a lease on {@code spool_due_at} and
+ * {@code SKIP LOCKED}, but only ever for the caller's own host, since no other instance has
+ * the file. Blobs whose last reference went meanwhile are not pushed at all.
+ * @author tisaac
+ */
+@Repository
+@RequiredArgsConstructor
+public class UploadSpoolQueue {
+    private static final String CLAIM = """
+            update image_blobs b
+               set spool_attempts = b.spool_attempts + 1,
+                   spool_due_at = now() + make_interval(secs => ?)
+             where b.s3_bucket_path in (select s3_bucket_path from image_blobs
+                                         where spool_host = ? and spool_due_at <= now() and ref_count > 0
+                                         order by spool_due_at
+                                         limit ?
+                                         for update skip locked)
+            returning b.s3_bucket_path, b.content_type, b.size_bytes
+            """;
+
+    // the object is stored: the blob is live, and its images may have their thumbnails rendered
+    private static final String PUSHED = """
+            with blob as (
+                update image_blobs set spool_host = null, spool_due_at = null, spool_attempts = 0
+                 where s3_bucket_path = ? and spool_host = ?
+                returning s3_bucket_path, ref_count
+            ), ready as (
+                update images i set variants_due_at = now()
+                  from blob
+                 where i.s3_bucket_path = blob.s3_bucket_path
+                   and i.variants_state = 'PENDING' and i.variants_due_at = 'infinity'
+            )
+            select ref_count from blob
+            """;
+
+    // attempts was counted by the claim
+    private static final String RETRY = """
+            update image_blobs
+               set spool_due_at = now() + make_interval(secs => least(? * power(2, least(spool_attempts - 1, 16)), ?))
+             where s3_bucket_path = ? and spool_host = ?
+            """;
+
+    private static final String WANTED = """
+            select s3_bucket_path from image_blobs
+             where s3_bucket_path = any(?::varchar[]) and spool_host = ? and ref_count > 0
+            """;
+
+    private final JdbcTemplate jdbc;
+
+    public List<Spooled> claim(String host, int limit, Duration lease) {
+        return jdbc.query(CLAIM, (rs, i) -> new Spooled(rs.getString(1), rs.getString(2), rs.getLong(3)),
+                lease.toMillis() / 1000.0, host, limit);
+    }
+
+    /**
+     * @return references left on the blob; empty when the row is gone or no longer spooled here
+     */
+    public Optional<Integer> pushed(String key, String host) {
+        return jdbc.query(PUSHED, (rs, i) -> rs.getInt(1), key, host).stream().findFirst();
+    }
+
+    public void retry(String key, String host, Duration backoff, Duration maxBackoff) {
+        jdbc.update(RETRY, backoff.toMillis() / 1000.0, maxBackoff.toMillis() / 1000.0, key, host);
+    }
+
+    // the keys among these that still need this host's spool file
+    public Set<String> wanted(Collection<String> keys, String host) {
+        return new HashSet<>(jdbc.query(con -> {
+            PreparedStatement ps = con.prepareStatement(WANTED);
+            ps.setArray(1, con.createArrayOf("varchar", keys.toArray()));
+            ps.setString(2, host);
+            return ps;
+        }, (rs, i) -> rs.getString(1)));
+    }
+
+    public record Spooled(String key, String contentType, long size) {}
+}
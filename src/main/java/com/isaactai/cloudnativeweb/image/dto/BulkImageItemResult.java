@@ -0,0 +1,29 @@
+package com.isaactai.cloudnativeweb.image.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Outcome of one file of a multi-file upload, in request order.
+ * @author tisaac
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record BulkImageItemResult(
+    int index,
+
+    Status status,
+
+    @JsonProperty("file_name")
+    String fileName,
+
+    ImageResponse image,
+
+    String error
+) {
+    // INVALID is the file's fault, FAILED is ours (storage) and worth retrying
+    public enum Status { CREATED, INVALID, FAILED }
+
+    public boolean failed() {
+        return status != Status.CREATED;
+    }
+}
@@ -0,0 +1,12 @@
+package com.isaactai.cloudnativeweb.image.dto;
+
+import java.util.List;
+
+/**
+ * @author tisaac
+ */
+public record BulkImageResponse(
+    int created,
+    int failed,
+    List<BulkImageItemResult> items
+) {}
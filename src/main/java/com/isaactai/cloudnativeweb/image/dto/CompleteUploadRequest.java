@@ -0,0 +1,13 @@
+package com.isaactai.cloudnativeweb.image.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.NotBlank;
+
+/**
+ * @author tisaac
+ */
+public record CompleteUploadRequest(
+        @JsonProperty("s3_bucket_path")
+        @NotBlank
+        String s3BucketPath
+) {}
@@ -0,0 +1,28 @@
+package com.isaactai.cloudnativeweb.image.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.Size;
+
+/**
+ * @author tisaac
+ */
+public record CreateUploadSessionRequest(
+        @JsonProperty("file_name")
+        @NotBlank
+        @Size(max = 255)
+        String fileName,
+
+        @JsonProperty("content_type")
+        @NotBlank
+        @Pattern(regexp = "^image/[a-zA-Z0-9.+-]+$", message = "content_type must be an image type")
+        String contentType,
+
+        @JsonProperty("content_length")
+        @NotNull
+        @Positive
+        Long contentLength
+) {}
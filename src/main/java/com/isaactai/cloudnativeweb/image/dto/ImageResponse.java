@@ -3,6 +3,7 @@ package com.isaactai.cloudnativeweb.image.dto;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import java.time.Instant;
+import java.util.List;
 
 /**
  * @author tisaac
@@ -21,6 +22,10 @@ public record ImageResponse (
     Instant dateCreated,
 
     @JsonProperty("s3_bucket_path")
-    String s3BucketPath
+    String s3BucketPath,
+
+    // smallest first; empty until the thumbnails have been generated
+    @JsonProperty("variants")
+    List<ImageVariantResponse> variants
 
 ) {}
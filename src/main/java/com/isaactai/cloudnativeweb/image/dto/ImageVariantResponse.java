@@ -0,0 +1,25 @@
+package com.isaactai.cloudnativeweb.image.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * @author tisaac
+ */
+public record ImageVariantResponse(
+    @JsonProperty("max_edge")
+    int maxEdge,
+
+    @JsonProperty("width")
+    int width,
+
+    @JsonProperty("height")
+    int height,
+
+    @JsonProperty("content_type")
+    String contentType,
+
+    // the image's content endpoint with ?max_edge=
+    @JsonProperty("url")
+    String url
+
+) {}
@@ -0,0 +1,27 @@
+package com.isaactai.cloudnativeweb.image.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * @author tisaac
+ */
+public record PresignUploadResponse(
+        @JsonProperty("upload_url")
+        String uploadUrl,
+
+        @JsonProperty("method")
+        String method,
+
+        // must be sent unchanged with the PUT, they are part of the signature
+        @JsonProperty("headers")
+        Map<String, String> headers,
+
+        @JsonProperty("s3_bucket_path")
+        String s3BucketPath,
+
+        @JsonProperty("expires_at")
+        Instant expiresAt
+) {}
@@ -0,0 +1,29 @@
+package com.isaactai.cloudnativeweb.image.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * @author tisaac
+ */
+public record UploadSessionResponse(
+        @JsonProperty("upload_id")
+        UUID uploadId,
+
+        // bytes stored so far: where the next chunk starts
+        @JsonProperty("offset")
+        long offset,
+
+        @JsonProperty("content_length")
+        long contentLength,
+
+        // every chunk but the last must be exactly this long
+        @JsonProperty("chunk_size")
+        int chunkSize,
+
+        // pushed out by every chunk; after it the session is discarded
+        @JsonProperty("expires_at")
+        Instant expiresAt
+) {}
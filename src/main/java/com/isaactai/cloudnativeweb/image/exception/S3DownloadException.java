@@ -0,0 +1,12 @@
+package com.isaactai.cloudnativeweb.image.exception;
+
+import com.isaactai.cloudnativeweb.common.error.BaseApiException;
+import com.isaactai.cloudnativeweb.common.error.ErrorCode;
+import org.springframework.http.HttpStatus;
+
+/**
+ * @author tisaac
+ */
+public class S3DownloadException extends BaseApiException{
+    public S3DownloadException() { super(HttpStatus.BAD_GATEWAY, ErrorCode.BAD_GATEWAY, "S3 download failed"); }
+}
@@ -0,0 +1,14 @@
+package com.isaactai.cloudnativeweb.image.exception;
+
+import com.isaactai.cloudnativeweb.common.error.BaseApiException;
+import com.isaactai.cloudnativeweb.common.error.ErrorCode;
+import org.springframework.http.HttpStatus;
+
+/**
+ * @author tisaac
+ */
+public class UploadBusyException extends BaseApiException {
+    public UploadBusyException() {
+        super(HttpStatus.SERVICE_UNAVAILABLE, ErrorCode.SERVICE_UNAVAILABLE, "Too many uploads in progress, retry later");
+    }
+}
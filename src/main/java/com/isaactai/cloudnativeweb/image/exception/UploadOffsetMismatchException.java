@@ -0,0 +1,15 @@
+package com.isaactai.cloudnativeweb.image.exception;
+
+import com.isaactai.cloudnativeweb.common.error.BaseApiException;
+import com.isaactai.cloudnativeweb.common.error.ErrorCode;
+import org.springframework.http.HttpStatus;
+
+/**
+ * A chunk that doesn't start where the upload left off; the client resumes from {@code expected}.
+ * @author tisaac
+ */
+public class UploadOffsetMismatchException extends BaseApiException {
+    public UploadOffsetMismatchException(long expected) {
+        super(HttpStatus.CONFLICT, ErrorCode.OFFSET_MISMATCH, "Upload is at offset " + expected);
+    }
+}
@@ -1,5 +1,7 @@
 package com.isaactai.cloudnativeweb.logging;
 
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -26,74 +28,99 @@ public class AccessLogFilter extends OncePerRequestFilter {
         try {
             chain.doFilter(req, res);
         } finally {
-            long took   = System.currentTimeMillis() - start;
-            int status  = res.getStatus();
-            var log     = LoggerFactory.getLogger("ACCESS");
-
-            String method = req.getMethod();
-            String uri    = req.getRequestURI();
-
-            // --- SAFE getters (no "null" literal) ---
-            String labelRaw    = attr(req, "access.label");
-            String exName      = attr(req, "error.exception");
-
-            String msgSuccess  = attr(req, "access.success");      // 2xx general
-            String msgWarnGen  = attr(req, "access.clientWarn");   // 4xx general
-            String msgErrGen   = attr(req, "access.serverError");  // 5xx general
-            String msgOverride = attr(req, "error.message");       // per-request detail
-            String code        = attr(req, "error.code");
-
-            // --- fallbacks for missing attributes ---
-            String labelFinal = firstNonBlank(labelRaw, "Security");
-
-            if (status == 401) {
-                code        = firstNonBlank(code, "UNAUTHORIZED");
-                msgOverride = firstNonBlank(msgOverride, "Missing or invalid credentials");
-            } else if (status == 403) {
-                code        = firstNonBlank(code, "FORBIDDEN");
-                msgOverride = firstNonBlank(msgOverride, "Insufficient permissions");
+            if (req.isAsyncStarted()) {
+                // streamed / async responses: log once the body is done, not when the handler returns
+                req.getAsyncContext().addListener(new AsyncListener() {
+                    @Override
+                    public void onComplete(AsyncEvent event) {
+                        logAccess(req, res, System.currentTimeMillis() - start);
+                    }
+
+                    @Override
+                    public void onTimeout(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onError(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onStartAsync(AsyncEvent event) {
+                    }
+                });
+            } else {
+                logAccess(req, res, System.currentTimeMillis() - start);
+            }
+        }
+    }
+
+    private void logAccess(HttpServletRequest req, HttpServletResponse res, long took) {
+        int status  = res.getStatus();
+        var log     = LoggerFactory.getLogger("ACCESS");
+
+        String method = req.getMethod();
+        String uri    = req.getRequestURI();
+
+        // --- SAFE getters (no "null" literal) ---
+        String labelRaw    = attr(req, "access.label");
+        String exName      = attr(req, "error.exception");
+
+        String msgSuccess  = attr(req, "access.success");      // 2xx general
+        String msgWarnGen  = attr(req, "access.clientWarn");   // 4xx general
+        String msgErrGen   = attr(req, "access.serverError");  // 5xx general
+        String msgOverride = attr(req, "error.message");       // per-request detail
+        String code        = attr(req, "error.code");
+
+        // --- fallbacks for missing attributes ---
+        String labelFinal = firstNonBlank(labelRaw, "Security");
+
+        if (status == 401) {
+            code        = firstNonBlank(code, "UNAUTHORIZED");
+            msgOverride = firstNonBlank(msgOverride, "Missing or invalid credentials");
+        } else if (status == 403) {
+            code        = firstNonBlank(code, "FORBIDDEN");
+            msgOverride = firstNonBlank(msgOverride, "Insufficient permissions");
+        }
+
+        if (status >= 500) {
+            String msg = combine(msgErrGen, msgOverride);
+            Throwable t = (Throwable) req.getAttribute("error.throwable");
+
+            // shortened the msg to prevent too long
+            String inlineMsgShort = abbrev(msg, 220);
+
+            if (t != null) {
+                log.error("{} {} [{}] took={}ms{}{}",
+                        method, uri, labelFinal, took,
+                        nonBlank(" err=", exName),
+                        nonBlank(" msg=", inlineMsgShort),
+                        t);
+            } else {
+                log.error("{} {} [{}] took={}ms{}{}",
+                        method, uri, labelFinal, took,
+                        nonBlank(" err=", exName),
+                        nonBlank(" msg=", msg));
             }
 
-            if (status >= 500) {
-                String msg = combine(msgErrGen, msgOverride);
-                Throwable t = (Throwable) req.getAttribute("error.throwable");
-
-                // shortened the msg to prevent too long
-                String inlineMsgShort = abbrev(msg, 220);
-
-                if (t != null) {
-                    log.error("{} {} [{}] took={}ms{}{}",
-                            method, uri, labelFinal, took,
-                            nonBlank(" err=", exName),
-                            nonBlank(" msg=", inlineMsgShort),
-                            t);
-                } else {
-                    log.error("{} {} [{}] took={}ms{}{}",
-                            method, uri, labelFinal, took,
-                            nonBlank(" err=", exName),
-                            nonBlank(" msg=", msg));
-                }
-
-            } else if (status >= 400) {
-                boolean expected = Boolean.TRUE.equals(req.getAttribute("error.expected"));
-                String msg = combine(msgWarnGen, msgOverride);
-
-                if (expected && isNotBlank(code) && isNotBlank(msg)) {
-                    log.warn("{} {} [{}] took={}ms code={}{}",
-                            method, uri, labelFinal, took, code,
-                            nonBlank(" msg=", msg));
-                } else if (isNotBlank(msg)) {
-                    log.warn("{} {} [{}] took={}ms msg={}", method, uri, labelFinal, took, msg);
-                } else {
-                    log.warn("{} {} [{}] took={}ms", method, uri, labelFinal, took);
-                }
+        } else if (status >= 400) {
+            boolean expected = Boolean.TRUE.equals(req.getAttribute("error.expected"));
+            String msg = combine(msgWarnGen, msgOverride);
+
+            if (expected && isNotBlank(code) && isNotBlank(msg)) {
+                log.warn("{} {} [{}] took={}ms code={}{}",
+                        method, uri, labelFinal, took, code,
+                        nonBlank(" msg=", msg));
+            } else if (isNotBlank(msg)) {
+                log.warn("{} {} [{}] took={}ms msg={}", method, uri, labelFinal, took, msg);
+            } else {
+                log.warn("{} {} [{}] took={}ms", method, uri, labelFinal, took);
+            }
 
+        } else {
+            if (isNotBlank(msgSuccess)) {
+                log.info("{} {} [{}] took={}ms msg={}", method, uri, labelFinal, took, msgSuccess);
             } else {
-                if (isNotBlank(msgSuccess)) {
-                    log.info("{} {} [{}] took={}ms msg={}", method, uri, labelFinal, took, msgSuccess);
-                } else {
-                    log.info("{} {} [{}] took={}ms", method, uri, labelFinal, took);
-                }
+                log.info("{} {} [{}] took={}ms", method, uri, labelFinal, took);
             }
         }
     }
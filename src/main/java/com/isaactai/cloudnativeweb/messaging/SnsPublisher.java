@@ -2,33 +2,96 @@ package com.isaactai.cloudnativeweb.messaging;
 
 import com.isaactai.cloudnativeweb.config.AwsProps;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import software.amazon.awssdk.core.exception.SdkException;
 import software.amazon.awssdk.services.sns.SnsClient;
+import software.amazon.awssdk.services.sns.model.BatchResultErrorEntry;
+import software.amazon.awssdk.services.sns.model.PublishBatchRequest;
+import software.amazon.awssdk.services.sns.model.PublishBatchRequestEntry;
+import software.amazon.awssdk.services.sns.model.PublishBatchResponse;
+import software.amazon.awssdk.services.sns.model.PublishBatchResultEntry;
 import software.amazon.awssdk.services.sns.model.PublishRequest;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
 /**
  * @author tisaac
  */
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class SnsPublisher {
+    // entries per PublishBatch call, the SNS limit
+    public static final int MAX_BATCH = 10;
+
     private final SnsClient snsClient;
     private final AwsProps awsProps;
 
     public void publishEmailVerification(String email, String token) {
-        String payload = """
+        PublishRequest req = PublishRequest.builder()
+                        .topicArn(awsProps.sns().topicArn())
+                        .message(emailVerificationPayload(email, token))
+                        .build();
+
+        snsClient.publish(req);
+    }
+
+    /**
+     * Publishes the events with PublishBatch, {@link #MAX_BATCH} per call, so a backlog costs
+     * one round trip per ten events instead of one each. SNS accepts or rejects every entry on
+     * its own; a call that fails as a whole fails all of its entries.
+     * @return why, by {@link EmailVerification#id()}, for the events that were not published
+     */
+    public Map<String, String> publishEmailVerifications(List<EmailVerification> events) {
+        Map<String, String> failed = new HashMap<>();
+        for (int from = 0; from < events.size(); from += MAX_BATCH) {
+            List<EmailVerification> batch = events.subList(from, Math.min(from + MAX_BATCH, events.size()));
+            PublishBatchRequest req = PublishBatchRequest.builder()
+                    .topicArn(awsProps.sns().topicArn())
+                    .publishBatchRequestEntries(batch.stream()
+                            .map(e -> PublishBatchRequestEntry.builder()
+                                    .id(e.id())
+                                    .message(emailVerificationPayload(e.email(), e.token()))
+                                    .build())
+                            .toList())
+                    .build();
+            try {
+                PublishBatchResponse res = snsClient.publishBatch(req);
+                Set<String> published = res.successful().stream()
+                        .map(PublishBatchResultEntry::id)
+                        .collect(Collectors.toSet());
+                for (BatchResultErrorEntry f : res.failed()) {
+                    failed.put(f.id(), f.code() + ": " + f.message());
+                }
+                // neither published nor failed should not happen; not counted as sent either way
+                batch.stream()
+                        .filter(e -> !published.contains(e.id()))
+                        .forEach(e -> failed.putIfAbsent(e.id(), "No result for the entry"));
+            } catch (SdkException ex) {
+                log.warn("SNS PublishBatch of {} events failed: {}", batch.size(), ex.getMessage());
+                batch.forEach(e -> failed.put(e.id(), String.valueOf(ex.getMessage())));
+            }
+        }
+        return failed;
+    }
+
+    private static String emailVerificationPayload(String email, String token) {
+        return """
                 {
                     "type": "EMAIL_VERIFICATION",
                     "email": "%s",
                     "token": "%s"
                 }
                 """.formatted(email, token);
-
-        PublishRequest req = PublishRequest.builder()
-                        .topicArn(awsProps.sns().topicArn())
-                        .message(payload)
-                        .build();
-
-        snsClient.publish(req);
     }
+
+    /**
+     * @param id unique within one call; echoed back in the result
+     */
+    public record EmailVerification(String id, String email, String token) {}
 }
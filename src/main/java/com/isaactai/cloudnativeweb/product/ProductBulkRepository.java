@@ -0,0 +1,82 @@
+package com.isaactai.cloudnativeweb.product;
+
+import com.isaactai.cloudnativeweb.product.dto.ProductCreateRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Set-based product inserts for the bulk endpoint.
+ *
+ * <p>A whole chunk is one statement: the columns travel as arrays and are expanded with
+ * {@code unnest}, and SKU conflicts are settled by {@code ON CONFLICT (sku)} inside the same
+ * statement, so there is no check-then-insert window and no per-row round trip.
+ * @author tisaac
+ */
+@Repository
+@RequiredArgsConstructor
+public class ProductBulkRepository {
+    // ids are taken the way Hibernate takes them (changeset 009): one nextval reserves 50, so
+    // the chunk draws a block per 50 rows instead of leaving each row's default to burn one
+    private static final String INSERT = """
+            with t as (
+                select * from unnest(?::varchar[], ?::text[], ?::varchar[], ?::varchar[], ?::int[])
+                       with ordinality as t(name, description, sku, manufacturer, quantity, n)
+            ), blocks as (
+                select array_agg(nextval('products_id_seq')) as lo
+                  from generate_series(1, ((select count(*) from t) + 49) / 50)
+            )
+            insert into products (id, name, description, sku, manufacturer, quantity, owner_user_id)
+            select blocks.lo[(t.n - 1) / 50 + 1] + (t.n - 1) % 50,
+                   t.name, t.description, t.sku, t.manufacturer, t.quantity, ?
+              from t, blocks
+            """;
+
+    private static final String SKIP_CONFLICTS = """
+            on conflict (sku) do nothing
+            returning id, sku, true
+            """;
+
+    // only the caller's own rows are updated; a SKU owned by someone else stays a conflict
+    private static final String UPDATE_OWN_CONFLICTS = """
+            on conflict (sku) do update
+               set name = excluded.name, description = excluded.description,
+                   manufacturer = excluded.manufacturer, quantity = excluded.quantity,
+                   date_last_updated = now()
+             where products.owner_user_id = excluded.owner_user_id
+            returning id, sku, (xmax = 0)
+            """;
+
+    private final JdbcTemplate jdbc;
+
+    /**
+     * Writes one chunk (SKUs must be distinct within it) and returns the rows that were
+     * written. A SKU missing from the result lost to an existing product.
+     */
+    public List<Written> insert(Long ownerUserId, List<ProductCreateRequest> rows, boolean updateOwn) {
+        String sql = INSERT + (updateOwn ? UPDATE_OWN_CONFLICTS : SKIP_CONFLICTS);
+
+        return jdbc.query(con -> prepare(con, sql, ownerUserId, rows),
+                (rs, i) -> new Written(rs.getLong(1), rs.getString(2), rs.getBoolean(3)));
+    }
+
+    private static PreparedStatement prepare(Connection con, String sql, Long ownerUserId,
+                                             List<ProductCreateRequest> rows) throws SQLException {
+        PreparedStatement ps = con.prepareStatement(sql);
+        ps.setArray(1, con.createArrayOf("varchar", rows.stream().map(ProductCreateRequest::name).toArray()));
+        ps.setArray(2, con.createArrayOf("text", rows.stream().map(ProductCreateRequest::description).toArray()));
+        ps.setArray(3, con.createArrayOf("varchar", rows.stream().map(ProductCreateRequest::sku).toArray()));
+        ps.setArray(4, con.createArrayOf("varchar", rows.stream().map(ProductCreateRequest::manufacturer).toArray()));
+        ps.setArray(5, con.createArrayOf("int4", rows.stream().map(ProductCreateRequest::quantity).toArray()));
+        ps.setLong(6, ownerUserId);
+        return ps;
+    }
+
+    // inserted=false means an existing row of the same owner was updated
+    public record Written(Long id, String sku, boolean inserted) {}
+}
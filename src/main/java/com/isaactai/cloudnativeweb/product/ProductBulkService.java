@@ -0,0 +1,147 @@
+package com.isaactai.cloudnativeweb.product;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.exc.UnrecognizedPropertyException;
+import com.isaactai.cloudnativeweb.common.exception.BadRequestException;
+import com.isaactai.cloudnativeweb.product.dto.BulkProductItemResult;
+import com.isaactai.cloudnativeweb.product.dto.BulkProductItemResult.Status;
+import com.isaactai.cloudnativeweb.product.dto.BulkProductResponse;
+import com.isaactai.cloudnativeweb.product.dto.ProductCreateRequest;
+import jakarta.transaction.Transactional;
+import jakarta.validation.Validator;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Bulk create/upsert for catalog sync jobs: one request, one transaction, one INSERT per chunk.
+ * @author tisaac
+ */
+@Service
+@RequiredArgsConstructor
+public class ProductBulkService {
+    static final int MAX_ITEMS = 5000;
+    static final int CHUNK_SIZE = 500;
+
+    private final ProductBulkRepository bulkRepo;
+    private final ProductResponseCache responseCache;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+
+    /**
+     * @param body a JSON array or NDJSON stream of {@link ProductCreateRequest}
+     * @param upsert when true, an existing SKU owned by the caller is updated instead of reported
+     */
+    @Transactional
+    public BulkProductResponse bulkCreate(Long userId, InputStream body, boolean upsert) {
+        List<JsonNode> nodes = readItems(body);
+
+        BulkProductItemResult[] results = new BulkProductItemResult[nodes.size()];
+        List<Pending> pending = new ArrayList<>();
+        Set<String> seenSkus = new HashSet<>();
+
+        for (int i = 0; i < nodes.size(); i++) {
+            ProductCreateRequest req;
+            try {
+                req = objectMapper.treeToValue(nodes.get(i), ProductCreateRequest.class);
+            } catch (JsonProcessingException e) {
+                results[i] = BulkProductItemResult.invalid(i, null, describe(e));
+                continue;
+            }
+
+            String violations = violations(req);
+            if (violations != null) {
+                results[i] = BulkProductItemResult.invalid(i, req.sku(), violations);
+            } else if (!seenSkus.add(req.sku())) {
+                results[i] = new BulkProductItemResult(i, Status.DUPLICATE_SKU, null, req.sku(),
+                        "SKU repeated in this request");
+            } else {
+                pending.add(new Pending(i, req));
+            }
+        }
+
+        for (int from = 0; from < pending.size(); from += CHUNK_SIZE) {
+            List<Pending> chunk = pending.subList(from, Math.min(from + CHUNK_SIZE, pending.size()));
+            write(userId, chunk, upsert, results);
+        }
+
+        List<BulkProductItemResult> items = Arrays.asList(results);
+        int created = count(items, Status.CREATED);
+        int updated = count(items, Status.UPDATED);
+        return new BulkProductResponse(created, updated, items.size() - created - updated, items);
+    }
+
+    private void write(Long userId, List<Pending> chunk, boolean upsert, BulkProductItemResult[] results) {
+        Map<String, ProductBulkRepository.Written> written = bulkRepo
+                .insert(userId, chunk.stream().map(Pending::req).toList(), upsert)
+                .stream()
+                .collect(Collectors.toMap(ProductBulkRepository.Written::sku, Function.identity()));
+
+        for (Pending p : chunk) {
+            ProductBulkRepository.Written w = written.get(p.req().sku());
+            if (w == null) {
+                results[p.index()] = new BulkProductItemResult(p.index(), Status.DUPLICATE_SKU, null,
+                        p.req().sku(), "SKU already exists");
+            } else if (w.inserted()) {
+                results[p.index()] = new BulkProductItemResult(p.index(), Status.CREATED, w.id(), w.sku(), null);
+            } else {
+                responseCache.invalidateAfterCommit(w.id());
+                results[p.index()] = new BulkProductItemResult(p.index(), Status.UPDATED, w.id(), w.sku(), null);
+            }
+        }
+    }
+
+    // Items are buffered as trees (bounded by MAX_ITEMS) so one bad item does not fail the stream
+    private List<JsonNode> readItems(InputStream body) {
+        List<JsonNode> nodes = new ArrayList<>();
+        try (MappingIterator<JsonNode> it = objectMapper.readerFor(JsonNode.class).readValues(body)) {
+            while (it.hasNextValue()) {
+                if (nodes.size() == MAX_ITEMS) {
+                    throw new BadRequestException("At most " + MAX_ITEMS + " items per request");
+                }
+                nodes.add(it.nextValue());
+            }
+        } catch (JsonProcessingException e) {
+            throw new BadRequestException("Malformed JSON at line %d, column %d"
+                    .formatted(e.getLocation().getLineNr(), e.getLocation().getColumnNr()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        if (nodes.isEmpty()) {
+            throw new BadRequestException("No items");
+        }
+        return nodes;
+    }
+
+    // same "field: message; ..." format as ApiExceptionHandler#handleValidation
+    private String violations(ProductCreateRequest req) {
+        return validator.validate(req).stream()
+                .map(v -> "%s: %s".formatted(v.getPropertyPath(), v.getMessage()))
+                .distinct()
+                .sorted()
+                .reduce((a, b) -> "%s; %s".formatted(a, b))
+                .orElse(null);
+    }
+
+    private static String describe(JsonProcessingException e) {
+        return e instanceof UnrecognizedPropertyException up
+                ? "Unrecognized field " + up.getPropertyName()
+                : "Malformed item";
+    }
+
+    private static int count(List<BulkProductItemResult> items, Status status) {
+        return (int) items.stream().filter(r -> r.status() == status).count();
+    }
+
+    private record Pending(int index, ProductCreateRequest req) {}
+}
@@ -3,15 +3,26 @@ package com.isaactai.cloudnativeweb.product;
 import com.isaactai.cloudnativeweb.metrics.ApiObserved;
 import com.isaactai.cloudnativeweb.metrics.ApiResourceTag;
 import com.isaactai.cloudnativeweb.logging.AccessNote;
+import com.isaactai.cloudnativeweb.product.dto.BulkProductResponse;
 import com.isaactai.cloudnativeweb.product.dto.ProductCreateRequest;
+import com.isaactai.cloudnativeweb.product.dto.ProductImportResponse;
+import com.isaactai.cloudnativeweb.product.dto.ProductPage;
 import com.isaactai.cloudnativeweb.product.dto.ProductPatchRequest;
 import com.isaactai.cloudnativeweb.product.dto.ProductResponse;
 import com.isaactai.cloudnativeweb.product.dto.ProductUpdateRequest;
+import com.isaactai.cloudnativeweb.user.auth.AuthUser;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
-import org.springframework.security.core.Authentication;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.InputStream;
 
 /**
  * @author tisaac
@@ -23,6 +34,8 @@ import org.springframework.web.bind.annotation.*;
 public class ProductController {
 
     private final ProductService service;
+    private final ProductBulkService bulkService;
+    private final ProductCsvService csvService;
 
     @PostMapping
     @ResponseStatus(HttpStatus.CREATED)
@@ -35,9 +48,61 @@ public class ProductController {
     @ApiObserved
     public ProductResponse create(
             @Valid @RequestBody ProductCreateRequest req,
-            Authentication auth
+            @AuthenticationPrincipal AuthUser me
+    ) {
+        return service.createForUser(req, me.getId());
+    }
+
+    // Body is a JSON array or NDJSON; per-item outcomes are in the response, so this is 200 even if some fail
+    @PostMapping(value = "/bulk", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    @ResponseStatus(HttpStatus.OK)
+    @AccessNote(
+            label = "Product",
+            success = "Bulk product request processed",
+            clientWarn = "Bulk product request failed",
+            serverError = "Unexpected error occurred during bulk product creation"
+    )
+    @ApiObserved
+    public BulkProductResponse bulkCreate(
+            InputStream body,
+            @RequestParam(value = "upsert", defaultValue = "false") boolean upsert,
+            @AuthenticationPrincipal AuthUser me
+    ) {
+        return bulkService.bulkCreate(me.getId(), body, upsert);
+    }
+
+    // CSV columns: name,description,sku,manufacturer,quantity (header row required)
+    @PostMapping(value = "/import", consumes = "text/csv")
+    @ResponseStatus(HttpStatus.OK)
+    @AccessNote(
+            label = "Product",
+            success = "Product CSV imported",
+            clientWarn = "Product CSV import failed",
+            serverError = "Unexpected error occurred during product CSV import"
+    )
+    @ApiObserved
+    public ProductImportResponse importCsv(
+            InputStream body,
+            @AuthenticationPrincipal AuthUser me
     ) {
-        return service.createForUser(req, auth.getName());
+        return csvService.importCsv(me.getId(), body);
+    }
+
+    // Streams after the handler returns (async), straight from COPY TO STDOUT
+    @GetMapping(value = "/export", produces = "text/csv")
+    @AccessNote(
+            label = "Product",
+            success = "Product CSV exported",
+            clientWarn = "Product CSV export failed",
+            serverError = "Unexpected error occurred during product CSV export"
+    )
+    @ApiObserved
+    public ResponseEntity<StreamingResponseBody> exportCsv(@AuthenticationPrincipal AuthUser me) {
+        Long userId = me.getId();
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"products.csv\"")
+                .contentType(MediaType.parseMediaType("text/csv"))
+                .body(out -> csvService.exportCsv(userId, out));
     }
 
     @PutMapping("/{productId}")
@@ -52,9 +117,9 @@ public class ProductController {
     public void updateProduct(
             @PathVariable Long productId,
             @Valid @RequestBody ProductUpdateRequest req,
-            Authentication auth
+            @AuthenticationPrincipal AuthUser me
     ) {
-        service.updateProduct(productId, auth.getName(), req);
+        service.updateProduct(productId, me.getId(), req);
     }
 
     @PatchMapping("/{productId}")
@@ -69,9 +134,9 @@ public class ProductController {
     public void patchProduct(
             @PathVariable Long productId,
             @Valid @RequestBody ProductPatchRequest req,
-            Authentication auth
+            @AuthenticationPrincipal AuthUser me
     ) {
-        service.patchProduct(productId, auth.getName(), req);
+        service.patchProduct(productId, me.getId(), req);
     }
 
     @DeleteMapping("/{productId}")
@@ -85,13 +150,13 @@ public class ProductController {
     @ApiObserved
     public void deleteProduct(
             @PathVariable Long productId,
-            Authentication auth
+            @AuthenticationPrincipal AuthUser me
     ) {
-        service.deleteProduct(productId, auth.getName());
+        service.deleteProduct(productId, me.getId());
     }
 
+    // no @ResponseStatus here: it would overwrite the 304 set by checkNotModified
     @GetMapping("/{productId}")
-    @ResponseStatus(HttpStatus.OK)
     @AccessNote(
             label = "Product",
             success = "Product retrieved successfully",
@@ -99,7 +164,31 @@ public class ProductController {
             serverError = "Unexpected error occurred during product retrieval"
     )
     @ApiObserved
-    public ProductResponse getProduct(@PathVariable Long productId) {
-        return service.getProduct(productId);
+    public ResponseEntity<byte[]> getProduct(@PathVariable Long productId, WebRequest request) {
+        if (request.checkNotModified(service.productETag(productId))) {
+            return null; // 304, nothing loaded or serialized
+        }
+        ProductResponseCache.Entry product = service.getProductJson(productId);
+        return ResponseEntity.ok()
+                .eTag(product.etag())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(product.json());
+    }
+
+    @GetMapping
+    @ResponseStatus(HttpStatus.OK)
+    @AccessNote(
+            label = "Product",
+            success = "Products listed successfully",
+            clientWarn = "Product listing failed",
+            serverError = "Unexpected error occurred during product listing"
+    )
+    @ApiObserved
+    public ProductPage listProducts(
+            @RequestParam("owner") Long ownerUserId,
+            @RequestParam(value = "after", required = false) Long after,
+            @RequestParam(value = "limit", defaultValue = "20") int limit
+    ) {
+        return service.listByOwner(ownerUserId, after, limit);
     }
 }
@@ -0,0 +1,125 @@
+package com.isaactai.cloudnativeweb.product;
+
+import com.isaactai.cloudnativeweb.common.exception.BadRequestException;
+import lombok.RequiredArgsConstructor;
+import org.postgresql.PGConnection;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.SQLException;
+
+/**
+ * CSV in/out of {@code products} through the PostgreSQL COPY protocol.
+ *
+ * <p>Both directions hand the stream to the driver, which moves it in small buffers, so
+ * heap use does not depend on the file size. Columns: {@value #COLUMNS}, with a header row.
+ * @author tisaac
+ */
+@Repository
+@RequiredArgsConstructor
+public class ProductCsvRepository {
+    static final String COLUMNS = "name,description,sku,manufacturer,quantity";
+
+    private static final String STAGING_DDL = """
+            create temp table product_import (
+                line bigserial,
+                name text, description text, sku text, manufacturer text, quantity text
+            ) on commit drop
+            """;
+
+    // Rows are validated here with the same rules as ProductCreateRequest; everything stays text
+    // in staging so a bad value rejects one row instead of aborting the COPY. New ids come in
+    // blocks of 50 per nextval, as Hibernate draws them (changeset 009).
+    private static final String MERGE = """
+            with valid as (
+                select * from product_import
+                 where coalesce(name, '') <> '' and length(name) <= 255
+                   and coalesce(description, '') <> ''
+                   and sku ~ '^[a-zA-Z0-9._-]{6,64}$'
+                   and coalesce(manufacturer, '') <> '' and length(manufacturer) <= 255
+                   and case when quantity ~ '^[0-9]{1,3}$' then quantity::int <= 100 else false end
+            ), latest as (
+                select distinct on (sku) * from valid order by sku, line desc
+            ), numbered as (
+                select *, row_number() over () - 1 as n from latest
+            ), blocks as (
+                select array_agg(nextval('products_id_seq')) as lo
+                  from generate_series(1, ((select count(*) from latest) + 49) / 50)
+            ), written as (
+                insert into products (id, name, description, sku, manufacturer, quantity, owner_user_id)
+                select blocks.lo[n / 50 + 1] + n % 50, name, description, sku, manufacturer, quantity::int, ?
+                  from numbered, blocks
+                on conflict (sku) do update
+                   set name = excluded.name, description = excluded.description,
+                       manufacturer = excluded.manufacturer, quantity = excluded.quantity,
+                       date_last_updated = now()
+                 where products.owner_user_id = excluded.owner_user_id
+                returning (xmax = 0) as inserted
+            )
+            select (select count(*) from product_import),
+                   (select count(*) from valid),
+                   (select count(*) from latest),
+                   count(*) filter (where inserted),
+                   count(*) filter (where not inserted)
+              from written
+            """;
+
+    private final JdbcTemplate jdbc;
+
+    /**
+     * Streams the CSV into a transaction-scoped staging table; must run inside a transaction
+     * together with {@link #mergeStaging}. Returns the number of rows copied.
+     */
+    public long copyIntoStaging(InputStream csv) {
+        jdbc.execute(STAGING_DDL);
+        return jdbc.execute((ConnectionCallback<Long>) con -> {
+            try {
+                return con.unwrap(PGConnection.class).getCopyAPI().copyIn(
+                        "copy product_import (" + COLUMNS + ") from stdin with (format csv, header true)", csv);
+            } catch (SQLException e) {
+                throw malformed(e);
+            } catch (IOException e) {
+                throw new BadRequestException("Upload interrupted");
+            }
+        });
+    }
+
+    public MergeResult mergeStaging(Long ownerUserId) {
+        return jdbc.queryForObject(MERGE, (rs, i) -> new MergeResult(
+                rs.getLong(1), rs.getLong(2), rs.getLong(3), rs.getLong(4), rs.getLong(5)), ownerUserId);
+    }
+
+    // COPY cannot take bind parameters; the owner id is a Long from the principal, never user text
+    public long copyOut(Long ownerUserId, OutputStream out) {
+        String sql = "copy (select " + COLUMNS + " from products where owner_user_id = " + ownerUserId.longValue()
+                + " order by id) to stdout with (format csv, header true)";
+        return jdbc.execute((ConnectionCallback<Long>) con -> {
+            try {
+                return con.unwrap(PGConnection.class).getCopyAPI().copyOut(sql, out);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e); // client went away
+            }
+        });
+    }
+
+    // SQLSTATE class 22 = data exception (bad CSV shape, unterminated quote, ...)
+    private static RuntimeException malformed(SQLException e) throws SQLException {
+        if (e.getSQLState() != null && e.getSQLState().startsWith("22")) {
+            String msg = e.getMessage() == null ? "" : e.getMessage().lines().findFirst().orElse("");
+            return new BadRequestException("Malformed CSV: " + msg.replaceFirst("^ERROR:\\s*", ""));
+        }
+        throw e;
+    }
+
+    /**
+     * received: rows in the file; valid: rows passing validation; distinct: valid rows after
+     * keeping the last row per SKU; created/updated: rows written. distinct - created - updated
+     * rows lost to a SKU owned by another user.
+     */
+    public record MergeResult(long received, long valid, long distinct, long created, long updated) {}
+}
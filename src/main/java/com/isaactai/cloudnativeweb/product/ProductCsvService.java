@@ -0,0 +1,42 @@
+package com.isaactai.cloudnativeweb.product;
+
+import com.isaactai.cloudnativeweb.product.dto.ProductImportResponse;
+import jakarta.transaction.Transactional;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Whole-catalog CSV import/export for reconciliation jobs, scoped to the caller's products.
+ * @author tisaac
+ */
+@Service
+@RequiredArgsConstructor
+public class ProductCsvService {
+    private final ProductCsvRepository csvRepo;
+    private final ProductResponseCache responseCache;
+
+    // COPY into staging + merge share one transaction (the staging table is dropped on commit)
+    @Transactional
+    public ProductImportResponse importCsv(Long userId, InputStream csv) {
+        csvRepo.copyIntoStaging(csv);
+        ProductCsvRepository.MergeResult r = csvRepo.mergeStaging(userId);
+
+        if (r.updated() > 0) {
+            responseCache.invalidateAllAfterCommit();
+        }
+        return new ProductImportResponse(
+                r.received(),
+                r.created(),
+                r.updated(),
+                r.received() - r.valid(),
+                r.valid() - r.distinct(),
+                r.distinct() - r.created() - r.updated());
+    }
+
+    public void exportCsv(Long userId, OutputStream out) {
+        csvRepo.copyOut(userId, out);
+    }
+}
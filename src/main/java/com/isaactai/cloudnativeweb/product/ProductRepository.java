@@ -1,13 +1,87 @@
 package com.isaactai.cloudnativeweb.product;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
 
 /**
  * @author tisaac
  */
 public interface ProductRepository extends JpaRepository<Product, Long> {
-    boolean existsBySku(String sku);
-    boolean existsBySkuAndIdNot(String sku, Long id);
+
+    // keyset page, served by idx_products_owner_id (owner_user_id, id)
+    List<Product> findByOwnerUserIdAndIdGreaterThanOrderByIdAsc(Long ownerUserId, Long afterId, Limit limit);
+
+    // validator only, for conditional GETs
+    @Query("select p.dateLastUpdated from Product p where p.id = :id")
+    Optional<Instant> findDateLastUpdated(@Param("id") Long id);
+
+    // Ownership is part of the WHERE clause: 0 rows means "missing or not yours"
+    @Modifying
+    @Query("""
+            update Product p
+               set p.name = :name, p.description = :description, p.sku = :sku,
+                   p.manufacturer = :manufacturer, p.quantity = :quantity, p.dateLastUpdated = :now
+             where p.id = :id and p.ownerUserId = :ownerId
+            """)
+    int updateOwned(@Param("id") Long id, @Param("ownerId") Long ownerId,
+                    @Param("name") String name, @Param("description") String description,
+                    @Param("sku") String sku, @Param("manufacturer") String manufacturer,
+                    @Param("quantity") Integer quantity, @Param("now") Instant now);
+
+    // null params keep the current column value
+    @Modifying
+    @Query("""
+            update Product p
+               set p.name = coalesce(:name, p.name),
+                   p.description = coalesce(:description, p.description),
+                   p.sku = coalesce(:sku, p.sku),
+                   p.manufacturer = coalesce(:manufacturer, p.manufacturer),
+                   p.quantity = coalesce(:quantity, p.quantity),
+                   p.dateLastUpdated = :now
+             where p.id = :id and p.ownerUserId = :ownerId
+            """)
+    int patchOwned(@Param("id") Long id, @Param("ownerId") Long ownerId,
+                   @Param("name") String name, @Param("description") String description,
+                   @Param("sku") String sku, @Param("manufacturer") String manufacturer,
+                   @Param("quantity") Integer quantity, @Param("now") Instant now);
+
+    /**
+     * Deletes the product (its images and variants go by FK cascade) and, in the same
+     * statement, drops the images' blob references and queues every object left unreferenced
+     * in {@code object_deletions}. Locking the image rows first keeps a concurrent image delete
+     * from releasing the same reference twice. Returns the number of products deleted.
+     */
+    @Query(nativeQuery = true, value = """
+            with p as (
+                delete from products where id = :id and owner_user_id = :ownerId returning id
+            ), img as (
+                select i.image_id, i.s3_bucket_path from images i join p on i.product_id = p.id for update of i
+            ), refs as (
+                select s3_bucket_path, count(*) as n from img group by s3_bucket_path
+            ), blob as (
+                update image_blobs b set ref_count = b.ref_count - refs.n
+                  from refs where b.s3_bucket_path = refs.s3_bucket_path
+                returning b.s3_bucket_path, b.ref_count
+            ), gone as (
+                select refs.s3_bucket_path from refs left join blob using (s3_bucket_path)
+                 where coalesce(blob.ref_count, 0) = 0
+            ), queued as (
+                insert into object_deletions (s3_bucket_path)
+                select s3_bucket_path from gone
+                union
+                select v.s3_bucket_path from image_variants v
+                  join img on v.image_id = img.image_id
+                  join gone on gone.s3_bucket_path = img.s3_bucket_path
+                on conflict do nothing
+            )
+            select count(*) from p
+            """)
+    int deleteOwned(@Param("id") Long id, @Param("ownerId") Long ownerId);
 }
@@ -0,0 +1,98 @@
+package com.isaactai.cloudnativeweb.product;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.isaactai.cloudnativeweb.config.CacheProps;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.function.Function;
+
+/**
+ * Already-serialized {@code ProductResponse} JSON (plus its ETag) keyed by product id.
+ *
+ * <p>A hit is a map lookup: no transaction, no pooled connection, no entity hydration
+ * and no Jackson pass. Loads go through {@link Cache#get}, which holds the key while the
+ * loader runs, so an invalidation issued after a commit always waits for (and then drops)
+ * a load that may have read the pre-commit row.
+ *
+ * <p>Invalidation only reaches this node's cache. Other instances keep serving their copy
+ * (and its ETag) until it expires, so {@code expire-after-write} is the staleness bound there.
+ * @author tisaac
+ */
+@Component
+public class ProductResponseCache {
+    static final String NAME = "product.response";
+
+    private final Cache<Long, Entry> cache;
+
+    public ProductResponseCache(CacheProps props, MeterRegistry registry) {
+        CacheProps.ProductResponseProps cfg = props.productResponse();
+        long maxBytes = cfg.maxBytes().toBytes();
+
+        // every entry weighs at least maxBytes/maxEntries, so the weight bound also caps the entry count
+        int minWeight = (int) Math.min(Integer.MAX_VALUE, Math.max(1, maxBytes / Math.max(1, cfg.maxEntries())));
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .<Long, Entry>weigher((id, e) -> Math.max(e.json().length, minWeight))
+                .expireAfterWrite(cfg.expireAfterWrite())
+                .recordStats()
+                .build();
+
+        // cache.gets{result=hit|miss}, cache.evictions, cache.eviction.weight, cache.size ...
+        CaffeineCacheMetrics.monitor(registry, cache, NAME);
+        Gauge.builder("cache.hit.ratio", cache, c -> c.stats().hitRate())
+                .tag("cache", NAME)
+                .register(registry);
+        Gauge.builder("cache.weighted.size", cache,
+                        c -> c.policy().eviction().map(e -> e.weightedSize().orElse(0L)).orElse(0L))
+                .tag("cache", NAME)
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    // Exceptions from the loader (e.g. NotFoundException) propagate and nothing is cached
+    public Entry get(Long productId, Function<Long, Entry> loader) {
+        return cache.get(productId, loader);
+    }
+
+    public Entry getIfPresent(Long productId) {
+        return cache.getIfPresent(productId);
+    }
+
+    // for set-based writes (CSV import) that do not know which ids they touched
+    public void invalidateAllAfterCommit() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            cache.invalidateAll();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                cache.invalidateAll();
+            }
+        });
+    }
+
+    /**
+     * Evicts once the surrounding transaction commits; a rolled back write leaves the entry alone.
+     */
+    public void invalidateAfterCommit(Long productId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            cache.invalidate(productId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                cache.invalidate(productId);
+            }
+        });
+    }
+
+    public record Entry(String etag, byte[] json) {}
+}
@@ -1,81 +1,78 @@
 package com.isaactai.cloudnativeweb.product;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.isaactai.cloudnativeweb.common.exception.BadRequestException;
 import com.isaactai.cloudnativeweb.common.exception.ForbiddenException;
 import com.isaactai.cloudnativeweb.common.exception.NotFoundException;
 import com.isaactai.cloudnativeweb.product.dto.*;
 import com.isaactai.cloudnativeweb.product.exception.DuplicateSkuException;
-import com.isaactai.cloudnativeweb.user.User;
-import com.isaactai.cloudnativeweb.user.UserService;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.function.IntSupplier;
+
 /**
  * @author tisaac
  */
 @Service
 @RequiredArgsConstructor
 public class ProductService {
+    static final String SKU_CONSTRAINT = "uq_products_sku";
+    static final int MAX_PAGE_SIZE = 100;
 
     private final ProductRepository repo;
-    private final UserService userService;
+    private final ProductResponseCache responseCache;
+    private final ObjectMapper objectMapper;
 
     @Transactional
-    public ProductResponse createForUser(ProductCreateRequest req, String username) {
-        User user = userService.getByUsername(username);
-
-        if (repo.existsBySku(req.sku())) {
-            throw new DuplicateSkuException();
-        }
-
+    public ProductResponse createForUser(ProductCreateRequest req, Long userId) {
         Product p = Product.builder()
                 .name(req.name())
                 .description(req.description())
                 .sku(req.sku())
                 .manufacturer(req.manufacturer())
                 .quantity(req.quantity())
-                .ownerUserId(user.getId())
+                .ownerUserId(userId)
                 .build();
 
-        Product saved = repo.save(p);
-        return ProductMapper.toResponse(saved);
+        // the unique constraint decides, so there is no check-then-insert race on the sku
+        try {
+            Product saved = repo.saveAndFlush(p);
+            return ProductMapper.toResponse(saved);
+        } catch (DataIntegrityViolationException e) {
+            throw translate(e);
+        }
     }
 
     @Transactional
-    public void updateProduct(Long productId, String username, ProductUpdateRequest req) {
-        Product p = locateOwnedProduct(productId, username, "You cannot update this product");
-
-        ensureSkuUnique(req.sku(), p.getId(), p.getSku());
-
-        p.setName(req.name());
-        p.setDescription(req.description());
-        p.setSku(req.sku());
-        p.setManufacturer(req.manufacturer());
-        p.setQuantity(req.quantity());
-
-        repo.save(p);
+    public void updateProduct(Long productId, Long userId, ProductUpdateRequest req) {
+        int rows = write(() -> repo.updateOwned(productId, userId,
+                req.name(), req.description(), req.sku(), req.manufacturer(), req.quantity(), Instant.now()));
+        requireWritten(rows, productId, "You cannot update this product");
+        responseCache.invalidateAfterCommit(productId);
     }
 
     @Transactional
-    public void patchProduct(Long productId, String username, ProductPatchRequest req) {
-        Product p = locateOwnedProduct(productId, username, "You cannot update this product");
-
-        if (req.name() != null)         p.setName(req.name());
-        if (req.description() != null)  p.setDescription(req.description());
-        if (req.manufacturer() != null) p.setManufacturer(req.manufacturer());
-        if (req.quantity() != null)     p.setQuantity(req.quantity());
-        if (req.sku() != null) {
-            ensureSkuUnique(req.sku(), p.getId(), p.getSku());
-            p.setSku(req.sku());
-        }
-
-        repo.save(p);
+    public void patchProduct(Long productId, Long userId, ProductPatchRequest req) {
+        int rows = write(() -> repo.patchOwned(productId, userId,
+                req.name(), req.description(), req.sku(), req.manufacturer(), req.quantity(), Instant.now()));
+        requireWritten(rows, productId, "You cannot update this product");
+        responseCache.invalidateAfterCommit(productId);
     }
 
     @Transactional
-    public void deleteProduct(Long productId, String username) {
-        Product p = locateOwnedProduct(productId, username, "You cannot delete this product");
-        repo.delete(p);
+    public void deleteProduct(Long productId, Long userId) {
+        int rows = repo.deleteOwned(productId, userId);
+        requireWritten(rows, productId, "You cannot delete this product");
+        responseCache.invalidateAfterCommit(productId);
     }
 
     @Transactional
@@ -86,20 +83,92 @@ public class ProductService {
         return ProductMapper.toResponse(p);
     }
 
-    public Product locateOwnedProduct(Long productId, String username, String msg) {
-        User user = userService.getByUsername(username);
+    // Serialized response for the anonymous read path; only a miss opens a (read-only) repository call
+    public ProductResponseCache.Entry getProductJson(Long productId) {
+        return responseCache.get(productId, this::loadProductJson);
+    }
+
+    // Seek pagination: cost depends on the page size, not on how deep the page is
+    public ProductPage listByOwner(Long ownerUserId, Long after, int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new BadRequestException("limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+
+        // one extra row tells us whether there is a next page without a count query
+        List<Product> rows = repo.findByOwnerUserIdAndIdGreaterThanOrderByIdAsc(
+                ownerUserId, after == null ? 0L : after, Limit.of(limit + 1));
+
+        List<ProductResponse> items = rows.stream()
+                .limit(limit)
+                .map(ProductMapper::toResponse)
+                .toList();
+        Long nextAfter = rows.size() > limit ? items.get(items.size() - 1).id() : null;
+        return new ProductPage(items, nextAfter);
+    }
+
+    // Cheap validator for If-None-Match: cache lookup first, otherwise a single-column query
+    public String productETag(Long productId) {
+        ProductResponseCache.Entry cached = responseCache.getIfPresent(productId);
+        if (cached != null) {
+            return cached.etag();
+        }
+        Instant lastUpdated = repo.findDateLastUpdated(productId)
+                .orElseThrow(() -> new NotFoundException("Product not found"));
+        return etagOf(productId, lastUpdated);
+    }
+
+    private ProductResponseCache.Entry loadProductJson(Long productId) {
         Product p = repo.findById(productId)
                 .orElseThrow(() -> new NotFoundException("Product not found"));
+        try {
+            return new ProductResponseCache.Entry(
+                    etagOf(p.getId(), p.getDateLastUpdated()),
+                    objectMapper.writeValueAsBytes(ProductMapper.toResponse(p)));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize product " + productId, e);
+        }
+    }
 
-        if (!p.getOwnerUserId().equals(user.getId())) {
+    // every write bumps date_last_updated (microsecond precision in postgres)
+    private static String etagOf(Long productId, Instant lastUpdated) {
+        return "\"" + productId + "-" + ChronoUnit.MICROS.between(Instant.EPOCH, lastUpdated) + "\"";
+    }
+
+    // userId comes from the authenticated principal, so no users query is needed here
+    public Product locateOwnedProduct(Long productId, Long userId, String msg) {
+        Product p = repo.findById(productId)
+                .orElseThrow(() -> new NotFoundException("Product not found"));
+
+        if (!p.getOwnerUserId().equals(userId)) {
             throw new ForbiddenException(msg);
         }
         return p;
     }
 
-    private void ensureSkuUnique(String newSku, Long currentId, String oldSku) {
-        if (newSku != null && !newSku.equals(oldSku) && repo.existsBySkuAndIdNot(newSku, currentId)) {
-            throw new DuplicateSkuException();
+    private int write(IntSupplier statement) {
+        try {
+            return statement.getAsInt();
+        } catch (DataIntegrityViolationException e) {
+            throw translate(e);
+        }
+    }
+
+    // Only runs on the failure path: tells "missing" (404) apart from "not yours" (403)
+    private void requireWritten(int rows, Long productId, String forbiddenMsg) {
+        if (rows > 0) {
+            return;
+        }
+        if (repo.existsById(productId)) {
+            throw new ForbiddenException(forbiddenMsg);
+        }
+        throw new NotFoundException("Product not found");
+    }
+
+    private static RuntimeException translate(DataIntegrityViolationException e) {
+        if (e.getCause() instanceof ConstraintViolationException cve
+                && SKU_CONSTRAINT.equalsIgnoreCase(cve.getConstraintName())) {
+            return new DuplicateSkuException();
         }
+        return e;
     }
 }
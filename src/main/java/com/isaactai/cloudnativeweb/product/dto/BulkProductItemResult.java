@@ -0,0 +1,22 @@
+package com.isaactai.cloudnativeweb.product.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Outcome of one item of a bulk request, in request order.
+ * @author tisaac
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record BulkProductItemResult(
+    int index,
+    Status status,
+    Long id,
+    String sku,
+    String error
+) {
+    public enum Status { CREATED, UPDATED, DUPLICATE_SKU, INVALID }
+
+    public static BulkProductItemResult invalid(int index, String sku, String error) {
+        return new BulkProductItemResult(index, Status.INVALID, null, sku, error);
+    }
+}
@@ -0,0 +1,13 @@
+package com.isaactai.cloudnativeweb.product.dto;
+
+import java.util.List;
+
+/**
+ * @author tisaac
+ */
+public record BulkProductResponse(
+    int created,
+    int updated,
+    int failed,
+    List<BulkProductItemResult> items
+) {}
@@ -0,0 +1,22 @@
+package com.isaactai.cloudnativeweb.product.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * @author tisaac
+ */
+public record ProductImportResponse(
+    long received,
+    long created,
+    long updated,
+
+    @JsonProperty("rejected_invalid")
+    long rejectedInvalid,
+
+    // same SKU on several lines: the last one wins, the others are counted here
+    @JsonProperty("superseded_in_file")
+    long supersededInFile,
+
+    @JsonProperty("rejected_sku_conflict")
+    long rejectedSkuConflict
+) {}
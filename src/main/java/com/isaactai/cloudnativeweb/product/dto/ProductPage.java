@@ -0,0 +1,16 @@
+package com.isaactai.cloudnativeweb.product.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * @author tisaac
+ */
+public record ProductPage(
+    List<ProductResponse> items,
+
+    // pass as ?after= to get the next page; null on the last page
+    @JsonProperty("next_after")
+    Long nextAfter
+) {}
@@ -0,0 +1,17 @@
+package com.isaactai.cloudnativeweb.storage;
+
+/**
+ * Inclusive byte range, already resolved against the object size.
+ * @author tisaac
+ */
+public record ByteRange(long start, long end) {
+    public ByteRange {
+        if (start < 0 || end < start) {
+            throw new IllegalArgumentException("Invalid range " + start + "-" + end);
+        }
+    }
+
+    public long length() {
+        return end - start + 1;
+    }
+}
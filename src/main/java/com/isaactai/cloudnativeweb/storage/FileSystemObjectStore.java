@@ -0,0 +1,345 @@
+package com.isaactai.cloudnativeweb.storage;
+
+import com.isaactai.cloudnativeweb.config.StorageProps;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * {@link ObjectStore} on the local filesystem, selected by the {@code local-store} profile.
+ *
+ * <p>Layout under {@code app.storage.local.root}: {@code data/<key>} holds the bytes,
+ * {@code meta/<key>} the content type, {@code tmp/} in-progress writes, {@code parts/<upload id>/}
+ * the parts of multipart uploads. A put streams into {@code tmp/} with
+ * {@link FileChannel#transferFrom}, fsyncs, then renames into place atomically, so readers
+ * never see a partial object; completing a multipart upload is a put of the concatenated parts.
+ * @author tisaac
+ */
+@Slf4j
+@Component
+@Profile("local-store")
+public class FileSystemObjectStore implements ObjectStore {
+    private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+
+    private final Path data;
+    private final Path meta;
+    private final Path tmp;
+    private final Path parts;
+
+    public FileSystemObjectStore(StorageProps props) throws IOException {
+        Path root = props.local().root().toAbsolutePath();
+        this.data = Files.createDirectories(root.resolve("data"));
+        this.meta = Files.createDirectories(root.resolve("meta"));
+        this.tmp = Files.createDirectories(root.resolve("tmp"));
+        this.parts = Files.createDirectories(root.resolve("parts"));
+    }
+
+    @Override
+    public void put(String key, String contentType, InputStream in, long size) {
+        Path target = resolve(data, key);
+        Path tmpData = tmp.resolve(UUID.randomUUID().toString());
+        Path tmpMeta = tmp.resolve(UUID.randomUUID() + ".meta");
+        try {
+            try (FileChannel out = FileChannel.open(tmpData, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                ReadableByteChannel src = Channels.newChannel(in);
+                long pos = 0;
+                while (pos < size) {
+                    long n = out.transferFrom(src, pos, size - pos);
+                    if (n <= 0) {
+                        throw new IOException("Stream ended after " + pos + " of " + size + " bytes");
+                    }
+                    pos += n;
+                }
+                out.force(true);
+            }
+            Files.writeString(tmpMeta, contentType == null ? DEFAULT_CONTENT_TYPE : contentType);
+
+            Files.createDirectories(target.getParent());
+            Files.createDirectories(resolve(meta, key).getParent());
+            // meta first: data/<key> appearing is what makes the object visible
+            Files.move(tmpMeta, resolve(meta, key), StandardCopyOption.ATOMIC_MOVE);
+            Files.move(tmpData, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Local put failed for " + key, e);
+        } finally {
+            deleteQuietly(tmpData);
+            deleteQuietly(tmpMeta);
+        }
+    }
+
+    @Override
+    public String createMultipart(String key, String contentType) {
+        resolve(data, key); // reject bad keys now rather than on complete
+        String uploadId = UUID.randomUUID().toString();
+        try {
+            Path dir = Files.createDirectories(parts.resolve(uploadId));
+            Files.writeString(dir.resolve("content-type"), contentType == null ? DEFAULT_CONTENT_TYPE : contentType);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Local multipart create failed for " + key, e);
+        }
+        return uploadId;
+    }
+
+    @Override
+    public String uploadPart(String key, String uploadId, int partNumber, Path file, long size) {
+        Path dir = partsDir(uploadId);
+        Path tmpPart = tmp.resolve(UUID.randomUUID() + ".part");
+        try {
+            Files.copy(file, tmpPart);
+            Files.move(tmpPart, dir.resolve(String.valueOf(partNumber)),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Local part upload failed for " + key, e);
+        } finally {
+            deleteQuietly(tmpPart);
+        }
+        return "\"" + partNumber + "-" + size + "\"";
+    }
+
+    @Override
+    public void completeMultipart(String key, String uploadId, List<String> partETags) {
+        Path dir = partsDir(uploadId);
+        List<InputStream> streams = new ArrayList<>(partETags.size());
+        try {
+            long size = 0;
+            for (int i = 1; i <= partETags.size(); i++) {
+                Path part = dir.resolve(String.valueOf(i));
+                if (!partETags.get(i - 1).equals("\"" + i + "-" + Files.size(part) + "\"")) {
+                    throw new IllegalStateException("Part " + i + " of " + key + " does not match its ETag");
+                }
+                size += Files.size(part);
+                streams.add(Files.newInputStream(part));
+            }
+            String contentType = Files.readString(dir.resolve("content-type"), StandardCharsets.UTF_8);
+            put(key, contentType, new SequenceInputStream(Collections.enumeration(streams)), size);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Local multipart complete failed for " + key, e);
+        } finally {
+            streams.forEach(FileSystemObjectStore::closeQuietly);
+        }
+        abortMultipart(key, uploadId); // the parts are in the object now
+    }
+
+    @Override
+    public void abortMultipart(String key, String uploadId) {
+        Path dir = parts.resolve(uploadId).normalize();
+        if (!parts.equals(dir.getParent()) || !Files.isDirectory(dir)) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            files.forEach(FileSystemObjectStore::deleteQuietly);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        deleteQuietly(dir);
+    }
+
+    private Path partsDir(String uploadId) {
+        Path dir = parts.resolve(uploadId).normalize();
+        if (!parts.equals(dir.getParent()) || !Files.isDirectory(dir)) {
+            throw new IllegalArgumentException("No such multipart upload: " + uploadId);
+        }
+        return dir;
+    }
+
+    @Override
+    public Optional<ObjectContent> get(String key, ByteRange range) {
+        Path file = resolve(data, key);
+        FileChannel ch;
+        try {
+            ch = FileChannel.open(file, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        try {
+            long size = ch.size();
+            long start = range == null ? 0 : range.start();
+            long length = range == null ? size : Math.min(range.end(), size - 1) - start + 1;
+            ch.position(start);
+            InputStream in = new BoundedInputStream(Channels.newInputStream(ch), Math.max(0, length));
+            return Optional.of(new ObjectContent(in, Math.max(0, length), new ObjectInfo(key, size, contentType(key))));
+        } catch (IOException e) {
+            closeQuietly(ch);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Optional<ObjectInfo> head(String key) {
+        try {
+            return Optional.of(new ObjectInfo(key, Files.size(resolve(data, key)), contentType(key)));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void delete(String key) {
+        try {
+            Files.deleteIfExists(resolve(data, key));
+            Files.deleteIfExists(resolve(meta, key));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public List<String> deleteAll(Collection<String> keys) {
+        List<String> failed = new ArrayList<>();
+        for (String key : keys) {
+            try {
+                delete(key);
+            } catch (RuntimeException e) {
+                log.warn("Local delete failed for {}: {}", key, e.getMessage());
+                failed.add(key);
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * Walks the tree in key order, one directory listing at a time, skipping subtrees that are
+     * entirely outside {@code prefix} or before {@code startAfter}.
+     */
+    @Override
+    public ObjectPage list(String prefix, String startAfter, int maxKeys) {
+        List<ObjectInfo> out = new ArrayList<>(Math.min(maxKeys, 1000));
+        try {
+            collect(data, "", prefix == null ? "" : prefix, startAfter, maxKeys, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        String next = out.size() == maxKeys ? out.get(out.size() - 1).key() : null;
+        return new ObjectPage(out, next);
+    }
+
+    @Override
+    public Optional<Path> localFile(String key) {
+        Path file = resolve(data, key);
+        return Files.isRegularFile(file) ? Optional.of(file) : Optional.empty();
+    }
+
+    private void collect(Path dir, String dirKey, String prefix, String startAfter, int max,
+                         List<ObjectInfo> out) throws IOException {
+        List<Entry> entries;
+        try (Stream<Path> children = Files.list(dir)) {
+            // a directory's keys all start with "name/", which is how S3 would order them
+            entries = children.map(p -> Files.isDirectory(p)
+                            ? new Entry(p, dirKey + p.getFileName() + "/", true)
+                            : new Entry(p, dirKey + p.getFileName(), false))
+                    .sorted(Comparator.comparing(Entry::key))
+                    .toList();
+        }
+        for (Entry e : entries) {
+            if (out.size() >= max) {
+                return;
+            }
+            if (e.dir()) {
+                boolean overlapsPrefix = e.key().startsWith(prefix) || prefix.startsWith(e.key());
+                boolean beforeStart = startAfter != null && e.key().compareTo(startAfter) < 0
+                        && !startAfter.startsWith(e.key());
+                if (overlapsPrefix && !beforeStart) {
+                    collect(e.path(), e.key(), prefix, startAfter, max, out);
+                }
+            } else if (e.key().startsWith(prefix) && (startAfter == null || e.key().compareTo(startAfter) > 0)) {
+                out.add(new ObjectInfo(e.key(), Files.size(e.path()), null,
+                        Files.getLastModifiedTime(e.path()).toInstant()));
+            }
+        }
+    }
+
+    private String contentType(String key) throws IOException {
+        try {
+            return Files.readString(resolve(meta, key), StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return DEFAULT_CONTENT_TYPE;
+        }
+    }
+
+    // keys come from our own code, but never let one escape the root
+    private static Path resolve(Path base, String key) {
+        if (key == null || key.isEmpty() || key.startsWith("/") || key.contains("//") || key.contains("\\")) {
+            throw new IllegalArgumentException("Invalid object key: " + key);
+        }
+        Path p = base.resolve(key).normalize();
+        if (!p.startsWith(base) || p.equals(base)) {
+            throw new IllegalArgumentException("Invalid object key: " + key);
+        }
+        return p;
+    }
+
+    private static void deleteQuietly(Path p) {
+        try {
+            Files.deleteIfExists(p);
+        } catch (IOException ignored) {
+            // leftover tmp file, harmless
+        }
+    }
+
+    private static void closeQuietly(Closeable c) {
+        try {
+            c.close();
+        } catch (IOException ignored) {
+            // already failing
+        }
+    }
+
+    private record Entry(Path path, String key, boolean dir) {}
+
+    private static final class BoundedInputStream extends FilterInputStream {
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = super.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.isaactai.cloudnativeweb.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An open object body; {@code length} is what {@code stream} yields (the range length for a ranged get).
+ * @author tisaac
+ */
+public record ObjectContent(InputStream stream, long length, ObjectInfo info) implements Closeable {
+    @Override
+    public void close() throws IOException {
+        stream.close();
+    }
+}
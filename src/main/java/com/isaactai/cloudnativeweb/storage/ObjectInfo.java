@@ -0,0 +1,15 @@
+package com.isaactai.cloudnativeweb.storage;
+
+import java.time.Instant;
+
+/**
+ * @param lastModified set by {@link ObjectStore#list}, which reconciliation uses to leave
+ *                     in-flight uploads alone; null elsewhere
+ * @author tisaac
+ */
+public record ObjectInfo(String key, long size, String contentType, Instant lastModified) {
+
+    public ObjectInfo(String key, long size, String contentType) {
+        this(key, size, contentType, null);
+    }
+}
@@ -0,0 +1,10 @@
+package com.isaactai.cloudnativeweb.storage;
+
+import java.util.List;
+
+/**
+ * @param nextStartAfter pass back to {@link ObjectStore#list} for the next page; null on the last one
+ * @author tisaac
+ */
+public record ObjectPage(List<ObjectInfo> objects, String nextStartAfter) {
+}
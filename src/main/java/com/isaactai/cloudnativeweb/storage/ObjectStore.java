@@ -0,0 +1,112 @@
+package com.isaactai.cloudnativeweb.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Where image bytes live. {@link S3ObjectStore} in production, {@link FileSystemObjectStore}
+ * under the {@code local-store} profile (single-box load tests, offline runs).
+ *
+ * <p>Keys are S3-style: {@code /}-separated, no leading slash, listed in plain string order.
+ * Backend failures surface as {@code BaseApiException}s (502) or unchecked I/O errors.
+ * @author tisaac
+ */
+public interface ObjectStore {
+    // S3's lower bound for every part of a multipart upload except the last
+    long MIN_PART_SIZE = 5L * 1024 * 1024;
+
+    /**
+     * Streams exactly {@code size} bytes from {@code in} to {@code key}. Readers see either the
+     * previous object or the complete new one, never a partial write.
+     */
+    void put(String key, String contentType, InputStream in, long size);
+
+    /**
+     * Uploads {@code file} without holding the calling thread for the transfer where the backend
+     * has a non-blocking client; others write it before returning. The caller keeps {@code file}
+     * until the future completes.
+     */
+    default CompletableFuture<Void> putAsync(String key, String contentType, Path file, long size) {
+        try (InputStream in = Files.newInputStream(file)) {
+            put(key, contentType, in, size);
+            return CompletableFuture.completedFuture(null);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(new UncheckedIOException(e));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Starts an object that is written in parts, each in its own call and possibly on another
+     * instance (resumable uploads). Parts are numbered from 1; all but the last must be at least
+     * {@link #MIN_PART_SIZE}. Nothing is visible under {@code key} until
+     * {@link #completeMultipart}.
+     * @return the upload id the other multipart calls take
+     */
+    String createMultipart(String key, String contentType);
+
+    /**
+     * Stores part {@code partNumber} from {@code file}, replacing an earlier upload of the same
+     * part. The file can be deleted once this returns.
+     * @return the part's ETag, needed to complete the upload
+     */
+    String uploadPart(String key, String uploadId, int partNumber, Path file, long size);
+
+    // assembles the parts, whose ETags are given in part order, into the object
+    void completeMultipart(String key, String uploadId, List<String> partETags);
+
+    // discards the parts; no-op when the upload is already gone
+    void abortMultipart(String key, String uploadId);
+
+    /**
+     * The object's bytes, or just {@code range} of them; empty if there is no such key.
+     * The caller closes the returned content.
+     */
+    Optional<ObjectContent> get(String key, ByteRange range);
+
+    Optional<ObjectInfo> head(String key);
+
+    // no-op when the key does not exist
+    void delete(String key);
+
+    /**
+     * @return the keys that could not be deleted
+     */
+    List<String> deleteAll(Collection<String> keys);
+
+    /**
+     * Up to {@code maxKeys} objects under {@code prefix} with keys after {@code startAfter}
+     * (null for the first page), in key order.
+     */
+    ObjectPage list(String prefix, String startAfter, int maxKeys);
+
+    /**
+     * The file backing {@code key}, for backends that keep objects on local disk; lets callers
+     * serve it with sendfile. Empty otherwise, or if the key does not exist.
+     */
+    default Optional<Path> localFile(String key) {
+        return Optional.empty();
+    }
+
+    // whether presignPut/presignGet can hand out URLs clients use without going through us
+    default boolean presigns() {
+        return false;
+    }
+
+    default Optional<PresignedUrl> presignPut(String key, String contentType, long size, Duration ttl) {
+        return Optional.empty();
+    }
+
+    default Optional<PresignedUrl> presignGet(String key, Duration ttl, String responseCacheControl) {
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,11 @@
+package com.isaactai.cloudnativeweb.storage;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * @param headers must accompany the request unchanged, they are part of the signature
+ * @author tisaac
+ */
+public record PresignedUrl(String url, Map<String, String> headers, Instant expiresAt) {
+}
@@ -0,0 +1,311 @@
+package com.isaactai.cloudnativeweb.storage;
+
+import com.isaactai.cloudnativeweb.config.UploadConfig;
+import com.isaactai.cloudnativeweb.config.UploadProps;
+import com.isaactai.cloudnativeweb.image.exception.S3DownloadException;
+import com.isaactai.cloudnativeweb.image.exception.S3UploadException;
+import com.isaactai.cloudnativeweb.image.exception.UploadBusyException;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.services.s3.presigner.model.GetObjectPresignRequest;
+import software.amazon.awssdk.services.s3.presigner.model.PresignedGetObjectRequest;
+import software.amazon.awssdk.services.s3.presigner.model.PresignedPutObjectRequest;
+import software.amazon.awssdk.services.s3.presigner.model.PutObjectPresignRequest;
+
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * {@link ObjectStore} over one S3 bucket ({@code aws.s3.bucket}).
+ * @author tisaac
+ */
+@Slf4j
+@Component
+@Profile("!local-store")
+public class S3ObjectStore implements ObjectStore {
+    // DeleteObjects accepts at most 1000 keys per call
+    static final int MAX_DELETE_BATCH = 1000;
+
+    private final S3Client s3;
+    private final S3AsyncClient s3Async; // only with app.upload.async.enabled
+    private final Executor completion; // likewise
+    private final S3Presigner presigner;
+    private final S3ObjectUploader uploader;
+    private final String bucket;
+
+    public S3ObjectStore(S3Client s3, ObjectProvider<S3AsyncClient> s3Async,
+                         @Qualifier(UploadConfig.COMPLETION_EXECUTOR) ObjectProvider<Executor> completion,
+                         S3Presigner presigner, UploadProps props, MeterRegistry registry,
+                         @Value("${aws.s3.bucket}") String bucket) {
+        this.s3 = s3;
+        this.s3Async = s3Async.getIfAvailable();
+        this.completion = completion.getIfAvailable();
+        this.presigner = presigner;
+        this.uploader = new S3ObjectUploader(s3, props, registry);
+        this.bucket = bucket;
+    }
+
+    @Override
+    public void put(String key, String contentType, InputStream in, long size) {
+        uploader.upload(bucket, key, contentType, in, size);
+    }
+
+    // the body is read from disk by the SDK's event loop as the connection drains it; what the
+    // caller chains on runs on the completion executor, or fails with 503 when that is full
+    @Override
+    public CompletableFuture<Void> putAsync(String key, String contentType, Path file, long size) {
+        if (s3Async == null || completion == null) {
+            return ObjectStore.super.putAsync(key, contentType, file, size);
+        }
+        PutObjectRequest req = PutObjectRequest.builder()
+                .bucket(bucket)
+                .key(key)
+                .contentType(contentType)
+                .contentLength(size)
+                .build();
+        return s3Async.putObject(req, AsyncRequestBody.fromFile(file))
+                .<Void>handleAsync((res, e) -> {
+                    if (e != null) {
+                        log.warn("S3 async put failed for key {}: {}", key, e.getMessage());
+                        throw new S3UploadException();
+                    }
+                    return null;
+                }, completion)
+                .exceptionally(e -> {
+                    if (e.getCause() instanceof RejectedExecutionException) {
+                        // maybe stored but never recorded: the caller cleans up (ImageService drops its pin,
+                        // which queues the object for deletion, or deletes an object under a key of its own)
+                        log.warn("Upload completion executor is full, refusing key {}", key);
+                        throw new UploadBusyException();
+                    }
+                    throw e instanceof CompletionException ce ? ce : new CompletionException(e);
+                });
+    }
+
+    @Override
+    public String createMultipart(String key, String contentType) {
+        try {
+            return s3.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                    .bucket(bucket)
+                    .key(key)
+                    .contentType(contentType)
+                    .build()).uploadId();
+        } catch (SdkException e) {
+            log.warn("S3 create multipart upload failed for key {}: {}", key, e.getMessage());
+            throw new S3UploadException();
+        }
+    }
+
+    // from a file, so the SDK can replay the body on a retry
+    @Override
+    public String uploadPart(String key, String uploadId, int partNumber, Path file, long size) {
+        try {
+            return s3.uploadPart(UploadPartRequest.builder()
+                    .bucket(bucket)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .partNumber(partNumber)
+                    .contentLength(size)
+                    .build(), RequestBody.fromFile(file)).eTag();
+        } catch (SdkException e) {
+            log.warn("S3 upload of part {} failed for key {}: {}", partNumber, key, e.getMessage());
+            throw new S3UploadException();
+        }
+    }
+
+    @Override
+    public void completeMultipart(String key, String uploadId, List<String> partETags) {
+        List<CompletedPart> parts = new ArrayList<>(partETags.size());
+        for (int i = 0; i < partETags.size(); i++) {
+            parts.add(CompletedPart.builder().partNumber(i + 1).eTag(partETags.get(i)).build());
+        }
+        try {
+            s3.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(bucket)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(parts).build())
+                    .build());
+        } catch (SdkException e) {
+            log.warn("S3 complete multipart upload failed for key {}: {}", key, e.getMessage());
+            throw new S3UploadException();
+        }
+    }
+
+    @Override
+    public void abortMultipart(String key, String uploadId) {
+        try {
+            s3.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(bucket)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .build());
+        } catch (NoSuchUploadException e) {
+            // already completed or aborted
+        }
+    }
+
+    @Override
+    public Optional<ObjectContent> get(String key, ByteRange range) {
+        GetObjectRequest.Builder req = GetObjectRequest.builder().bucket(bucket).key(key);
+        if (range != null) {
+            req.range("bytes=" + range.start() + "-" + range.end());
+        }
+        try {
+            ResponseInputStream<GetObjectResponse> in = s3.getObject(req.build());
+            GetObjectResponse meta = in.response();
+            long total = range == null ? meta.contentLength() : totalFromContentRange(meta);
+            return Optional.of(new ObjectContent(in, meta.contentLength(),
+                    new ObjectInfo(key, total, meta.contentType())));
+        } catch (NoSuchKeyException e) {
+            return Optional.empty();
+        } catch (SdkException e) {
+            log.warn("S3 get failed for key {}: {}", key, e.getMessage());
+            throw new S3DownloadException();
+        }
+    }
+
+    @Override
+    public Optional<ObjectInfo> head(String key) {
+        try {
+            HeadObjectResponse head = s3.headObject(HeadObjectRequest.builder().bucket(bucket).key(key).build());
+            return Optional.of(new ObjectInfo(key, head.contentLength(), head.contentType()));
+        } catch (NoSuchKeyException e) {
+            return Optional.empty();
+        } catch (S3Exception e) {
+            if (e.statusCode() == 404) {
+                return Optional.empty(); // HEAD has no error body, so no NoSuchKey code either
+            }
+            log.warn("S3 head failed for key {}: {}", key, e.getMessage());
+            throw new S3DownloadException();
+        } catch (SdkException e) {
+            log.warn("S3 head failed for key {}: {}", key, e.getMessage());
+            throw new S3DownloadException();
+        }
+    }
+
+    @Override
+    public void delete(String key) {
+        s3.deleteObject(DeleteObjectRequest.builder().bucket(bucket).key(key).build());
+    }
+
+    @Override
+    public List<String> deleteAll(Collection<String> keys) {
+        List<String> failed = new ArrayList<>();
+        List<ObjectIdentifier> batch = new ArrayList<>(Math.min(keys.size(), MAX_DELETE_BATCH));
+        for (String key : keys) {
+            batch.add(ObjectIdentifier.builder().key(key).build());
+            if (batch.size() == MAX_DELETE_BATCH) {
+                failed.addAll(deleteBatch(batch));
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            failed.addAll(deleteBatch(batch));
+        }
+        return failed;
+    }
+
+    private List<String> deleteBatch(List<ObjectIdentifier> batch) {
+        try {
+            DeleteObjectsResponse res = s3.deleteObjects(DeleteObjectsRequest.builder()
+                    .bucket(bucket)
+                    .delete(Delete.builder().objects(batch).quiet(true).build()) // only errors come back
+                    .build());
+            return res.errors().stream().map(S3Error::key).toList();
+        } catch (SdkException e) {
+            log.warn("S3 batch delete of {} keys failed: {}", batch.size(), e.getMessage());
+            return batch.stream().map(ObjectIdentifier::key).toList();
+        }
+    }
+
+    @Override
+    public ObjectPage list(String prefix, String startAfter, int maxKeys) {
+        ListObjectsV2Response res = s3.listObjectsV2(ListObjectsV2Request.builder()
+                .bucket(bucket)
+                .prefix(prefix)
+                .startAfter(startAfter)
+                .maxKeys(maxKeys)
+                .build());
+        List<ObjectInfo> objects = res.contents().stream()
+                .map(o -> new ObjectInfo(o.key(), o.size(), null, o.lastModified())) // listings carry no content type
+                .toList();
+        String next = Boolean.TRUE.equals(res.isTruncated()) && !objects.isEmpty()
+                ? objects.get(objects.size() - 1).key()
+                : null;
+        return new ObjectPage(objects, next);
+    }
+
+    @Override
+    public boolean presigns() {
+        return true;
+    }
+
+    // Content-Type and Content-Length are signed, so S3 rejects any other type or size
+    @Override
+    public Optional<PresignedUrl> presignPut(String key, String contentType, long size, Duration ttl) {
+        PresignedPutObjectRequest presigned = presigner.presignPutObject(PutObjectPresignRequest.builder()
+                .signatureDuration(ttl)
+                .putObjectRequest(PutObjectRequest.builder()
+                        .bucket(bucket)
+                        .key(key)
+                        .contentType(contentType)
+                        .contentLength(size)
+                        .build())
+                .build());
+
+        Map<String, String> headers = new LinkedHashMap<>();
+        presigned.signedHeaders().forEach((name, values) -> {
+            if (!name.equalsIgnoreCase("host")) {
+                headers.put(name, String.join(",", values));
+            }
+        });
+        return Optional.of(new PresignedUrl(presigned.url().toString(), headers, presigned.expiration()));
+    }
+
+    @Override
+    public Optional<PresignedUrl> presignGet(String key, Duration ttl, String responseCacheControl) {
+        PresignedGetObjectRequest presigned = presigner.presignGetObject(GetObjectPresignRequest.builder()
+                .signatureDuration(ttl)
+                .getObjectRequest(GetObjectRequest.builder()
+                        .bucket(bucket)
+                        .key(key)
+                        .responseCacheControl(responseCacheControl)
+                        .build())
+                .build());
+        return Optional.of(new PresignedUrl(presigned.url().toString(), Map.of(), presigned.expiration()));
+    }
+
+    // "bytes 0-99/1234" -> 1234
+    private static long totalFromContentRange(GetObjectResponse meta) {
+        String cr = meta.contentRange();
+        if (cr == null || cr.endsWith("/*")) {
+            return meta.contentLength();
+        }
+        return Long.parseLong(cr.substring(cr.lastIndexOf('/') + 1));
+    }
+}
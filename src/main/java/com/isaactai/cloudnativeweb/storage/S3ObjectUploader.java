@@ -0,0 +1,166 @@
+package com.isaactai.cloudnativeweb.storage;
+
+import com.isaactai.cloudnativeweb.config.UploadProps;
+import com.isaactai.cloudnativeweb.image.exception.S3UploadException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Streams an upload to S3 without ever holding the whole object in memory.
+ *
+ * <p>Objects up to {@code app.upload.multipart-threshold} go out as a single PUT fed straight
+ * from the stream. Larger ones use multipart upload: each part is read into a buffer borrowed
+ * from a fixed pool and sent from there without copying, so one upload holds at most one part
+ * and all uploads together at most {@code part-buffers * part-size}, whatever the file sizes.
+ * @author tisaac
+ */
+@Slf4j
+class S3ObjectUploader {
+    private final S3Client s3;
+    private final long multipartThreshold;
+    private final int partSize;
+    private final long bufferWaitMs;
+    private final BlockingQueue<byte[]> freeBuffers;
+    private final AtomicInteger allocated = new AtomicInteger();
+    private final int maxBuffers;
+
+    S3ObjectUploader(S3Client s3, UploadProps props, MeterRegistry registry) {
+        if (props.partSize().toBytes() < ObjectStore.MIN_PART_SIZE || props.partSize().toBytes() > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("app.upload.part-size must be between 5MB and 2GB");
+        }
+        this.s3 = s3;
+        this.partSize = (int) props.partSize().toBytes();
+        this.multipartThreshold = Math.max(props.multipartThreshold().toBytes(), partSize);
+        this.bufferWaitMs = props.bufferWait().toMillis();
+        this.maxBuffers = Math.max(1, props.partBuffers());
+        this.freeBuffers = new ArrayBlockingQueue<>(maxBuffers);
+
+        Gauge.builder("upload.part.buffers.in_use", this, u -> u.allocated.get() - u.freeBuffers.size())
+                .register(registry);
+    }
+
+    void upload(String bucket, String key, String contentType, InputStream in, long size) {
+        if (size <= multipartThreshold) {
+            try {
+                s3.putObject(PutObjectRequest.builder()
+                                .bucket(bucket)
+                                .key(key)
+                                .contentType(contentType)
+                                .contentLength(size)
+                                .build(),
+                        RequestBody.fromInputStream(in, size));
+            } catch (SdkException e) {
+                log.warn("S3 put failed for key {}: {}", key, e.getMessage());
+                throw new S3UploadException();
+            }
+            return;
+        }
+        uploadMultipart(bucket, key, contentType, in);
+    }
+
+    private void uploadMultipart(String bucket, String key, String contentType, InputStream in) {
+        // before the upload exists: timing out on the pool must not leave an upload to abort
+        byte[] buf = acquireBuffer();
+        String uploadId;
+        try {
+            uploadId = s3.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                    .bucket(bucket)
+                    .key(key)
+                    .contentType(contentType)
+                    .build()).uploadId();
+        } catch (SdkException e) {
+            freeBuffers.offer(buf);
+            log.warn("S3 create multipart upload failed for key {}: {}", key, e.getMessage());
+            throw new S3UploadException();
+        } catch (RuntimeException e) {
+            freeBuffers.offer(buf);
+            throw e;
+        }
+
+        try {
+            List<CompletedPart> parts = new ArrayList<>();
+            int n;
+            while ((n = in.readNBytes(buf, 0, partSize)) > 0) {
+                int partNumber = parts.size() + 1;
+                int len = n;
+                // a fresh stream over the same bytes on every call keeps SDK retries working
+                RequestBody body = RequestBody.fromContentProvider(
+                        () -> new ByteArrayInputStream(buf, 0, len), len, contentType);
+                String eTag = s3.uploadPart(UploadPartRequest.builder()
+                        .bucket(bucket)
+                        .key(key)
+                        .uploadId(uploadId)
+                        .partNumber(partNumber)
+                        .contentLength((long) len)
+                        .build(), body).eTag();
+                parts.add(CompletedPart.builder().partNumber(partNumber).eTag(eTag).build());
+            }
+
+            s3.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(bucket)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(parts).build())
+                    .build());
+        } catch (IOException | SdkException e) {
+            log.warn("S3 multipart upload failed for key {}: {}", key, e.getMessage());
+            abort(bucket, key, uploadId);
+            throw new S3UploadException();
+        } catch (RuntimeException e) {
+            abort(bucket, key, uploadId);
+            throw e;
+        } finally {
+            freeBuffers.offer(buf);
+        }
+    }
+
+    // Pool grows lazily up to maxBuffers; past that, uploads wait for a part buffer instead of allocating
+    private byte[] acquireBuffer() {
+        byte[] buf = freeBuffers.poll();
+        if (buf != null) {
+            return buf;
+        }
+        if (allocated.incrementAndGet() <= maxBuffers) {
+            return new byte[partSize];
+        }
+        allocated.decrementAndGet();
+        try {
+            buf = freeBuffers.poll(bufferWaitMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (buf == null) {
+            log.warn("No upload part buffer free within {}ms", bufferWaitMs);
+            throw new S3UploadException();
+        }
+        return buf;
+    }
+
+    private void abort(String bucket, String key, String uploadId) {
+        try {
+            s3.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(bucket)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .build());
+        } catch (SdkException e) {
+            // left for the bucket's AbortIncompleteMultipartUpload lifecycle rule
+            log.warn("S3 abort failed for key {} upload {}: {}", key, uploadId, e.getMessage());
+        }
+    }
+}
@@ -18,7 +18,8 @@ import java.util.UUID;
 @Builder
 public class User {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "users_id_seq")
+    @SequenceGenerator(name = "users_id_seq", sequenceName = "users_id_seq", allocationSize = 50)
     @Column(name = "id")
     private Long id;
 
@@ -49,6 +50,10 @@ public class User {
     @Column(name = "verification_token_generated_at")
     private Instant tokenGenerateAt;
 
+    // bumped on password change; bearer tokens issued at an older version are rejected
+    @Column(name = "token_version", nullable = false)
+    private int tokenVersion;
+
     @PrePersist
     void onCreate() {
         Instant now = Instant.now();
@@ -1,8 +1,12 @@
 package com.isaactai.cloudnativeweb.user;
 
+import com.isaactai.cloudnativeweb.common.exception.ForbiddenException;
 import com.isaactai.cloudnativeweb.metrics.ApiObserved;
 import com.isaactai.cloudnativeweb.metrics.ApiResourceTag;
 import com.isaactai.cloudnativeweb.logging.AccessNote;
+import com.isaactai.cloudnativeweb.user.auth.AuthUser;
+import com.isaactai.cloudnativeweb.user.auth.BearerTokenAuthentication;
+import com.isaactai.cloudnativeweb.user.dto.TokenResponse;
 import com.isaactai.cloudnativeweb.user.dto.UserCreateRequest;
 import com.isaactai.cloudnativeweb.user.dto.UserResponse;
 import com.isaactai.cloudnativeweb.user.dto.UserUpdateRequest;
@@ -12,6 +16,7 @@ import lombok.AllArgsConstructor;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 
 import java.time.Instant;
@@ -52,9 +57,9 @@ public class UserController {
     public ResponseEntity<Void> updateUser(
             @PathVariable int userId,
             @Valid @RequestBody UserUpdateRequest req,
-            Authentication auth
+            @AuthenticationPrincipal AuthUser me
     ) {
-        userService.updateSelf(userId, auth.getName(), req);
+        userService.updateSelf(userId, me.getId(), req);
         return ResponseEntity.noContent().build();
     }
 
@@ -68,12 +73,29 @@ public class UserController {
     @ApiObserved
     public ResponseEntity<UserResponse> getUser(
             @PathVariable int userId,
-            Authentication auth) {
+            @AuthenticationPrincipal AuthUser auth) {
 
-        UserResponse me = userService.getSelf(userId, auth.getName());
+        UserResponse me = userService.getSelf(userId, auth.getId());
         return ResponseEntity.ok(me);
     }
 
+    // One Basic login -> short-lived bearer token for the following calls
+    @PostMapping("/token")
+    @AccessNote(
+            label = "User",
+            success = "Token issued successfully",
+            clientWarn = "Token issue failed",
+            serverError = "Unexpected error occurred during token issue"
+    )
+    @ApiObserved
+    public ResponseEntity<TokenResponse> issueToken(Authentication auth) {
+        // no refresh-by-token: a token must not be able to extend its own lifetime
+        if (auth instanceof BearerTokenAuthentication) {
+            throw new ForbiddenException("Token endpoint requires Basic credentials");
+        }
+        return ResponseEntity.ok(userService.issueToken((AuthUser) auth.getPrincipal()));
+    }
+
     @GetMapping("/validateEmail")
     @AccessNote(
             label = "User",
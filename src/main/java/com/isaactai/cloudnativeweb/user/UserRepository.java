@@ -1,7 +1,12 @@
 package com.isaactai.cloudnativeweb.user;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.Optional;
 
 /**
@@ -10,4 +15,12 @@ import java.util.Optional;
 public interface UserRepository extends JpaRepository<User, Long> {
     boolean existsByUsername(String username);
     Optional<User> findByUsername(String username);
+
+    @Query("select u.tokenVersion from User u where u.id = :id")
+    Optional<Integer> findTokenVersion(@Param("id") Long id);
+
+    // the verification emails of a whole outbox batch went out: one statement, not a lookup per user
+    @Modifying
+    @Query("update User u set u.tokenGenerateAt = :sentAt where u.username in :usernames")
+    int markTokensSent(@Param("usernames") Collection<String> usernames, @Param("sentAt") Instant sentAt);
 }
@@ -8,6 +8,10 @@ import com.isaactai.cloudnativeweb.common.exception.BadRequestException;
 import com.isaactai.cloudnativeweb.user.exception.DuplicateEmailException;
 import com.isaactai.cloudnativeweb.common.exception.ForbiddenException;
 import com.isaactai.cloudnativeweb.common.exception.NotFoundException;
+import com.isaactai.cloudnativeweb.user.auth.AuthTokenService;
+import com.isaactai.cloudnativeweb.user.auth.AuthUser;
+import com.isaactai.cloudnativeweb.user.auth.VerifiedCredentialCache;
+import com.isaactai.cloudnativeweb.user.dto.TokenResponse;
 import com.isaactai.cloudnativeweb.user.verification.EmailVerificationService;
 import jakarta.transaction.Transactional;
 import lombok.AllArgsConstructor;
@@ -27,6 +31,8 @@ public class UserService {
     private final PasswordEncoder encoder;
     private final EmailVerificationService emailVerificationService;
     private final SnsPublisher snsPublisher;
+    private final VerifiedCredentialCache credentialCache;
+    private final AuthTokenService tokenService;
 
     @Transactional
     public UserResponse createUser(UserCreateRequest req) {
@@ -57,15 +63,15 @@ public class UserService {
     }
 
     @Transactional
-    public void updateSelf(int userId, String authUsername, UserUpdateRequest req) {
-        // find curr login user
-        User me = getByUsername(authUsername);
-
-        // confirm only can modify itself
-        if (me.getId() != userId) {
+    public void updateSelf(int userId, Long authUserId, UserUpdateRequest req) {
+        // confirm only can modify itself (id comes from the principal, no lookup needed)
+        if (authUserId != userId) {
             throw new ForbiddenException("Action Forbidden");
         }
 
+        // find curr login user
+        User me = getById(authUserId);
+
         // at least one field need to be updated
         boolean changed = false;
         if (req.firstName() != null) {
@@ -78,6 +84,11 @@ public class UserService {
         }
         if (req.password() != null) {
             me.setPwdHash(encoder.encode(req.password()));
+            // old password must stop working immediately, not after the cache TTL
+            credentialCache.invalidate(me.getUsername());
+            // and so must every bearer token issued with it
+            me.setTokenVersion(me.getTokenVersion() + 1);
+            tokenService.revoke(me.getId());
             changed = true;
         }
 
@@ -89,13 +100,13 @@ public class UserService {
         userRepo.save(me);
     }
 
-    public UserResponse getSelf(int userId, String authUsername) {
-        User me = getByUsername(authUsername);
-
-        if (me.getId() != userId) {
+    public UserResponse getSelf(int userId, Long authUserId) {
+        if (authUserId != userId) {
             throw new ForbiddenException("Action Forbidden");
         }
 
+        User me = getById(authUserId);
+
         return new UserResponse(
                 me.getId(),
                 me.getFirstName(),
@@ -106,8 +117,13 @@ public class UserService {
         );
     }
 
-    public User getByUsername(String username) {
-        return userRepo.findByUsername(username)
+    public TokenResponse issueToken(AuthUser me) {
+        AuthTokenService.IssuedToken t = tokenService.issue(me.getId(), me.getUsername());
+        return new TokenResponse(t.token(), "Bearer", t.expiresInSeconds());
+    }
+
+    public User getById(Long id) {
+        return userRepo.findById(id)
                 .orElseThrow(() -> new NotFoundException("User not found"));
     }
 }
\ No newline at end of file
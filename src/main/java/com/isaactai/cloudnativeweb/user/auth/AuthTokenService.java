@@ -0,0 +1,144 @@
+package com.isaactai.cloudnativeweb.user.auth;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.isaactai.cloudnativeweb.config.AuthProps;
+import com.isaactai.cloudnativeweb.user.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Optional;
+
+/**
+ * Issues and verifies compact HMAC-SHA256 signed bearer tokens.
+ *
+ * <p>Format: {@code base64url(userId:tokenVersion:expiresEpochSec:username) + "." + base64url(hmac)}.
+ * Verification is CPU only (HMAC, no BCrypt) while the user's token version is in a bounded
+ * per-node cache; a miss costs one primary-key read. A password change bumps that version: tokens
+ * issued before it stop working on this node at once, and on other nodes once their cached
+ * version expires ({@code version-ttl}).
+ * @author tisaac
+ */
+@Slf4j
+@Service
+public class AuthTokenService {
+    private static final String HMAC_ALG = "HmacSHA256";
+    private static final Base64.Encoder B64 = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder B64D = Base64.getUrlDecoder();
+
+    private final SecretKeySpec key;
+    private final Duration ttl;
+    private final UserRepository userRepo;
+    private final Cache<Long, Integer> versions;
+
+    public AuthTokenService(AuthProps props, UserRepository userRepo, MeterRegistry registry) {
+        this.userRepo = userRepo;
+        AuthProps.TokenProps cfg = props.token();
+        this.ttl = cfg.ttl();
+        this.versions = Caffeine.newBuilder()
+                .maximumSize(cfg.versionCacheSize())
+                .expireAfterWrite(cfg.versionTtl())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(registry, versions, "auth.token.versions");
+
+        byte[] secret;
+        if (cfg.secret() == null || cfg.secret().isBlank()) {
+            secret = new byte[32];
+            new SecureRandom().nextBytes(secret);
+            log.warn("AUTH_TOKEN_SECRET not set, using a random per-process key; tokens will not survive restarts or work across nodes");
+        } else {
+            secret = cfg.secret().getBytes(StandardCharsets.UTF_8);
+            if (secret.length < 32) {
+                throw new IllegalStateException("app.auth.token.secret must be at least 32 bytes");
+            }
+        }
+        this.key = new SecretKeySpec(secret, HMAC_ALG);
+    }
+
+    public IssuedToken issue(Long userId, String username) {
+        // read now: a password change racing with this issues a token that is already revoked
+        int version = userRepo.findTokenVersion(userId)
+                .orElseThrow(() -> new IllegalStateException("No user " + userId));
+        Instant expiresAt = Instant.now().plus(ttl);
+        String payload = userId + ":" + version + ":" + expiresAt.getEpochSecond() + ":" + username;
+        String body = B64.encodeToString(payload.getBytes(StandardCharsets.UTF_8));
+        String token = body + "." + B64.encodeToString(sign(body));
+        return new IssuedToken(token, ttl.toSeconds());
+    }
+
+    public Optional<VerifiedToken> verify(String token) {
+        int dot = token.indexOf('.');
+        if (dot <= 0 || dot == token.length() - 1) {
+            return Optional.empty();
+        }
+        String body = token.substring(0, dot);
+
+        try {
+            byte[] sig = B64D.decode(token.substring(dot + 1));
+            if (!MessageDigest.isEqual(sig, sign(body))) {
+                return Optional.empty();
+            }
+
+            String[] parts = new String(B64D.decode(body), StandardCharsets.UTF_8).split(":", 4);
+            if (parts.length != 4) {
+                return Optional.empty();
+            }
+            if (Instant.now().getEpochSecond() >= Long.parseLong(parts[2])) {
+                return Optional.empty(); // expired
+            }
+            Long userId = Long.parseLong(parts[0]);
+            // a user that is gone is not cached, so it can't fill the cache
+            Integer current = versions.get(userId, id -> userRepo.findTokenVersion(id).orElse(null));
+            if (current == null || current != Integer.parseInt(parts[1])) {
+                return Optional.empty(); // password changed since, or the user is gone
+            }
+            return Optional.of(new VerifiedToken(userId, parts[3]));
+        } catch (IllegalArgumentException e) { // bad base64 / number
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Forgets the user's token version now and again once the surrounding transaction
+     * completes, so a verification that read the old version before the commit cannot keep it.
+     */
+    public void revoke(Long userId) {
+        versions.invalidate(userId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    versions.invalidate(userId);
+                }
+            });
+        }
+    }
+
+    private byte[] sign(String body) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALG);
+            mac.init(key);
+            return mac.doFinal(body.getBytes(StandardCharsets.US_ASCII));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC not available", e);
+        }
+    }
+
+    public record IssuedToken(String token, long expiresInSeconds) {}
+
+    public record VerifiedToken(Long userId, String username) {}
+}
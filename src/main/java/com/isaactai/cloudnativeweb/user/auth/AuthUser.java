@@ -0,0 +1,59 @@
+package com.isaactai.cloudnativeweb.user.auth;
+
+import org.springframework.security.core.CredentialsContainer;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Security principal for both Basic and bearer requests.
+ *
+ * <p>Carries the immutable user id resolved at authentication time, so services can
+ * use it directly instead of looking the user up by name again.
+ * @author tisaac
+ */
+public final class AuthUser implements UserDetails, CredentialsContainer {
+    private static final List<GrantedAuthority> AUTHORITIES = AuthorityUtils.createAuthorityList("USER");
+
+    private final Long id;
+    private final String username;
+    private String password;
+
+    public AuthUser(Long id, String username, String password) {
+        this.id = id;
+        this.username = username;
+        this.password = password;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    @Override
+    public String getUsername() {
+        return username;
+    }
+
+    @Override
+    public String getPassword() {
+        return password;
+    }
+
+    @Override
+    public Collection<? extends GrantedAuthority> getAuthorities() {
+        return AUTHORITIES;
+    }
+
+    @Override
+    public void eraseCredentials() {
+        this.password = null;
+    }
+
+    @Override
+    public String toString() {
+        return "AuthUser[id=" + id + ", username=" + username + "]";
+    }
+}
@@ -0,0 +1,27 @@
+package com.isaactai.cloudnativeweb.user.auth;
+
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+
+/**
+ * Authentication produced by {@link BearerTokenAuthenticationFilter} from a verified token.
+ * @author tisaac
+ */
+public class BearerTokenAuthentication extends AbstractAuthenticationToken {
+    private final AuthUser principal;
+
+    public BearerTokenAuthentication(AuthUser principal) {
+        super(principal.getAuthorities());
+        this.principal = principal;
+        setAuthenticated(true);
+    }
+
+    @Override
+    public Object getCredentials() {
+        return null;
+    }
+
+    @Override
+    public AuthUser getPrincipal() {
+        return principal;
+    }
+}
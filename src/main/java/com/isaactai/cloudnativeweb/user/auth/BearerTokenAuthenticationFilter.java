@@ -0,0 +1,61 @@
+package com.isaactai.cloudnativeweb.user.auth;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.context.SecurityContextHolderStrategy;
+import org.springframework.security.web.AuthenticationEntryPoint;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * Stateless filter for {@code Authorization: Bearer <token>} requests.
+ *
+ * <p>Not a {@code @Component} on purpose: it is only added to the security chain in
+ * {@code SecurityConfig}, never to the servlet container's filter chain.
+ * @author tisaac
+ */
+public class BearerTokenAuthenticationFilter extends OncePerRequestFilter {
+    private static final String PREFIX = "Bearer ";
+
+    private final AuthTokenService tokenService;
+    private final AuthenticationEntryPoint entryPoint;
+    private final SecurityContextHolderStrategy holder = SecurityContextHolder.getContextHolderStrategy();
+
+    public BearerTokenAuthenticationFilter(AuthTokenService tokenService, AuthenticationEntryPoint entryPoint) {
+        this.tokenService = tokenService;
+        this.entryPoint = entryPoint;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest req, HttpServletResponse res, FilterChain chain)
+            throws ServletException, IOException {
+        String header = req.getHeader(HttpHeaders.AUTHORIZATION);
+        if (header == null || !header.regionMatches(true, 0, PREFIX, 0, PREFIX.length())) {
+            chain.doFilter(req, res); // not ours, let Basic (or anonymous) handle it
+            return;
+        }
+
+        Optional<AuthTokenService.VerifiedToken> verified = tokenService.verify(header.substring(PREFIX.length()).trim());
+        if (verified.isEmpty()) {
+            holder.clearContext();
+            entryPoint.commence(req, res, new BadCredentialsException("Invalid or expired token"));
+            return;
+        }
+
+        BearerTokenAuthentication auth = new BearerTokenAuthentication(
+                new AuthUser(verified.get().userId(), verified.get().username(), null));
+        SecurityContext ctx = holder.createEmptyContext();
+        ctx.setAuthentication(auth);
+        holder.setContext(ctx);
+
+        chain.doFilter(req, res);
+    }
+}
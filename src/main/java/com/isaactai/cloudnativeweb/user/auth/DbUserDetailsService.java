@@ -21,11 +21,7 @@ public class DbUserDetailsService implements UserDetailsService {
         User u = userRepo.findByUsername(username)
                 .orElseThrow(() -> new UsernameNotFoundException("User not found"));
 
-        // Convert our User entity into a Spring Security UserDetails object
-        return org.springframework.security.core.userdetails.User
-                .withUsername(u.getUsername())
-                .password(u.getPwdHash())
-                .authorities("USER")
-                .build();
+        // Convert our User entity into a Spring Security UserDetails object (keeps the id for later use)
+        return new AuthUser(u.getId(), u.getUsername(), u.getPwdHash());
     }
 }
@@ -0,0 +1,109 @@
+package com.isaactai.cloudnativeweb.user.auth;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.isaactai.cloudnativeweb.config.AuthProps;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded, TTL-evicting cache of credentials that already passed a full BCrypt check.
+ *
+ * <p>Entries hold an HMAC of the password (keyed with a random per-process secret),
+ * never the password itself, so a heap dump does not leak anything cheaper to crack
+ * than the BCrypt hashes in the database.
+ * @author tisaac
+ */
+@Component
+public class VerifiedCredentialCache {
+    private static final String HMAC_ALG = "HmacSHA256";
+
+    private final Cache<String, Entry> cache;
+    private final SecretKeySpec hmacKey;
+
+    // bumped on every invalidation so a verification that raced with a password change is not kept
+    private final AtomicLong generation = new AtomicLong();
+
+    public VerifiedCredentialCache(AuthProps props, MeterRegistry registry) {
+        AuthProps.CredentialCacheProps cfg = props.credentialCache();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(cfg.maxSize())
+                .expireAfterWrite(cfg.ttl())
+                .recordStats()
+                .build();
+
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        this.hmacKey = new SecretKeySpec(secret, HMAC_ALG);
+
+        // exposes cache.gets{result=hit|miss}, cache.evictions, cache.size ...
+        CaffeineCacheMetrics.monitor(registry, cache, "auth.credentials");
+    }
+
+    public long generation() {
+        return generation.get();
+    }
+
+    // Returns the cached principal when this exact (username, password) pair was verified recently
+    public UserDetails lookup(String username, String password) {
+        Entry e = cache.getIfPresent(username);
+        if (e == null) {
+            return null;
+        }
+        return MessageDigest.isEqual(e.digest(), digest(password)) ? e.principal() : null;
+    }
+
+    public void store(String username, String password, UserDetails principal, long seenGeneration) {
+        cache.put(username, new Entry(digest(password), principal));
+
+        // an invalidation happened while we were verifying -> the hash we checked may already be stale
+        if (generation.get() != seenGeneration) {
+            cache.invalidate(username);
+        }
+    }
+
+    /**
+     * Drops the entry now and again once the surrounding transaction completes, so a
+     * request that read the old hash before the commit cannot re-populate it.
+     */
+    public void invalidate(String username) {
+        evict(username);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evict(username);
+                }
+            });
+        }
+    }
+
+    private void evict(String username) {
+        generation.incrementAndGet();
+        cache.invalidate(username);
+    }
+
+    private byte[] digest(String password) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALG);
+            mac.init(hmacKey);
+            return mac.doFinal(password.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC not available", e);
+        }
+    }
+
+    private record Entry(byte[] digest, UserDetails principal) {}
+}
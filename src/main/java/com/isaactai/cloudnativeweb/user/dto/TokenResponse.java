@@ -0,0 +1,12 @@
+package com.isaactai.cloudnativeweb.user.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * @author tisaac
+ */
+public record TokenResponse(
+        String token,
+        @JsonProperty("token_type") String tokenType,
+        @JsonProperty("expires_in") long expiresIn
+) {}
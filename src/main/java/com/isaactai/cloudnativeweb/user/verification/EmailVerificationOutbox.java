@@ -18,7 +18,8 @@ import java.util.UUID;
 @NoArgsConstructor
 public class EmailVerificationOutbox {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "email_verification_outbox_id_seq")
+    @SequenceGenerator(name = "email_verification_outbox_id_seq", sequenceName = "email_verification_outbox_id_seq", allocationSize = 50)
     private Long id;
 
     private String email;
@@ -2,14 +2,17 @@ package com.isaactai.cloudnativeweb.user.verification;
 
 import com.isaactai.cloudnativeweb.messaging.SnsPublisher;
 import com.isaactai.cloudnativeweb.user.UserRepository;
-import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Limit;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * @author tisaac
@@ -21,48 +24,82 @@ public class EmailVerificationOutboxProcessor {
     private final UserRepository userRepo;
     private final EmailVerificationOutboxRepository outboxRepo;
     private final SnsPublisher publisher;
+    private final TransactionTemplate tx;
 
     private static final int MAX_RETRY = 10;
+    static final int PAGE_SIZE = 20;
 
-    @Scheduled(fixedDelay = 5000)
-    @Transactional
+    // Drains the backlog a page at a time, one transaction each, each page after the last row of
+    // the one before: a row that failed is retried on the next poll, not again in this one.
+    @Scheduled(fixedDelayString = "${app.verification.outbox.poll-interval}")
     public void processPending() {
-        List<EmailVerificationOutbox> events = outboxRepo.findTop20ByStatusOrderByCreatedAtAsc("PENDING");
+        EmailVerificationOutbox last = null;
+        List<EmailVerificationOutbox> page;
+        do {
+            Instant afterCreatedAt = last == null ? Instant.EPOCH : last.getCreatedAt();
+            Long afterId = last == null ? 0L : last.getId();
+            page = tx.execute(s -> processPage(afterCreatedAt, afterId));
+            if (!page.isEmpty()) {
+                last = page.get(page.size() - 1);
+            }
+        } while (page.size() == PAGE_SIZE);
+    }
+
+    // published with PublishBatch, SnsPublisher.MAX_BATCH per call; every row gets its own outcome
+    private List<EmailVerificationOutbox> processPage(Instant afterCreatedAt, Long afterId) {
+        List<EmailVerificationOutbox> events = outboxRepo.findPageAfter("PENDING", afterCreatedAt, afterId,
+                Limit.of(PAGE_SIZE));
 
+        List<EmailVerificationOutbox> due = new ArrayList<>();
         for (EmailVerificationOutbox e : events) {
             if (e.getRetryCount() >= MAX_RETRY) {
                 e.setStatus("FAILED");
-                continue;
+            } else {
+                due.add(e);
             }
+        }
+        if (due.isEmpty()) {
+            return events;
+        }
 
-            try {
-                Instant sentAt = Instant.now();
-                publisher.publishEmailVerification(e.getEmail(), e.getToken().toString());
+        Instant sentAt = Instant.now();
+        // the row id is the entry id, so each result maps back to its row
+        Map<String, String> failed = publisher.publishEmailVerifications(due.stream()
+                .map(e -> new SnsPublisher.EmailVerification(e.getId().toString(), e.getEmail(),
+                        e.getToken().toString()))
+                .toList());
 
+        List<String> sentTo = new ArrayList<>();
+        for (EmailVerificationOutbox e : due) {
+            String error = failed.get(e.getId().toString());
+            if (error == null) {
                 // mark outbox event as SENT
                 e.setSentAt(sentAt);
                 e.setStatus("SENT");
+                sentTo.add(e.getEmail());
+                continue;
+            }
 
-                // update user tokenGenerateAt
-                userRepo.findByUsername(e.getEmail()).ifPresent(user -> {
-                    user.setTokenGenerateAt(sentAt);
-                });
-            } catch (Exception ex) {
-                e.setRetryCount(e.getRetryCount() + 1);
+            e.setRetryCount(e.getRetryCount() + 1);
 
-                String msg = ex.getMessage();
-                if (msg != null && msg.length() > 120) {
-                    msg = msg.substring(0, 120) + "...";
-                }
+            String msg = error;
+            if (msg.length() > 120) {
+                msg = msg.substring(0, 120) + "...";
+            }
 
-                if (e.getRetryCount() == 1) {
-                    log.warn("Initial failure to send verification email for {}: {}",
-                            e.getEmail(), msg);
-                } else if (e.getRetryCount() == MAX_RETRY) {
-                    log.warn("Give up sending verification email for {} after {} retries",
-                            e.getEmail(), MAX_RETRY);
-                }
+            if (e.getRetryCount() == 1) {
+                log.warn("Initial failure to send verification email for {}: {}",
+                        e.getEmail(), msg);
+            } else if (e.getRetryCount() == MAX_RETRY) {
+                log.warn("Give up sending verification email for {} after {} retries",
+                        e.getEmail(), MAX_RETRY);
             }
         }
+
+        // update users' tokenGenerateAt
+        if (!sentTo.isEmpty()) {
+            userRepo.markTokensSent(sentTo, sentAt);
+        }
+        return events;
     }
 }
@@ -1,12 +1,25 @@
 package com.isaactai.cloudnativeweb.user.verification;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.Instant;
 import java.util.List;
 
 /**
  * @author tisaac
  */
 public interface EmailVerificationOutboxRepository extends JpaRepository<EmailVerificationOutbox, Long> {
-    List<EmailVerificationOutbox> findTop20ByStatusOrderByCreatedAtAsc(String status);
+
+    // keyset page in created order; the id breaks ties between events created in the same instant
+    @Query("""
+            select e from EmailVerificationOutbox e
+             where e.status = :status
+               and (e.createdAt > :createdAt or (e.createdAt = :createdAt and e.id > :id))
+             order by e.createdAt, e.id
+            """)
+    List<EmailVerificationOutbox> findPageAfter(@Param("status") String status, @Param("createdAt") Instant createdAt,
+                                                @Param("id") Long id, Limit limit);
 }
@@ -1,10 +1,23 @@
 package com.isaactai.cloudnativeweb.health;
 
 import com.isaactai.cloudnativeweb.support.BaseApiTest;
+import com.isaactai.cloudnativeweb.user.verification.EmailVerificationOutbox;
+import com.isaactai.cloudnativeweb.user.verification.EmailVerificationOutboxRepository;
 import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
 
 import static io.restassured.RestAssured.given;
+import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
 
 /**
@@ -31,4 +44,65 @@ public class HealthControllerTest extends BaseApiTest {
                 .then()
                 .time(lessThan(1000L));
     }
+
+    @Autowired
+    HealthCheckRepository healthRepo;
+
+    @Autowired
+    EmailVerificationOutboxRepository outboxRepo;
+
+    @Autowired
+    TransactionTemplate tx;
+
+    @Autowired
+    JdbcTemplate jdbc;
+
+    // Insert throughput through JPA for the two write-heavy tables (health probes, outbox events).
+    // Run with: ./mvnw test -Dbenchmark=true -Dtest='HealthControllerTest$InsertBenchmark'
+    @Nested
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    class InsertBenchmark {
+        static final int ROWS = 10_000;
+        static final int ROUNDS = 3;
+
+        @Test
+        void healthCheckAndOutboxInsertThroughput() {
+            Long maxCheckId = jdbc.queryForObject("select coalesce(max(check_id), 0) from health_checks", Long.class);
+            try {
+                double health = measure(() -> healthRepo.saveAll(
+                        IntStream.range(0, ROWS).mapToObj(i -> new HealthCheck()).toList()));
+                double outbox = measure(() -> outboxRepo.saveAll(outboxRows()));
+
+                System.out.printf("[bench] health_checks insert: %.0f rows/s%n", health);
+                System.out.printf("[bench] email_verification_outbox insert: %.0f rows/s%n", outbox);
+                assertThat(health, greaterThan(0.0));
+            } finally {
+                jdbc.update("delete from email_verification_outbox where status = 'BENCH'");
+                jdbc.update("delete from health_checks where check_id > ?", maxCheckId);
+            }
+        }
+
+        private List<EmailVerificationOutbox> outboxRows() {
+            Instant now = Instant.now();
+            return IntStream.range(0, ROWS)
+                    .mapToObj(i -> EmailVerificationOutbox.builder()
+                            .email("bench" + i + "@example.com")
+                            .token(UUID.randomUUID())
+                            .createdAt(now)
+                            .status("BENCH") // never picked up by the outbox processor
+                            .build())
+                    .toList();
+        }
+
+        // best of ROUNDS, each round is one transaction
+        private double measure(Runnable insert) {
+            double best = 0;
+            for (int r = 0; r < ROUNDS; r++) {
+                long start = System.nanoTime();
+                tx.executeWithoutResult(s -> insert.run());
+                best = Math.max(best, ROWS / ((System.nanoTime() - start) / 1e9));
+            }
+            return best;
+        }
+    }
 }
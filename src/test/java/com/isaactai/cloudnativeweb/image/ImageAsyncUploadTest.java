@@ -0,0 +1,287 @@
+package com.isaactai.cloudnativeweb.image;
+
+import com.isaactai.cloudnativeweb.config.UploadConfig;
+import com.isaactai.cloudnativeweb.support.ConcurrentUploads;
+import com.isaactai.cloudnativeweb.support.ImageIoApiTest;
+import com.isaactai.cloudnativeweb.support.S3StandIn;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.ApplicationContext;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+
+import java.io.ByteArrayInputStream;
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+/**
+ * Uploads with {@code app.upload.async.enabled}: S3AsyncClient (mocked, routed to the stand-in).
+ * @author tisaac
+ */
+public class ImageAsyncUploadTest extends ImageIoApiTest {
+
+    @Autowired
+    AsyncUploadLimiter limiter;
+
+    @Autowired
+    ApplicationContext ctx;
+
+    @Autowired
+    @Qualifier(UploadConfig.COMPLETION_EXECUTOR)
+    ThreadPoolExecutor completion;
+
+    @Test
+    void upload_releasesRequestThreadWhileS3Works() throws Exception {
+        standIn.putDelay(Duration.ofSeconds(3));
+        byte[] png = png(32 * 1024, 1);
+
+        ExecutorService client = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> key = client.submit(() -> given().auth().preemptive().basic(username, pwd)
+                    .multiPart("file", "a.png", png, "image/png")
+                    .when().post("/v1/product/{id}/image", productId)
+                    .then().statusCode(201)
+                    .extract().jsonPath().getString("s3_bucket_path"));
+
+            // the PUT is parked in the stand-in, yet no request thread is busy
+            long deadline = System.currentTimeMillis() + 1000;
+            while (limiter.inFlight() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            assertThat(limiter.inFlight(), is(1));
+            // the request thread goes back to Tomcat once the async dispatch is set up; its own wait
+            deadline = System.currentTimeMillis() + 1000;
+            while (ConcurrentUploads.busyThreads(ctx) > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            assertThat(ConcurrentUploads.busyThreads(ctx), is(0));
+            assertThat(key.isDone(), is(false));
+
+            S3StandIn.StoredObject stored = standIn.get("dummy-bucket/" + key.get());
+            assertThat(stored.body(), equalTo(png));
+            assertThat(stored.contentType(), is("image/png"));
+            assertThat(limiter.inFlight(), is(0));
+        } finally {
+            client.shutdown();
+        }
+
+        given().when().get("/v1/product/{id}/image", productId)
+                .then().statusCode(200)
+                .body("$", hasSize(1));
+    }
+
+    @Test
+    void overMaxInFlight_returns503() {
+        int taken = 0;
+        while (limiter.tryAcquire()) {
+            taken++;
+        }
+        try {
+            given().auth().preemptive().basic(username, pwd)
+                    .multiPart("file", "a.png", png(1024, 2), "image/png")
+                    .when().post("/v1/product/{id}/image", productId)
+                    .then().statusCode(503)
+                    .body("error", equalTo("SERVICE_UNAVAILABLE"));
+        } finally {
+            for (int i = 0; i < taken; i++) {
+                limiter.release();
+            }
+        }
+        assertThat(standIn.size(), is(0));
+    }
+
+    @Test
+    void completionExecutorFull_returns503_andFreesTheSlot() throws InterruptedException {
+        when(s3Async.putObject(any(PutObjectRequest.class), any(AsyncRequestBody.class)))
+                .thenReturn(CompletableFuture.completedFuture(PutObjectResponse.builder().build()));
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            fillCompletionExecutor(release);
+
+            given().auth().preemptive().basic(username, pwd)
+                    .multiPart("file", "a.png", png(1024, 5), "image/png")
+                    .when().post("/v1/product/{id}/image", productId)
+                    .then().statusCode(503)
+                    .body("error", equalTo("SERVICE_UNAVAILABLE"));
+        } finally {
+            release.countDown();
+        }
+        assertThat(limiter.inFlight(), is(0));
+        given().when().get("/v1/product/{id}/image", productId)
+                .then().statusCode(200)
+                .body("$", empty());
+    }
+
+    @Test
+    void dedupHit_isRecordedOnTheCompletionExecutor() throws InterruptedException {
+        byte[] png = png(1024, 6);
+        given().auth().preemptive().basic(username, pwd)
+                .multiPart("file", "a.png", png, "image/png")
+                .when().post("/v1/product/{id}/image", productId)
+                .then().statusCode(201);
+
+        // nothing to PUT, yet the insert doesn't run on the request thread: it's refused with the executor
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            fillCompletionExecutor(release);
+
+            given().auth().preemptive().basic(username, pwd)
+                    .multiPart("file", "b.png", png, "image/png")
+                    .when().post("/v1/product/{id}/image", productId)
+                    .then().statusCode(503);
+        } finally {
+            release.countDown();
+        }
+        assertThat(limiter.inFlight(), is(0));
+        given().when().get("/v1/product/{id}/image", productId)
+                .then().statusCode(200)
+                .body("$", hasSize(1));
+    }
+
+    @Test
+    void blobBeingDeleted_putsUnderItsOwnKeyOffTheRequestThread() throws Exception {
+        byte[] png = png(4096, 7);
+        String blobKey = "users/" + userId + "/blobs/" + ImageService.sha256(() -> new ByteArrayInputStream(png));
+        // what a delete leaves behind between dropping the last reference and removing the object
+        jdbc.update("insert into image_blobs (s3_bucket_path, content_type, size_bytes, ref_count) values (?, ?, ?, 0)",
+                blobKey, "image/png", png.length);
+        standIn.putDelay(Duration.ofSeconds(3));
+
+        ExecutorService client = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> key = client.submit(() -> given().auth().preemptive().basic(username, pwd)
+                    .multiPart("file", "a.png", png, "image/png")
+                    .when().post("/v1/product/{id}/image", productId)
+                    .then().statusCode(201)
+                    .extract().jsonPath().getString("s3_bucket_path"));
+
+            long deadline = System.currentTimeMillis() + 1000;
+            while (limiter.inFlight() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            deadline = System.currentTimeMillis() + 1000;
+            while (ConcurrentUploads.busyThreads(ctx) > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            assertThat(ConcurrentUploads.busyThreads(ctx), is(0));
+            assertThat(key.isDone(), is(false));
+
+            assertThat(key.get(), startsWith("users/" + userId + "/products/"));
+            assertThat(standIn.get("dummy-bucket/" + key.get()).body(), equalTo(png));
+            assertThat(standIn.get("dummy-bucket/" + blobKey), nullValue());
+        } finally {
+            client.shutdown();
+        }
+        assertThat(limiter.inFlight(), is(0));
+    }
+
+    @Test
+    void s3Failure_returns502_andFreesTheSlot() {
+        when(s3Async.putObject(any(PutObjectRequest.class), any(AsyncRequestBody.class)))
+                .thenReturn(CompletableFuture.failedFuture(SdkClientException.create("connection reset")));
+
+        given().auth().preemptive().basic(username, pwd)
+                .multiPart("file", "a.png", png(1024, 3), "image/png")
+                .when().post("/v1/product/{id}/image", productId)
+                .then().statusCode(502);
+
+        assertThat(limiter.inFlight(), is(0));
+        given().when().get("/v1/product/{id}/image", productId)
+                .then().statusCode(200)
+                .body("$", empty());
+    }
+
+    @Test
+    void validation_stillRunsOnTheRequestThread() {
+        given().auth().preemptive().basic(username, pwd)
+                .multiPart("file", "a.txt", "hello".getBytes(), "text/plain")
+                .when().post("/v1/product/{id}/image", productId)
+                .then().statusCode(400);
+        assertThat(limiter.inFlight(), is(0));
+    }
+
+    // parks every completion thread and fills the queue until release opens
+    private void fillCompletionExecutor(CountDownLatch release) throws InterruptedException {
+        Runnable park = () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        // every thread busy first: an idle one would take a task off the queue after it filled up
+        CountDownLatch started = new CountDownLatch(completion.getMaximumPoolSize());
+        for (int i = 0; i < completion.getMaximumPoolSize(); i++) {
+            completion.execute(() -> {
+                started.countDown();
+                park.run();
+            });
+        }
+        assertThat(started.await(5, TimeUnit.SECONDS), is(true));
+        try {
+            while (true) {
+                completion.execute(park);
+            }
+        } catch (RejectedExecutionException full) {
+            // and the queue full
+        }
+    }
+
+    static byte[] png(int size, long seed) {
+        byte[] b = new byte[size];
+        new Random(seed).nextBytes(b);
+        System.arraycopy(ImageControllerTest.PNG, 0, b, 0, ImageControllerTest.PNG.length);
+        return b;
+    }
+
+    /**
+     * 100 concurrent uploads of distinct files against 2s of simulated S3 latency; compare with
+     * {@code ImageControllerTest$UploadConcurrencyBenchmark} (blocking path) at the same settings.
+     * Wall time is no better than blocking, and isn't the point: under ci both are bound by the
+     * four-connection pool. What the async path buys is request-thread time, which stays under
+     * the S3 latency per upload (about 1.4 thread-s here, against 3.6 blocking), so other
+     * endpoints keep their threads while S3 is slow. Run with {@code -Dbenchmark=true}.
+     *
+     * <p>At {@code -Dbenchmark.uploads=500} the request threads queue for the pool on the checks
+     * that run before the PUT (5.6 thread-s per upload with four connections), so raise it:
+     * with {@code DB_POOL_SIZE=32} async took 0.95 thread-s per upload, blocking 6.5.
+     */
+    @Nested
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    class UploadConcurrencyBenchmark {
+
+        @Test
+        void concurrentUploads() throws Exception {
+            standIn.putDelay(Duration.ofSeconds(2));
+            byte[] png = png(16 * 1024, 4);
+            String path = "/v1/product/" + productId + "/image";
+
+            ConcurrentUploads.run(ctx, path, username, pwd, png, 20); // warm-up
+            int uploads = ConcurrentUploads.count();
+            ConcurrentUploads.Result r = ConcurrentUploads.run(ctx, path, username, pwd, png, uploads);
+            System.out.println("[bench] async: " + r);
+            assertThat(r.statuses().get(201), is(uploads));
+            assertThat(r.threadSecondsPerUpload(), lessThan(2.0));
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.isaactai.cloudnativeweb.image;
+
+import com.isaactai.cloudnativeweb.support.ApiFixtures;
+import com.isaactai.cloudnativeweb.support.ImageApiTest;
+import com.isaactai.cloudnativeweb.support.StatementCounter;
+import io.restassured.path.json.JsonPath;
+import io.restassured.specification.RequestSpecification;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Multi-file uploads: per-file outcomes, parallel PUTs, one INSERT.
+ * @author tisaac
+ */
+public class ImageBatchUploadTest extends ImageApiTest {
+
+    @Autowired
+    StatementCounter statements;
+
+    @Test
+    void batch_reportsEveryFileInOrder() {
+        byte[] a = png(1);
+        byte[] b = png(2);
+
+        JsonPath res = given().auth().preemptive().basic(username, pwd)
+                .multiPart("files", "A.png", a, "image/png")
+                .multiPart("files", "notes.txt", "hello".getBytes(), "text/plain")
+                .multiPart("files", "b.png", b, "image/png")
+                .multiPart("files", "a-again.png", a, "image/png")
+                .when().post("/v1/product/{id}/image/batch", productId)
+                .then().statusCode(200)
+                .body("created", equalTo(3))
+                .body("failed", equalTo(1))
+                .body("items.index", contains(0, 1, 2, 3))
+                .body("items.status", contains("CREATED", "INVALID", "CREATED", "CREATED"))
+                .body("items.file_name", contains("a.png", "notes.txt", "b.png", "a-again.png"))
+                .body("items[1].error", equalTo("Invalid file type, must be an image"))
+                .body("items[0].image.product_id", equalTo(productId.intValue()))
+                .extract().jsonPath();
+
+        String keyA = "users/" + userId + "/blobs/" + sha256(a);
+        assertThat(res.getString("items[0].image.s3_bucket_path"), is(keyA));
+        assertThat(res.getString("items[3].image.s3_bucket_path"), is(keyA));
+        assertThat(res.getLong("items[3].image.image_id"), not(res.getLong("items[0].image.image_id")));
+        // the repeated photo is stored once and referenced twice
+        verify(s3, times(2)).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+        assertThat(standIn.get("dummy-bucket/" + keyA).body(), equalTo(a));
+        assertThat(jdbc.queryForObject("select ref_count from image_blobs where s3_bucket_path = ?",
+                Integer.class, keyA), is(2));
+
+        given().when().get("/v1/product/{id}/image", productId)
+                .then().statusCode(200)
+                .body("file_name", containsInAnyOrder("a.png", "b.png", "a-again.png"));
+    }
+
+    @Test
+    void batch_putsInParallel() {
+        standIn.putDelay(Duration.ofMillis(500));
+        RequestSpecification req = given().auth().preemptive().basic(username, pwd);
+        for (int i = 0; i < 8; i++) {
+            req.multiPart("files", "p" + i + ".png", png(10 + i), "image/png");
+        }
+
+        long start = System.nanoTime();
+        req.when().post("/v1/product/{id}/image/batch", productId)
+                .then().statusCode(200)
+                .body("created", equalTo(8));
+        long millis = (System.nanoTime() - start) / 1_000_000;
+
+        // one after the other would be 4s
+        assertThat(millis, lessThan(2_000L));
+        assertThat(standIn.size(), is(8));
+    }
+
+    @Test
+    void batch_usesThreeStatementsWhateverTheFileCount() {
+        RequestSpecification req = given().auth().preemptive().basic(username, pwd);
+        for (int i = 0; i < 6; i++) {
+            req.multiPart("files", "p" + i + ".png", png(20 + i), "image/png");
+        }
+
+        statements.reset();
+        req.when().post("/v1/product/{id}/image/batch", productId)
+                .then().statusCode(200)
+                .body("created", equalTo(6));
+
+        // select product + one blob lookup and pin for all files + one insert for all images
+        assertThat(statements.queries().toString(), statements.usersQueries(), equalTo(0L));
+        assertThat(statements.queries().toString(), statements.total(), equalTo(3L));
+    }
+
+    @Test
+    void batch_takesImageIdsFromOneBlock() {
+        RequestSpecification req = given().auth().preemptive().basic(username, pwd);
+        for (int i = 0; i < 6; i++) {
+            req.multiPart("files", "p" + i + ".png", png(40 + i), "image/png");
+        }
+
+        List<Long> ids = req.when().post("/v1/product/{id}/image/batch", productId)
+                .then().statusCode(200)
+                .body("created", equalTo(6))
+                .extract().jsonPath().getList("items.image.image_id", Long.class);
+
+        List<Long> sorted = ids.stream().sorted().toList();
+        assertThat(sorted.get(5) - sorted.get(0), is(5L));
+    }
+
+    @Test
+    void failedPut_failsOnlyThatFile() {
+        byte[] good = png(30);
+        byte[] bad = png(31);
+        String badKey = "users/" + userId + "/blobs/" + sha256(bad);
+        S3Client real = standIn.client();
+        when(s3.putObject(any(PutObjectRequest.class), any(RequestBody.class))).thenAnswer(inv -> {
+            PutObjectRequest put = inv.getArgument(0);
+            if (put.key().equals(badKey)) {
+                throw SdkClientException.create("connection reset");
+            }
+            return real.putObject(put, (RequestBody) inv.getArgument(1));
+        });
+
+        given().auth().preemptive().basic(username, pwd)
+                .multiPart("files", "good.png", good, "image/png")
+                .multiPart("files", "bad.png", bad, "image/png")
+                .when().post("/v1/product/{id}/image/batch", productId)
+                .then().statusCode(200)
+                .body("created", equalTo(1))
+                .body("items.status", contains("CREATED", "FAILED"))
+                .body("items[1].error", equalTo("Upload to storage failed"));
+
+        given().when().get("/v1/product/{id}/image", productId)
+                .then().statusCode(200)
+                .body("file_name", contains("good.png"));
+        // the pin taken before the PUT is dropped, and whatever S3 got of the object is queued
+        assertThat(jdbc.queryForObject("select ref_count from image_blobs where s3_bucket_path = ?",
+                Integer.class, badKey), is(0));
+        assertThat(jdbc.queryForObject("select count(*) from object_deletions where s3_bucket_path = ?",
+                Long.class, badKey), is(1L));
+    }
+
+    @Test
+    void otherUsersProduct_isForbiddenBeforeAnyPut() {
+        String other = ApiFixtures.username("batch-other");
+        ApiFixtures.createUser(other);
+
+        given().auth().preemptive().basic(other, pwd)
+                .multiPart("files", "a.png", png(40), "image/png")
+                .when().post("/v1/product/{id}/image/batch", productId)
+                .then().statusCode(403);
+
+        verify(s3, never()).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+    }
+
+    private static String sha256(byte[] b) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(b));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] png(long seed) {
+        return png(4096, seed);
+    }
+
+    private static byte[] png(int size, long seed) {
+        byte[] b = new byte[size];
+        new Random(seed + System.nanoTime()).nextBytes(b);
+        System.arraycopy(ImageControllerTest.PNG, 0, b, 0, ImageControllerTest.PNG.length);
+        return b;
+    }
+
+    /**
+     * A listing of 20 1MB photos at 50ms of simulated S3 PUT latency: one request per photo
+     * against one batch request. Run with {@code -Dbenchmark=true}.
+     */
+    @Nested
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    class ListingBenchmark {
+
+        @Test
+        void singleRequestsVersusBatch() {
+            standIn.putDelay(Duration.ofMillis(50));
+            int photos = 20;
+            int rounds = 5;
+
+            long single = 0;
+            long batch = 0;
+            for (int r = 0; r < rounds; r++) {
+                Long singles = ApiFixtures.createProduct(username);
+                long start = System.nanoTime();
+                for (int i = 0; i < photos; i++) {
+                    given().auth().preemptive().basic(username, pwd)
+                            .multiPart("file", "p" + i + ".jpg", png(1024 * 1024, 100 * r + i), "image/jpeg")
+                            .when().post("/v1/product/{id}/image", singles)
+                            .then().statusCode(201);
+                }
+                single += System.nanoTime() - start;
+
+                Long batched = ApiFixtures.createProduct(username);
+                RequestSpecification req = given().auth().preemptive().basic(username, pwd);
+                for (int i = 0; i < photos; i++) {
+                    req.multiPart("files", "p" + i + ".jpg", png(1024 * 1024, 100 * r + 50 + i), "image/jpeg");
+                }
+                start = System.nanoTime();
+                req.when().post("/v1/product/{id}/image/batch", batched)
+                        .then().statusCode(200)
+                        .body("created", equalTo(photos));
+                batch += System.nanoTime() - start;
+            }
+
+            System.out.printf("[bench] listing of %d 1MB photos, 50ms PUT latency, avg of %d: "
+                            + "%d single requests %.0f ms, one batch request %.0f ms%n",
+                    photos, rounds, photos, single / 1e6 / rounds, batch / 1e6 / rounds);
+        }
+    }
+}
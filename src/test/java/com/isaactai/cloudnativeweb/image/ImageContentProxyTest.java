@@ -0,0 +1,190 @@
+package com.isaactai.cloudnativeweb.image;
+
+import com.isaactai.cloudnativeweb.config.CacheProps;
+import com.isaactai.cloudnativeweb.storage.ObjectStore;
+import com.isaactai.cloudnativeweb.support.ImageIoApiTest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.restassured.response.Response;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * /content in proxy mode: bytes served from the local disk cache, S3 behind a stand-in.
+ * @author tisaac
+ */
+public class ImageContentProxyTest extends ImageIoApiTest {
+
+    @Autowired
+    ImageDiskCache diskCache;
+
+    @Test
+    void miss_streamsBytes_thenHitIsServedFromDisk() {
+        byte[] png = png(300 * 1024, 1);
+        Long imageId = upload(png);
+
+        for (int i = 0; i < 3; i++) {
+            Response r = content(imageId).then()
+                    .statusCode(200)
+                    .contentType("image/png")
+                    .header("Accept-Ranges", "bytes")
+                    .header("Content-Length", String.valueOf(png.length))
+                    .header("Cache-Control", containsString("immutable"))
+                    .extract().response();
+            assertThat(r.asByteArray(), equalTo(png));
+        }
+        verify(s3, times(1)).getObject(any(GetObjectRequest.class));
+    }
+
+    @Test
+    void range_isHonoredOnMissAndHit() {
+        byte[] png = png(64 * 1024, 2);
+        Long imageId = upload(png);
+
+        // cold: the fill completes first, then the range is cut from the file
+        byte[] first = given().header("Range", "bytes=10-19").when().get(path(imageId))
+                .then().statusCode(206)
+                .header("Content-Range", "bytes 10-19/" + png.length)
+                .header("Content-Length", "10")
+                .extract().asByteArray();
+        assertThat(first, equalTo(Arrays.copyOfRange(png, 10, 20)));
+
+        byte[] suffix = given().header("Range", "bytes=-5").when().get(path(imageId))
+                .then().statusCode(206)
+                .header("Content-Range", "bytes " + (png.length - 5) + "-" + (png.length - 1) + "/" + png.length)
+                .extract().asByteArray();
+        assertThat(suffix, equalTo(Arrays.copyOfRange(png, png.length - 5, png.length)));
+
+        given().header("Range", "bytes=" + png.length + "-").when().get(path(imageId))
+                .then().statusCode(416)
+                .header("Content-Range", "bytes */" + png.length);
+
+        // If-Range with a validator we did not issue: whole representation
+        given().header("Range", "bytes=0-0").header("If-Range", "\"other\"").when().get(path(imageId))
+                .then().statusCode(200)
+                .header("Content-Length", String.valueOf(png.length));
+
+        verify(s3, times(1)).getObject(any(GetObjectRequest.class));
+    }
+
+    @Test
+    void concurrentMisses_shareOneS3Fetch() throws Exception {
+        byte[] png = png(200 * 1024, 3);
+        Long imageId = upload(png);
+
+        S3Client real = standIn.client();
+        when(s3.getObject(any(GetObjectRequest.class))).thenAnswer(inv -> {
+            Thread.sleep(300); // hold the fetch open so the other requests pile up behind it
+            return real.getObject((GetObjectRequest) inv.getArgument(0));
+        });
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<byte[]>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(pool.submit(() -> content(imageId).then().statusCode(200).extract().asByteArray()));
+            }
+            for (Future<byte[]> f : futures) {
+                assertThat(f.get(), equalTo(png));
+            }
+        } finally {
+            pool.shutdown();
+        }
+        verify(s3, times(1)).getObject(any(GetObjectRequest.class));
+    }
+
+    @Test
+    void cache_staysWithinMaxSize() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            byte[] png = png(300 * 1024, 10 + i);
+            Long imageId = upload(png);
+            assertThat(content(imageId).then().statusCode(200).extract().asByteArray(), equalTo(png));
+        }
+        long deadline = System.currentTimeMillis() + 5_000; // eviction runs asynchronously
+        while (diskCache.cachedBytes() > 1024 * 1024 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertThat(diskCache.cachedBytes(), lessThanOrEqualTo(1024L * 1024));
+    }
+
+    @Test
+    void ifNoneMatch_returns304_andMissingImage404() {
+        Long imageId = upload(png(1024, 4));
+        String etag = content(imageId).then().statusCode(200).extract().header("ETag");
+
+        given().header("If-None-Match", etag).when().get(path(imageId))
+                .then().statusCode(304);
+        content(Long.MAX_VALUE).then().statusCode(404);
+    }
+
+    private Response content(Long imageId) {
+        return given().redirects().follow(false).when().get(path(imageId));
+    }
+
+    private String path(Long imageId) {
+        return "/v1/product/" + productId + "/image/" + imageId + "/content";
+    }
+
+    @Test
+    void startup_clearsOnlyTheCachesOwnFiles() throws IOException {
+        Path dir = Files.createTempDirectory("image-cache-startup");
+        Path own = Files.createDirectories(dir.resolve(ImageDiskCache.SUBDIR));
+        Files.write(own.resolve(UUID.randomUUID().toString()), new byte[1]);
+        Files.write(own.resolve(".tmp-" + UUID.randomUUID()), new byte[1]);
+        Path note = Files.writeString(own.resolve("README"), "not the cache's");
+        Path nested = Files.createDirectories(own.resolve("nested"));
+        Path sibling = Files.writeString(dir.resolve("app.log"), "shared dir");
+
+        new ImageDiskCache(Mockito.mock(ObjectStore.class), new CacheProps(null, null,
+                new CacheProps.ImageBytesProps(true, dir, DataSize.ofMegabytes(1), Duration.ofMinutes(1))),
+                new SimpleMeterRegistry());
+
+        try (Stream<Path> left = Files.list(own)) {
+            assertThat(left.toList(), containsInAnyOrder(note, nested));
+        }
+        assertThat(Files.exists(sibling), is(true));
+    }
+
+    private Long upload(byte[] png) {
+        return given()
+                .auth().preemptive().basic(username, pwd)
+                .multiPart("file", "a.png", png, "image/png")
+                .when()
+                .post("/v1/product/{id}/image", productId)
+                .then()
+                .statusCode(201)
+                .extract().jsonPath().getLong("image_id");
+    }
+
+    private static byte[] png(int size, long seed) {
+        byte[] b = new byte[size];
+        new Random(seed).nextBytes(b);
+        System.arraycopy(ImageControllerTest.PNG, 0, b, 0, ImageControllerTest.PNG.length);
+        return b;
+    }
+}
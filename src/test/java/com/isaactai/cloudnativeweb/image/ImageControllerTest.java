@@ -0,0 +1,787 @@
+package com.isaactai.cloudnativeweb.image;
+
+import com.isaactai.cloudnativeweb.support.ApiFixtures;
+import com.isaactai.cloudnativeweb.support.BaseApiTest;
+import com.isaactai.cloudnativeweb.support.ConcurrentUploads;
+import com.isaactai.cloudnativeweb.support.S3StandIn;
+import com.isaactai.cloudnativeweb.support.StatementCounter;
+import io.restassured.response.Response;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.services.s3.presigner.model.GetObjectPresignRequest;
+import software.amazon.awssdk.services.s3.presigner.model.PutObjectPresignRequest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author tisaac
+ */
+public class ImageControllerTest extends BaseApiTest {
+
+    static final byte[] PNG = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n', 0, 0, 0, 0};
+
+    @Autowired
+    StatementCounter statements;
+
+    @Autowired
+    S3Client s3; // mock from BaseApiTest
+
+    @Autowired
+    S3Presigner presigner; // mock from BaseApiTest
+
+    @Autowired
+    JdbcTemplate jdbc;
+
+    String username;
+    String pwd;
+    Long userId;
+    Long productId;
+
+    @BeforeEach
+    void setUpUserAndProduct() {
+        username = ApiFixtures.username("img");
+        pwd = ApiFixtures.PASSWORD;
+        userId = ApiFixtures.createUser(username, pwd);
+        productId = ApiFixtures.createProduct(username, pwd);
+    }
+
+    @Nested
+    class UploadImage {
+        @Test
+        void uploadImage_success() {
+            given()
+                    .auth().preemptive().basic(username, pwd)
+                    .multiPart("file", "Photo 1.png", PNG, "image/png")
+                    .when()
+                    .post("/v1/product/{id}/image", productId)
+                    .then()
+                    .log().ifValidationFails()
+                    .statusCode(201)
+                    .body("image_id", notNullValue())
+                    .body("product_id", equalTo(productId.intValue()))
+                    .body("file_name", equalTo("photo-1.png"))
+                    .body("s3_bucket_path", matchesPattern("users/" + userId + "/blobs/[0-9a-f]{64}"));
+        }
+
+        @Test
+        void uploadImage_notAnImage_returns400() {
+            given()
+                    .auth().preemptive().basic(username, pwd)
+                    .multiPart("file", "notes.txt", "hello".getBytes(), "text/plain")
+                    .when()
+                    .post("/v1/product/{id}/image", productId)
+                    .then()
+                    .statusCode(400);
+        }
+
+        @Test
+        void uploadImage_otherUsersProduct_returns403() {
+            String other = ApiFixtures.username("img-other");
+            ApiFixtures.createUser(other, pwd);
+
+            given()
+                    .auth().preemptive().basic(other, pwd)
+                    .multiPart("file", "a.png", PNG, "image/png")
+                    .when()
+                    .post("/v1/product/{id}/image", productId)
+                    .then()
+                    .statusCode(403);
+        }
+
+        @Test
+        void uploadImage_largeFile_streamsMultipartParts() throws Exception {
+            List<Long> partSizes = new CopyOnWriteArrayList<>();
+            when(s3.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+                    .thenReturn(CreateMultipartUploadResponse.builder().uploadId("up-1").build());
+            when(s3.uploadPart(any(UploadPartRequest.class), any(RequestBody.class))).thenAnswer(inv -> {
+                partSizes.add(drain(inv.getArgument(1)));
+                return UploadPartResponse.builder().eTag("etag-" + partSizes.size()).build();
+            });
+
+            File photo = largePhoto(20L * 1024 * 1024);
+            try {
+                given()
+                        .auth().preemptive().basic(username, pwd)
+                        .multiPart("file", photo, "image/png")
+                        .when()
+                        .post("/v1/product/{id}/image", productId)
+                        .then()
+                        .statusCode(201);
+
+                // 8MB parts by default
+                assertThat(partSizes, contains(8L << 20, 8L << 20, 4L << 20));
+                ArgumentCaptor<CompleteMultipartUploadRequest> done =
+                        ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+                verify(s3).completeMultipartUpload(done.capture());
+                assertThat(done.getValue().uploadId(), equalTo("up-1"));
+                assertThat(done.getValue().multipartUpload().parts().stream().map(CompletedPart::partNumber).toList(),
+                        contains(1, 2, 3));
+                verify(s3, never()).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+            } finally {
+                photo.delete();
+                Mockito.reset(s3);
+            }
+        }
+
+        @Test
+        void uploadImage_partFails_abortsAndReturns502() throws Exception {
+            when(s3.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+                    .thenReturn(CreateMultipartUploadResponse.builder().uploadId("up-2").build());
+            when(s3.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+                    .thenThrow(S3Exception.builder().message("boom").build());
+
+            File photo = largePhoto(20L * 1024 * 1024);
+            try {
+                given()
+                        .auth().preemptive().basic(username, pwd)
+                        .multiPart("file", photo, "image/png")
+                        .when()
+                        .post("/v1/product/{id}/image", productId)
+                        .then()
+                        .statusCode(502);
+
+                verify(s3).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+                given().when().get("/v1/product/{id}/image", productId)
+                        .then().statusCode(200).body("size()", equalTo(0));
+            } finally {
+                photo.delete();
+                Mockito.reset(s3);
+            }
+        }
+
+        @Test
+        void uploadImage_createMultipartFails_returns502() throws Exception {
+            when(s3.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+                    .thenThrow(S3Exception.builder().message("boom").build());
+
+            File photo = largePhoto(20L * 1024 * 1024);
+            try {
+                given()
+                        .auth().preemptive().basic(username, pwd)
+                        .multiPart("file", photo, "image/png")
+                        .when()
+                        .post("/v1/product/{id}/image", productId)
+                        .then()
+                        .statusCode(502);
+
+                verify(s3, never()).uploadPart(any(UploadPartRequest.class), any(RequestBody.class));
+            } finally {
+                photo.delete();
+                Mockito.reset(s3);
+            }
+        }
+    }
+
+    @Nested
+    class ConditionalGet {
+        @Test
+        void listImages_ifNoneMatch_returns304UntilImagesChange() {
+            String etag = given().when().get("/v1/product/{id}/image", productId)
+                    .then().statusCode(200).extract().header("ETag");
+
+            given().header("If-None-Match", etag)
+                    .when().get("/v1/product/{id}/image", productId)
+                    .then().statusCode(304).body(emptyString());
+
+            Long imageId = given()
+                    .auth().preemptive().basic(username, pwd)
+                    .multiPart("file", "a.png", PNG, "image/png")
+                    .when()
+                    .post("/v1/product/{id}/image", productId)
+                    .then()
+                    .statusCode(201)
+                    .extract().jsonPath().getLong("image_id");
+
+            String afterUpload = given().header("If-None-Match", etag)
+                    .when().get("/v1/product/{id}/image", productId)
+                    .then().statusCode(200).body("size()", equalTo(1))
+                    .extract().header("ETag");
+            assertThat(afterUpload, not(equalTo(etag)));
+
+            String imageEtag = given().when().get("/v1/product/{id}/image/{imageId}", productId, imageId)
+                    .then().statusCode(200).extract().header("ETag");
+            given().header("If-None-Match", imageEtag)
+                    .when().get("/v1/product/{id}/image/{imageId}", productId, imageId)
+                    .then().statusCode(304);
+        }
+
+        @Test
+        void listImages_missingProduct_returns404() {
+            given().header("If-None-Match", "\"anything\"")
+                    .when().get("/v1/product/{id}/image", Long.MAX_VALUE)
+                    .then().statusCode(404);
+        }
+    }
+
+    // Presign + complete against a local S3 stand-in, with real SDK clients behind the mocks
+    @Nested
+    class DirectUpload {
+        S3StandIn standIn;
+
+        @BeforeEach
+        void startStandIn() throws IOException {
+            standIn = routeS3ToStandIn();
+        }
+
+        @AfterEach
+        void stopStandIn() {
+            Mockito.reset(s3, presigner);
+            standIn.close();
+        }
+
+        @Test
+        void presignPutComplete_recordsImage() throws Exception {
+            Response presigned = presign("Photo 1.png", "image/png", PNG.length);
+            String key = presigned.jsonPath().getString("s3_bucket_path");
+            assertThat(key, startsWith("users/" + userId + "/products/" + productId + "/"));
+            assertThat(key, endsWith("-photo-1.png"));
+            assertThat(presigned.jsonPath().getString("upload_url"),
+                    startsWith(standIn.endpoint() + "/dummy-bucket/" + key + "?"));
+
+            assertThat(putToS3(presigned, PNG), equalTo(200));
+            assertThat(standIn.get("dummy-bucket/" + key).body(), equalTo(PNG));
+
+            complete(key)
+                    .statusCode(201)
+                    .body("file_name", equalTo("photo-1.png"))
+                    .body("s3_bucket_path", equalTo(key));
+            given().when().get("/v1/product/{id}/image", productId)
+                    .then().statusCode(200).body("size()", equalTo(1));
+
+            // completing twice must not create a second row
+            complete(key).statusCode(400);
+        }
+
+        @Test
+        void presign_signsTypeAndLengthAndRejectsOversize() {
+            Response presigned = presign("a.png", "image/png", 1234);
+            Map<String, String> headers = presigned.jsonPath().getMap("headers");
+            assertThat(headers, hasEntry(equalToIgnoringCase("content-type"), equalTo("image/png")));
+            assertThat(headers, hasEntry(equalToIgnoringCase("content-length"), equalTo("1234")));
+            assertThat(presigned.jsonPath().getString("upload_url"), containsString("X-Amz-SignedHeaders="));
+
+            presignRequest("a.png", "image/png", 101L * 1024 * 1024).then().statusCode(400);
+            presignRequest("a.txt", "text/plain", 10).then().statusCode(400);
+        }
+
+        @Test
+        void concurrentCompletes_recordOneImage_thatOwnsTheObject() throws Exception {
+            Response presigned = presign("a.png", "image/png", PNG.length);
+            String key = presigned.jsonPath().getString("s3_bucket_path");
+            assertThat(putToS3(presigned, PNG), equalTo(200));
+
+            ExecutorService pool = Executors.newFixedThreadPool(8);
+            List<Future<Integer>> statuses = new ArrayList<>();
+            try {
+                for (int i = 0; i < 8; i++) {
+                    statuses.add(pool.submit(() -> complete(key).extract().statusCode()));
+                }
+                List<Integer> codes = new ArrayList<>();
+                for (Future<Integer> f : statuses) {
+                    codes.add(f.get());
+                }
+                assertThat(codes.stream().filter(c -> c == 201).count(), is(1L));
+                assertThat(codes, everyItem(anyOf(is(201), is(400))));
+            } finally {
+                pool.shutdownNow();
+            }
+            assertThat(jdbc.queryForObject("select count(*) from images where s3_bucket_path = ?", Long.class, key),
+                    is(1L));
+            assertThat(jdbc.queryForObject("select ref_count from image_blobs where s3_bucket_path = ?",
+                    Integer.class, key), is(1));
+        }
+
+        @Test
+        void complete_beforeUpload_returns400() {
+            String key = presign("a.png", "image/png", PNG.length).jsonPath().getString("s3_bucket_path");
+            complete(key).statusCode(400);
+        }
+
+        @Test
+        void complete_keyOutsideProductPrefix_returns400() {
+            complete("users/" + userId + "/products/" + (productId + 1) + "/" + UUID.randomUUID() + "-a.png")
+                    .statusCode(400);
+            complete("users/" + userId + "/products/" + productId + "/../../x.png").statusCode(400);
+        }
+
+        @Test
+        void complete_nonImageObject_isDeletedAndRejected() {
+            String key = presign("a.png", "image/png", 5).jsonPath().getString("s3_bucket_path");
+            standIn.put("dummy-bucket/" + key, "hello".getBytes(), "text/plain"); // client ignored the signed type
+
+            complete(key).statusCode(400);
+            assertThat(standIn.get("dummy-bucket/" + key), nullValue());
+        }
+
+        @Test
+        void presign_otherUsersProduct_returns403() {
+            String other = ApiFixtures.username("img-other");
+            ApiFixtures.createUser(other, pwd);
+            given()
+                    .auth().preemptive().basic(other, pwd)
+                    .contentType("application/json")
+                    .body("{\"file_name\":\"a.png\",\"content_type\":\"image/png\",\"content_length\":5}")
+                    .when()
+                    .post("/v1/product/{id}/image/presign", productId)
+                    .then()
+                    .statusCode(403);
+        }
+
+        private Response presign(String name, String type, long length) {
+            return presignRequest(name, type, length).then().statusCode(200).extract().response();
+        }
+
+        private Response presignRequest(String name, String type, long length) {
+            return given()
+                    .auth().preemptive().basic(username, pwd)
+                    .contentType("application/json")
+                    .body("{\"file_name\":\"%s\",\"content_type\":\"%s\",\"content_length\":%d}"
+                            .formatted(name, type, length))
+                    .when()
+                    .post("/v1/product/{id}/image/presign", productId);
+        }
+
+        private io.restassured.response.ValidatableResponse complete(String key) {
+            return given()
+                    .auth().preemptive().basic(username, pwd)
+                    .contentType("application/json")
+                    .body("{\"s3_bucket_path\":\"%s\"}".formatted(key))
+                    .when()
+                    .post("/v1/product/{id}/image/complete", productId)
+                    .then();
+        }
+
+        // what a browser would do with the presign response; Host and Content-Length are set by the client
+        private int putToS3(Response presigned, byte[] body) throws Exception {
+            HttpRequest.Builder req = HttpRequest.newBuilder(URI.create(presigned.jsonPath().getString("upload_url")))
+                    .PUT(HttpRequest.BodyPublishers.ofByteArray(body));
+            Map<String, String> headers = presigned.jsonPath().getMap("headers");
+            headers.forEach((name, value) -> {
+                if (!name.equalsIgnoreCase("content-length")) {
+                    req.header(name, value);
+                }
+            });
+            return HttpClient.newHttpClient()
+                    .send(req.build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+        }
+    }
+
+    @Nested
+    class ContentRedirect {
+        S3StandIn standIn;
+
+        @BeforeEach
+        void startStandIn() throws IOException {
+            standIn = routeS3ToStandIn();
+        }
+
+        @AfterEach
+        void stopStandIn() {
+            Mockito.reset(s3, presigner);
+            standIn.close();
+        }
+
+        @Test
+        void content_redirectsToCachedPresignedUrl() throws Exception {
+            Long imageId = uploadPng();
+
+            Response first = content(productId, imageId).then().statusCode(302).extract().response();
+            String location = first.header("Location");
+            assertThat(location, startsWith(standIn.endpoint() + "/dummy-bucket/users/" + userId + "/"));
+            assertThat(location, containsString("X-Amz-Signature="));
+            assertThat(location, containsString("response-cache-control="));
+            // 15m signature, handed out while >= 5m remain: the redirect may be cached for at most 10m
+            assertThat(first.header("Cache-Control"), matchesPattern("max-age=(\\d+), public"));
+            long maxAge = Long.parseLong(first.header("Cache-Control").replaceAll("\\D", ""));
+            assertThat(maxAge, allOf(greaterThan(500L), lessThanOrEqualTo(600L)));
+
+            HttpResponse<byte[]> object = HttpClient.newHttpClient().send(
+                    HttpRequest.newBuilder(URI.create(location)).GET().build(),
+                    HttpResponse.BodyHandlers.ofByteArray());
+            assertThat(object.statusCode(), equalTo(200));
+            assertThat(object.body(), equalTo(PNG));
+
+            for (int i = 0; i < 5; i++) {
+                content(productId, imageId).then().statusCode(302).header("Location", equalTo(location));
+            }
+            verify(presigner, times(1)).presignGetObject(any(GetObjectPresignRequest.class));
+        }
+
+        @Test
+        void content_wrongProductOrMissingOrDeleted_returns404() {
+            Long imageId = uploadPng();
+            content(productId, imageId).then().statusCode(302);
+
+            Long otherProduct = ApiFixtures.createProduct(username, pwd);
+            content(otherProduct, imageId).then().statusCode(404);
+            content(productId, Long.MAX_VALUE).then().statusCode(404);
+
+            given()
+                    .auth().preemptive().basic(username, pwd)
+                    .when()
+                    .delete("/v1/product/{id}/image/{imageId}", productId, imageId)
+                    .then()
+                    .statusCode(204);
+            content(productId, imageId).then().statusCode(404);
+        }
+
+        private Response content(Long productId, Long imageId) {
+            return given().redirects().follow(false)
+                    .when()
+                    .get("/v1/product/{id}/image/{imageId}/content", productId, imageId);
+        }
+    }
+
+    // Redirect throughput with a warm URL cache vs. the cost of signing on every request.
+    // Run with: ./mvnw test -Dbenchmark=true -Dtest='ImageControllerTest$ContentBenchmark'
+    @Nested
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    class ContentBenchmark {
+        static final int THREADS = 16;
+        static final int REQUESTS = 20_000;
+
+        @Test
+        void redirectThroughput() throws Exception {
+            try (S3StandIn standIn = routeS3ToStandIn(); S3Presigner signer = standIn.presigner()) {
+                Long imageId = uploadPng();
+                String path = "/v1/product/" + productId + "/image/" + imageId + "/content";
+                HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+                        .followRedirects(HttpClient.Redirect.NEVER).build();
+                HttpRequest req = HttpRequest.newBuilder(URI.create("http://localhost:" + io.restassured.RestAssured.port + path)).build();
+                for (int i = 0; i < 2_000; i++) {
+                    http.send(req, HttpResponse.BodyHandlers.discarding()); // warm-up
+                }
+
+                ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+                long start = System.nanoTime();
+                List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < THREADS; t++) {
+                    futures.add(pool.submit(() -> {
+                        for (int i = 0; i < REQUESTS / THREADS; i++) {
+                            assertThat(http.send(req, HttpResponse.BodyHandlers.discarding()).statusCode(), equalTo(302));
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<?> f : futures) f.get();
+                double secs = (System.nanoTime() - start) / 1e9;
+                pool.shutdown();
+
+                int signs = 20_000;
+                GetObjectPresignRequest presign = GetObjectPresignRequest.builder()
+                        .signatureDuration(java.time.Duration.ofMinutes(15))
+                        .getObjectRequest(b -> b.bucket("dummy-bucket").key("users/1/products/1/x.png"))
+                        .build();
+                long signStart = System.nanoTime();
+                for (int i = 0; i < signs; i++) {
+                    signer.presignGetObject(presign);
+                }
+                double usPerSign = (System.nanoTime() - signStart) / 1e3 / signs;
+
+                System.out.printf("[bench] %d redirects over %d threads: %.0f req/s, presign calls %d; uncached signing costs %.1f us/request%n",
+                        REQUESTS, THREADS, REQUESTS / secs,
+                        Mockito.mockingDetails(presigner).getInvocations().size(), usPerSign);
+            } finally {
+                Mockito.reset(s3, presigner);
+            }
+        }
+    }
+
+    private S3StandIn routeS3ToStandIn() throws IOException {
+        return new S3StandIn().routeMocks(s3, presigner);
+    }
+
+    private Long uploadPng() {
+        return given()
+                .auth().preemptive().basic(username, pwd)
+                .multiPart("file", "a.png", PNG, "image/png")
+                .when()
+                .post("/v1/product/{id}/image", productId)
+                .then()
+                .statusCode(201)
+                .extract().jsonPath().getLong("image_id");
+    }
+
+    // S3 calls must happen with no transaction open and no connection bound to the request thread
+    @Nested
+    class NoConnectionDuringS3 {
+        @Test
+        void upload_putsWithoutHoldingAConnection() {
+            List<String> heldDuringPut = new CopyOnWriteArrayList<>();
+            when(s3.putObject(any(PutObjectRequest.class), any(RequestBody.class))).thenAnswer(inv -> {
+                heldDuringPut.add(boundResources());
+                return PutObjectResponse.builder().build();
+            });
+            try {
+                given()
+                        .auth().preemptive().basic(username, pwd)
+                        .multiPart("file", "a.png", PNG, "image/png")
+                        .when()
+                        .post("/v1/product/{id}/image", productId)
+                        .then()
+                        .statusCode(201);
+
+                assertThat(heldDuringPut, contains(""));
+            } finally {
+                Mockito.reset(s3);
+            }
+        }
+
+        @Test
+        void delete_queuesTheObjectWithoutCallingS3() {
+            Long imageId = uploadPng();
+            String key = jdbc.queryForObject("select s3_bucket_path from images where image_id = ?",
+                    String.class, imageId);
+            try {
+                given()
+                        .auth().preemptive().basic(username, pwd)
+                        .when()
+                        .delete("/v1/product/{id}/image/{imageId}", productId, imageId)
+                        .then()
+                        .statusCode(204);
+
+                // the row and its reference go in the statement that queues the object
+                verify(s3, never()).deleteObject(any(DeleteObjectRequest.class));
+                assertThat(jdbc.queryForObject("select count(*) from images where image_id = ?",
+                        Long.class, imageId), is(0L));
+                assertThat(jdbc.queryForObject("select count(*) from object_deletions where s3_bucket_path = ?",
+                        Long.class, key), is(1L));
+            } finally {
+                Mockito.reset(s3);
+            }
+        }
+
+        @Test
+        void upload_productDeletedMidUpload_queuesObjectAndReturns404() {
+            when(s3.putObject(any(PutObjectRequest.class), any(RequestBody.class))).thenAnswer(inv -> {
+                jdbc.update("delete from products where id = ?", productId);
+                return PutObjectResponse.builder().build();
+            });
+            try {
+                given()
+                        .auth().preemptive().basic(username, pwd)
+                        .multiPart("file", "a.png", PNG, "image/png")
+                        .when()
+                        .post("/v1/product/{id}/image", productId)
+                        .then()
+                        .statusCode(404);
+
+                // the pin taken before the PUT was its only reference
+                ArgumentCaptor<PutObjectRequest> put = ArgumentCaptor.forClass(PutObjectRequest.class);
+                verify(s3).putObject(put.capture(), any(RequestBody.class));
+                assertThat(jdbc.queryForObject("select count(*) from object_deletions where s3_bucket_path = ?",
+                        Long.class, put.getValue().key()), is(1L));
+            } finally {
+                Mockito.reset(s3);
+            }
+        }
+
+        private String boundResources() {
+            return (TransactionSynchronizationManager.isActualTransactionActive() ? "tx " : "")
+                    + (TransactionSynchronizationManager.getResourceMap().isEmpty() ? "" : "resources");
+        }
+    }
+
+    // Guards against re-introducing per-request user lookups: the principal already carries the id
+    @Nested
+    class QueryBudget {
+        @Test
+        void firstAuthenticatedRequest_looksUpUserOnce() {
+            String fresh = ApiFixtures.username("img-fresh");
+            ApiFixtures.createUser(fresh, pwd);
+
+            statements.reset();
+            ApiFixtures.createProduct(fresh, pwd);
+
+            assertThat(statements.queries().toString(), statements.usersQueries(), equalTo(1L));
+        }
+
+        @Test
+        void upload_withWarmCredentials_doesNoUserLookup() {
+            statements.reset();
+            given()
+                    .auth().preemptive().basic(username, pwd)
+                    .multiPart("file", "a.png", PNG, "image/png")
+                    .when()
+                    .post("/v1/product/{id}/image", productId)
+                    .then()
+                    .statusCode(201);
+
+            // select product + blob lookup and pin (decides whether to PUT) + insert image with its blob reference
+            assertThat(statements.queries().toString(), statements.usersQueries(), equalTo(0L));
+            assertThat(statements.queries().toString(), statements.total(), lessThanOrEqualTo(3L));
+        }
+
+        @Test
+        void productWrites_doNoUserLookup() {
+            statements.reset();
+            given()
+                    .auth().preemptive().basic(username, pwd)
+                    .contentType("application/json")
+                    .body("{\"quantity\": 3}")
+                    .when()
+                    .patch("/v1/product/{id}", productId)
+                    .then()
+                    .statusCode(204);
+
+            given()
+                    .auth().preemptive().basic(username, pwd)
+                    .when()
+                    .delete("/v1/product/{id}", productId)
+                    .then()
+                    .statusCode(204);
+
+            // one conditional update + one conditional delete, ownership checked in the WHERE clause
+            assertThat(statements.queries().toString(), statements.usersQueries(), equalTo(0L));
+            assertThat(statements.queries().toString(), statements.total(), equalTo(2L));
+        }
+    }
+
+    // Peak heap while N large photos are uploaded at once (S3 is a mock that just drains the body).
+    // Run with: ./mvnw test -Dbenchmark=true -Dtest='ImageControllerTest$UploadHeapBenchmark'
+    @Nested
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    class UploadHeapBenchmark {
+        static final int CONCURRENT = 8;
+        static final long FILE_SIZE = 50L * 1024 * 1024;
+
+        @Test
+        void peakHeapUnderConcurrentLargeUploads() throws Exception {
+            stubDrainingS3();
+            File photo = largePhoto(FILE_SIZE);
+
+            ExecutorService pool = Executors.newFixedThreadPool(CONCURRENT);
+            try {
+                upload(photo); // warm-up
+                System.gc();
+                List<MemoryPoolMXBean> heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+                        .filter(p -> p.getType() == MemoryType.HEAP).toList();
+                long before = heapPools.stream().mapToLong(p -> p.getUsage().getUsed()).sum();
+                heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+
+                long start = System.nanoTime();
+                List<Future<?>> futures = new ArrayList<>();
+                for (int i = 0; i < CONCURRENT; i++) {
+                    futures.add(pool.submit(() -> upload(photo)));
+                }
+                for (Future<?> f : futures) f.get();
+                double secs = (System.nanoTime() - start) / 1e9;
+
+                long peak = heapPools.stream().mapToLong(p -> p.getPeakUsage().getUsed()).sum();
+                System.out.printf("[bench] %d x %d MB uploads in %.1fs: heap before %d MB, peak %d MB (+%d MB)%n",
+                        CONCURRENT, FILE_SIZE >> 20, secs, before >> 20, peak >> 20, (peak - before) >> 20);
+            } finally {
+                pool.shutdown();
+                photo.delete();
+                Mockito.reset(s3);
+            }
+        }
+
+        private void upload(File photo) {
+            given()
+                    .auth().preemptive().basic(username, pwd)
+                    .multiPart("file", photo, "image/png")
+                    .when()
+                    .post("/v1/product/{id}/image", productId)
+                    .then()
+                    .statusCode(201);
+            Mockito.clearInvocations(s3); // the mock must not keep request bodies alive
+        }
+
+        private void stubDrainingS3() {
+            when(s3.putObject(any(PutObjectRequest.class), any(RequestBody.class))).thenAnswer(inv -> {
+                drain(inv.getArgument(1));
+                return PutObjectResponse.builder().eTag("e").build();
+            });
+            when(s3.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+                    .thenReturn(CreateMultipartUploadResponse.builder().uploadId("u").build());
+            when(s3.uploadPart(any(UploadPartRequest.class), any(RequestBody.class))).thenAnswer(inv -> {
+                drain(inv.getArgument(1));
+                return UploadPartResponse.builder().eTag("p").build();
+            });
+        }
+    }
+
+    // Blocking counterpart of ImageAsyncUploadTest$UploadConcurrencyBenchmark.
+    // Run with: ./mvnw test -Dbenchmark=true -Dtest='ImageControllerTest$UploadConcurrencyBenchmark'
+    @Nested
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    class UploadConcurrencyBenchmark {
+        @Autowired
+        ApplicationContext ctx;
+
+        @Test
+        void concurrentUploads() throws Exception {
+            try (S3StandIn standIn = routeS3ToStandIn()) {
+                standIn.putDelay(Duration.ofSeconds(2));
+                byte[] png = ImageAsyncUploadTest.png(16 * 1024, 4);
+                String path = "/v1/product/" + productId + "/image";
+
+                ConcurrentUploads.run(ctx, path, username, pwd, png, 20); // warm-up
+                int uploads = ConcurrentUploads.count();
+                ConcurrentUploads.Result r = ConcurrentUploads.run(ctx, path, username, pwd, png, uploads);
+                System.out.println("[bench] blocking: " + r);
+                assertThat(r.statuses().get(201), is(uploads));
+            } finally {
+                Mockito.reset(s3, presigner);
+            }
+        }
+    }
+
+    static File largePhoto(long size) throws IOException {
+        File photo = File.createTempFile("photo", ".png");
+        try (RandomAccessFile f = new RandomAccessFile(photo, "rw")) {
+            f.write(PNG);
+            f.setLength(size);
+        }
+        return photo;
+    }
+
+    static long drain(RequestBody body) throws IOException {
+        try (InputStream in = body.contentStreamProvider().newStream()) {
+            return in.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.isaactai.cloudnativeweb.image;
+
+import com.isaactai.cloudnativeweb.support.ApiFixtures;
+import com.isaactai.cloudnativeweb.support.ImageApiTest;
+import io.restassured.path.json.JsonPath;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Content-addressed uploads: one object per seller and distinct bytes, reference counted.
+ * @author tisaac
+ */
+public class ImageDedupTest extends ImageApiTest {
+
+    @Autowired
+    ImageDeletionWorker deletions; // polls hourly under ci, drained by the tests
+
+    @Test
+    void sameBytesOnTwoProducts_arePutOnce() throws Exception {
+        byte[] photo = png(4096, 1);
+        Long p1 = ApiFixtures.createProduct(username);
+        Long p2 = ApiFixtures.createProduct(username);
+
+        JsonPath first = upload(username, p1, photo);
+        JsonPath second = upload(username, p2, photo);
+
+        String key = "users/" + userId + "/blobs/" + sha256(photo);
+        assertThat(first.getString("s3_bucket_path"), is(key));
+        assertThat(second.getString("s3_bucket_path"), is(key));
+        assertThat(second.getLong("image_id"), not(first.getLong("image_id")));
+        verify(s3, times(1)).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+        assertThat(standIn.get("dummy-bucket/" + key).body(), equalTo(photo));
+        assertThat(refCount(key), is(2));
+    }
+
+    @Test
+    void objectIsDeleted_onlyWithTheLastReference() {
+        byte[] photo = png(4096, 2);
+        Long p1 = ApiFixtures.createProduct(username);
+        Long p2 = ApiFixtures.createProduct(username);
+        Long i1 = upload(username, p1, photo).getLong("image_id");
+        JsonPath second = upload(username, p2, photo);
+        String key = second.getString("s3_bucket_path");
+
+        delete(p1, i1);
+        assertThat(jdbc.queryForObject("select count(*) from object_deletions where s3_bucket_path = ?",
+                Long.class, key), is(0L));
+        assertThat(standIn.get("dummy-bucket/" + key), notNullValue());
+        assertThat(refCount(key), is(1));
+        given().redirects().follow(false)
+                .when().get("/v1/product/{id}/image/{iid}/content", p2, second.getLong("image_id"))
+                .then().statusCode(302);
+
+        delete(p2, second.getLong("image_id"));
+        deletions.drain();
+        assertThat(standIn.get("dummy-bucket/" + key), nullValue());
+        assertThat(jdbc.queryForObject("select count(*) from image_blobs where s3_bucket_path = ?",
+                Long.class, key), is(0L));
+
+        // and the same bytes can be stored again afterwards
+        upload(username, p1, photo);
+        assertThat(standIn.get("dummy-bucket/" + key), notNullValue());
+        assertThat(refCount(key), is(1));
+    }
+
+    @Test
+    void otherSellers_getTheirOwnObject() {
+        byte[] photo = png(4096, 3);
+        String other = ApiFixtures.username("dedup-other");
+        Long otherId = ApiFixtures.createUser(other);
+
+        String mine = upload(username, ApiFixtures.createProduct(username), photo).getString("s3_bucket_path");
+        String theirs = upload(other, ApiFixtures.createProduct(other), photo).getString("s3_bucket_path");
+
+        assertThat(mine, startsWith("users/" + userId + "/blobs/"));
+        assertThat(theirs, startsWith("users/" + otherId + "/blobs/"));
+        verify(s3, times(2)).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+    }
+
+    @Test
+    void blobBeingDeleted_isNotRevived() {
+        byte[] photo = png(4096, 4);
+        String key = "users/" + userId + "/blobs/" + sha256(photo);
+        // what a delete leaves behind between dropping the last reference and removing the object
+        jdbc.update("insert into image_blobs (s3_bucket_path, content_type, size_bytes, ref_count) values (?, ?, ?, 0)",
+                key, "image/png", photo.length);
+
+        JsonPath created = upload(username, ApiFixtures.createProduct(username), photo);
+
+        assertThat(created.getString("s3_bucket_path"), not(key));
+        assertThat(created.getString("s3_bucket_path"), startsWith("users/" + userId + "/products/"));
+        assertThat(standIn.get("dummy-bucket/" + created.getString("s3_bucket_path")).body(), equalTo(photo));
+        assertThat(refCount(key), is(0));
+        // nothing was written to the key: the delete could have landed after it
+        assertThat(standIn.get("dummy-bucket/" + key), nullValue());
+    }
+
+    @Test
+    void putInFlight_holdsItsReference() throws Exception {
+        byte[] photo = png(4096, 5);
+        String key = "users/" + userId + "/blobs/" + sha256(photo);
+        Long productId = ApiFixtures.createProduct(username);
+        standIn.putDelay(Duration.ofSeconds(2));
+
+        ExecutorService client = Executors.newSingleThreadExecutor();
+        try {
+            Future<JsonPath> created = client.submit(() -> upload(username, productId, photo));
+            long deadline = System.currentTimeMillis() + 1000;
+            while (pendingPuts(key) == null && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            // deleting the last image of these bytes now would leave the count above 0
+            assertThat(refCount(key), is(1));
+            assertThat(pendingPuts(key), is(1));
+            assertThat(created.isDone(), is(false));
+
+            assertThat(created.get().getString("s3_bucket_path"), is(key));
+        } finally {
+            client.shutdown();
+        }
+        // the pin became the image's reference
+        assertThat(refCount(key), is(1));
+        assertThat(pendingPuts(key), is(0));
+    }
+
+    @Test
+    void failedPut_dropsItsReference() {
+        byte[] photo = png(4096, 6);
+        String key = "users/" + userId + "/blobs/" + sha256(photo);
+        when(s3.putObject(any(PutObjectRequest.class), any(RequestBody.class)))
+                .thenThrow(S3Exception.builder().message("boom").build());
+
+        given().auth().preemptive().basic(username, pwd)
+                .multiPart("file", "Photo.png", photo, "image/png")
+                .when().post("/v1/product/{id}/image", ApiFixtures.createProduct(username))
+                .then().statusCode(502);
+
+        assertThat(refCount(key), is(0));
+        assertThat(jdbc.queryForObject("select count(*) from object_deletions where s3_bucket_path = ?",
+                Long.class, key), is(1L));
+        deletions.drain();
+        assertThat(jdbc.queryForObject("select count(*) from image_blobs where s3_bucket_path = ?",
+                Long.class, key), is(0L));
+    }
+
+    private JsonPath upload(String user, Long productId, byte[] body) {
+        return given().auth().preemptive().basic(user, pwd)
+                .multiPart("file", "Photo.png", body, "image/png")
+                .when().post("/v1/product/{id}/image", productId)
+                .then().statusCode(201)
+                .extract().jsonPath();
+    }
+
+    private void delete(Long productId, Long imageId) {
+        given().auth().preemptive().basic(username, pwd)
+                .when().delete("/v1/product/{id}/image/{iid}", productId, imageId)
+                .then().statusCode(204);
+    }
+
+    private Integer refCount(String key) {
+        return jdbc.queryForObject("select ref_count from image_blobs where s3_bucket_path = ?", Integer.class, key);
+    }
+
+    // null while the blob has no row
+    private Integer pendingPuts(String key) {
+        return jdbc.query("select pending_puts from image_blobs where s3_bucket_path = ?",
+                (rs, i) -> rs.getInt(1), key).stream().findFirst().orElse(null);
+    }
+
+    private static String sha256(byte[] b) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(b));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] png(int size, long seed) {
+        byte[] b = new byte[size];
+        new Random(seed + System.nanoTime()).nextBytes(b);
+        System.arraycopy(ImageControllerTest.PNG, 0, b, 0, ImageControllerTest.PNG.length);
+        return b;
+    }
+
+    /**
+     * One 1MB photo uploaded to 100 products at 50ms of simulated S3 PUT latency, against 100
+     * distinct photos. Run with {@code -Dbenchmark=true}.
+     */
+    @Nested
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    class RepeatedPhotoBenchmark {
+
+        @Test
+        void repeatedVersusDistinct() throws Exception {
+            standIn.putDelay(Duration.ofMillis(50));
+            int uploads = 100;
+            byte[] photo = png(1024 * 1024, 5);
+
+            long start = System.nanoTime();
+            for (int i = 0; i < uploads; i++) {
+                upload(username, ApiFixtures.createProduct(username), photo);
+            }
+            double repeated = (System.nanoTime() - start) / 1e9;
+            int repeatedObjects = standIn.size();
+
+            start = System.nanoTime();
+            for (int i = 0; i < uploads; i++) {
+                upload(username, ApiFixtures.createProduct(username), png(1024 * 1024, 100 + i));
+            }
+            double distinct = (System.nanoTime() - start) / 1e9;
+
+            System.out.printf("[bench] %d uploads of one 1MB photo: %.2fs (%.1f ms each), %d object(s) stored; "
+                            + "%d distinct photos: %.2fs (%.1f ms each), %d objects stored%n",
+                    uploads, repeated, repeated * 1000 / uploads, repeatedObjects,
+                    uploads, distinct, distinct * 1000 / uploads, standIn.size() - repeatedObjects);
+            assertThat(repeatedObjects, is(1));
+        }
+    }
+}
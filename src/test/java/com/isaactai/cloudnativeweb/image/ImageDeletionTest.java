@@ -0,0 +1,192 @@
+package com.isaactai.cloudnativeweb.image;
+
+import com.isaactai.cloudnativeweb.support.ApiFixtures;
+import com.isaactai.cloudnativeweb.support.ImageApiTest;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.S3Error;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Deletes go through the object_deletions queue and are drained with multi-object deletes.
+ * @author tisaac
+ */
+public class ImageDeletionTest extends ImageApiTest {
+
+    @Autowired
+    ImageDeletionQueue queue;
+
+    @Autowired
+    ImageDeletionWorker deletions; // polls hourly under ci, drained by the tests
+
+    @Test
+    void productDelete_removesItsObjectsInOneBatch_butKeepsSharedOnes() {
+        Long product = ApiFixtures.createProduct(username);
+        Long other = ApiFixtures.createProduct(username);
+        List<String> own = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            own.add(upload(product, png(i)));
+        }
+        byte[] shared = png(10);
+        String sharedKey = upload(product, shared);
+        upload(other, shared);
+
+        given().auth().preemptive().basic(username, pwd)
+                .when().delete("/v1/product/{id}", product)
+                .then().statusCode(204);
+        deletions.drain();
+
+        ArgumentCaptor<DeleteObjectsRequest> batches = ArgumentCaptor.forClass(DeleteObjectsRequest.class);
+        verify(s3, atLeastOnce()).deleteObjects(batches.capture());
+        verify(s3, never()).deleteObject(any(DeleteObjectRequest.class));
+        assertThat(batches.getAllValues().stream()
+                .map(b -> b.delete().objects().stream().map(ObjectIdentifier::key).toList())
+                .toList(), hasItem(hasItems(own.toArray(String[]::new))));
+        for (String key : own) {
+            assertThat(standIn.get("dummy-bucket/" + key), nullValue());
+        }
+        // the blob rows are forgotten once their objects are gone, so the bytes can be stored again
+        assertThat(jdbc.queryForObject("select count(*) from image_blobs where s3_bucket_path = any(?::varchar[])",
+                Long.class, (Object) own.toArray(String[]::new)), is(0L));
+
+        assertThat(standIn.get("dummy-bucket/" + sharedKey), notNullValue());
+        assertThat(jdbc.queryForObject("select ref_count from image_blobs where s3_bucket_path = ?",
+                Integer.class, sharedKey), is(1));
+    }
+
+    @Test
+    void failedKeys_areRetriedWithBackoff() {
+        Long product = ApiFixtures.createProduct(username);
+        String key = upload(product, png(20));
+        Long imageId = jdbc.queryForObject("select image_id from images where s3_bucket_path = ?", Long.class, key);
+        S3Client real = standIn.client();
+        AtomicBoolean refuse = new AtomicBoolean(true);
+        AtomicInteger refused = new AtomicInteger();
+        when(s3.deleteObjects(any(DeleteObjectsRequest.class))).thenAnswer(inv -> {
+            DeleteObjectsRequest req = inv.getArgument(0);
+            if (refuse.get() && req.delete().objects().stream().anyMatch(o -> o.key().equals(key))) {
+                refused.incrementAndGet();
+                return DeleteObjectsResponse.builder()
+                        .errors(S3Error.builder().key(key).code("InternalError").build())
+                        .build();
+            }
+            return real.deleteObjects(req);
+        });
+
+        given().auth().preemptive().basic(username, pwd)
+                .when().delete("/v1/product/{id}/image/{iid}", product, imageId)
+                .then().statusCode(204);
+        deletions.drain();
+
+        assertThat(refused.get(), is(1));
+        assertThat(standIn.get("dummy-bucket/" + key), notNullValue());
+        assertThat(jdbc.queryForObject("select attempts from object_deletions where s3_bucket_path = ?",
+                Integer.class, key), is(1));
+        assertThat(jdbc.queryForObject("select due_at > now() + interval '20 seconds' from object_deletions"
+                + " where s3_bucket_path = ?", Boolean.class, key), is(true));
+
+        refuse.set(false);
+        jdbc.update("update object_deletions set due_at = now() where s3_bucket_path = ?", key);
+        deletions.drain();
+        assertThat(standIn.get("dummy-bucket/" + key), nullValue());
+    }
+
+    @Test
+    void blobIsForgotten_onlyOnceItsThumbnailsAreGoneToo() {
+        String key = "users/" + userId + "/blobs/" + "ab".repeat(32);
+        jdbc.update("insert into image_blobs (s3_bucket_path, content_type, size_bytes, ref_count) values (?, ?, ?, 0)",
+                key, "image/png", 1);
+        jdbc.update("insert into object_deletions (s3_bucket_path, due_at) values (?, now() + interval '1 hour'),"
+                + " (?, now() + interval '1 hour')", key, key + "~160.jpg");
+
+        queue.complete(List.of(key));
+        assertThat(blobRows(key), is(1L)); // a late retry of the thumbnail could hit a new upload's rendition
+
+        queue.complete(List.of(key + "~160.jpg"));
+        assertThat(blobRows(key), is(0L));
+    }
+
+    private Long blobRows(String key) {
+        return jdbc.queryForObject("select count(*) from image_blobs where s3_bucket_path = ?", Long.class, key);
+    }
+
+    private String upload(Long productId, byte[] body) {
+        return given().auth().preemptive().basic(username, pwd)
+                .multiPart("file", "p.png", body, "image/png")
+                .when().post("/v1/product/{id}/image", productId)
+                .then().statusCode(201)
+                .extract().jsonPath().getString("s3_bucket_path");
+    }
+
+    private static byte[] png(long seed) {
+        byte[] b = new byte[4096];
+        new Random(seed + System.nanoTime()).nextBytes(b);
+        System.arraycopy(ImageControllerTest.PNG, 0, b, 0, ImageControllerTest.PNG.length);
+        return b;
+    }
+
+    /**
+     * Deleting 200 images one request at a time at 50ms of simulated S3 latency per call:
+     * request latency and S3 calls made, against one DeleteObject per image in the request.
+     * Run with {@code -Dbenchmark=true}.
+     */
+    @Nested
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    class DeleteBenchmark {
+
+        @Test
+        void queuedVersusInline() throws InterruptedException {
+            int images = 200;
+            S3Client real = standIn.client();
+            AtomicInteger calls = new AtomicInteger();
+            when(s3.deleteObjects(any(DeleteObjectsRequest.class))).thenAnswer(inv -> {
+                calls.incrementAndGet();
+                Thread.sleep(50);
+                return real.deleteObjects((DeleteObjectsRequest) inv.getArgument(0));
+            });
+            Long product = ApiFixtures.createProduct(username);
+            List<String> keys = new ArrayList<>();
+            for (int i = 0; i < images; i++) {
+                keys.add(upload(product, png(100 + i)));
+            }
+            List<Long> ids = jdbc.queryForList("select image_id from images where product_id = ?", Long.class, product);
+
+            long start = System.nanoTime();
+            for (Long id : ids) {
+                given().auth().preemptive().basic(username, pwd)
+                        .when().delete("/v1/product/{id}/image/{iid}", product, id)
+                        .then().statusCode(204);
+            }
+            double requestMs = (System.nanoTime() - start) / 1e6 / images;
+            deletions.drain();
+            double drainedSecs = (System.nanoTime() - start) / 1e9;
+
+            System.out.printf("[bench] %d image deletes, 50ms S3 latency: %.1f ms per request, all objects gone "
+                            + "after %.1fs with %d DeleteObjects calls (inline: >= 50 ms per request, %d calls)%n",
+                    images, requestMs, drainedSecs, calls.get(), images);
+            assertThat(standIn.size(), is(0));
+        }
+    }
+}
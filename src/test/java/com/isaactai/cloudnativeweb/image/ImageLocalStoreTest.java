@@ -0,0 +1,261 @@
+package com.isaactai.cloudnativeweb.image;
+
+import com.isaactai.cloudnativeweb.storage.ByteRange;
+import com.isaactai.cloudnativeweb.storage.FileSystemObjectStore;
+import com.isaactai.cloudnativeweb.storage.ObjectContent;
+import com.isaactai.cloudnativeweb.storage.ObjectInfo;
+import com.isaactai.cloudnativeweb.storage.ObjectPage;
+import com.isaactai.cloudnativeweb.storage.ObjectStore;
+import com.isaactai.cloudnativeweb.support.ImageApiTest;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+/**
+ * The image API on the {@code local-store} profile: no S3 at all, objects on local disk.
+ * @author tisaac
+ */
+@ActiveProfiles("local-store")
+@TestPropertySource(properties = "app.storage.local.root=${java.io.tmpdir}/csye6225/objects-test")
+public class ImageLocalStoreTest extends ImageApiTest {
+
+    @Autowired
+    ObjectStore store;
+
+    @Autowired
+    ImageDeletionWorker deletions; // polls hourly under ci, drained by the tests
+
+    @Value("${app.storage.local.root}")
+    Path root;
+
+    @Test
+    void store_isFileSystemBacked() {
+        assertThat(store, instanceOf(FileSystemObjectStore.class));
+    }
+
+    @Test
+    void upload_content_delete_roundTrip() {
+        byte[] png = png(100 * 1024, 1);
+        var created = given().auth().preemptive().basic(username, pwd)
+                .multiPart("file", "a.png", png, "image/png")
+                .when().post("/v1/product/{id}/image", productId)
+                .then().statusCode(201)
+                .extract().jsonPath();
+        Long imageId = created.getLong("image_id");
+        String key = created.getString("s3_bucket_path");
+        assertThat(Files.isRegularFile(root.resolve("data").resolve(key)), is(true));
+
+        // no presigned URLs here, so the bytes are proxied
+        byte[] body = given().redirects().follow(false).when().get(path(imageId))
+                .then().statusCode(200)
+                .contentType("image/png")
+                .header("Content-Length", String.valueOf(png.length))
+                .extract().asByteArray();
+        assertThat(body, equalTo(png));
+
+        byte[] part = given().header("Range", "bytes=100-199").when().get(path(imageId))
+                .then().statusCode(206)
+                .header("Content-Range", "bytes 100-199/" + png.length)
+                .extract().asByteArray();
+        assertThat(part, equalTo(Arrays.copyOfRange(png, 100, 200)));
+
+        given().auth().preemptive().basic(username, pwd)
+                .when().delete("/v1/product/{id}/image/{image_id}", productId, imageId)
+                .then().statusCode(204);
+        deletions.drain();
+        assertThat(Files.exists(root.resolve("data").resolve(key)), is(false));
+        verifyNoInteractions(s3);
+    }
+
+    @Test
+    void presign_isRejected() {
+        given().auth().preemptive().basic(username, pwd)
+                .contentType("application/json")
+                .body("""
+                        {"file_name": "a.png", "content_type": "image/png", "content_length": 10}
+                        """)
+                .when().post("/v1/product/{id}/image/presign", productId)
+                .then().statusCode(400);
+    }
+
+    @Test
+    void rangedGet_headAndMissingKeys() throws IOException {
+        String key = "store-test/" + System.nanoTime() + "/obj";
+        byte[] bytes = png(10_000, 2);
+        store.put(key, "image/png", new ByteArrayInputStream(bytes), bytes.length);
+
+        assertThat(store.head(key).map(ObjectInfo::size).orElseThrow(), is(10_000L));
+        assertThat(store.head(key).map(ObjectInfo::contentType).orElseThrow(), is("image/png"));
+        try (ObjectContent c = store.get(key, new ByteRange(9_990, 9_999)).orElseThrow()) {
+            assertThat(c.length(), is(10L));
+            assertThat(c.stream().readAllBytes(), equalTo(Arrays.copyOfRange(bytes, 9_990, 10_000)));
+        }
+        assertThat(store.get(key + "-missing", null).isPresent(), is(false));
+        assertThat(store.head(key + "-missing").isPresent(), is(false));
+        assertThrows(IllegalArgumentException.class, () -> store.head("store-test/../../etc/passwd"));
+    }
+
+    @Test
+    void shortStream_failsAndLeavesNothingBehind() throws IOException {
+        String key = "store-test/" + System.nanoTime() + "/short";
+        assertThrows(RuntimeException.class,
+                () -> store.put(key, "image/png", new ByteArrayInputStream(new byte[10]), 20));
+        assertThat(store.head(key).isPresent(), is(false));
+        try (Stream<Path> tmp = Files.list(root.resolve("tmp"))) {
+            assertThat(tmp.count(), is(0L));
+        }
+    }
+
+    @Test
+    void multipart_assemblesPartsInOrder_andAbortLeavesNothing() throws IOException {
+        String key = "store-test/" + System.nanoTime() + "/multi";
+        byte[] bytes = png(30_000, 4);
+        Path first = Files.createTempFile("part-", ".bin");
+        Path second = Files.createTempFile("part-", ".bin");
+        try {
+            Files.write(first, Arrays.copyOfRange(bytes, 0, 20_000));
+            Files.write(second, Arrays.copyOfRange(bytes, 20_000, 30_000));
+
+            String uploadId = store.createMultipart(key, "image/png");
+            // uploaded out of order, and part 1 twice: the last upload of a part wins
+            String tag2 = store.uploadPart(key, uploadId, 2, second, 10_000);
+            store.uploadPart(key, uploadId, 1, second, 10_000);
+            String tag1 = store.uploadPart(key, uploadId, 1, first, 20_000);
+            assertThat(store.head(key).isPresent(), is(false));
+
+            store.completeMultipart(key, uploadId, List.of(tag1, tag2));
+            try (ObjectContent c = store.get(key, null).orElseThrow()) {
+                assertThat(c.stream().readAllBytes(), equalTo(bytes));
+            }
+            assertThat(store.head(key).map(ObjectInfo::contentType).orElseThrow(), is("image/png"));
+
+            String aborted = store.createMultipart(key + "-aborted", "image/png");
+            store.uploadPart(key + "-aborted", aborted, 1, first, 20_000);
+            store.abortMultipart(key + "-aborted", aborted);
+            store.abortMultipart(key + "-aborted", aborted);
+            assertThat(store.head(key + "-aborted").isPresent(), is(false));
+            try (Stream<Path> parts = Files.list(root.resolve("parts"))) {
+                assertThat(parts.count(), is(0L));
+            }
+        } finally {
+            Files.deleteIfExists(first);
+            Files.deleteIfExists(second);
+        }
+    }
+
+    @Test
+    void list_pagesInKeyOrder_andDeleteAllRemovesEverything() {
+        String prefix = "store-test/" + System.nanoTime() + "/";
+        List<String> keys = new ArrayList<>();
+        // "a/x" sorts after "a-b" in S3 key order even though the directory "a" sorts first
+        for (String k : List.of("a-b", "a/x", "a/y/z", "b", "c0", "c1")) {
+            keys.add(prefix + k);
+            store.put(prefix + k, "image/png", new ByteArrayInputStream(new byte[1]), 1);
+        }
+        store.put("store-test/other", "image/png", new ByteArrayInputStream(new byte[1]), 1);
+
+        List<String> seen = new ArrayList<>();
+        String after = null;
+        do {
+            ObjectPage page = store.list(prefix, after, 2);
+            page.objects().forEach(o -> seen.add(o.key()));
+            after = page.nextStartAfter();
+        } while (after != null);
+        assertThat(seen, equalTo(keys));
+
+        assertThat(store.deleteAll(keys), empty());
+        assertThat(store.list(prefix, null, 100).objects(), empty());
+    }
+
+    private String path(Long imageId) {
+        return "/v1/product/" + productId + "/image/" + imageId + "/content";
+    }
+
+    private static byte[] png(int size, long seed) {
+        byte[] b = new byte[size];
+        new Random(seed).nextBytes(b);
+        System.arraycopy(ImageControllerTest.PNG, 0, b, 0, ImageControllerTest.PNG.length);
+        return b;
+    }
+
+    /**
+     * Offline image throughput on one box, the reason the local store exists.
+     * Run with {@code -Dbenchmark=true}.
+     */
+    @Nested
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    class UploadBenchmark {
+
+        @Test
+        void uploadAndReadThroughput() throws Exception {
+            int uploads = 400;
+            int threads = 16;
+            byte[] png = png(256 * 1024, 3);
+
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            try {
+                long start = System.nanoTime();
+                List<Future<Long>> ids = new ArrayList<>();
+                for (int i = 0; i < uploads; i++) {
+                    ids.add(pool.submit(() -> given().auth().preemptive().basic(username, pwd)
+                            .multiPart("file", "b.png", png, "image/png")
+                            .when().post("/v1/product/{id}/image", productId)
+                            .then().statusCode(201)
+                            .extract().jsonPath().getLong("image_id")));
+                }
+                List<Long> imageIds = new ArrayList<>();
+                for (Future<Long> f : ids) {
+                    imageIds.add(f.get());
+                }
+                double upSecs = (System.nanoTime() - start) / 1e9;
+
+                start = System.nanoTime();
+                List<Future<Integer>> reads = new ArrayList<>();
+                for (Long id : imageIds) {
+                    reads.add(pool.submit(() -> {
+                        try (InputStream in = given().when().get(path(id)).then().statusCode(200)
+                                .extract().asInputStream()) {
+                            return in.readAllBytes().length;
+                        }
+                    }));
+                }
+                for (Future<Integer> f : reads) {
+                    assertThat(f.get(), is(png.length));
+                }
+                double readSecs = (System.nanoTime() - start) / 1e9;
+
+                double mb = uploads * (png.length / (1024.0 * 1024));
+                System.out.printf("[bench] local-store %d x %dKB, %d threads: upload %.0f req/s (%.1f MB/s), "
+                                + "read %.0f req/s (%.1f MB/s)%n",
+                        uploads, png.length / 1024, threads,
+                        uploads / upSecs, mb / upSecs, uploads / readSecs, mb / readSecs);
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.isaactai.cloudnativeweb.image;
+
+import com.isaactai.cloudnativeweb.support.ImageWorkersApiTest;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+/**
+ * Reconciliation of the bucket (the in-JVM stand-in) against the image tables. Every run is a
+ * slice of one page, so a pass here always goes through the checkpoint.
+ * @author tisaac
+ */
+public class ImageReconcileTest extends ImageWorkersApiTest {
+    static final Instant OLD = Instant.now().minus(Duration.ofHours(2));
+
+    @Autowired
+    MeterRegistry registry;
+
+    @Autowired
+    ImageReconciler reconciler;
+
+    @BeforeEach
+    void setUp() {
+        // a fresh pass, whatever earlier runs left behind
+        jdbc.update("update reconcile_checkpoints set after_key = null, pass_started_at = null, due_at = now()");
+    }
+
+    @Test
+    void oldOrphans_areQueued_missingObjectsCounted_andEverythingElseLeftAlone() {
+        String known = upload();
+        standIn.put("dummy-bucket/" + known, standIn.get("dummy-bucket/" + known).body(), "image/png", OLD);
+        String prefix = "users/" + userId + "/products/" + productId + "/";
+        String oldOrphan = prefix + "old-orphan.png";
+        String newOrphan = prefix + "new-orphan.png";
+        standIn.put("dummy-bucket/" + oldOrphan, new byte[10], "image/png", OLD);
+        standIn.put("dummy-bucket/" + newOrphan, new byte[10], "image/png");
+        String gone = prefix + "gone.png";
+        jdbc.update("insert into images (product_id, file_name, s3_bucket_path, date_created) values (?, ?, ?, ?)",
+                productId, "gone.png", gone, Timestamp.from(OLD));
+        double missingBefore = registry.counter("image.reconcile.missing").count();
+
+        runPass();
+
+        assertThat(queued(oldOrphan), is(1L));
+        assertThat(queued(newOrphan), is(0L)); // may still get its row
+        assertThat(queued(known), is(0L));
+        assertThat(registry.counter("image.reconcile.orphans", "outcome", "queued").count(), greaterThanOrEqualTo(1.0));
+        assertThat(registry.counter("image.reconcile.missing").count() - missingBefore, greaterThanOrEqualTo(1.0));
+        // rows are only reported
+        assertThat(jdbc.queryForObject("select count(*) from images where s3_bucket_path = ?", Long.class, gone),
+                is(1L));
+        assertThat(jdbc.queryForObject("select after_key is null and last_pass_finished_at is not null"
+                + " from reconcile_checkpoints", Boolean.class), is(true));
+        assertThat(registry.find("image.reconcile.keys").tag("side", "store").counter().count(),
+                greaterThanOrEqualTo(3.0));
+    }
+
+    @Test
+    void aPass_resumesFromItsCheckpoint_andTheNextOneStartsOver() {
+        for (int i = 0; i < 110; i++) { // more than a page, whatever else the database holds
+            standIn.put("dummy-bucket/users/" + userId + "/products/" + productId + "/" + i + ".png",
+                    new byte[10], "image/png");
+        }
+        reconciler.run();
+        String position = checkpoint();
+        assertThat(position, startsWith("users/"));
+
+        // another instance holds the checkpoint
+        jdbc.update("update reconcile_checkpoints set due_at = now() + interval '1 minute'");
+        reconciler.run();
+        assertThat(checkpoint(), is(position));
+        jdbc.update("update reconcile_checkpoints set due_at = now()");
+
+        // behind the checkpoint: not seen by this pass
+        String orphan = "users/0/products/0/late-orphan.png";
+        assertThat(orphan, lessThan(position));
+        jdbc.update("delete from object_deletions where s3_bucket_path = ?", orphan);
+        standIn.put("dummy-bucket/" + orphan, new byte[10], "image/png", OLD);
+        runPass();
+        assertThat(queued(orphan), is(0L));
+
+        jdbc.update("update reconcile_checkpoints set due_at = now()");
+        runPass();
+        assertThat(queued(orphan), is(1L));
+    }
+
+    @Test
+    void poll_runsTheSliceOnItsOwnThread() throws InterruptedException {
+        CountDownLatch listing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicReference<String> thread = new AtomicReference<>();
+        S3Client real = standIn.client();
+        when(s3.listObjectsV2(any(ListObjectsV2Request.class))).thenAnswer(inv -> {
+            thread.set(Thread.currentThread().getName());
+            listing.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return real.listObjectsV2((ListObjectsV2Request) inv.getArgument(0));
+        });
+        Instant start = Instant.now();
+        try {
+            // the scheduler thread only hands the slice over, however long it takes
+            long begin = System.nanoTime();
+            reconciler.poll();
+            reconciler.poll(); // a slice is running: skipped
+            assertThat(System.nanoTime() - begin, lessThan(TimeUnit.SECONDS.toNanos(1)));
+            assertThat(listing.await(5, TimeUnit.SECONDS), is(true));
+            assertThat(thread.get(), is("image-reconcile"));
+        } finally {
+            release.countDown();
+        }
+
+        // out of the way of the next test: the slice hands its lease back or finishes the pass
+        for (int i = 0; i < 100; i++) {
+            Boolean over = jdbc.queryForObject("select due_at <= now() or last_pass_finished_at >= ?"
+                    + " from reconcile_checkpoints", Boolean.class, Timestamp.from(start));
+            if (Boolean.TRUE.equals(over)) {
+                return;
+            }
+            Thread.sleep(50);
+        }
+        throw new AssertionError("slice did not end");
+    }
+
+    private void runPass() {
+        for (int i = 0; i < 10_000; i++) {
+            reconciler.run();
+            Boolean done = jdbc.queryForObject("select due_at > now() from reconcile_checkpoints", Boolean.class);
+            if (Boolean.TRUE.equals(done)) {
+                return;
+            }
+        }
+        throw new AssertionError("pass did not finish");
+    }
+
+    private String checkpoint() {
+        return jdbc.queryForObject("select after_key from reconcile_checkpoints", String.class);
+    }
+
+    private Long queued(String key) {
+        return jdbc.queryForObject("select count(*) from object_deletions where s3_bucket_path = ?", Long.class, key);
+    }
+
+    private String upload() {
+        byte[] b = new byte[2048];
+        new Random(System.nanoTime()).nextBytes(b);
+        System.arraycopy(ImageControllerTest.PNG, 0, b, 0, ImageControllerTest.PNG.length);
+        return given().auth().preemptive().basic(username, pwd)
+                .multiPart("file", "p.png", b, "image/png")
+                .when().post("/v1/product/{id}/image", productId)
+                .then().statusCode(201)
+                .extract().jsonPath().getString("s3_bucket_path");
+    }
+
+    /**
+     * Full pass over 20k objects and 20k rows (every fifth object an orphan), unthrottled:
+     * keys compared per second and how long a page of both sides takes. Run with
+     * {@code -Dbenchmark=true}.
+     */
+    @Nested
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    class ReconcileBenchmark {
+
+        @Test
+        void keysPerSecond() {
+            int n = 20_000;
+            String prefix = "users/" + userId + "/products/" + productId + "/bench-";
+            for (int i = 0; i < n; i++) {
+                standIn.put("dummy-bucket/" + prefix + String.format("%06d", i), new byte[1], "image/png", OLD);
+            }
+            jdbc.update("insert into images (product_id, file_name, s3_bucket_path) select ?, 'b.png', ? || lpad(g::text, 6, '0')"
+                    + " from generate_series(0, ? - 1) g where g % 5 <> 0", productId, prefix, n);
+            double keysBefore = registry.find("image.reconcile.keys").counters().stream()
+                    .mapToDouble(c -> c.count()).sum();
+
+            long start = System.nanoTime();
+            runPass();
+            double secs = (System.nanoTime() - start) / 1e9;
+
+            double keys = registry.find("image.reconcile.keys").counters().stream()
+                    .mapToDouble(c -> c.count()).sum() - keysBefore;
+            System.out.printf("[bench] reconciled %.0f keys in %.2fs: %.0f keys/s, page mean %.1f ms%n",
+                    keys, secs, keys / secs, registry.timer("image.reconcile.page").mean(TimeUnit.MILLISECONDS));
+            jdbc.update("delete from images where product_id = ?", productId);
+            jdbc.update("delete from object_deletions where s3_bucket_path like ?", prefix + "%");
+        }
+    }
+}
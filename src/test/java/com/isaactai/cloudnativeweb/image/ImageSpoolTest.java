@@ -0,0 +1,260 @@
+package com.isaactai.cloudnativeweb.image;
+
+import com.isaactai.cloudnativeweb.support.ImageWorkersApiTest;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.restassured.path.json.JsonPath;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Degraded mode: uploads go to the local spool while S3 is slow or failing, answered with 202,
+ * and are pushed by {@link UploadSpoolPusher} once S3 takes them again.
+ * @author tisaac
+ */
+public class ImageSpoolTest extends ImageWorkersApiTest {
+
+    @Autowired
+    MeterRegistry registry;
+
+    @Autowired
+    UploadSpool spool;
+
+    @Autowired
+    UploadSpoolPusher pusher;
+
+    @BeforeEach
+    void setUp() throws InterruptedException {
+        // an earlier test's slow or failed PUT
+        while (spool.degraded()) {
+            Thread.sleep(50);
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        // the context is shared; the next class uploads expecting 201
+        while (spool.degraded()) {
+            Thread.sleep(50);
+        }
+    }
+
+    @Test
+    void failingS3_spoolsTheUpload_servesItLocally_andPushesItLater() {
+        when(s3.putObject(any(PutObjectRequest.class), any(RequestBody.class)))
+                .thenThrow(SdkClientException.create("S3 is down"));
+        byte[] photo = png(4096);
+
+        JsonPath created = upload(photo, 202);
+        String key = created.getString("s3_bucket_path");
+        Long imageId = created.getLong("image_id");
+        assertThat(spool.degraded(), is(true));
+        assertThat(spool.find(key).isPresent(), is(true));
+        assertThat(standIn.get("dummy-bucket/" + key), nullValue());
+        assertThat(jdbc.queryForObject("select spool_host from image_blobs where s3_bucket_path = ?",
+                String.class, key), is(spool.host()));
+        // no thumbnails from an object that is not there yet
+        assertThat(jdbc.queryForObject("select variants_due_at = 'infinity' from images where image_id = ?",
+                Boolean.class, imageId), is(true));
+        assertThat(registry.get("upload.spool.depth").gauge().value(), greaterThanOrEqualTo(1.0));
+
+        byte[] served = given().when().get("/v1/product/{id}/image/{iid}/content", productId, imageId)
+                .then().statusCode(200).contentType("image/png")
+                .extract().asByteArray();
+        assertThat(served, equalTo(photo));
+
+        // still down: the push backs off and the file stays
+        pusher.drain();
+        assertThat(spool.find(key).isPresent(), is(true));
+        assertThat(jdbc.queryForObject("select spool_attempts from image_blobs where s3_bucket_path = ?",
+                Integer.class, key), is(1));
+
+        Mockito.reset(s3);
+        standIn.routeMocks(s3, presigner);
+        jdbc.update("update image_blobs set spool_due_at = now() where s3_bucket_path = ?", key);
+        pusher.drain();
+
+        assertThat(standIn.get("dummy-bucket/" + key).body(), equalTo(photo));
+        assertThat(spool.find(key).isPresent(), is(false));
+        assertThat(jdbc.queryForObject("select spool_host is null from image_blobs where s3_bucket_path = ?",
+                Boolean.class, key), is(true));
+        assertThat(jdbc.queryForObject("select variants_due_at <= now() from images where image_id = ?",
+                Boolean.class, imageId), is(true));
+        given().redirects().follow(false)
+                .when().get("/v1/product/{id}/image/{iid}/content", productId, imageId)
+                .then().statusCode(302);
+    }
+
+    @Test
+    void slowPut_sendsTheNextUploadsToTheSpool_untilTheCooldownEnds() throws InterruptedException {
+        standIn.putDelay(Duration.ofMillis(600));
+        upload(png(2048), 201); // stored, but slowly
+        upload(png(2048), 202);
+        verify(s3, times(1)).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+
+        standIn.putDelay(Duration.ZERO);
+        pusher.drain(); // a fast push, nothing to trip the mode again
+        while (spool.degraded()) {
+            Thread.sleep(50);
+        }
+        upload(png(2048), 201);
+    }
+
+    @Test
+    void poll_pushesOnItsOwnThread() throws InterruptedException {
+        when(s3.putObject(any(PutObjectRequest.class), any(RequestBody.class)))
+                .thenThrow(SdkClientException.create("S3 is down"));
+        String key = upload(png(4096), 202).getString("s3_bucket_path");
+
+        CountDownLatch putting = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicReference<String> thread = new AtomicReference<>();
+        S3Client real = standIn.client();
+        Mockito.reset(s3);
+        standIn.routeMocks(s3, presigner);
+        when(s3.putObject(any(PutObjectRequest.class), any(RequestBody.class))).thenAnswer(inv -> {
+            thread.set(Thread.currentThread().getName());
+            putting.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return real.putObject((PutObjectRequest) inv.getArgument(0), (RequestBody) inv.getArgument(1));
+        });
+        try {
+            // the scheduler thread only hands the drain over, however slow S3 is
+            long begin = System.nanoTime();
+            pusher.poll();
+            pusher.poll(); // a drain is running: skipped
+            assertThat(System.nanoTime() - begin, lessThan(TimeUnit.SECONDS.toNanos(1)));
+            assertThat(putting.await(5, TimeUnit.SECONDS), is(true));
+            assertThat(thread.get(), is("upload-spool-push"));
+        } finally {
+            release.countDown();
+        }
+
+        for (int i = 0; i < 100 && spool.find(key).isPresent(); i++) {
+            Thread.sleep(50);
+        }
+        assertThat(spool.find(key).isPresent(), is(false));
+        assertThat(standIn.get("dummy-bucket/" + key), notNullValue());
+    }
+
+    @Test
+    void imageDeletedBeforeThePush_isNeverStored() {
+        when(s3.putObject(any(PutObjectRequest.class), any(RequestBody.class)))
+                .thenThrow(SdkClientException.create("S3 is down"));
+        JsonPath created = upload(png(4096), 202);
+        String key = created.getString("s3_bucket_path");
+        given().auth().preemptive().basic(username, pwd)
+                .when().delete("/v1/product/{id}/image/{iid}", productId, created.getLong("image_id"))
+                .then().statusCode(204);
+
+        Mockito.reset(s3);
+        standIn.routeMocks(s3, presigner);
+        pusher.drain();
+
+        assertThat(standIn.get("dummy-bucket/" + key), nullValue());
+        assertThat(jdbc.queryForObject("select count(*) from object_deletions where s3_bucket_path = ?",
+                Long.class, key), is(1L));
+    }
+
+    @Test
+    void spooledElsewhere_redirectIsNotCached_untilPushed() {
+        when(s3.putObject(any(PutObjectRequest.class), any(RequestBody.class)))
+                .thenThrow(SdkClientException.create("S3 is down"));
+        JsonPath created = upload(png(4096), 202);
+        String key = created.getString("s3_bucket_path");
+        Long imageId = created.getLong("image_id");
+
+        // another instance holds the bytes: a cached redirect would point at a missing object
+        jdbc.update("update image_blobs set spool_host = 'elsewhere' where s3_bucket_path = ?", key);
+        given().redirects().follow(false)
+                .when().get("/v1/product/{id}/image/{iid}/content", productId, imageId)
+                .then().statusCode(302)
+                .header("Cache-Control", equalTo("no-store"));
+
+        Mockito.reset(s3);
+        standIn.routeMocks(s3, presigner);
+        jdbc.update("update image_blobs set spool_host = ?, spool_due_at = now() where s3_bucket_path = ?",
+                spool.host(), key);
+        pusher.drain();
+
+        given().redirects().follow(false)
+                .when().get("/v1/product/{id}/image/{iid}/content", productId, imageId)
+                .then().statusCode(302)
+                .header("Cache-Control", containsString("public"));
+    }
+
+    private JsonPath upload(byte[] body, int status) {
+        return given().auth().preemptive().basic(username, pwd)
+                .multiPart("file", "p.png", body, "image/png")
+                .when().post("/v1/product/{id}/image", productId)
+                .then().statusCode(status)
+                .extract().jsonPath();
+    }
+
+    private static byte[] png(int size) {
+        byte[] b = new byte[size];
+        new Random(System.nanoTime()).nextBytes(b);
+        System.arraycopy(ImageControllerTest.PNG, 0, b, 0, ImageControllerTest.PNG.length);
+        return b;
+    }
+
+    /**
+     * 50 uploads of 256KB at 1s of simulated S3 PUT latency: mean request latency with the spool
+     * taking over after each slow PUT (one per 1s cooldown), then how fast the pusher drains the
+     * backlog once S3 is back to 20ms. Run with {@code -Dbenchmark=true}.
+     */
+    @Nested
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    class DegradedUploadBenchmark {
+
+        @Test
+        void spooledVersusSlowS3() {
+            int uploads = 50;
+            standIn.putDelay(Duration.ofSeconds(1));
+
+            int spooled = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < uploads; i++) {
+                int status = given().auth().preemptive().basic(username, pwd)
+                        .multiPart("file", "p.png", png(256 * 1024), "image/png")
+                        .when().post("/v1/product/{id}/image", productId)
+                        .then().extract().statusCode();
+                spooled += status == 202 ? 1 : 0;
+            }
+            double mean = (System.nanoTime() - start) / 1e6 / uploads;
+
+            standIn.putDelay(Duration.ofMillis(20));
+            start = System.nanoTime();
+            pusher.drain();
+            double drain = (System.nanoTime() - start) / 1e9;
+
+            System.out.printf("[bench] %d uploads against 1s S3 PUTs: %.1f ms mean, %d spooled (202); "
+                            + "pushed them in %.2fs (%.0f/s), spool depth now %.0f%n",
+                    uploads, mean, spooled, drain, spooled / drain,
+                    registry.get("upload.spool.depth").gauge().value());
+            assertThat(spooled, greaterThan(uploads / 2));
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package com.isaactai.cloudnativeweb.image;
+
+import com.isaactai.cloudnativeweb.support.ImageWorkersApiTest;
+import com.isaactai.cloudnativeweb.support.S3StandIn;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.restassured.path.json.JsonPath;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+/**
+ * Thumbnail generation with {@code app.image.variants.enabled}; S3 is the in-JVM stand-in.
+ * @author tisaac
+ */
+public class ImageVariantsTest extends ImageWorkersApiTest {
+
+    @Autowired
+    ImageDeletionWorker deletions; // polls hourly under ci, drained by the tests
+
+    @Autowired
+    MeterRegistry registry;
+
+    @Autowired
+    ImageVariantWorker worker; // polls hourly here, driven by awaitState
+
+    // images left by other test classes have no real objects; keep the pool on ours
+    @BeforeAll
+    void parkForeignImages() {
+        jdbc.update("update images set variants_state = 'FAILED' where variants_state = 'PENDING'");
+    }
+
+    @Test
+    void opaqueImage_getsJpegVariants_listedSmallestFirst() throws Exception {
+        JsonPath created = upload(image(200, 100, false), "image/png");
+        Long imageId = created.getLong("image_id");
+        String key = created.getString("s3_bucket_path");
+        assertThat(created.getList("variants"), empty());
+
+        assertThat(awaitState(imageId), is("DONE"));
+
+        // the list validator counts variants, so clients holding the pre-thumbnail list refetch
+        JsonPath list = given().when().get("/v1/product/{id}/image", productId)
+                .then().statusCode(200)
+                .header("ETag", endsWith("-2\""))
+                .body("[0].variants.max_edge", contains(32, 64))
+                .body("[0].variants.width", contains(32, 64))
+                .body("[0].variants.height", contains(16, 32))
+                .body("[0].variants.content_type", everyItem(is("image/jpeg")))
+                .extract().jsonPath();
+        assertThat(list.getString("[0].variants[0].url"),
+                is("/v1/product/" + productId + "/image/" + imageId + "/content?max_edge=32"));
+        given().header("If-None-Match", given().when().get("/v1/product/{id}/image", productId).header("ETag"))
+                .when().get("/v1/product/{id}/image", productId)
+                .then().statusCode(304);
+
+        S3StandIn.StoredObject thumb = standIn.get("dummy-bucket/" + key + "~64.jpg");
+        assertThat(thumb.contentType(), is("image/jpeg"));
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(thumb.body()));
+        assertThat(decoded.getWidth(), is(64));
+        assertThat(decoded.getHeight(), is(32));
+
+        given().when().get("/v1/product/{id}/image/{iid}", productId, imageId)
+                .then().statusCode(200)
+                .body("variants.max_edge", contains(32, 64));
+        given().redirects().follow(false)
+                .when().get("/v1/product/{id}/image/{iid}/content?max_edge=32", productId, imageId)
+                .then().statusCode(302)
+                .header("Location", containsString("~32.jpg"));
+        given().redirects().follow(false)
+                .when().get("/v1/product/{id}/image/{iid}/content?max_edge=100", productId, imageId)
+                .then().statusCode(404);
+    }
+
+    @Test
+    void imageWithAlpha_getsPngVariants() throws Exception {
+        JsonPath created = upload(image(120, 120, true), "image/png");
+        Long imageId = created.getLong("image_id");
+
+        assertThat(awaitState(imageId), is("DONE"));
+        S3StandIn.StoredObject thumb = standIn.get("dummy-bucket/" + created.getString("s3_bucket_path") + "~32.png");
+        assertThat(thumb.contentType(), is("image/png"));
+        assertThat(ImageIO.read(new ByteArrayInputStream(thumb.body())).getColorModel().hasAlpha(), is(true));
+    }
+
+    @Test
+    void imageSmallerThanEveryBox_isDoneWithoutVariants() throws Exception {
+        Long imageId = upload(image(30, 20, false), "image/png").getLong("image_id");
+
+        assertThat(awaitState(imageId), is("DONE"));
+        given().when().get("/v1/product/{id}/image/{iid}", productId, imageId)
+                .then().statusCode(200)
+                .body("variants", empty());
+    }
+
+    @Test
+    void undecodableImage_failsWithoutRetrying() throws Exception {
+        byte[] garbage = new byte[2048];
+        new Random(1).nextBytes(garbage);
+        System.arraycopy(ImageControllerTest.PNG, 0, garbage, 0, ImageControllerTest.PNG.length);
+        Long imageId = upload(garbage, "image/png").getLong("image_id");
+
+        assertThat(awaitState(imageId), is("FAILED"));
+        assertThat(attempts(imageId), is(1));
+    }
+
+    @Test
+    void transientStoreFailure_isRetried() throws Exception {
+        // the worker's first read of this seller's object fails
+        S3Client real = standIn.client();
+        AtomicBoolean failed = new AtomicBoolean();
+        when(s3.getObject(any(GetObjectRequest.class))).thenAnswer(inv -> {
+            GetObjectRequest req = inv.getArgument(0);
+            if (req.key().startsWith("users/" + userId + "/") && failed.compareAndSet(false, true)) {
+                throw SdkClientException.create("connection reset");
+            }
+            return real.getObject(req);
+        });
+
+        JsonPath created = upload(image(200, 100, false), "image/png");
+        Long imageId = created.getLong("image_id");
+        String key = created.getString("s3_bucket_path");
+
+        assertThat(awaitState(imageId), is("DONE"));
+        assertThat(failed.get(), is(true));
+        assertThat(attempts(imageId), is(2));
+        assertThat(standIn.get("dummy-bucket/" + key + "~32.jpg"), notNullValue());
+    }
+
+    @Test
+    void sameBytesAgain_sharesTheThumbnails() throws Exception {
+        byte[] photo = image(200, 100, false);
+        JsonPath first = upload(photo, "image/png");
+        assertThat(awaitState(first.getLong("image_id")), is("DONE"));
+        Timer copied = registry.timer("image.variants.processing", "outcome", "copied");
+        long copiedBefore = copied.count();
+
+        Long again = upload(photo, "image/png").getLong("image_id");
+
+        assertThat(awaitState(again), is("DONE"));
+        assertThat(copied.count(), is(copiedBefore + 1));
+        given().when().get("/v1/product/{id}/image/{iid}", productId, again)
+                .then().statusCode(200)
+                .body("variants.max_edge", contains(32, 64));
+        assertThat(jdbc.queryForList("select s3_bucket_path from image_variants where image_id = ? order by max_edge",
+                        String.class, again),
+                contains(first.getString("s3_bucket_path") + "~32.jpg", first.getString("s3_bucket_path") + "~64.jpg"));
+    }
+
+    @Test
+    void delete_removesVariantObjects() throws Exception {
+        JsonPath created = upload(image(200, 100, false), "image/png");
+        Long imageId = created.getLong("image_id");
+        String key = created.getString("s3_bucket_path");
+        assertThat(awaitState(imageId), is("DONE"));
+        assertThat(standIn.get("dummy-bucket/" + key + "~32.jpg"), notNullValue());
+
+        given().auth().preemptive().basic(username, pwd)
+                .when().delete("/v1/product/{id}/image/{iid}", productId, imageId)
+                .then().statusCode(204);
+        deletions.drain();
+
+        assertThat(standIn.get("dummy-bucket/" + key), nullValue());
+        assertThat(standIn.get("dummy-bucket/" + key + "~32.jpg"), nullValue());
+        assertThat(standIn.get("dummy-bucket/" + key + "~64.jpg"), nullValue());
+        assertThat(jdbc.queryForObject("select count(*) from image_variants where image_id = ?",
+                Long.class, imageId), is(0L));
+    }
+
+    @Test
+    void poolMetrics_areRegistered() throws Exception {
+        Long imageId = upload(image(200, 100, false), "image/png").getLong("image_id");
+        assertThat(awaitState(imageId), is("DONE"));
+
+        assertThat(registry.get("image.variants.queue.depth").gauge(), notNullValue());
+        assertThat(registry.get("image.variants.backlog").gauge(), notNullValue());
+        assertThat(registry.get("image.variants.processing").tag("outcome", "done").timer().count(),
+                greaterThan(0L));
+    }
+
+    private JsonPath upload(byte[] body, String contentType) {
+        return given().auth().preemptive().basic(username, pwd)
+                .multiPart("file", "photo.png", body, contentType)
+                .when().post("/v1/product/{id}/image", productId)
+                .then().statusCode(201)
+                .extract().jsonPath();
+    }
+
+    private String awaitState(Long imageId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 15_000;
+        String state;
+        do {
+            worker.poll();
+            Thread.sleep(50);
+            state = jdbc.queryForObject("select variants_state from images where image_id = ?", String.class, imageId);
+        } while ("PENDING".equals(state) && System.currentTimeMillis() < deadline);
+        return state;
+    }
+
+    private int attempts(Long imageId) {
+        return jdbc.queryForObject("select variants_attempts from images where image_id = ?", Integer.class, imageId);
+    }
+
+    static byte[] image(int width, int height, boolean alpha) throws IOException {
+        BufferedImage img = new BufferedImage(width, height,
+                alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = img.createGraphics();
+        g.setPaint(new GradientPaint(0, 0, alpha ? new Color(255, 0, 0, 64) : Color.RED,
+                width, height, Color.BLUE));
+        g.fillRect(0, 0, width, height);
+        g.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(img, "png", out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Camera-sized JPEGs (3000x2000) through the pool: end-to-end throughput and per-image
+     * processing time. Run with {@code -Dbenchmark=true}.
+     */
+    @Nested
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    class ThumbnailBenchmark {
+
+        @Test
+        void photoThroughput() throws Exception {
+            int images = 40;
+            BufferedImage photo = new BufferedImage(3000, 2000, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = photo.createGraphics();
+            g.setPaint(new GradientPaint(0, 0, Color.ORANGE, 3000, 2000, Color.DARK_GRAY));
+            g.fillRect(0, 0, 3000, 2000);
+            g.dispose();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageIO.write(photo, "jpeg", out);
+            byte[] jpeg = out.toByteArray();
+
+            Timer processing = registry.timer("image.variants.processing", "outcome", "done");
+            long doneBefore = processing.count();
+            double totalBefore = processing.totalTime(TimeUnit.MILLISECONDS);
+
+            long start = System.nanoTime();
+            List<Long> ids = new ArrayList<>();
+            for (int i = 0; i < images; i++) {
+                // a byte after the end-of-image marker makes each upload a distinct object, so
+                // every one is rendered instead of sharing the first one's thumbnails
+                byte[] distinct = Arrays.copyOf(jpeg, jpeg.length + 1);
+                distinct[jpeg.length] = (byte) i;
+                ids.add(upload(distinct, "image/jpeg").getLong("image_id"));
+            }
+            for (Long id : ids) {
+                assertThat(awaitState(id), is("DONE"));
+            }
+            double secs = (System.nanoTime() - start) / 1e9;
+
+            long done = processing.count() - doneBefore;
+            double avgMs = (processing.totalTime(TimeUnit.MILLISECONDS) - totalBefore) / done;
+            System.out.printf("[bench] thumbnails: %d x %dKB 3000x2000 JPEG in %.2fs (%.1f images/s), "
+                            + "%.0f ms processing per image%n",
+                    images, jpeg.length / 1024, secs, images / secs, avgMs);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.isaactai.cloudnativeweb.image;
+
+import com.isaactai.cloudnativeweb.support.ApiFixtures;
+import com.isaactai.cloudnativeweb.support.ImageApiTest;
+import io.restassured.config.HttpClientConfig;
+import io.restassured.config.RestAssuredConfig;
+import io.restassured.path.json.JsonPath;
+import io.restassured.response.ValidatableResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.UUID;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Resumable uploads: chunks at offsets, one S3 multipart part each, state in the database.
+ * @author tisaac
+ */
+public class ResumableUploadTest extends ImageApiTest {
+    // app.upload.resumable.chunk-size
+    static final int CHUNK = 8 * 1024 * 1024;
+
+    // how clients send chunks: a refused chunk is answered before its bytes go out
+    static final RestAssuredConfig EXPECT_CONTINUE = RestAssuredConfig.config().httpClient(
+            HttpClientConfig.httpClientConfig().setParam("http.protocol.expect-continue", true));
+
+    @Autowired
+    UploadSessionReaper reaper;
+
+    @Test
+    void chunkedUpload_resumesFromTheStoredOffset() {
+        byte[] photo = png(2 * CHUNK + 1000, 1);
+        JsonPath session = createSession(photo.length)
+                .body("offset", equalTo(0))
+                .body("content_length", equalTo(photo.length))
+                .body("chunk_size", equalTo(CHUNK))
+                .body("expires_at", notNullValue())
+                .extract().jsonPath();
+        String uploadId = session.getString("upload_id");
+        assertThat(standIn.multipartsInProgress(), is(1));
+
+        putChunk(uploadId, photo, 0).statusCode(200).body("offset", equalTo(CHUNK));
+
+        // the response to the first chunk got lost and the client sends it again
+        putChunk(uploadId, photo, 0).statusCode(409)
+                .body("error", equalTo("OFFSET_MISMATCH"))
+                .body("message", equalTo("Upload is at offset " + CHUNK));
+        given().auth().preemptive().basic(username, pwd)
+                .when().get("/v1/product/{id}/image/uploads/{uid}", productId, uploadId)
+                .then().statusCode(200)
+                .body("offset", equalTo(CHUNK));
+
+        putChunk(uploadId, photo, CHUNK).statusCode(200).body("offset", equalTo(2 * CHUNK));
+        putChunk(uploadId, photo, 2 * CHUNK).statusCode(200).body("offset", equalTo(photo.length));
+
+        JsonPath image = complete(uploadId).statusCode(201)
+                .body("product_id", equalTo(productId.intValue()))
+                .body("file_name", equalTo("big.png"))
+                .extract().jsonPath();
+        String key = image.getString("s3_bucket_path");
+        assertThat(key, startsWith("users/" + userId + "/products/" + productId + "/"));
+        assertThat(Arrays.equals(standIn.get("dummy-bucket/" + key).body(), photo), is(true));
+        assertThat(standIn.get("dummy-bucket/" + key).contentType(), is("image/png"));
+        assertThat(standIn.multipartsInProgress(), is(0));
+        assertThat(sessionRows(uploadId), is(0L));
+
+        given().when().get("/v1/product/{id}/image", productId)
+                .then().statusCode(200)
+                .body("image_id", contains(image.getInt("image_id")));
+    }
+
+    @Test
+    void chunksOfTheWrongSize_andEarlyComplete_areRejected() {
+        byte[] photo = png(CHUNK + 10, 2);
+        String uploadId = createSession(photo.length).extract().jsonPath().getString("upload_id");
+
+        given().auth().preemptive().basic(username, pwd)
+                .contentType("application/octet-stream")
+                .body(Arrays.copyOf(photo, 1024))
+                .when().put("/v1/product/{id}/image/uploads/{uid}?offset=0", productId, uploadId)
+                .then().statusCode(400)
+                .body("message", equalTo("Chunk at offset 0 must be " + CHUNK + " bytes"));
+        complete(uploadId).statusCode(400);
+
+        putChunk(uploadId, photo, 0).statusCode(200).body("offset", equalTo(CHUNK));
+        putChunk(uploadId, photo, CHUNK).statusCode(200).body("offset", equalTo(photo.length));
+        complete(uploadId).statusCode(201);
+    }
+
+    @Test
+    void tooLarge_isRejectedBeforeAnyUploadStarts() {
+        given().auth().preemptive().basic(username, pwd)
+                .contentType("application/json")
+                .body("""
+                        {"file_name": "huge.png", "content_type": "image/png", "content_length": %d}
+                        """.formatted(101L * 1024 * 1024))
+                .when().post("/v1/product/{id}/image/uploads", productId)
+                .then().statusCode(400);
+        assertThat(standIn.multipartsInProgress(), is(0));
+    }
+
+    @Test
+    void cancel_abortsTheMultipartUpload() {
+        byte[] photo = png(CHUNK + 10, 3);
+        String uploadId = createSession(photo.length).extract().jsonPath().getString("upload_id");
+        putChunk(uploadId, photo, 0).statusCode(200);
+
+        given().auth().preemptive().basic(username, pwd)
+                .when().delete("/v1/product/{id}/image/uploads/{uid}", productId, uploadId)
+                .then().statusCode(204);
+
+        assertThat(standIn.multipartsInProgress(), is(0));
+        assertThat(sessionRows(uploadId), is(0L));
+        putChunk(uploadId, photo, CHUNK).statusCode(404);
+    }
+
+    @Test
+    void reaper_abortsExpiredSessions() {
+        byte[] photo = png(CHUNK + 10, 4);
+        String expired = createSession(photo.length).extract().jsonPath().getString("upload_id");
+        putChunk(expired, photo, 0).statusCode(200);
+        String live = createSession(photo.length).extract().jsonPath().getString("upload_id");
+        jdbc.update("update image_uploads set expires_at = now() - interval '1 minute' where upload_id = ?",
+                UUID.fromString(expired));
+
+        // expired sessions are gone for the client straight away
+        putChunk(expired, photo, CHUNK).statusCode(404);
+        assertThat(standIn.multipartsInProgress(), is(2));
+
+        reaper.reap();
+
+        assertThat(standIn.multipartsInProgress(), is(1));
+        assertThat(sessionRows(expired), is(0L));
+        assertThat(sessionRows(live), is(1L));
+    }
+
+    @Test
+    void otherUsers_cannotTouchTheSession() {
+        byte[] photo = png(CHUNK + 10, 5);
+        String uploadId = createSession(photo.length).extract().jsonPath().getString("upload_id");
+        String other = ApiFixtures.username("resume-other");
+        ApiFixtures.createUser(other);
+
+        given().config(EXPECT_CONTINUE).auth().preemptive().basic(other, pwd)
+                .contentType("application/octet-stream")
+                .body(Arrays.copyOf(photo, CHUNK))
+                .when().put("/v1/product/{id}/image/uploads/{uid}?offset=0", productId, uploadId)
+                .then().statusCode(403);
+        given().auth().preemptive().basic(other, pwd)
+                .when().get("/v1/product/{id}/image/uploads/{uid}", productId, uploadId)
+                .then().statusCode(403);
+        given().auth().preemptive().basic(other, pwd)
+                .contentType("application/json")
+                .body("""
+                        {"file_name": "x.png", "content_type": "image/png", "content_length": 10}
+                        """)
+                .when().post("/v1/product/{id}/image/uploads", productId)
+                .then().statusCode(403);
+    }
+
+    private ValidatableResponse createSession(long length) {
+        return given().auth().preemptive().basic(username, pwd)
+                .contentType("application/json")
+                .body("""
+                        {"file_name": "Big.png", "content_type": "image/png", "content_length": %d}
+                        """.formatted(length))
+                .when().post("/v1/product/{id}/image/uploads", productId)
+                .then().statusCode(201);
+    }
+
+    private ValidatableResponse putChunk(String uploadId, byte[] file, int offset) {
+        return given().config(EXPECT_CONTINUE).auth().preemptive().basic(username, pwd)
+                .contentType("application/octet-stream")
+                .body(Arrays.copyOfRange(file, offset, Math.min(file.length, offset + CHUNK)))
+                .when().put("/v1/product/{id}/image/uploads/{uid}?offset={o}", productId, uploadId, offset)
+                .then();
+    }
+
+    private ValidatableResponse complete(String uploadId) {
+        return given().auth().preemptive().basic(username, pwd)
+                .when().post("/v1/product/{id}/image/uploads/{uid}/complete", productId, uploadId)
+                .then();
+    }
+
+    private Long sessionRows(String uploadId) {
+        return jdbc.queryForObject("select count(*) from image_uploads where upload_id = ?", Long.class,
+                UUID.fromString(uploadId));
+    }
+
+    private static byte[] png(int size, long seed) {
+        byte[] b = new byte[size];
+        new Random(seed + System.nanoTime()).nextBytes(b);
+        System.arraycopy(ImageControllerTest.PNG, 0, b, 0, ImageControllerTest.PNG.length);
+        return b;
+    }
+}
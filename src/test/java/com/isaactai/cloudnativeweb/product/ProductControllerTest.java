@@ -1,14 +1,22 @@
 package com.isaactai.cloudnativeweb.product;
 
 import com.isaactai.cloudnativeweb.support.BaseApiTest;
+import com.isaactai.cloudnativeweb.support.StatementCounter;
 import io.restassured.response.Response;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
 
+import java.util.HashSet;
+import java.util.List;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static io.restassured.RestAssured.given;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -19,6 +27,12 @@ import static org.hamcrest.Matchers.*;
  */
 public class ProductControllerTest extends BaseApiTest {
 
+    @Autowired
+    StatementCounter statements;
+
+    @Autowired
+    JdbcTemplate jdbc;
+
     String username;
     String pwd;
     Long userId;
@@ -190,6 +204,84 @@ public class ProductControllerTest extends BaseApiTest {
                     .statusCode(401);
         }
 
+        @Test
+        void getProductById_cachedHit_issuesNoSql() {
+            given().when().get("/v1/product/{id}", productId).then().statusCode(200);
+
+            statements.reset();
+            given()
+                    .when()
+                    .get("/v1/product/{id}", productId)
+                    .then()
+                    .statusCode(200)
+                    .header("Content-Type", startsWith("application/json"))
+                    .body("name", equalTo("MacBook Pro 14"));
+
+            assertThat(statements.queries().toString(), statements.total(), equalTo(0L));
+        }
+
+        @Test
+        void getProductById_afterPatchAndDelete_isNotStale() {
+            given().when().get("/v1/product/{id}", productId).then().statusCode(200);
+
+            given()
+                    .auth().preemptive().basic(username, pwd)
+                    .contentType("application/json")
+                    .body("{\"quantity\": 42}")
+                    .when()
+                    .patch("/v1/product/{id}", productId)
+                    .then()
+                    .statusCode(204);
+
+            given().when().get("/v1/product/{id}", productId)
+                    .then()
+                    .statusCode(200)
+                    .body("quantity", equalTo(42));
+
+            given()
+                    .auth().preemptive().basic(username, pwd)
+                    .when()
+                    .delete("/v1/product/{id}", productId)
+                    .then()
+                    .statusCode(204);
+
+            given().when().get("/v1/product/{id}", productId).then().statusCode(404);
+        }
+
+        @Test
+        void getProductById_ifNoneMatch_returns304UntilChanged() {
+            String etag = given().when().get("/v1/product/{id}", productId)
+                    .then().statusCode(200).header("ETag", notNullValue())
+                    .extract().header("ETag");
+
+            given()
+                    .header("If-None-Match", etag)
+                    .when()
+                    .get("/v1/product/{id}", productId)
+                    .then()
+                    .statusCode(304)
+                    .header("ETag", equalTo(etag))
+                    .body(emptyString());
+
+            given()
+                    .auth().preemptive().basic(username, pwd)
+                    .contentType("application/json")
+                    .body("{\"quantity\": 7}")
+                    .when()
+                    .patch("/v1/product/{id}", productId)
+                    .then()
+                    .statusCode(204);
+
+            given()
+                    .header("If-None-Match", etag)
+                    .when()
+                    .get("/v1/product/{id}", productId)
+                    .then()
+                    .statusCode(200)
+                    .header("ETag", not(equalTo(etag)))
+                    .body("quantity", equalTo(7));
+        }
+
         @Test
         void getProductById_withValidAuth_returns403() {
             given()
@@ -202,6 +294,245 @@ public class ProductControllerTest extends BaseApiTest {
         }
     }
 
+    @Nested
+    class ListProducts {
+        @Test
+        void listByOwner_walksPagesWithKeyset() {
+            long ts = System.nanoTime();
+            for (int i = 0; i < 2; i++) {
+                given().auth().preemptive().basic(username, pwd)
+                        .contentType("application/json")
+                        .body(productJson("Extra " + i, "d", "page-" + ts + "-" + i, "Acme", 1))
+                        .when().post("/v1/product")
+                        .then().statusCode(201);
+            }
+
+            Response first = given()
+                    .queryParam("owner", userId)
+                    .queryParam("limit", 2)
+                    .when()
+                    .get("/v1/product")
+                    .then()
+                    .log().ifValidationFails()
+                    .statusCode(200)
+                    .body("items.size()", equalTo(2))
+                    .body("items[0].id", equalTo(productId.intValue()))
+                    .body("next_after", notNullValue())
+                    .extract().response();
+
+            given()
+                    .queryParam("owner", userId)
+                    .queryParam("after", first.jsonPath().getLong("next_after"))
+                    .queryParam("limit", 2)
+                    .when()
+                    .get("/v1/product")
+                    .then()
+                    .statusCode(200)
+                    .body("items.size()", equalTo(1))
+                    .body("items[0].name", equalTo("Extra 1"))
+                    .body("next_after", nullValue());
+        }
+
+        @Test
+        void listByOwner_badParams_return400() {
+            given().when().get("/v1/product").then().statusCode(400);
+            given().queryParam("owner", "abc").when().get("/v1/product").then().statusCode(400);
+            given().queryParam("owner", userId).queryParam("limit", 0)
+                    .when().get("/v1/product").then().statusCode(400);
+        }
+    }
+
+    @Nested
+    class BulkCreate {
+        @Test
+        void bulkCreate_jsonArray_reportsEachItem() {
+            String sku = "bulk-" + System.nanoTime();
+            String body = "[" + String.join(",",
+                    productJson("A", "d", sku + "-a", "Acme", 1),
+                    productJson("B", "d", sku + "-a", "Acme", 1),     // repeated in request
+                    productJson("C", "d", "bad sku!", "Acme", 1),      // invalid
+                    "{\"name\": \"D\", \"color\": \"red\"}",  // unknown field
+                    productJson("E", "d", sku + "-e", "Acme", 1)) + "]";
+
+            given()
+                    .auth().preemptive().basic(username, pwd)
+                    .contentType("application/json")
+                    .body(body)
+                    .when()
+                    .post("/v1/product/bulk")
+                    .then()
+                    .log().ifValidationFails()
+                    .statusCode(200)
+                    .body("created", equalTo(2))
+                    .body("failed", equalTo(3))
+                    .body("items.status", contains("CREATED", "DUPLICATE_SKU", "INVALID", "INVALID", "CREATED"))
+                    .body("items[2].error", containsString("sku"))
+                    .body("items[3].error", equalTo("Unrecognized field color"));
+
+            given().queryParam("owner", userId).queryParam("limit", 10)
+                    .when().get("/v1/product")
+                    .then().statusCode(200).body("items.size()", equalTo(3));
+        }
+
+        @Test
+        void bulkCreate_ndjsonUpsert_updatesOwnSkuButNotOthers() {
+            String sku = "bulk-" + System.nanoTime();
+            given().auth().preemptive().basic(username, pwd)
+                    .contentType("application/json")
+                    .body("[" + productJson("Old", "d", sku, "Acme", 1) + "]")
+                    .when().post("/v1/product/bulk")
+                    .then().statusCode(200).body("created", equalTo(1));
+
+            String other = "bulk-other" + System.nanoTime() + "@example.com";
+            given().contentType("application/json").body(userJson("o", "o", other, pwd))
+                    .when().post("/v1/user").then().statusCode(201);
+
+            String ndjson = productJson("New", "d", sku, "Acme", 9).replace("\n", "") + "\n"
+                    + productJson("Fresh", "d", sku + "-2", "Acme", 1).replace("\n", "") + "\n";
+
+            given().auth().preemptive().basic(other, pwd)
+                    .contentType("application/x-ndjson")
+                    .body(ndjson.getBytes())
+                    .when().post("/v1/product/bulk?upsert=true")
+                    .then().statusCode(200)
+                    .body("items.status", contains("DUPLICATE_SKU", "CREATED"));
+
+            Long id = given().auth().preemptive().basic(username, pwd)
+                    .contentType("application/x-ndjson")
+                    .body(productJson("New", "d", sku, "Acme", 9).replace("\n", "").getBytes())
+                    .when().post("/v1/product/bulk?upsert=true")
+                    .then().statusCode(200)
+                    .body("updated", equalTo(1))
+                    .extract().jsonPath().getLong("items[0].id");
+
+            given().when().get("/v1/product/{id}", id)
+                    .then().statusCode(200)
+                    .body("name", equalTo("New"))
+                    .body("quantity", equalTo(9));
+        }
+
+        @Test
+        void bulkCreate_takesIdsInBlocksOfFifty() {
+            String sku = "bulk-ids-" + System.nanoTime();
+            String body = IntStream.range(0, 60)
+                    .mapToObj(i -> productJson("P" + i, "d", sku + "-" + i, "Acme", 1))
+                    .collect(Collectors.joining(",", "[", "]"));
+
+            List<Long> ids = given().auth().preemptive().basic(username, pwd)
+                    .contentType("application/json").body(body)
+                    .when().post("/v1/product/bulk")
+                    .then().statusCode(200)
+                    .body("created", equalTo(60))
+                    .extract().jsonPath().getList("items.id", Long.class);
+
+            // the first 50 share one nextval; a row's own default would have spent one each
+            for (int i = 0; i < 50; i++) {
+                assertThat(ids.get(i), is(ids.get(0) + i));
+            }
+            assertThat(new HashSet<>(ids).size(), is(60));
+        }
+
+        @Test
+        void bulkCreate_malformedOrEmpty_returns400() {
+            given().auth().preemptive().basic(username, pwd)
+                    .contentType("application/json").body("[{\"name\": ")
+                    .when().post("/v1/product/bulk")
+                    .then().statusCode(400);
+
+            given().auth().preemptive().basic(username, pwd)
+                    .contentType("application/json").body("[]")
+                    .when().post("/v1/product/bulk")
+                    .then().statusCode(400);
+        }
+    }
+
+    @Nested
+    class CsvImportExport {
+        @Test
+        void importCsv_mergesOwnRowsAndReportsRejects() {
+            String sku = "csv-" + System.nanoTime();
+            String otherSku = "csv-other-" + System.nanoTime();
+
+            String other = "csv-other" + System.nanoTime() + "@example.com";
+            given().contentType("application/json").body(userJson("o", "o", other, pwd))
+                    .when().post("/v1/user").then().statusCode(201);
+            given().auth().preemptive().basic(other, pwd)
+                    .contentType("application/json").body(productJson("Theirs", "d", otherSku, "Acme", 1))
+                    .when().post("/v1/product").then().statusCode(201);
+
+            String csv = """
+                    name,description,sku,manufacturer,quantity
+                    Lamp,"desk lamp, 40W",%1$s-a,Acme,3
+                    Lamp v2,desk lamp,%1$s-a,Acme,4
+                    Chair,office,%1$s-b,Acme,101
+                    Stolen,x,%2$s,Acme,1
+                    """.formatted(sku, otherSku);
+
+            given()
+                    .auth().preemptive().basic(username, pwd)
+                    .contentType("text/csv")
+                    .body(csv.getBytes())
+                    .when()
+                    .post("/v1/product/import")
+                    .then()
+                    .log().ifValidationFails()
+                    .statusCode(200)
+                    .body("received", equalTo(4))
+                    .body("created", equalTo(1))
+                    .body("rejected_invalid", equalTo(1))
+                    .body("superseded_in_file", equalTo(1))
+                    .body("rejected_sku_conflict", equalTo(1));
+
+            String exported = given()
+                    .auth().preemptive().basic(username, pwd)
+                    .when()
+                    .get("/v1/product/export")
+                    .then()
+                    .statusCode(200)
+                    .contentType(startsWith("text/csv"))
+                    .extract().asString();
+
+            assertThat(exported, startsWith("name,description,sku,manufacturer,quantity\n"));
+            assertThat(exported, containsString("Lamp v2,desk lamp," + sku + "-a,Acme,4"));
+            assertThat(exported, not(containsString(otherSku)));
+        }
+
+        @Test
+        void importCsv_takesIdsInBlocksOfFifty() {
+            String sku = "csv-ids-" + System.nanoTime();
+            String csv = "name,description,sku,manufacturer,quantity\n" + IntStream.range(0, 3)
+                    .mapToObj(i -> "P" + i + ",d," + sku + "-" + i + ",Acme,1\n")
+                    .collect(Collectors.joining());
+
+            given().auth().preemptive().basic(username, pwd)
+                    .contentType("text/csv").body(csv.getBytes())
+                    .when().post("/v1/product/import")
+                    .then().statusCode(200).body("created", equalTo(3));
+
+            List<Long> ids = jdbc.queryForList("select id from products where sku like ? order by sku",
+                    Long.class, sku + "-%");
+            assertThat(ids, contains(ids.get(0), ids.get(0) + 1, ids.get(0) + 2));
+        }
+
+        @Test
+        void importCsv_malformed_returns400() {
+            given()
+                    .auth().preemptive().basic(username, pwd)
+                    .contentType("text/csv")
+                    .body("name,description,sku,manufacturer,quantity\nonly,two\n".getBytes())
+                    .when()
+                    .post("/v1/product/import")
+                    .then()
+                    .statusCode(400)
+                    .body("message", startsWith("Malformed CSV"));
+        }
+
+        @Test
+        void export_requiresAuth() {
+            given().when().get("/v1/product/export").then().statusCode(401);
+        }
+    }
+
     @Nested
     class UpdateProduct {
         @Test
@@ -260,6 +591,43 @@ public class ProductControllerTest extends BaseApiTest {
                     .body("quantity", equalTo(quantity));
         }
 
+        @Test
+        void updateProduct_duplicateSku_returns400() {
+            String takenSku = "taken-" + System.nanoTime();
+            given().auth().preemptive().basic(username, pwd)
+                    .contentType("application/json").body(productJson("Other", "d", takenSku, "Acme", 1))
+                    .when().post("/v1/product")
+                    .then().statusCode(201);
+
+            given().auth().preemptive().basic(username, pwd)
+                    .contentType("application/json").body("{\"sku\": \"%s\"}".formatted(takenSku))
+                    .when().patch("/v1/product/{id}", productId)
+                    .then().log().ifValidationFails().statusCode(400)
+                    .body("error", equalTo("DUPLICATE_SKU"));
+        }
+
+        @Test
+        void updateProduct_notOwner_returns403_missing_returns404() {
+            String other = "other" + System.nanoTime() + "@example.com";
+            given().contentType("application/json").body(userJson("other", "user", other, pwd))
+                    .when().post("/v1/user")
+                    .then().statusCode(201);
+
+            given().auth().preemptive().basic(other, pwd)
+                    .contentType("application/json").body(productJson("Stolen", "d", null, "Acme", 1))
+                    .when().put("/v1/product/{id}", productId)
+                    .then().statusCode(403);
+
+            given().auth().preemptive().basic(other, pwd)
+                    .when().delete("/v1/product/{id}", productId)
+                    .then().statusCode(403);
+
+            given().auth().preemptive().basic(username, pwd)
+                    .contentType("application/json").body(productJson("Gone", "d", null, "Acme", 1))
+                    .when().put("/v1/product/{id}", Long.MAX_VALUE)
+                    .then().statusCode(404);
+        }
+
         @Test
         void updateProduct_withoutAuth_returns401() {
             String body = productJson("NoAuth", "No Token", "", "Apple", 1);
@@ -300,6 +668,164 @@ public class ProductControllerTest extends BaseApiTest {
                 """.formatted(first, last, email, pwd);
         }
 
+    // Run with: ./mvnw test -Dbenchmark=true -Dtest='ProductControllerTest$ListBenchmark'
+    @Nested
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    class ListBenchmark {
+        static final int ROWS = 1_000_000;
+        static final int OWNERS = 10;
+        static final int REQUESTS = 200;
+
+        @Test
+        void pageLatencyIsFlatAcrossDepth() {
+            // spread rows over several owners so the owner filter is selective
+            long[] owners = new long[OWNERS];
+            owners[0] = userId;
+            for (int i = 1; i < OWNERS; i++) {
+                String email = "bench" + System.nanoTime() + "@example.com";
+                owners[i] = given().contentType("application/json").body(userJson("b", "b", email, pwd))
+                        .when().post("/v1/user").then().statusCode(201)
+                        .extract().jsonPath().getLong("id");
+            }
+            String ownerArray = java.util.Arrays.toString(owners).replace("[", "{").replace("]", "}");
+
+            long t0 = System.nanoTime();
+            jdbc.update("""
+                    insert into products (name, description, sku, manufacturer, quantity, owner_user_id)
+                    select 'bench', 'bench', 'bench-' || ? || '-' || g, 'Acme', 1, (?::bigint[])[1 + g % ?]
+                      from generate_series(1, ?) g
+                    """, System.nanoTime(), ownerArray, OWNERS, ROWS);
+            jdbc.execute("analyze products");
+            System.out.printf("[bench] seeded %d products in %.1fs%n", ROWS, (System.nanoTime() - t0) / 1e9);
+
+            try {
+                Long deepAfter = jdbc.queryForObject(
+                        "select id from products where owner_user_id = ? order by id offset ? limit 1",
+                        Long.class, userId, ROWS / OWNERS - 50);
+
+                double firstMs = measure(userId, 0L);
+                double deepMs = measure(userId, deepAfter);
+                String plan = String.join("\n", jdbc.queryForList(
+                        "explain select * from products where owner_user_id = ? and id > ? order by id limit 21",
+                        String.class, userId, deepAfter));
+
+                System.out.printf("[bench] GET /v1/product?limit=20 first page: %.2f ms, page ~%d: %.2f ms%n",
+                        firstMs, ROWS / OWNERS / 20, deepMs);
+                System.out.println("[bench] plan:\n" + plan);
+                // offset paging would scan ~100k rows for the deep page; keyset stays an index seek
+                assertThat(deepMs, lessThan(firstMs * 3 + 5));
+            } finally {
+                jdbc.update("delete from products where sku like 'bench-%'");
+            }
+        }
+
+        private double measure(Long owner, Long after) {
+            Runnable call = () -> given().queryParam("owner", owner).queryParam("after", after)
+                    .queryParam("limit", 20)
+                    .when().get("/v1/product").then().statusCode(200);
+            for (int i = 0; i < 20; i++) call.run(); // warm-up
+            long start = System.nanoTime();
+            for (int i = 0; i < REQUESTS; i++) call.run();
+            return (System.nanoTime() - start) / 1e6 / REQUESTS;
+        }
+    }
+
+    // Run with: ./mvnw test -Dbenchmark=true -Dtest='ProductControllerTest$BulkBenchmark'
+    @Nested
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    class BulkBenchmark {
+        static final int ITEMS = 1000;
+
+        @Test
+        void bulkVsPerItemSync() {
+            String run = "sync-" + System.nanoTime();
+            try {
+                long t0 = System.nanoTime();
+                for (int i = 0; i < ITEMS; i++) {
+                    given().auth().preemptive().basic(username, pwd)
+                            .contentType("application/json")
+                            .body(productJson("P" + i, "d", run + "-single-" + i, "Acme", 1))
+                            .when().post("/v1/product")
+                            .then().statusCode(201);
+                }
+                double perItemMs = (System.nanoTime() - t0) / 1e6;
+
+                StringBuilder ndjson = new StringBuilder();
+                for (int i = 0; i < ITEMS; i++) {
+                    ndjson.append(productJson("P" + i, "d", run + "-bulk-" + i, "Acme", 1).replace("\n", "")).append('\n');
+                }
+                t0 = System.nanoTime();
+                given().auth().preemptive().basic(username, pwd)
+                        .contentType("application/x-ndjson")
+                        .body(ndjson.toString().getBytes())
+                        .when().post("/v1/product/bulk")
+                        .then().statusCode(200).body("created", equalTo(ITEMS));
+                double bulkMs = (System.nanoTime() - t0) / 1e6;
+
+                System.out.printf("[bench] %d products: per-item POST %.0f ms, bulk POST %.0f ms (%.1fx)%n",
+                        ITEMS, perItemMs, bulkMs, perItemMs / bulkMs);
+                assertThat(bulkMs, lessThan(perItemMs / 10));
+            } finally {
+                jdbc.update("delete from products where sku like ?", run + "-%");
+            }
+        }
+    }
+
+    // Run with: ./mvnw test -Dbenchmark=true -Dtest='ProductControllerTest$CsvBenchmark'
+    @Nested
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    class CsvBenchmark {
+        static final int ROWS = 1_000_000;
+
+        @Test
+        void importAndExportMillionRows() throws Exception {
+            String run = "csvb" + System.nanoTime();
+            // generated on the fly: the client side does not buffer the file either
+            java.io.InputStream csv = new java.io.SequenceInputStream(
+                    new java.io.ByteArrayInputStream("name,description,sku,manufacturer,quantity\n".getBytes()),
+                    new java.io.InputStream() {
+                        int row = 0;
+                        byte[] line = new byte[0];
+                        int pos = 0;
+
+                        @Override
+                        public int read() {
+                            if (pos == line.length) {
+                                if (row == ROWS) return -1;
+                                line = ("Item %d,generated row %d,%s-%d,Acme,%d\n"
+                                        .formatted(row, row, run, row, row % 100)).getBytes();
+                                row++;
+                                pos = 0;
+                            }
+                            return line[pos++];
+                        }
+                    });
+
+            try {
+                long t0 = System.nanoTime();
+                given().auth().preemptive().basic(username, pwd)
+                        .contentType("text/csv")
+                        .body(csv)
+                        .when().post("/v1/product/import")
+                        .then().statusCode(200).body("created", equalTo(ROWS));
+                double importS = (System.nanoTime() - t0) / 1e9;
+
+                t0 = System.nanoTime();
+                java.io.InputStream in = given().auth().preemptive().basic(username, pwd)
+                        .when().get("/v1/product/export")
+                        .then().statusCode(200)
+                        .extract().asInputStream();
+                long bytes = in.transferTo(java.io.OutputStream.nullOutputStream());
+                double exportS = (System.nanoTime() - t0) / 1e9;
+
+                System.out.printf("[bench] CSV import %d rows: %.1fs (%.0f rows/s)%n", ROWS, importS, ROWS / importS);
+                System.out.printf("[bench] CSV export %.1f MB: %.1fs%n", bytes / 1e6, exportS);
+            } finally {
+                jdbc.update("delete from products where sku like ?", run + "-%");
+            }
+        }
+    }
+
     private static String productJson(String name, String desc, String sku, String manufa, int quantity) {
         String finalSku = (sku == null || sku.isEmpty())
                 ? "sku-" + System.currentTimeMillis()
@@ -0,0 +1,47 @@
+package com.isaactai.cloudnativeweb.support;
+
+import static io.restassured.RestAssured.given;
+
+/**
+ * Users and products created through the API, for tests that need a seller to act as.
+ * @author tisaac
+ */
+public final class ApiFixtures {
+    public static final String PASSWORD = "StrongPwd$";
+
+    private ApiFixtures() {}
+
+    // unique per call, so classes sharing a context never collide
+    public static String username(String prefix) {
+        return prefix + System.nanoTime() + "@example.com";
+    }
+
+    public static Long createUser(String username) {
+        return createUser(username, PASSWORD);
+    }
+
+    public static Long createUser(String username, String pwd) {
+        return given().contentType("application/json")
+                .body("""
+                        {"first_name": "fixture", "last_name": "user", "username": "%s", "password": "%s"}
+                        """.formatted(username, pwd))
+                .when().post("/v1/user")
+                .then().log().ifValidationFails().statusCode(201)
+                .extract().jsonPath().getLong("id");
+    }
+
+    public static Long createProduct(String username) {
+        return createProduct(username, PASSWORD);
+    }
+
+    public static Long createProduct(String username, String pwd) {
+        return given().auth().preemptive().basic(username, pwd)
+                .contentType("application/json")
+                .body("""
+                        {"name": "Lens", "description": "50mm", "sku": "fx-%s", "manufacturer": "Acme", "quantity": 1}
+                        """.formatted(System.nanoTime()))
+                .when().post("/v1/product")
+                .then().log().ifValidationFails().statusCode(201)
+                .extract().jsonPath().getLong("id");
+    }
+}
@@ -6,6 +6,7 @@ import org.junit.jupiter.api.TestInstance;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Import;
 import org.springframework.test.context.ActiveProfiles;
 
 /**
@@ -14,11 +15,15 @@ import org.springframework.test.context.ActiveProfiles;
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
 @ActiveProfiles("ci")
+@Import(StatementCounter.class)
 public abstract class BaseApiTest {
 
     @MockBean
     private software.amazon.awssdk.services.s3.S3Client s3Client;
 
+    @MockBean
+    private software.amazon.awssdk.services.s3.presigner.S3Presigner s3Presigner;
+
     @MockBean
     private com.isaactai.cloudnativeweb.config.S3Config s3Config;
 
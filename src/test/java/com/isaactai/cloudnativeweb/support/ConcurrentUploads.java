@@ -0,0 +1,118 @@
+package com.isaactai.cloudnativeweb.support;
+
+import org.apache.tomcat.util.threads.ThreadPoolExecutor;
+import org.springframework.boot.web.embedded.tomcat.TomcatWebServer;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ApplicationContext;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static io.restassured.RestAssured.given;
+
+/**
+ * Fires a burst of concurrent multipart uploads and samples how many Tomcat request threads
+ * are busy while they run.
+ * @author tisaac
+ */
+public final class ConcurrentUploads {
+    public record Result(int uploads, Map<Integer, Integer> statuses, double seconds,
+                         int peakBusyThreads, double avgBusyThreads) {
+        public double perSecond() {
+            return uploads / seconds;
+        }
+
+        // request-thread time each upload cost, waiting included
+        public double threadSecondsPerUpload() {
+            return avgBusyThreads * seconds / uploads;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d uploads in %.2fs (%.0f req/s), statuses %s, request threads busy: peak %d, "
+                            + "avg %.1f, %.2f thread-s per upload",
+                    uploads, seconds, perSecond(), statuses, peakBusyThreads, avgBusyThreads, threadSecondsPerUpload());
+        }
+    }
+
+    // makes every upload's bytes distinct, so none is a dedup hit that skips S3
+    private static final AtomicLong SEQ = new AtomicLong(System.nanoTime());
+
+    private ConcurrentUploads() {}
+
+    // size of the measured burst: -Dbenchmark.uploads=500
+    public static int count() {
+        return Integer.getInteger("benchmark.uploads", 100);
+    }
+
+    public static Result run(ApplicationContext ctx, String path, String username, String pwd,
+                             byte[] file, int uploads) throws Exception {
+        ThreadPoolExecutor tomcat = tomcatExecutor(ctx);
+        ExecutorService clients = Executors.newFixedThreadPool(uploads);
+        AtomicBoolean sampling = new AtomicBoolean(true);
+        int[] peak = {0};
+        long[] sum = {0, 0};
+        Thread sampler = new Thread(() -> {
+            while (sampling.get()) {
+                int busy = tomcat.getActiveCount();
+                peak[0] = Math.max(peak[0], busy);
+                sum[0] += busy;
+                sum[1]++;
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "busy-sampler");
+
+        try {
+            CountDownLatch go = new CountDownLatch(1);
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int i = 0; i < uploads; i++) {
+                byte[] body = Arrays.copyOf(file, file.length);
+                ByteBuffer.wrap(body).putLong(body.length - Long.BYTES, SEQ.incrementAndGet());
+                futures.add(clients.submit(() -> {
+                    go.await();
+                    return given().auth().preemptive().basic(username, pwd)
+                            .multiPart("file", "burst.png", body, "image/png")
+                            .when().post(path)
+                            .then().extract().statusCode();
+                }));
+            }
+            sampler.start();
+            long start = System.nanoTime();
+            go.countDown();
+            Map<Integer, Integer> statuses = new TreeMap<>();
+            for (Future<Integer> f : futures) {
+                statuses.merge(f.get(), 1, Integer::sum);
+            }
+            double secs = (System.nanoTime() - start) / 1e9;
+            sampling.set(false);
+            sampler.join();
+            return new Result(uploads, statuses, secs, peak[0], sum[1] == 0 ? 0 : (double) sum[0] / sum[1]);
+        } finally {
+            sampling.set(false);
+            clients.shutdownNow();
+        }
+    }
+
+    public static int busyThreads(ApplicationContext ctx) {
+        return tomcatExecutor(ctx).getActiveCount();
+    }
+
+    private static ThreadPoolExecutor tomcatExecutor(ApplicationContext ctx) {
+        TomcatWebServer server = (TomcatWebServer) ((ServletWebServerApplicationContext) ctx).getWebServer();
+        return (ThreadPoolExecutor) server.getTomcat().getConnector().getProtocolHandler().getExecutor();
+    }
+}
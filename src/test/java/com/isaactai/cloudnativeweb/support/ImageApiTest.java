@@ -0,0 +1,48 @@
+package com.isaactai.cloudnativeweb.support;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+
+import java.io.IOException;
+
+/**
+ * Base for the image tests: the S3 mocks are routed to a fresh {@link S3StandIn} and a seller
+ * with one product is signed up before each test.
+ * @author tisaac
+ */
+public abstract class ImageApiTest extends BaseApiTest {
+
+    @Autowired
+    protected S3Client s3; // mock from BaseApiTest
+
+    @Autowired
+    protected S3Presigner presigner; // mock from BaseApiTest
+
+    @Autowired
+    protected JdbcTemplate jdbc;
+
+    protected S3StandIn standIn;
+    protected String username;
+    protected String pwd = ApiFixtures.PASSWORD;
+    protected Long userId;
+    protected Long productId;
+
+    @BeforeEach
+    public void setUpSeller() throws IOException {
+        standIn = new S3StandIn().routeMocks(s3, presigner);
+        username = ApiFixtures.username("seller");
+        userId = ApiFixtures.createUser(username);
+        productId = ApiFixtures.createProduct(username);
+    }
+
+    @AfterEach
+    public void closeStandIn() {
+        Mockito.reset(s3, presigner);
+        standIn.close();
+    }
+}
@@ -0,0 +1,36 @@
+package com.isaactai.cloudnativeweb.support;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.mockito.Mockito;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.TestPropertySource;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+
+/**
+ * One context for the non-default I/O paths: uploads through {@link S3AsyncClient} and
+ * {@code /content} proxied through the local disk cache. {@link #s3Async} is routed to the
+ * stand-in along with the other S3 mocks.
+ * @author tisaac
+ */
+@TestPropertySource(properties = {
+        "app.upload.async.enabled=true",
+        "app.cache.image-bytes.enabled=true",
+        "app.cache.image-bytes.max-size=1MB",
+        "app.cache.image-bytes.dir=${java.io.tmpdir}/csye6225/image-cache-test"
+})
+public abstract class ImageIoApiTest extends ImageApiTest {
+
+    @MockBean
+    protected S3AsyncClient s3Async;
+
+    @BeforeEach
+    public void routeAsyncMock() {
+        standIn.routeAsyncMock(s3Async);
+    }
+
+    @AfterEach
+    public void resetAsyncMock() {
+        Mockito.reset(s3Async);
+    }
+}
@@ -0,0 +1,32 @@
+package com.isaactai.cloudnativeweb.support;
+
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * One context for the image background workers: thumbnails, reconciliation and the upload
+ * spool are all on, and all poll hourly, so each test drives the worker it is about and the
+ * others stay out of its way.
+ * @author tisaac
+ */
+@TestPropertySource(properties = {
+        "app.image.variants.enabled=true",
+        "app.image.variants.sizes=32,64",
+        "app.image.variants.poll-interval=1h",
+        "app.image.variants.retry-backoff=100ms",
+        "app.image.variants.max-attempts=3",
+        "app.image.reconcile.enabled=true",
+        "app.image.reconcile.poll-interval=1h",
+        "app.image.reconcile.slice=0s",
+        "app.image.reconcile.page-size=100",
+        "app.image.reconcile.keys-per-second=1000000",
+        "app.image.reconcile.grace=1h",
+        "app.upload.spool.enabled=true",
+        "app.upload.spool.dir=${java.io.tmpdir}/csye6225-spool-test",
+        // well above a stand-in PUT, even a cold one, so only the spool tests trip it
+        "app.upload.spool.slow-put=500ms",
+        "app.upload.spool.cooldown=1s",
+        "app.upload.spool.poll-interval=1h",
+        "app.upload.spool.retry-backoff=1m"
+})
+public abstract class ImageWorkersApiTest extends ImageApiTest {
+}
@@ -0,0 +1,490 @@
+package com.isaactai.cloudnativeweb.support;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.services.s3.presigner.model.GetObjectPresignRequest;
+import software.amazon.awssdk.services.s3.presigner.model.PutObjectPresignRequest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+/**
+ * Minimal in-JVM S3 stand-in: path-style PUT / HEAD / GET / DELETE of whole objects,
+ * multi-object delete, multipart uploads (part sizes are not checked) and ListObjectsV2.
+ *
+ * <p>Requests must carry a SigV4 signature (header or presigned query), but the signature
+ * itself is not verified. Real SDK clients pointed at {@link #endpoint()} talk to it like to S3.
+ * @author tisaac
+ */
+public class S3StandIn implements AutoCloseable {
+    public record StoredObject(byte[] body, String contentType, Instant lastModified) {
+        StoredObject(byte[] body, String contentType) {
+            this(body, contentType, Instant.now());
+        }
+    }
+
+    private static final Pattern XML_KEY = Pattern.compile("<Key>(.*?)</Key>");
+    private static final Pattern XML_PART = Pattern.compile("<Part>(.*?)</Part>", Pattern.DOTALL);
+    private static final Pattern XML_ETAG = Pattern.compile("<ETag>(.*?)</ETag>");
+    private static final Pattern XML_PART_NUMBER = Pattern.compile("<PartNumber>(\\d+)</PartNumber>");
+
+    private record Multipart(String path, String contentType, Map<Integer, byte[]> parts) {}
+
+    private final HttpServer server;
+    private final ExecutorService handlers = Executors.newCachedThreadPool();
+    private final Map<String, StoredObject> objects = new ConcurrentHashMap<>();
+    private final Map<String, Multipart> multiparts = new ConcurrentHashMap<>();
+    private final List<AutoCloseable> clients = new CopyOnWriteArrayList<>();
+    private volatile Duration putDelay = Duration.ZERO;
+
+    public S3StandIn() throws IOException {
+        // big backlog and a thread per request, so hundreds of concurrent PUTs don't queue here
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 1024);
+        server.createContext("/", this::handle);
+        server.setExecutor(handlers);
+        server.start();
+    }
+
+    // simulated S3 latency, applied to every PUT after its body has been read
+    public S3StandIn putDelay(Duration delay) {
+        this.putDelay = delay;
+        return this;
+    }
+
+    public URI endpoint() {
+        return URI.create("http://localhost:" + server.getAddress().getPort());
+    }
+
+    public S3Client client() {
+        return track(S3Client.builder()
+                .region(Region.US_EAST_1)
+                .credentialsProvider(credentials())
+                .endpointOverride(endpoint())
+                .forcePathStyle(true)
+                .build());
+    }
+
+    public S3AsyncClient asyncClient() {
+        return track(S3AsyncClient.builder()
+                .region(Region.US_EAST_1)
+                .credentialsProvider(credentials())
+                .endpointOverride(endpoint())
+                .forcePathStyle(true)
+                // a burst of hundreds of PUTs connects faster than the server accepts: wait, don't fail
+                .httpClientBuilder(NettyNioAsyncHttpClient.builder()
+                        .maxConcurrency(1024)
+                        .connectionAcquisitionTimeout(Duration.ofSeconds(60)))
+                .build());
+    }
+
+    public S3Presigner presigner() {
+        return track(S3Presigner.builder()
+                .region(Region.US_EAST_1)
+                .credentialsProvider(credentials())
+                .endpointOverride(endpoint())
+                .serviceConfiguration(S3Configuration.builder().pathStyleAccessEnabled(true).build())
+                .build());
+    }
+
+    /**
+     * Routes the context's mocked S3 beans to real SDK clients talking to this stand-in.
+     * Callers reset the mocks afterwards.
+     */
+    public S3StandIn routeMocks(S3Client s3Mock, S3Presigner presignerMock) {
+        S3Client realS3 = client();
+        S3Presigner realPresigner = presigner();
+        when(presignerMock.presignPutObject(any(PutObjectPresignRequest.class)))
+                .thenAnswer(inv -> realPresigner.presignPutObject((PutObjectPresignRequest) inv.getArgument(0)));
+        when(presignerMock.presignGetObject(any(GetObjectPresignRequest.class)))
+                .thenAnswer(inv -> realPresigner.presignGetObject((GetObjectPresignRequest) inv.getArgument(0)));
+        when(s3Mock.putObject(any(PutObjectRequest.class), any(RequestBody.class)))
+                .thenAnswer(inv -> realS3.putObject((PutObjectRequest) inv.getArgument(0),
+                        (RequestBody) inv.getArgument(1)));
+        when(s3Mock.headObject(any(HeadObjectRequest.class)))
+                .thenAnswer(inv -> realS3.headObject((HeadObjectRequest) inv.getArgument(0)));
+        when(s3Mock.getObject(any(GetObjectRequest.class)))
+                .thenAnswer(inv -> realS3.getObject((GetObjectRequest) inv.getArgument(0)));
+        when(s3Mock.deleteObject(any(DeleteObjectRequest.class)))
+                .thenAnswer(inv -> realS3.deleteObject((DeleteObjectRequest) inv.getArgument(0)));
+        when(s3Mock.listObjectsV2(any(ListObjectsV2Request.class)))
+                .thenAnswer(inv -> realS3.listObjectsV2((ListObjectsV2Request) inv.getArgument(0)));
+        when(s3Mock.deleteObjects(any(DeleteObjectsRequest.class)))
+                .thenAnswer(inv -> realS3.deleteObjects((DeleteObjectsRequest) inv.getArgument(0)));
+        when(s3Mock.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+                .thenAnswer(inv -> realS3.createMultipartUpload((CreateMultipartUploadRequest) inv.getArgument(0)));
+        when(s3Mock.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+                .thenAnswer(inv -> realS3.uploadPart((UploadPartRequest) inv.getArgument(0),
+                        (RequestBody) inv.getArgument(1)));
+        when(s3Mock.completeMultipartUpload(any(CompleteMultipartUploadRequest.class)))
+                .thenAnswer(inv -> realS3.completeMultipartUpload(
+                        (CompleteMultipartUploadRequest) inv.getArgument(0)));
+        when(s3Mock.abortMultipartUpload(any(AbortMultipartUploadRequest.class)))
+                .thenAnswer(inv -> realS3.abortMultipartUpload((AbortMultipartUploadRequest) inv.getArgument(0)));
+        return this;
+    }
+
+    public S3StandIn routeAsyncMock(S3AsyncClient s3AsyncMock) {
+        S3AsyncClient real = asyncClient();
+        when(s3AsyncMock.putObject(any(PutObjectRequest.class), any(AsyncRequestBody.class)))
+                .thenAnswer(inv -> real.putObject((PutObjectRequest) inv.getArgument(0),
+                        (AsyncRequestBody) inv.getArgument(1)));
+        return this;
+    }
+
+    public int size() {
+        return objects.size();
+    }
+
+    // "bucket/key"
+    public StoredObject get(String path) {
+        return objects.get(path);
+    }
+
+    public void put(String path, byte[] body, String contentType) {
+        objects.put(path, new StoredObject(body, contentType));
+    }
+
+    // an object written at lastModified, as listings report it
+    public void put(String path, byte[] body, String contentType, Instant lastModified) {
+        objects.put(path, new StoredObject(body, contentType, lastModified));
+    }
+
+    // multipart uploads started and neither completed nor aborted
+    public int multipartsInProgress() {
+        return multiparts.size();
+    }
+
+    @Override
+    public void close() {
+        for (AutoCloseable c : clients) {
+            try {
+                c.close();
+            } catch (Exception ignored) {
+                // best effort
+            }
+        }
+        server.stop(0);
+        handlers.shutdownNow();
+    }
+
+    private <T extends AutoCloseable> T track(T client) {
+        clients.add(client);
+        return client;
+    }
+
+    private static StaticCredentialsProvider credentials() {
+        return StaticCredentialsProvider.create(AwsBasicCredentials.create("test", "test"));
+    }
+
+    private void handle(HttpExchange ex) throws IOException {
+        try (ex) {
+            String query = ex.getRequestURI().getRawQuery();
+            boolean signed = ex.getRequestHeaders().containsKey("Authorization")
+                    || (query != null && query.contains("X-Amz-Signature="));
+            if (!signed) {
+                ex.sendResponseHeaders(403, -1);
+                return;
+            }
+
+            String path = ex.getRequestURI().getPath().substring(1);
+            if (!ex.getRequestMethod().equals("PUT") && !ex.getRequestMethod().equals("POST")) {
+                // the server drops a keep-alive connection whose request body was never opened, and
+                // the SDK's retry of the next PUT can't replay a stream that doesn't support mark
+                ex.getRequestBody().close();
+            }
+            switch (ex.getRequestMethod()) {
+                case "PUT" -> {
+                    byte[] body;
+                    try (InputStream in = ex.getRequestBody()) {
+                        body = in.readAllBytes();
+                    }
+                    if ("aws-chunked".equals(ex.getRequestHeaders().getFirst("Content-Encoding"))) {
+                        body = decodeAwsChunked(body);
+                    }
+                    if (!putDelay.isZero()) {
+                        try {
+                            Thread.sleep(putDelay.toMillis());
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    Map<String, String> params = params(query);
+                    if (params.containsKey("uploadId")) {
+                        Multipart upload = multiparts.get(params.get("uploadId"));
+                        if (upload == null) {
+                            error(ex, 404, "NoSuchUpload");
+                            return;
+                        }
+                        upload.parts().put(Integer.parseInt(params.get("partNumber")), body);
+                    } else {
+                        objects.put(path, new StoredObject(body, ex.getRequestHeaders().getFirst("Content-Type")));
+                    }
+                    ex.getResponseHeaders().add("ETag", etag(body));
+                    ex.sendResponseHeaders(200, -1);
+                }
+                case "HEAD", "GET" -> {
+                    Map<String, String> params = params(query);
+                    if ("2".equals(params.get("list-type"))) {
+                        list(ex, path.endsWith("/") ? path.substring(0, path.length() - 1) : path, params);
+                        return;
+                    }
+                    StoredObject o = objects.get(path);
+                    if (o == null && ex.getRequestMethod().equals("GET")) {
+                        // like S3: GET errors carry a body with the error code, HEAD errors don't
+                        error(ex, 404, "NoSuchKey");
+                        return;
+                    }
+                    if (o == null) {
+                        ex.sendResponseHeaders(404, -1);
+                        return;
+                    }
+                    ex.getResponseHeaders().add("Content-Type", o.contentType());
+                    ex.getResponseHeaders().add("ETag", etag(o.body()));
+                    ex.getResponseHeaders().add("Last-Modified",
+                            DateTimeFormatter.RFC_1123_DATE_TIME.format(o.lastModified().atZone(ZoneOffset.UTC)));
+                    if (ex.getRequestMethod().equals("HEAD")) {
+                        ex.getResponseHeaders().add("Content-Length", String.valueOf(o.body().length));
+                        ex.sendResponseHeaders(200, -1);
+                    } else {
+                        ex.sendResponseHeaders(200, o.body().length);
+                        try (OutputStream out = ex.getResponseBody()) {
+                            out.write(o.body());
+                        }
+                    }
+                }
+                case "DELETE" -> {
+                    Map<String, String> params = params(query);
+                    if (params.containsKey("uploadId")) {
+                        if (multiparts.remove(params.get("uploadId")) == null) {
+                            error(ex, 404, "NoSuchUpload");
+                            return;
+                        }
+                    } else {
+                        objects.remove(path);
+                    }
+                    ex.sendResponseHeaders(204, -1);
+                }
+                case "POST" -> {
+                    Map<String, String> params = params(query);
+                    if (params.containsKey("uploads") || params.containsKey("uploadId")) {
+                        multipart(ex, path, params);
+                        return;
+                    }
+                    if (!params.containsKey("delete")) {
+                        ex.sendResponseHeaders(405, -1);
+                        return;
+                    }
+                    // DeleteObjects, always answered as if quiet: no errors to report
+                    String xml;
+                    try (InputStream in = ex.getRequestBody()) {
+                        xml = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+                    }
+                    Matcher m = XML_KEY.matcher(xml);
+                    while (m.find()) {
+                        objects.remove(path + "/" + unescapeXml(m.group(1)));
+                    }
+                    byte[] res = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><DeleteResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\"></DeleteResult>"
+                            .getBytes(StandardCharsets.UTF_8);
+                    ex.getResponseHeaders().add("Content-Type", "application/xml");
+                    ex.sendResponseHeaders(200, res.length);
+                    try (OutputStream out = ex.getResponseBody()) {
+                        out.write(res);
+                    }
+                }
+                default -> ex.sendResponseHeaders(405, -1);
+            }
+        }
+    }
+
+    // CreateMultipartUpload (?uploads) and CompleteMultipartUpload (?uploadId=)
+    private void multipart(HttpExchange ex, String path, Map<String, String> params) throws IOException {
+        String xml;
+        try (InputStream in = ex.getRequestBody()) {
+            xml = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        int slash = path.indexOf('/');
+        String bucketAndKey = "<Bucket>" + path.substring(0, slash) + "</Bucket><Key>" + path.substring(slash + 1) + "</Key>";
+        if (params.containsKey("uploads")) {
+            String uploadId = UUID.randomUUID().toString();
+            multiparts.put(uploadId, new Multipart(path, ex.getRequestHeaders().getFirst("Content-Type"),
+                    new ConcurrentSkipListMap<>()));
+            xmlResponse(ex, "<InitiateMultipartUploadResult>" + bucketAndKey + "<UploadId>" + uploadId
+                    + "</UploadId></InitiateMultipartUploadResult>");
+            return;
+        }
+
+        Multipart upload = multiparts.get(params.get("uploadId"));
+        if (upload == null) {
+            error(ex, 404, "NoSuchUpload");
+            return;
+        }
+        ByteArrayOutputStream assembled = new ByteArrayOutputStream();
+        Matcher m = XML_PART.matcher(xml);
+        while (m.find()) {
+            Matcher number = XML_PART_NUMBER.matcher(m.group(1));
+            Matcher eTag = XML_ETAG.matcher(m.group(1));
+            byte[] part = number.find() ? upload.parts().get(Integer.parseInt(number.group(1))) : null;
+            if (part == null || !eTag.find() || !etag(part).equals(unescapeXml(eTag.group(1)))) {
+                error(ex, 400, "InvalidPart");
+                return;
+            }
+            assembled.writeBytes(part);
+        }
+        multiparts.remove(params.get("uploadId"));
+        objects.put(upload.path(), new StoredObject(assembled.toByteArray(), upload.contentType()));
+        xmlResponse(ex, "<CompleteMultipartUploadResult>" + bucketAndKey + "<ETag>"
+                + etag(assembled.toByteArray()) + "</ETag></CompleteMultipartUploadResult>");
+    }
+
+    // ListObjectsV2 of one bucket: prefix, start-after and max-keys; no delimiter, no continuation token
+    private void list(HttpExchange ex, String bucket, Map<String, String> params) throws IOException {
+        String prefix = params.getOrDefault("prefix", "");
+        String startAfter = params.getOrDefault("start-after", "");
+        int maxKeys = Integer.parseInt(params.getOrDefault("max-keys", "1000"));
+        List<Map.Entry<String, StoredObject>> matching = objects.entrySet().stream()
+                .filter(e -> e.getKey().startsWith(bucket + "/"))
+                .map(e -> Map.entry(e.getKey().substring(bucket.length() + 1), e.getValue()))
+                .filter(e -> e.getKey().startsWith(prefix) && e.getKey().compareTo(startAfter) > 0)
+                .sorted(Map.Entry.comparingByKey())
+                .toList();
+        List<Map.Entry<String, StoredObject>> page = matching.subList(0, Math.min(maxKeys, matching.size()));
+        StringBuilder xml = new StringBuilder("<ListBucketResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\">")
+                .append("<Name>").append(bucket).append("</Name>")
+                .append("<Prefix>").append(escapeXml(prefix)).append("</Prefix>")
+                .append("<KeyCount>").append(page.size()).append("</KeyCount>")
+                .append("<MaxKeys>").append(maxKeys).append("</MaxKeys>")
+                .append("<IsTruncated>").append(matching.size() > page.size()).append("</IsTruncated>");
+        for (Map.Entry<String, StoredObject> e : page) {
+            xml.append("<Contents><Key>").append(escapeXml(e.getKey())).append("</Key>")
+                    .append("<LastModified>").append(DateTimeFormatter.ISO_INSTANT.format(e.getValue().lastModified()))
+                    .append("</LastModified><ETag>").append(escapeXml(etag(e.getValue().body()))).append("</ETag>")
+                    .append("<Size>").append(e.getValue().body().length).append("</Size>")
+                    .append("<StorageClass>STANDARD</StorageClass></Contents>");
+        }
+        xmlResponse(ex, xml.append("</ListBucketResult>").toString());
+    }
+
+    private static void xmlResponse(HttpExchange ex, String xml) throws IOException {
+        byte[] res = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + xml).getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().add("Content-Type", "application/xml");
+        ex.sendResponseHeaders(200, res.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(res);
+        }
+    }
+
+    private static void error(HttpExchange ex, int status, String code) throws IOException {
+        byte[] err = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?><Error><Code>" + code + "</Code></Error>")
+                .getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().add("Content-Type", "application/xml");
+        ex.sendResponseHeaders(status, err.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(err);
+        }
+    }
+
+    private static Map<String, String> params(String query) {
+        Map<String, String> params = new HashMap<>();
+        if (query == null) {
+            return params;
+        }
+        for (String p : query.split("&")) {
+            int eq = p.indexOf('=');
+            params.put(eq < 0 ? p : p.substring(0, eq),
+                    eq < 0 ? "" : URLDecoder.decode(p.substring(eq + 1), StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    private static String escapeXml(String s) {
+        return s.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    private static String unescapeXml(String s) {
+        return s.replace("&lt;", "<").replace("&gt;", ">").replace("&quot;", "\"")
+                .replace("&apos;", "'").replace("&amp;", "&");
+    }
+
+    // single-part ETag is the hex MD5 of the content; the SDK checks it on PutObject
+    private static String etag(byte[] body) {
+        try {
+            return "\"" + HexFormat.of().formatHex(MessageDigest.getInstance("MD5").digest(body)) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // <hex size>;chunk-signature=...\r\n<data>\r\n ... 0;chunk-signature=...\r\n\r\n
+    private static byte[] decodeAwsChunked(byte[] raw) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length);
+        int pos = 0;
+        while (pos < raw.length) {
+            int lineEnd = indexOfCrlf(raw, pos);
+            String header = new String(raw, pos, lineEnd - pos, StandardCharsets.US_ASCII);
+            int size = Integer.parseInt(header.split(";", 2)[0].trim(), 16);
+            pos = lineEnd + 2;
+            if (size == 0) {
+                break;
+            }
+            out.write(raw, pos, size);
+            pos += size + 2;
+        }
+        return out.toByteArray();
+    }
+
+    private static int indexOfCrlf(byte[] b, int from) {
+        for (int i = from; i < b.length - 1; i++) {
+            if (b[i] == '\r' && b[i + 1] == '\n') {
+                return i;
+            }
+        }
+        return b.length;
+    }
+}
@@ -0,0 +1,230 @@
+package com.isaactai.cloudnativeweb.support;
+
+import com.isaactai.cloudnativeweb.config.AwsProps;
+import com.isaactai.cloudnativeweb.messaging.SnsPublisher;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.sns.SnsClient;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.when;
+
+/**
+ * Minimal in-JVM SNS stand-in: Publish and PublishBatch over the query protocol, with a
+ * simulated round-trip time and per-message failures. Messages are kept, not delivered.
+ * @author tisaac
+ */
+public class SnsStandIn implements AutoCloseable {
+    public static final String TOPIC_ARN = "arn:aws:sns:us-east-1:000000000000:stand-in";
+    private static final String NS = "http://sns.amazonaws.com/doc/2010-03-31/";
+
+    private final HttpServer server;
+    private final ExecutorService handlers = Executors.newCachedThreadPool();
+    private final List<String> messages = new CopyOnWriteArrayList<>();
+    private final List<AutoCloseable> clients = new CopyOnWriteArrayList<>();
+    private final AtomicInteger calls = new AtomicInteger();
+    private volatile Duration latency = Duration.ZERO;
+    private volatile Predicate<String> rejects = m -> false;
+    private volatile boolean unavailable;
+
+    public SnsStandIn() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 256);
+        server.createContext("/", this::handle);
+        server.setExecutor(handlers);
+        server.start();
+    }
+
+    // simulated SNS round trip, applied to every call
+    public SnsStandIn latency(Duration latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    // messages matching this are reported as failed entries (Publish: the call fails)
+    public SnsStandIn reject(Predicate<String> rejects) {
+        this.rejects = rejects;
+        return this;
+    }
+
+    // every call is answered with 503, as when SNS throttles or is down
+    public SnsStandIn unavailable(boolean unavailable) {
+        this.unavailable = unavailable;
+        return this;
+    }
+
+    public URI endpoint() {
+        return URI.create("http://localhost:" + server.getAddress().getPort());
+    }
+
+    public SnsClient client() {
+        SnsClient c = SnsClient.builder()
+                .region(Region.US_EAST_1)
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("test", "test")))
+                .endpointOverride(endpoint())
+                .build();
+        clients.add(c);
+        return c;
+    }
+
+    /**
+     * Routes the context's mocked {@link SnsPublisher} to a real one talking to this stand-in.
+     * Callers reset the mock afterwards.
+     */
+    public SnsStandIn routeMock(SnsPublisher publisherMock) {
+        SnsPublisher real = new SnsPublisher(client(), new AwsProps("us-east-1", new AwsProps.SnsProps(TOPIC_ARN)));
+        when(publisherMock.publishEmailVerifications(anyList()))
+                .thenAnswer(inv -> real.publishEmailVerifications(inv.getArgument(0)));
+        doAnswer(inv -> {
+            real.publishEmailVerification(inv.getArgument(0), inv.getArgument(1));
+            return null;
+        }).when(publisherMock).publishEmailVerification(anyString(), any());
+        return this;
+    }
+
+    // published message bodies, in arrival order
+    public List<String> messages() {
+        return List.copyOf(messages);
+    }
+
+    // API calls received
+    public int calls() {
+        return calls.get();
+    }
+
+    @Override
+    public void close() {
+        for (AutoCloseable c : clients) {
+            try {
+                c.close();
+            } catch (Exception ignored) {
+                // best effort
+            }
+        }
+        server.stop(0);
+        handlers.shutdownNow();
+    }
+
+    private void handle(HttpExchange ex) throws IOException {
+        try (ex) {
+            String form;
+            try (InputStream in = ex.getRequestBody()) {
+                form = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+            if (!ex.getRequestHeaders().containsKey("Authorization")) {
+                ex.sendResponseHeaders(403, -1);
+                return;
+            }
+            calls.incrementAndGet();
+            if (!latency.isZero()) {
+                try {
+                    Thread.sleep(latency.toMillis());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            if (unavailable) {
+                send(ex, 503, "<ErrorResponse xmlns=\"" + NS + "\"><Error><Type>Receiver</Type>"
+                        + "<Code>ServiceUnavailable</Code><Message>unavailable</Message></Error>"
+                        + "<RequestId>" + UUID.randomUUID() + "</RequestId></ErrorResponse>");
+                return;
+            }
+            Map<String, String> params = params(form);
+            String action = params.get("Action");
+            String body;
+            if ("Publish".equals(action)) {
+                String message = params.get("Message");
+                if (rejects.test(message)) {
+                    send(ex, 400, "<ErrorResponse xmlns=\"" + NS + "\"><Error><Type>Sender</Type>"
+                            + "<Code>InvalidParameter</Code><Message>rejected by the stand-in</Message></Error>"
+                            + "<RequestId>" + UUID.randomUUID() + "</RequestId></ErrorResponse>");
+                    return;
+                }
+                messages.add(message);
+                body = "<PublishResponse xmlns=\"" + NS + "\"><PublishResult><MessageId>" + UUID.randomUUID()
+                        + "</MessageId></PublishResult>" + metadata() + "</PublishResponse>";
+            } else if ("PublishBatch".equals(action)) {
+                StringBuilder ok = new StringBuilder();
+                StringBuilder failed = new StringBuilder();
+                for (int i = 1; params.containsKey(entry(i, "Id")); i++) {
+                    String id = params.get(entry(i, "Id"));
+                    String message = params.get(entry(i, "Message"));
+                    if (rejects.test(message)) {
+                        failed.append("<member><Id>").append(escapeXml(id)).append("</Id><Code>InternalError</Code>")
+                                .append("<Message>rejected by the stand-in</Message><SenderFault>false</SenderFault></member>");
+                    } else {
+                        messages.add(message);
+                        ok.append("<member><Id>").append(escapeXml(id)).append("</Id><MessageId>")
+                                .append(UUID.randomUUID()).append("</MessageId></member>");
+                    }
+                }
+                body = "<PublishBatchResponse xmlns=\"" + NS + "\"><PublishBatchResult><Successful>" + ok
+                        + "</Successful><Failed>" + failed + "</Failed></PublishBatchResult>" + metadata()
+                        + "</PublishBatchResponse>";
+            } else {
+                ex.sendResponseHeaders(400, -1);
+                return;
+            }
+            send(ex, 200, body);
+        }
+    }
+
+    private static String entry(int i, String field) {
+        return "PublishBatchRequestEntries.member." + i + "." + field;
+    }
+
+    private static String metadata() {
+        return "<ResponseMetadata><RequestId>" + UUID.randomUUID() + "</RequestId></ResponseMetadata>";
+    }
+
+    private static void send(HttpExchange ex, int status, String xml) throws IOException {
+        byte[] res = xml.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().add("Content-Type", "text/xml");
+        ex.sendResponseHeaders(status, res.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(res);
+        }
+    }
+
+    private static Map<String, String> params(String form) {
+        Map<String, String> params = new HashMap<>();
+        for (String pair : form.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int eq = pair.indexOf('=');
+            String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            params.put(name, value);
+        }
+        return params;
+    }
+
+    private static String escapeXml(String s) {
+        return s.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+}
@@ -0,0 +1,58 @@
+package com.isaactai.cloudnativeweb.support;
+
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.regex.Pattern;
+
+/**
+ * Records SQL executed on Tomcat request threads (picked up by the datasource proxy).
+ *
+ * <p>Background jobs (outbox processor, ...) run on other threads and are ignored, so
+ * a test can assert how many statements a single HTTP request issued. Sequence fetches are
+ * skipped: with pooled-lo ids one {@code nextval} serves 50 inserts, so whether a request
+ * pays for it depends on where the block happens to be.
+ * @author tisaac
+ */
+public class StatementCounter implements QueryExecutionListener {
+    private static final Pattern USERS_TABLE = Pattern.compile("(?i)\\b(from|into|update)\\s+users\\b");
+    private static final Pattern SEQUENCE_FETCH = Pattern.compile("(?i)^\\s*select\\s+nextval\\(");
+
+    private final Queue<String> queries = new ConcurrentLinkedQueue<>();
+
+    @Override
+    public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+    }
+
+    @Override
+    public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        if (!Thread.currentThread().getName().startsWith("http-nio")) {
+            return;
+        }
+        for (QueryInfo q : queryInfoList) {
+            if (!SEQUENCE_FETCH.matcher(q.getQuery()).find()) {
+                queries.add(q.getQuery());
+            }
+        }
+    }
+
+    public void reset() {
+        queries.clear();
+    }
+
+    public List<String> queries() {
+        return List.copyOf(queries);
+    }
+
+    public long total() {
+        return queries.size();
+    }
+
+    public long usersQueries() {
+        return queries.stream().filter(q -> USERS_TABLE.matcher(q).find()).count();
+    }
+}
@@ -1,13 +1,18 @@
 package com.isaactai.cloudnativeweb.user;
 
 import com.isaactai.cloudnativeweb.support.BaseApiTest;
+import com.isaactai.cloudnativeweb.support.StatementCounter;
+import com.isaactai.cloudnativeweb.user.auth.AuthTokenService;
 import io.restassured.response.Response;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.crypto.password.PasswordEncoder;
 
 import java.util.stream.Stream;
 
@@ -27,6 +32,15 @@ public class UserControllerTest extends BaseApiTest {
     Long userId;
     String createdAt;
 
+    @Autowired
+    AuthTokenService tokenService;
+
+    @Autowired
+    PasswordEncoder encoder;
+
+    @Autowired
+    StatementCounter statements;
+
     @BeforeEach
     void createUserFixed() {
         username = "people" + System.currentTimeMillis() + "+ts@example.com";
@@ -146,6 +160,20 @@ public class UserControllerTest extends BaseApiTest {
                     .body("account_updated", notNullValue());
         }
 
+        @Test
+        void getUserById_looksUpUserAtMostOnce() {
+            given().auth().preemptive().basic(username, pwd)
+                    .when().get("/v1/user/{id}", userId)
+                    .then().statusCode(200);
+
+            statements.reset();
+            given().auth().preemptive().basic(username, pwd)
+                    .when().get("/v1/user/{id}", userId)
+                    .then().statusCode(200);
+
+            assertThat(statements.queries().toString(), statements.usersQueries(), equalTo(1L));
+        }
+
         @Test
         void getById_withoutAuth_returns401() {
             given()
@@ -193,7 +221,176 @@ public class UserControllerTest extends BaseApiTest {
                     .statusCode(204);
         }
 
+        @Test
+        void updateUser_passwordChange_oldPasswordRejectedImmediately() {
+            // warm the verified-credential cache with the old password
+            given().auth().preemptive().basic(username, pwd)
+                    .when().get("/v1/user/{id}", userId)
+                    .then().statusCode(200);
+
+            String newPwd = "AnotherPwd$";
+            String userJson = """
+                {
+                  "first_name": "%s",
+                  "last_name": "%s",
+                  "password": "%s"
+                }
+                """.formatted("newFirst", "newLast", newPwd);
+
+            given().auth().preemptive().basic(username, pwd)
+                    .contentType("application/json").body(userJson)
+                    .when().put("/v1/user/{id}", userId)
+                    .then().statusCode(204);
+
+            given().auth().preemptive().basic(username, pwd)
+                    .when().get("/v1/user/{id}", userId)
+                    .then().log().ifValidationFails().statusCode(401);
+
+            given().auth().preemptive().basic(username, newPwd)
+                    .when().get("/v1/user/{id}", userId)
+                    .then().log().ifValidationFails().statusCode(200);
+        }
+    }
+
+    @Nested
+    class BearerToken {
+        String issueToken() {
+            return given()
+                    .auth().preemptive().basic(username, pwd)
+                    .when()
+                    .post("/v1/user/token")
+                    .then()
+                    .log().ifValidationFails()
+                    .statusCode(200)
+                    .body("token_type", equalTo("Bearer"))
+                    .body("expires_in", greaterThan(0))
+                    .extract().jsonPath().getString("token");
+        }
+
+        @Test
+        void token_canBeUsedInsteadOfBasic() {
+            String token = issueToken();
+
+            given()
+                    .header("Authorization", "Bearer " + token)
+                    .when()
+                    .get("/v1/user/{id}", userId)
+                    .then()
+                    .log().ifValidationFails()
+                    .statusCode(200)
+                    .body("username", equalTo(username));
+        }
+
+        @Test
+        void token_looksUpUserAtMostOnce() {
+            String token = issueToken();
+            given().header("Authorization", "Bearer " + token)
+                    .when().get("/v1/user/{id}", userId)
+                    .then().statusCode(200);
+
+            // the token version comes from the cache; the one read left is the handler's
+            statements.reset();
+            given().header("Authorization", "Bearer " + token)
+                    .when().get("/v1/user/{id}", userId)
+                    .then().statusCode(200);
+
+            assertThat(statements.queries().toString(), statements.usersQueries(), equalTo(1L));
+        }
+
+        @Test
+        void token_tampered_returns401() {
+            String token = issueToken();
+            String tampered = token.substring(0, token.length() - 2) + (token.endsWith("AA") ? "BB" : "AA");
+
+            given()
+                    .header("Authorization", "Bearer " + tampered)
+                    .when()
+                    .get("/v1/user/{id}", userId)
+                    .then()
+                    .statusCode(401);
+        }
+
+        @Test
+        void token_issuedBeforePasswordChange_returns401() {
+            String token = issueToken();
+            String newPwd = "NewStrongPwd$";
+            given().auth().preemptive().basic(username, pwd)
+                    .contentType("application/json").body("""
+                            {"first_name": "people", "last_name": "p", "password": "%s"}
+                            """.formatted(newPwd))
+                    .when().put("/v1/user/{id}", userId)
+                    .then().statusCode(204);
+
+            given().header("Authorization", "Bearer " + token)
+                    .when().get("/v1/user/{id}", userId)
+                    .then().statusCode(401);
 
+            String fresh = given().auth().preemptive().basic(username, newPwd)
+                    .when().post("/v1/user/token")
+                    .then().statusCode(200)
+                    .extract().jsonPath().getString("token");
+            given().header("Authorization", "Bearer " + fresh)
+                    .when().get("/v1/user/{id}", userId)
+                    .then().statusCode(200);
+        }
+
+        @Test
+        void token_cannotRefreshItself_returns403() {
+            given()
+                    .header("Authorization", "Bearer " + issueToken())
+                    .when()
+                    .post("/v1/user/token")
+                    .then()
+                    .statusCode(403);
+        }
+
+        @Test
+        void token_withoutCredentials_returns401() {
+            given().when().post("/v1/user/token").then().statusCode(401);
+        }
+    }
+
+    // Run with: ./mvnw test -Dbenchmark=true -Dtest='UserControllerTest$AuthBenchmark'
+    @Nested
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    class AuthBenchmark {
+        static final int REQUESTS = 500;
+        static final int CPU_ROUNDS = 200;
+
+        @Test
+        void compareBasicAndBearerThroughput() {
+            String token = given().auth().preemptive().basic(username, pwd)
+                    .when().post("/v1/user/token")
+                    .then().statusCode(200)
+                    .extract().jsonPath().getString("token");
+
+            // per-check CPU cost: what every uncached Basic request pays vs every bearer request
+            String hash = encoder.encode(pwd);
+            long t0 = System.nanoTime();
+            for (int i = 0; i < CPU_ROUNDS; i++) encoder.matches(pwd, hash);
+            double bcryptOps = CPU_ROUNDS / ((System.nanoTime() - t0) / 1e9);
+
+            t0 = System.nanoTime();
+            for (int i = 0; i < CPU_ROUNDS * 100; i++) tokenService.verify(token);
+            double tokenOps = CPU_ROUNDS * 100 / ((System.nanoTime() - t0) / 1e9);
+
+            // end-to-end over HTTP (Basic is served from the credential cache after the first call)
+            double basicRps = measure(() -> given().auth().preemptive().basic(username, pwd)
+                    .when().get("/v1/user/{id}", userId).then().statusCode(200));
+            double bearerRps = measure(() -> given().header("Authorization", "Bearer " + token)
+                    .when().get("/v1/user/{id}", userId).then().statusCode(200));
+
+            System.out.printf("[bench] bcrypt verify: %.0f ops/s, token verify: %.0f ops/s%n", bcryptOps, tokenOps);
+            System.out.printf("[bench] GET /v1/user/{id} basic: %.0f req/s, bearer: %.0f req/s%n", basicRps, bearerRps);
+            assertThat(tokenOps, greaterThan(bcryptOps));
+        }
+
+        private double measure(Runnable call) {
+            for (int i = 0; i < 50; i++) call.run(); // warm-up
+            long start = System.nanoTime();
+            for (int i = 0; i < REQUESTS; i++) call.run();
+            return REQUESTS / ((System.nanoTime() - start) / 1e9);
+        }
     }
 
     private static String userJson(String first, String last, String email, String pwd) {
@@ -0,0 +1,198 @@
+package com.isaactai.cloudnativeweb.user.verification;
+
+import com.isaactai.cloudnativeweb.messaging.SnsPublisher;
+import com.isaactai.cloudnativeweb.support.ApiFixtures;
+import com.isaactai.cloudnativeweb.support.BaseApiTest;
+import com.isaactai.cloudnativeweb.support.SnsStandIn;
+import com.isaactai.cloudnativeweb.user.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * The verification outbox drained through PublishBatch against the in-JVM SNS stand-in.
+ * @author tisaac
+ */
+public class EmailVerificationOutboxProcessorTest extends BaseApiTest {
+
+    @Autowired
+    SnsPublisher publisher; // mock from BaseApiTest
+
+    @Autowired
+    EmailVerificationOutboxProcessor processor;
+
+    @Autowired
+    EmailVerificationOutboxRepository outboxRepo;
+
+    @Autowired
+    UserRepository userRepo;
+
+    @Autowired
+    JdbcTemplate jdbc;
+
+    SnsStandIn standIn;
+    String prefix;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        // events other tests' signups left pending go out first, through a stand-in of their own
+        try (SnsStandIn drain = new SnsStandIn()) {
+            drain.routeMock(publisher);
+            drainAll();
+        }
+        Mockito.reset(publisher);
+        standIn = new SnsStandIn().routeMock(publisher);
+        prefix = "outbox" + System.nanoTime();
+    }
+
+    @AfterEach
+    void tearDown() {
+        Mockito.reset(publisher);
+        standIn.close();
+    }
+
+    @Test
+    void batchesOfTen_andEachRowGetsItsOwnOutcome() {
+        String rejected = prefix + "-7@example.com";
+        standIn.reject(m -> m.contains(rejected));
+        pending(25);
+
+        processor.processPending(); // a full page of 20, then the 5 left
+        assertThat(standIn.calls(), is(3));
+
+        assertThat(jdbc.queryForObject("select count(*) from email_verification_outbox"
+                + " where email like ? and status = 'SENT' and sent_at is not null", Long.class,
+                prefix + "-%"), is(24L));
+        EmailVerificationOutbox failed = outboxRepo.findAll().stream()
+                .filter(e -> e.getEmail().equals(rejected)).findFirst().orElseThrow();
+        assertThat(failed.getStatus(), is("PENDING"));
+        assertThat(failed.getRetryCount(), greaterThanOrEqualTo(1));
+        assertThat(standIn.messages(), hasSize(24));
+        assertThat(standIn.messages(), everyItem(containsString("\"type\": \"EMAIL_VERIFICATION\"")));
+        assertThat(standIn.messages(), not(hasItem(containsString(rejected))));
+        verify(publisher, never()).publishEmailVerification(anyString(), any());
+
+        // accepted on a later poll
+        standIn.reject(m -> false);
+        processor.processPending();
+        assertThat(outboxRepo.findById(failed.getId()).orElseThrow().getStatus(), is("SENT"));
+    }
+
+    @Test
+    void onePoll_drainsEveryFullPage_andRetriesFailuresOnTheNext() {
+        String rejected = prefix + "-3@example.com";
+        standIn.reject(m -> m.contains(rejected));
+        pending(EmailVerificationOutboxProcessor.PAGE_SIZE * 2 + 5);
+
+        processor.processPending();
+        assertThat(jdbc.queryForObject("select count(*) from email_verification_outbox"
+                + " where email like ? and status = 'PENDING'", Long.class, prefix + "-%"), is(1L));
+        // not retried in the same poll
+        assertThat(outboxRepo.findAll().stream().filter(e -> e.getEmail().equals(rejected))
+                .findFirst().orElseThrow().getRetryCount(), is(1));
+
+        standIn.reject(m -> false);
+        processor.processPending();
+        assertThat(standIn.messages(), hasItem(containsString(rejected)));
+    }
+
+    @Test
+    void signup_isPublished_andTheTokenClockStarts() {
+        String username = prefix + "@example.com";
+        ApiFixtures.createUser(username);
+        assertThat(userRepo.findByUsername(username).orElseThrow().getTokenGenerateAt(), nullValue());
+
+        processor.processPending();
+
+        assertThat(standIn.messages(), hasItem(containsString(username)));
+        assertThat(userRepo.findByUsername(username).orElseThrow().getTokenGenerateAt(), notNullValue());
+    }
+
+    @Test
+    void snsDown_failsEveryEntry_andTheRowsStayPending() {
+        pending(3);
+        standIn.unavailable(true);
+
+        processor.processPending();
+
+        assertThat(jdbc.queryForObject("select count(*) from email_verification_outbox"
+                + " where email like ? and status = 'PENDING' and retry_count = 1", Long.class,
+                prefix + "-%"), is(3L));
+    }
+
+    private void pending(int n) {
+        Instant now = Instant.now();
+        outboxRepo.saveAll(IntStream.range(0, n)
+                        .mapToObj(i -> EmailVerificationOutbox.builder()
+                                .email(prefix + "-" + i + "@example.com")
+                                .token(UUID.randomUUID())
+                                .createdAt(now.plusMillis(i))
+                                .status("PENDING")
+                                .build())
+                        .toList());
+    }
+
+    private void drainAll() {
+        for (int i = 0; i < 10_000; i++) {
+            Long left = jdbc.queryForObject(
+                    "select count(*) from email_verification_outbox where status = 'PENDING'", Long.class);
+            if (left == 0) {
+                return;
+            }
+            processor.processPending();
+        }
+        throw new AssertionError("outbox did not drain");
+    }
+
+    /**
+     * 1000 events at 20ms per SNS round trip: the outbox drained by one scheduled poll with
+     * PublishBatch, against one Publish per event as before. Run with {@code -Dbenchmark=true}.
+     */
+    @Nested
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    class DrainBenchmark {
+
+        @Test
+        void eventsPerSecond() {
+            int n = 1000;
+            standIn.latency(Duration.ofMillis(20));
+
+            pending(n);
+            long start = System.nanoTime();
+            processor.processPending(); // one scheduled poll
+            double batched = n / ((System.nanoTime() - start) / 1e9);
+            int batchedCalls = standIn.calls();
+
+            int single = 200;
+            start = System.nanoTime();
+            for (int i = 0; i < single; i++) {
+                publisher.publishEmailVerification(prefix + "-s" + i + "@example.com", UUID.randomUUID().toString());
+            }
+            double oneByOne = single / ((System.nanoTime() - start) / 1e9);
+
+            System.out.printf("[bench] outbox drain with PublishBatch: %.0f events/s (%d calls for %d events); "
+                    + "one Publish per event: %.0f events/s%n", batched, batchedCalls, n, oneByOne);
+            assertThat(batchedCalls, is(n / SnsPublisher.MAX_BATCH));
+            assertThat(jdbc.queryForObject("select count(*) from email_verification_outbox"
+                    + " where email like ? and status = 'PENDING'", Long.class, prefix + "-%"), is(0L));
+        }
+    }
+}